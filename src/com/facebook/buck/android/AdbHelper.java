@@ -87,7 +87,8 @@ public class AdbHelper implements AndroidDevicesHelper {
 
   /**
    * The next port number to use for communicating with the agent on a device. This resets for every
-   * instance of AdbHelper, but is incremented for every device on every call to adbCall().
+   * instance of AdbHelper, but is advanced for every device on every call to adbCall(). Each device
+   * gets a block of {@link RealAndroidDevice#AGENT_PORTS_PER_DEVICE} ports.
    */
   private final AtomicInteger nextAgentPort = new AtomicInteger(2828);
 
@@ -464,7 +465,7 @@ public class AdbHelper implements AndroidDevicesHelper {
         device,
         getConsole(),
         getApkFilePathFromProperties().orElse(null),
-        nextAgentPort.incrementAndGet());
+        nextAgentPort.getAndAdd(RealAndroidDevice.AGENT_PORTS_PER_DEVICE));
   }
 
   private static boolean isAdbInitialized(AndroidDebugBridge adb) {
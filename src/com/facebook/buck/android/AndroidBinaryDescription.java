@@ -270,6 +270,7 @@ public class AndroidBinaryDescription
               .setDexReorderDataDumpFile(args.getDexReorderDataDumpFile())
               .setDxExecutorService(dxExecutorService)
               .setDxMaxHeapSize(dxConfig.getDxMaxHeapSize())
+              .setDxMaxWorkers(dxConfig.getDxMaxWorkers())
               .setOptimizationPasses(args.getOptimizationPasses())
               .setProguardJvmArgs(args.getProguardJvmArgs())
               .setSkipProguard(args.isSkipProguard())
@@ -583,7 +583,8 @@ public class AndroidBinaryGraphEnhancer {
             dexForUberRDotJava,
             dxExecutorService,
             xzCompressionLevel,
-            dxConfig.getDxMaxHeapSize());
+            dxConfig.getDxMaxHeapSize(),
+            dxConfig.getDxMaxWorkers());
     ruleResolver.addToIndex(preDexMerge);
 
     return preDexMerge;
@@ -142,6 +142,7 @@ public class AndroidInstrumentationApkDescription
             .setDexReorderDataDumpFile(Optional.empty())
             .setDxExecutorService(dxExecutorService)
             .setDxMaxHeapSize(Optional.empty())
+            .setDxMaxWorkers(Optional.empty())
             .setOptimizationPasses(apkUnderTest.getOptimizationPasses())
             .setProguardJvmArgs(apkUnderTest.getProguardJvmArgs())
             .setSkipProguard(apkUnderTest.getSkipProguard())
@@ -52,6 +52,7 @@ import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Ordering;
 import java.nio.file.Path;
+import java.util.Optional;
 import java.util.concurrent.atomic.AtomicReference;
 import javax.annotation.Nullable;
 
@@ -92,6 +93,7 @@ public class AndroidResource extends AbstractBuildRuleWithDeclaredAndExtraDeps
   private final Path pathToTextSymbolsDir;
   private final Path pathToTextSymbolsFile;
   private final Path pathToRDotJavaPackageFile;
+  private final Path pathToSymbolManifest;
 
   @AddToRuleKey @Nullable private final SourcePath manifestFile;
 
@@ -168,6 +170,11 @@ public class AndroidResource extends AbstractBuildRuleWithDeclaredAndExtraDeps
         BuildTargets.getGenPath(getProjectFilesystem(), buildTarget, "__%s_text_symbols__");
     this.pathToTextSymbolsFile = pathToTextSymbolsDir.resolve("R.txt");
     this.pathToRDotJavaPackageFile = pathToTextSymbolsDir.resolve("RDotJavaPackage.txt");
+    // Lives outside of pathToTextSymbolsDir, so that it survives that being cleaned, and is an
+    // output of its own, so that it comes along with R.txt when the rule is fetched from a cache.
+    this.pathToSymbolManifest =
+        BuildTargets.getGenPath(
+            getProjectFilesystem(), buildTarget, "__%s_resource_symbols__.json");
 
     this.deps = deps;
 
@@ -322,6 +329,7 @@ public class AndroidResource extends AbstractBuildRuleWithDeclaredAndExtraDeps
               false /* executable */));
     }
 
+    buildableContext.recordArtifact(pathToSymbolManifest);
     ImmutableSet<Path> pathsToSymbolsOfDeps =
         symbolsOfDeps
             .get()
@@ -337,7 +345,8 @@ public class AndroidResource extends AbstractBuildRuleWithDeclaredAndExtraDeps
             pathsToSymbolsOfDeps,
             resourceUnion,
             isGrayscaleImageProcessingEnabled,
-            MiniAapt.ResourceCollectionType.R_DOT_TXT));
+            MiniAapt.ResourceCollectionType.R_DOT_TXT,
+            Optional.of(pathToSymbolManifest)));
     return steps.build();
   }
 
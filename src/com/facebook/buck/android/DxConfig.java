@@ -32,6 +32,14 @@ public class DxConfig {
     return delegate.getValue("dx", "max_heap_size");
   }
 
+  /**
+   * @return The number of persistent worker processes to run dx in, if dx should run in workers
+   *     rather than in a new process per invocation.
+   */
+  public Optional<Integer> getDxMaxWorkers() {
+    return delegate.getInteger("dx", "max_workers");
+  }
+
   /** @return The dx thread count. */
   public Optional<Integer> getDxMaxThreadCount() {
     return delegate.getInteger("dx", "max_threads");
@@ -23,6 +23,10 @@ import com.facebook.buck.shell.ShellStep;
 import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.step.StepExecutionResult;
 import com.facebook.buck.util.Verbosity;
+import com.facebook.buck.worker.WorkerJobResult;
+import com.facebook.buck.worker.WorkerProcess;
+import com.facebook.buck.worker.WorkerProcessPool;
+import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
@@ -68,6 +72,7 @@ public class DxStep extends ShellStep {
   private final Set<Path> filesToDex;
   private final Set<Option> options;
   private final Optional<String> maxHeapSize;
+  private final Optional<Integer> maxWorkers;
 
   @Nullable private Collection<String> resourcesReferencedInCode;
 
@@ -113,12 +118,41 @@ public class DxStep extends ShellStep {
       Iterable<Path> filesToDex,
       EnumSet<Option> options,
       Optional<String> maxHeapSize) {
+    this(
+        buildTarget,
+        filesystem,
+        outputDexFile,
+        filesToDex,
+        options,
+        maxHeapSize,
+        Optional.empty());
+  }
+
+  /**
+   * @param outputDexFile path to the file where the generated classes.dex should go.
+   * @param filesToDex each element in this set is a path to a .class file, a zip file of .class
+   *     files, or a directory of .class files.
+   * @param options to pass to {@code dx}.
+   * @param maxHeapSize The max heap size used for out of process dex.
+   * @param maxWorkers If present, run the dx bundled with buck in a pool of at most this many
+   *     persistent worker processes, which outlive the build when buck runs as a daemon. This takes
+   *     precedence over {@link Option#RUN_IN_PROCESS}.
+   */
+  public DxStep(
+      BuildTarget buildTarget,
+      ProjectFilesystem filesystem,
+      Path outputDexFile,
+      Iterable<Path> filesToDex,
+      EnumSet<Option> options,
+      Optional<String> maxHeapSize,
+      Optional<Integer> maxWorkers) {
     super(Optional.of(buildTarget), filesystem.getRootPath());
     this.filesystem = filesystem;
     this.outputDexFile = outputDexFile;
     this.filesToDex = ImmutableSet.copyOf(filesToDex);
     this.options = Sets.immutableEnumSet(options);
     this.maxHeapSize = maxHeapSize;
+    this.maxWorkers = maxWorkers;
 
     Preconditions.checkArgument(
         !options.contains(Option.RUN_IN_PROCESS)
@@ -141,8 +175,11 @@ public class DxStep extends ShellStep {
     builder.add(dx);
 
     // Add the Xmx override, but not for in-process dexing, since the dexer won't understand it.
-    // Also, if DX works in-process, it probably wouldn't need an enlarged Xmx.
-    if (maxHeapSize.isPresent() && !options.contains(Option.RUN_IN_PROCESS)) {
+    // Also, if DX works in-process, it probably wouldn't need an enlarged Xmx. Workers get it as
+    // an argument of their JVM instead.
+    if (maxHeapSize.isPresent()
+        && !options.contains(Option.RUN_IN_PROCESS)
+        && !maxWorkers.isPresent()) {
       builder.add(String.format("-JXmx%s", maxHeapSize.get()));
     }
 
@@ -182,7 +219,9 @@ public class DxStep extends ShellStep {
   @Override
   public StepExecutionResult execute(ExecutionContext context)
       throws IOException, InterruptedException {
-    if (options.contains(Option.RUN_IN_PROCESS)) {
+    if (maxWorkers.isPresent()) {
+      return StepExecutionResult.of(executeInWorker(context, maxWorkers.get()));
+    } else if (options.contains(Option.RUN_IN_PROCESS)) {
       return StepExecutionResult.of(executeInProcess(context));
     } else {
       return super.execute(context);
@@ -196,8 +235,7 @@ public class DxStep extends ShellStep {
     // because we bypass the dispatcher and go straight to the dexer.
     Preconditions.checkState(
         argv.get(0).endsWith(File.separator + "dx") || argv.get(0).endsWith("\\dx.bat"));
-    Preconditions.checkState(argv.get(1).equals("--dex"));
-    ImmutableList<String> args = argv.subList(2, argv.size());
+    ImmutableList<String> args = getDexerArgs(argv);
 
     ByteArrayOutputStream stderr = new ByteArrayOutputStream();
     PrintStream stderrStream = new PrintStream(stderr);
@@ -223,6 +261,37 @@ public class DxStep extends ShellStep {
     }
   }
 
+  private int executeInWorker(ExecutionContext context, int maxWorkers)
+      throws IOException, InterruptedException {
+    ImmutableList<String> args = getDexerArgs(getShellCommandInternal(context));
+
+    WorkerProcessPool pool = DxWorkers.getPool(context, filesystem, maxWorkers, maxHeapSize);
+    WorkerProcess workerProcess = pool.borrowWorkerProcess();
+    WorkerJobResult result;
+    try {
+      result = workerProcess.submitAndWaitForJob(Joiner.on('\n').join(args));
+    } catch (Exception e) {
+      // The worker is in an unknown state, so make sure it isn't used again.
+      pool.destroyWorkerProcess(workerProcess);
+      throw e;
+    }
+    pool.returnWorkerProcess(workerProcess);
+
+    if (result.getStderr().isPresent() && !result.getStderr().get().isEmpty()) {
+      context.postEvent(ConsoleEvent.warning("%s", result.getStderr().get()));
+    }
+    return result.getExitCode();
+  }
+
+  /**
+   * Strips the leading "dx --dex" off {@code argv}, since the dexer is run directly rather than
+   * through the dispatcher.
+   */
+  private static ImmutableList<String> getDexerArgs(ImmutableList<String> argv) {
+    Preconditions.checkState(argv.get(1).equals("--dex"));
+    return argv.subList(2, argv.size());
+  }
+
   @Override
   protected boolean shouldPrintStderr(Verbosity verbosity) {
     return verbosity.shouldPrintSelectCommandOutput();
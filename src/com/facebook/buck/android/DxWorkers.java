@@ -0,0 +1,93 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.android;
+
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.external.BundledExternalProcessLauncher;
+import com.facebook.buck.worker.WorkerProcessIdentity;
+import com.facebook.buck.worker.WorkerProcessParams;
+import com.facebook.buck.worker.WorkerProcessPool;
+import com.facebook.buck.worker.WorkerProcessPoolFactory;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Provides the pool of worker processes that {@link DxStep} runs dx in. When buck runs as a daemon
+ * the pool is persistent, so the dexer's JVM stays warm across builds.
+ */
+class DxWorkers {
+
+  private static final BundledExternalProcessLauncher LAUNCHER =
+      new BundledExternalProcessLauncher();
+  private static final Supplier<ImmutableList<String>> COMMAND_SUPPLIER =
+      Suppliers.memoize(LAUNCHER::getCommandForDxWorker);
+  private static final Supplier<ImmutableMap<String, String>> ENV_SUPPLIER =
+      Suppliers.memoize(LAUNCHER::getEnvForDxWorker);
+
+  private DxWorkers() {}
+
+  static WorkerProcessPool getPool(
+      ExecutionContext context,
+      ProjectFilesystem filesystem,
+      int maxWorkers,
+      Optional<String> maxHeapSize) {
+    ImmutableList<String> command = getCommand(COMMAND_SUPPLIER.get(), maxHeapSize);
+    ImmutableMap<String, String> env = ENV_SUPPLIER.get();
+
+    // Changing the command or the pool size replaces the persistent pool rather than reusing it.
+    Hasher hasher = Hashing.sha1().newHasher();
+    command.forEach(arg -> hasher.putString(arg, StandardCharsets.UTF_8).putByte((byte) 0));
+    for (Map.Entry<String, String> entry : env.entrySet()) {
+      hasher
+          .putString(entry.getKey(), StandardCharsets.UTF_8)
+          .putByte((byte) 0)
+          .putString(entry.getValue(), StandardCharsets.UTF_8)
+          .putByte((byte) 0);
+    }
+    hasher.putInt(maxWorkers);
+
+    WorkerProcessParams params =
+        WorkerProcessParams.of(
+            filesystem.getBuckPaths().getScratchDir().resolve("__dx_worker_tmp__"),
+            command,
+            env,
+            maxWorkers,
+            Optional.of(WorkerProcessIdentity.of("dx_worker", hasher.hash())));
+    return new WorkerProcessPoolFactory(filesystem).getWorkerProcessPool(context, params);
+  }
+
+  /** Passes the heap size to the worker's JVM, since the dexer itself doesn't understand it. */
+  static ImmutableList<String> getCommand(
+      ImmutableList<String> launcherCommand, Optional<String> maxHeapSize) {
+    if (!maxHeapSize.isPresent() || !launcherCommand.get(0).equals("java")) {
+      return launcherCommand;
+    }
+    return ImmutableList.<String>builder()
+        .add(launcherCommand.get(0))
+        .add("-Xmx" + maxHeapSize.get())
+        .addAll(launcherCommand.subList(1, launcherCommand.size()))
+        .build();
+  }
+}
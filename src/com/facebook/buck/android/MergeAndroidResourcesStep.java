@@ -21,6 +21,8 @@ import static com.google.common.collect.Ordering.natural;
 import com.facebook.buck.android.aapt.RDotTxtEntry;
 import com.facebook.buck.android.aapt.RDotTxtEntry.IdType;
 import com.facebook.buck.android.aapt.RDotTxtEntry.RType;
+import com.facebook.buck.event.PerfEventId;
+import com.facebook.buck.event.SimplePerfEvent;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.log.Logger;
 import com.facebook.buck.rules.SourcePath;
@@ -29,7 +31,8 @@ import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.StepExecutionResult;
 import com.facebook.buck.util.ObjectMappers;
-import com.facebook.buck.util.ThrowingPrintWriter;
+import com.facebook.buck.util.concurrent.MoreFutures;
+import com.facebook.buck.util.concurrent.MostExecutors;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Joiner;
@@ -45,7 +48,11 @@ import com.google.common.collect.SetMultimap;
 import com.google.common.collect.Sets;
 import com.google.common.collect.SortedSetMultimap;
 import com.google.common.collect.TreeMultimap;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
@@ -60,11 +67,17 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 import java.util.stream.Collectors;
 
 public class MergeAndroidResourcesStep implements Step {
   private static final Logger LOG = Logger.get(MergeAndroidResourcesStep.class);
 
+  /** Reads the symbols files and writes the R.java files, rather than the common pool. */
+  private static final ExecutorService IO_EXECUTOR =
+      MostExecutors.newIdleTimeoutExecutor(
+          "merge-android-resources", Runtime.getRuntime().availableProcessors());
+
   private final ProjectFilesystem filesystem;
   private final SourcePathResolver pathResolver;
   private final ImmutableList<HasAndroidResourceDeps> androidResourceDeps;
@@ -189,32 +202,47 @@ public class MergeAndroidResourcesStep implements Step {
         rDotTxtToPackage.put(rDotTxtPath, res.getRDotJavaPackage());
         symbolsFileToResourceDeps.put(rDotTxtPath, res);
       }
+      ImmutableMap<Path, String> symbolsFileToRDotJavaPackage = rDotTxtToPackage.build();
+
       Optional<ImmutableMap<RDotTxtEntry, String>> uberRDotTxtIds;
-      if (uberRDotTxt.isPresent()) {
-        // re-assign Ids
-        uberRDotTxtIds =
-            Optional.of(
-                FluentIterable.from(RDotTxtEntry.readResources(filesystem, uberRDotTxt.get()))
-                    .toMap(input -> input.idValue));
-      } else {
-        uberRDotTxtIds = Optional.empty();
+      ImmutableMap<Path, List<RDotTxtEntry>> symbolsFileToEntries;
+      try (SimplePerfEvent.Scope scope =
+          SimplePerfEvent.scope(
+              context.getBuckEventBus(),
+              PerfEventId.of("merge_android_resources_read_symbols"),
+              "symbols_files",
+              symbolsFileToRDotJavaPackage.size())) {
+        if (uberRDotTxt.isPresent()) {
+          // re-assign Ids
+          uberRDotTxtIds =
+              Optional.of(
+                  FluentIterable.from(readSymbolsFile(filesystem, uberRDotTxt.get()))
+                      .toMap(input -> input.idValue));
+        } else {
+          uberRDotTxtIds = Optional.empty();
+        }
+        symbolsFileToEntries =
+            readSymbolsFilesInParallel(filesystem, symbolsFileToRDotJavaPackage.keySet());
       }
 
-      ImmutableMap<Path, String> symbolsFileToRDotJavaPackage = rDotTxtToPackage.build();
-
       Optional<SetMultimap<String, RDotTxtEntry>> overrideSymbols =
           overrideSymbolsPath.isPresent()
               ? loadOverrideSymbols(overrideSymbolsPath.get())
               : Optional.empty();
-      SortedSetMultimap<String, RDotTxtEntry> rDotJavaPackageToResources =
-          sortSymbols(
-              symbolsFileToRDotJavaPackage,
-              uberRDotTxtIds,
-              symbolsFileToResourceDeps.build(),
-              overrideSymbols,
-              bannedDuplicateResourceTypes,
-              filesystem,
-              useOldStyleableFormat);
+      SortedSetMultimap<String, RDotTxtEntry> rDotJavaPackageToResources;
+      try (SimplePerfEvent.Scope scope =
+          SimplePerfEvent.scope(
+              context.getBuckEventBus(), PerfEventId.of("merge_android_resources_assign_ids"))) {
+        rDotJavaPackageToResources =
+            sortSymbols(
+                symbolsFileToEntries,
+                symbolsFileToRDotJavaPackage,
+                uberRDotTxtIds,
+                symbolsFileToResourceDeps.build(),
+                overrideSymbols,
+                bannedDuplicateResourceTypes,
+                useOldStyleableFormat);
+      }
 
       // If a resource_union_package was specified, copy all resource into that package,
       // unless they are already present.
@@ -230,14 +258,23 @@ public class MergeAndroidResourcesStep implements Step {
         }
       }
 
-      writePerPackageRDotJava(rDotJavaPackageToResources, filesystem);
-      Set<String> emptyPackages =
-          Sets.difference(
-              ImmutableSet.copyOf(symbolsFileToRDotJavaPackage.values()),
-              rDotJavaPackageToResources.keySet());
-
-      if (!emptyPackages.isEmpty()) {
-        writeEmptyRDotJavaForPackages(emptyPackages, filesystem);
+      try (SimplePerfEvent.Scope scope =
+          SimplePerfEvent.scope(
+              context.getBuckEventBus(),
+              PerfEventId.of("merge_android_resources_write_r_java"),
+              "packages",
+              rDotJavaPackageToResources.keySet().size(),
+              "resources",
+              rDotJavaPackageToResources.size())) {
+        writePerPackageRDotJava(rDotJavaPackageToResources, filesystem);
+        Set<String> emptyPackages =
+            Sets.difference(
+                ImmutableSet.copyOf(symbolsFileToRDotJavaPackage.values()),
+                rDotJavaPackageToResources.keySet());
+
+        if (!emptyPackages.isEmpty()) {
+          writeEmptyRDotJavaForPackages(emptyPackages, filesystem);
+        }
       }
       return StepExecutionResult.SUCCESS;
     } catch (DuplicateResourceException e) {
@@ -274,75 +311,102 @@ public class MergeAndroidResourcesStep implements Step {
     }
   }
 
+  /** Writes the {@code R.java} files of the packages concurrently, one package per task. */
   @VisibleForTesting
   void writePerPackageRDotJava(
       SortedSetMultimap<String, RDotTxtEntry> packageToResources, ProjectFilesystem filesystem)
       throws IOException {
-    for (String rDotJavaPackage : packageToResources.keySet()) {
-      Path outputFile = getPathToRDotJava(rDotJavaPackage);
-      filesystem.mkdirs(outputFile.getParent());
-      try (ThrowingPrintWriter writer =
-          new ThrowingPrintWriter(filesystem.newFileOutputStream(outputFile))) {
-        writer.format("package %s;\n\n", rDotJavaPackage);
-        writer.format("public class %s {\n", rName);
-
-        ImmutableList.Builder<String> customDrawablesBuilder = ImmutableList.builder();
-        ImmutableList.Builder<String> grayscaleImagesBuilder = ImmutableList.builder();
-        RType lastType = null;
-
-        for (RDotTxtEntry res : packageToResources.get(rDotJavaPackage)) {
-          RType type = res.type;
-          if (!type.equals(lastType)) {
-            // If the previous type needs to be closed, close it.
-            if (lastType != null) {
-              writer.println("  }\n");
-            }
-
-            // Now start the block for the new type.
-            writer.format("  public static class %s {\n", type);
-            lastType = type;
-          }
-
-          // Write out the resource.
-          // Write as an int.
-          writer.format(
-              "    public static%s%s %s=%s;\n",
-              forceFinalResourceIds ? " final " : " ", res.idType, res.name, res.idValue);
-
-          if (type == RType.DRAWABLE && res.customType == RDotTxtEntry.CustomDrawableType.CUSTOM) {
-            customDrawablesBuilder.add(res.idValue);
-          } else if (type == RType.DRAWABLE
-              && res.customType == RDotTxtEntry.CustomDrawableType.GRAYSCALE_IMAGE) {
-            grayscaleImagesBuilder.add(res.idValue);
-          }
-        }
+    MoreFutures.mapInParallel(
+        IO_EXECUTOR,
+        packageToResources.keySet(),
+        rDotJavaPackage -> {
+          writeRDotJava(rDotJavaPackage, packageToResources.get(rDotJavaPackage), filesystem);
+          return null;
+        });
+  }
 
-        // If some type was written (e.g., the for loop was entered), then the last type needs to be
-        // closed.
+  private void writeRDotJava(
+      String rDotJavaPackage, Collection<RDotTxtEntry> resources, ProjectFilesystem filesystem)
+      throws IOException {
+    Path outputFile = getPathToRDotJava(rDotJavaPackage);
+    filesystem.mkdirs(outputFile.getParent());
+    // The whole file is built up in memory first, which is a lot cheaper than a format call per
+    // resource.
+    StringBuilder builder = new StringBuilder();
+    builder.append("package ").append(rDotJavaPackage).append(";\n\n");
+    builder.append("public class ").append(rName).append(" {\n");
+
+    ImmutableList.Builder<String> customDrawablesBuilder = ImmutableList.builder();
+    ImmutableList.Builder<String> grayscaleImagesBuilder = ImmutableList.builder();
+    RType lastType = null;
+    String modifiers = forceFinalResourceIds ? " final " : " ";
+
+    for (RDotTxtEntry res : resources) {
+      RType type = res.type;
+      if (!type.equals(lastType)) {
+        // If the previous type needs to be closed, close it.
         if (lastType != null) {
-          writer.println("  }\n");
+          builder.append("  }\n\n");
         }
 
-        ImmutableList<String> customDrawables = customDrawablesBuilder.build();
-        if (customDrawables.size() > 0) {
-          // Add a new field for the custom drawables.
-          writer.format("  public static final int[] custom_drawables = ");
-          writer.format("{ %s };\n", Joiner.on(",").join(customDrawables));
-          writer.format("\n");
-        }
-
-        ImmutableList<String> grayscaleImages = grayscaleImagesBuilder.build();
-        if (grayscaleImages.size() > 0) {
-          // Add a new field for the custom drawables.
-          writer.format("  public static final int[] grayscale_images = ");
-          writer.format("{ %s };\n", Joiner.on(",").join(grayscaleImages));
-          writer.format("\n");
-        }
+        // Now start the block for the new type.
+        builder.append("  public static class ").append(type).append(" {\n");
+        lastType = type;
+      }
 
-        // Close the class definition.
-        writer.println("}");
+      // Write out the resource.
+      // Write as an int.
+      builder
+          .append("    public static")
+          .append(modifiers)
+          .append(res.idType)
+          .append(' ')
+          .append(res.name)
+          .append('=')
+          .append(res.idValue)
+          .append(";\n");
+
+      if (type == RType.DRAWABLE && res.customType == RDotTxtEntry.CustomDrawableType.CUSTOM) {
+        customDrawablesBuilder.add(res.idValue);
+      } else if (type == RType.DRAWABLE
+          && res.customType == RDotTxtEntry.CustomDrawableType.GRAYSCALE_IMAGE) {
+        grayscaleImagesBuilder.add(res.idValue);
       }
     }
+
+    // If some type was written (e.g., the for loop was entered), then the last type needs to be
+    // closed.
+    if (lastType != null) {
+      builder.append("  }\n\n");
+    }
+
+    ImmutableList<String> customDrawables = customDrawablesBuilder.build();
+    if (customDrawables.size() > 0) {
+      // Add a new field for the custom drawables.
+      builder
+          .append("  public static final int[] custom_drawables = { ")
+          .append(Joiner.on(",").join(customDrawables))
+          .append(" };\n\n");
+    }
+
+    ImmutableList<String> grayscaleImages = grayscaleImagesBuilder.build();
+    if (grayscaleImages.size() > 0) {
+      // Add a new field for the custom drawables.
+      builder
+          .append("  public static final int[] grayscale_images = { ")
+          .append(Joiner.on(",").join(grayscaleImages))
+          .append(" };\n\n");
+    }
+
+    // Close the class definition.
+    builder.append("}\n");
+
+    try (Writer writer =
+        new BufferedWriter(
+            new OutputStreamWriter(
+                filesystem.newFileOutputStream(outputFile), StandardCharsets.UTF_8))) {
+      writer.append(builder);
+    }
   }
 
   @VisibleForTesting
@@ -354,6 +418,29 @@ public class MergeAndroidResourcesStep implements Step {
       EnumSet<RType> bannedDuplicateResourceTypes,
       ProjectFilesystem filesystem,
       boolean useOldStyleableFormat)
+      throws DuplicateResourceException, IOException {
+    return sortSymbols(
+        readSymbolsFilesInParallel(filesystem, symbolsFileToRDotJavaPackage.keySet()),
+        symbolsFileToRDotJavaPackage,
+        uberRDotTxtIds,
+        symbolsFileToResourceDeps,
+        overrides,
+        bannedDuplicateResourceTypes,
+        useOldStyleableFormat);
+  }
+
+  /**
+   * Assigns ids to the already parsed entries of each symbols file. This has to happen serially, in
+   * the order of the symbols files, for the ids to be deterministic.
+   */
+  private static SortedSetMultimap<String, RDotTxtEntry> sortSymbols(
+      Map<Path, List<RDotTxtEntry>> symbolsFileToEntries,
+      Map<Path, String> symbolsFileToRDotJavaPackage,
+      Optional<ImmutableMap<RDotTxtEntry, String>> uberRDotTxtIds,
+      ImmutableMap<Path, HasAndroidResourceDeps> symbolsFileToResourceDeps,
+      Optional<SetMultimap<String, RDotTxtEntry>> overrides,
+      EnumSet<RType> bannedDuplicateResourceTypes,
+      boolean useOldStyleableFormat)
       throws DuplicateResourceException {
     // If we're reenumerating, start at 0x7f01001 so that the resulting file is human readable.
     // This value range (0x7f010001 - ...) is easier to spot as an actual resource id instead of
@@ -374,19 +461,9 @@ public class MergeAndroidResourcesStep implements Step {
 
     for (Map.Entry<Path, String> entry : symbolsFileToRDotJavaPackage.entrySet()) {
       Path symbolsFile = entry.getKey();
-      // Read the symbols file and parse each line as a Resource.
-      List<RDotTxtEntry> linesInSymbolsFile;
-      try {
-        linesInSymbolsFile =
-            filesystem
-                .readLines(symbolsFile)
-                .stream()
-                .filter(input -> !Strings.isNullOrEmpty(input))
-                .map(MergeAndroidResourcesStep::parseEntryOrThrow)
-                .collect(Collectors.toList());
-      } catch (IOException e) {
-        throw new RuntimeException(e);
-      }
+      // Copy the entries, since the overrides below modify them.
+      List<RDotTxtEntry> linesInSymbolsFile =
+          new ArrayList<>(Preconditions.checkNotNull(symbolsFileToEntries.get(symbolsFile)));
 
       String packageName = entry.getValue();
       Set<RDotTxtEntry> packageOverrides =
@@ -560,6 +637,33 @@ public class MergeAndroidResourcesStep implements Step {
     return styleableResourceMap;
   }
 
+  /** Reads and parses each of the symbols files, with the files being parsed in parallel. */
+  private static ImmutableMap<Path, List<RDotTxtEntry>> readSymbolsFilesInParallel(
+      ProjectFilesystem filesystem, Collection<Path> symbolsFiles) throws IOException {
+    List<List<RDotTxtEntry>> entries =
+        MoreFutures.mapInParallel(
+            IO_EXECUTOR, symbolsFiles, path -> readSymbolsFile(filesystem, path));
+    ImmutableMap.Builder<Path, List<RDotTxtEntry>> symbolsFileToEntries = ImmutableMap.builder();
+    Iterator<List<RDotTxtEntry>> entriesIterator = entries.iterator();
+    for (Path symbolsFile : symbolsFiles) {
+      symbolsFileToEntries.put(symbolsFile, entriesIterator.next());
+    }
+    return symbolsFileToEntries.build();
+  }
+
+  private static List<RDotTxtEntry> readSymbolsFile(ProjectFilesystem filesystem, Path path)
+      throws IOException {
+    // Read the symbols file and parse each line as a Resource. The uber R.txt alone can have more
+    // than a hundred thousand lines, so they are parsed in parallel too, which is CPU bound and so
+    // left to the common pool.
+    return filesystem
+        .readLines(path)
+        .parallelStream()
+        .filter(input -> !Strings.isNullOrEmpty(input))
+        .map(MergeAndroidResourcesStep::parseEntryOrThrow)
+        .collect(Collectors.toList());
+  }
+
   private static RDotTxtEntry parseEntryOrThrow(String line) {
     Optional<RDotTxtEntry> parsedEntry = RDotTxtEntry.parse(line);
     Preconditions.checkState(parsedEntry.isPresent(), "Should be able to match '%s'.", line);
@@ -90,6 +90,7 @@ class NonPreDexedDexBuildable extends AbstractBuildRule {
   @AddToRuleKey private final Optional<SourcePath> dexReorderToolFile;
   @AddToRuleKey private final DexSplitMode dexSplitMode;
   @AddToRuleKey private final Optional<String> dxMaxHeapSize;
+  @AddToRuleKey private final Optional<Integer> dxMaxWorkers;
   @AddToRuleKey private final Tool javaRuntimeLauncher;
 
   @AddToRuleKey
@@ -137,6 +138,8 @@ class NonPreDexedDexBuildable extends AbstractBuildRule {
 
     Optional<String> getDxMaxHeapSize();
 
+    Optional<Integer> getDxMaxWorkers();
+
     ProGuardObfuscateStep.SdkProguardType getSdkProguardConfig();
 
     Optional<Integer> getOptimizationPasses();
@@ -178,6 +181,7 @@ class NonPreDexedDexBuildable extends AbstractBuildRule {
     this.dexSplitMode = dexSplitMode;
     this.dxExecutorService = args.getDxExecutorService();
     this.dxMaxHeapSize = args.getDxMaxHeapSize();
+    this.dxMaxWorkers = args.getDxMaxWorkers();
     this.javaRuntimeLauncher = args.getJavaRuntimeLauncher();
     this.moduleMappedClasspathEntriesToDex = moduleMappedClasspathEntriesToDex;
     this.optimizationPasses = args.getOptimizationPasses();
@@ -864,7 +868,8 @@ class NonPreDexedDexBuildable extends AbstractBuildRule {
             dxOptions,
             dxExecutorService,
             xzCompressionLevel,
-            dxMaxHeapSize);
+            dxMaxHeapSize,
+            dxMaxWorkers);
     steps.add(smartDexingCommand);
 
     if (reorderClassesIntraDex) {
@@ -96,6 +96,7 @@ public class PreDexMerge extends AbstractBuildRuleWithDeclaredAndExtraDeps {
   private final ListeningExecutorService dxExecutorService;
   private final Optional<Integer> xzCompressionLevel;
   private final Optional<String> dxMaxHeapSize;
+  private final Optional<Integer> dxMaxWorkers;
 
   public PreDexMerge(
       BuildTarget buildTarget,
@@ -107,7 +108,8 @@ public class PreDexMerge extends AbstractBuildRuleWithDeclaredAndExtraDeps {
       DexProducedFromJavaLibrary dexForUberRDotJava,
       ListeningExecutorService dxExecutorService,
       Optional<Integer> xzCompressionLevel,
-      Optional<String> dxMaxHeapSize) {
+      Optional<String> dxMaxHeapSize,
+      Optional<Integer> dxMaxWorkers) {
     super(buildTarget, projectFilesystem, params);
     this.dexSplitMode = dexSplitMode;
     this.apkModuleGraph = apkModuleGraph;
@@ -116,6 +118,7 @@ public class PreDexMerge extends AbstractBuildRuleWithDeclaredAndExtraDeps {
     this.dxExecutorService = dxExecutorService;
     this.xzCompressionLevel = xzCompressionLevel;
     this.dxMaxHeapSize = dxMaxHeapSize;
+    this.dxMaxWorkers = dxMaxWorkers;
   }
 
   @Override
@@ -314,7 +317,8 @@ public class PreDexMerge extends AbstractBuildRuleWithDeclaredAndExtraDeps {
             DX_MERGE_OPTIONS,
             dxExecutorService,
             xzCompressionLevel,
-            dxMaxHeapSize));
+            dxMaxHeapSize,
+            dxMaxWorkers));
 
     for (PreDexedFilesSorter.Result result : sortResults.values()) {
       if (!result.apkModule.equals(apkModuleGraph.getRootAPKModule())) {
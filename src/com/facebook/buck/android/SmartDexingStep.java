@@ -16,6 +16,8 @@
 package com.facebook.buck.android;
 
 import com.facebook.buck.android.DxStep.Option;
+import com.facebook.buck.event.PerfEventId;
+import com.facebook.buck.event.SimplePerfEvent;
 import com.facebook.buck.io.BuildCellRelativePath;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.model.BuildTarget;
@@ -32,6 +34,7 @@ import com.facebook.buck.step.fs.XzStep;
 import com.facebook.buck.util.concurrent.MoreFutures;
 import com.facebook.buck.util.sha1.Sha1HashCode;
 import com.facebook.buck.util.zip.ZipCompressionLevel;
+import com.facebook.buck.worker.WorkerProcessPool;
 import com.facebook.buck.zip.RepackZipEntriesStep;
 import com.facebook.buck.zip.ZipScrubberStep;
 import com.google.common.annotations.VisibleForTesting;
@@ -91,6 +94,7 @@ public class SmartDexingStep implements Step {
   private final ListeningExecutorService executorService;
   private final Optional<Integer> xzCompressionLevel;
   private final Optional<String> dxMaxHeapSize;
+  private final Optional<Integer> dxMaxWorkers;
   private final BuildTarget target;
 
   /**
@@ -104,6 +108,8 @@ public class SmartDexingStep implements Step {
    *     invocation will be started with the corresponding jar files (value) as the input.
    * @param successDir Directory where success artifacts are written.
    * @param executorService The thread pool to execute the dx command on.
+   * @param dxMaxWorkers If present, the size of the pool of persistent worker processes that dx
+   *     runs in.
    */
   public SmartDexingStep(
       BuildTarget target,
@@ -118,7 +124,8 @@ public class SmartDexingStep implements Step {
       EnumSet<Option> dxOptions,
       ListeningExecutorService executorService,
       Optional<Integer> xzCompressionLevel,
-      Optional<String> dxMaxHeapSize) {
+      Optional<String> dxMaxHeapSize,
+      Optional<Integer> dxMaxWorkers) {
     this.target = target;
     this.buildContext = buildContext;
     this.filesystem = filesystem;
@@ -139,6 +146,7 @@ public class SmartDexingStep implements Step {
     this.executorService = executorService;
     this.xzCompressionLevel = xzCompressionLevel;
     this.dxMaxHeapSize = dxMaxHeapSize;
+    this.dxMaxWorkers = dxMaxWorkers;
   }
 
   public static int determineOptimalThreadCount() {
@@ -233,6 +241,22 @@ public class SmartDexingStep implements Step {
 
       // Programmer error.  Boo-urns.
       throw new RuntimeException(cause);
+    } finally {
+      if (dxMaxWorkers.isPresent() && !dxSteps.isEmpty()) {
+        postWorkerUsage(context);
+      }
+    }
+  }
+
+  /** Reports how busy each dx worker has been, to help with sizing the pool. */
+  private void postWorkerUsage(ExecutionContext context) {
+    WorkerProcessPool pool =
+        DxWorkers.getPool(context, filesystem, dxMaxWorkers.get(), dxMaxHeapSize);
+    ImmutableList<WorkerProcessPool.WorkerUsage> usage = pool.getWorkerUsage();
+    try (SimplePerfEvent.Scope scope =
+        SimplePerfEvent.scope(
+            context.getBuckEventBus(), PerfEventId.of("dx_workers"), "workers", usage.size())) {
+      scope.appendFinishedInfo("usage", usage.toString());
     }
   }
 
@@ -300,7 +324,8 @@ public class SmartDexingStep implements Step {
               successDir.resolve(outputFile.getFileName()),
               dxOptions,
               xzCompressionLevel,
-              dxMaxHeapSize));
+              dxMaxHeapSize,
+              dxMaxWorkers));
     }
 
     ImmutableList.Builder<ImmutableList<Step>> stepGroups = new ImmutableList.Builder<>();
@@ -337,6 +362,7 @@ public class SmartDexingStep implements Step {
     @Nullable private String newInputsHash;
     private final Optional<Integer> xzCompressionLevel;
     private final Optional<String> dxMaxHeapSize;
+    private final Optional<Integer> dxMaxWorkers;
 
     public DxPseudoRule(
         BuildTarget target,
@@ -348,7 +374,8 @@ public class SmartDexingStep implements Step {
         Path outputHashPath,
         EnumSet<Option> dxOptions,
         Optional<Integer> xzCompressionLevel,
-        Optional<String> dxMaxHeapSize) {
+        Optional<String> dxMaxHeapSize,
+        Optional<Integer> dxMaxWorkers) {
       this.target = target;
       this.buildContext = buildContext;
       this.filesystem = filesystem;
@@ -359,6 +386,7 @@ public class SmartDexingStep implements Step {
       this.dxOptions = dxOptions;
       this.xzCompressionLevel = xzCompressionLevel;
       this.dxMaxHeapSize = dxMaxHeapSize;
+      this.dxMaxWorkers = dxMaxWorkers;
     }
 
     /**
@@ -408,7 +436,8 @@ public class SmartDexingStep implements Step {
           outputPath,
           dxOptions,
           xzCompressionLevel,
-          dxMaxHeapSize);
+          dxMaxHeapSize,
+          dxMaxWorkers);
       steps.add(
           new WriteFileStep(filesystem, newInputsHash, outputHashPath, /* executable */ false));
     }
@@ -430,14 +459,22 @@ public class SmartDexingStep implements Step {
       Path outputPath,
       EnumSet<Option> dxOptions,
       Optional<Integer> xzCompressionLevel,
-      Optional<String> dxMaxHeapSize) {
+      Optional<String> dxMaxHeapSize,
+      Optional<Integer> dxMaxWorkers) {
 
     String output = outputPath.toString();
 
     if (DexStore.XZ.matchesPath(outputPath)) {
       Path tempDexJarOutput = Paths.get(output.replaceAll("\\.jar\\.xz$", ".tmp.jar"));
       steps.add(
-          new DxStep(target, filesystem, tempDexJarOutput, filesToDex, dxOptions, dxMaxHeapSize));
+          new DxStep(
+              target,
+              filesystem,
+              tempDexJarOutput,
+              filesToDex,
+              dxOptions,
+              dxMaxHeapSize,
+              dxMaxWorkers));
       // We need to make sure classes.dex is STOREd in the .dex.jar file, otherwise .XZ
       // compression won't be effective.
       Path repackedJar = Paths.get(output.replaceAll("\\.xz$", ""));
@@ -469,7 +506,14 @@ public class SmartDexingStep implements Step {
       // Ensure classes.dex is stored.
       Path tempDexJarOutput = Paths.get(output.replaceAll("\\.jar\\.xzs\\.tmp~$", ".tmp.jar"));
       steps.add(
-          new DxStep(target, filesystem, tempDexJarOutput, filesToDex, dxOptions, dxMaxHeapSize));
+          new DxStep(
+              target,
+              filesystem,
+              tempDexJarOutput,
+              filesToDex,
+              dxOptions,
+              dxMaxHeapSize,
+              dxMaxWorkers));
       steps.add(
           new RepackZipEntriesStep(
               filesystem,
@@ -491,7 +535,9 @@ public class SmartDexingStep implements Step {
     } else if (DexStore.JAR.matchesPath(outputPath)
         || DexStore.RAW.matchesPath(outputPath)
         || output.endsWith("classes.dex")) {
-      steps.add(new DxStep(target, filesystem, outputPath, filesToDex, dxOptions, dxMaxHeapSize));
+      steps.add(
+          new DxStep(
+              target, filesystem, outputPath, filesToDex, dxOptions, dxMaxHeapSize, dxMaxWorkers));
       if (DexStore.JAR.matchesPath(outputPath)) {
         steps.add(
             new DexJarAnalysisStep(
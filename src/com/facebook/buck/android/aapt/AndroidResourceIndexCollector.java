@@ -25,7 +25,7 @@ import java.util.SortedSet;
 import java.util.TreeSet;
 import javax.annotation.Nullable;
 
-class AndroidResourceIndexCollector implements ResourceCollector {
+class AndroidResourceIndexCollector implements ResourceUnionCollector {
   private final SortedSet<AndroidResourceIndexEntry> resources = new TreeSet<>();
   private final ProjectFilesystem projectFilesystem;
 
@@ -19,9 +19,15 @@ package com.facebook.buck.android.aapt;
 import com.facebook.buck.android.AaptStep;
 import com.facebook.buck.android.aapt.RDotTxtEntry.IdType;
 import com.facebook.buck.android.aapt.RDotTxtEntry.RType;
+import com.facebook.buck.android.aapt.ResourceSymbolManifest.FileSymbols;
+import com.facebook.buck.android.aapt.ResourceSymbolManifest.Reference;
+import com.facebook.buck.android.aapt.ResourceSymbolManifest.Symbol;
 import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.event.ConsoleEvent;
+import com.facebook.buck.io.file.MorePaths;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.model.BuckVersion;
 import com.facebook.buck.rules.SourcePath;
 import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.buck.step.ExecutionContext;
@@ -29,9 +35,8 @@ import com.facebook.buck.step.Step;
 import com.facebook.buck.step.StepExecutionResult;
 import com.facebook.buck.util.ObjectMappers;
 import com.facebook.buck.util.ThrowingPrintWriter;
+import com.facebook.buck.util.concurrent.MoreFutures;
 import com.facebook.buck.util.xml.DocumentLocation;
-import com.facebook.buck.util.xml.PositionalXmlHandler;
-import com.facebook.buck.util.xml.XmlDomParserWithLineNumbers;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
@@ -42,22 +47,18 @@ import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Ordering;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.stream.Collectors;
-import javax.xml.xpath.XPathConstants;
-import javax.xml.xpath.XPathExpression;
-import javax.xml.xpath.XPathExpressionException;
-import javax.xml.xpath.XPathFactory;
-import org.w3c.dom.Attr;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
+import javax.annotation.Nullable;
 
 /**
  * Step which parses resources in an android {@code res} directory and compiles them into a {@code
@@ -67,6 +68,8 @@ import org.xml.sax.SAXException;
  */
 public class MiniAapt implements Step {
 
+  private static final Logger LOG = Logger.get(MiniAapt.class);
+
   /** See {@link com.facebook.buck.android.AaptStep} for a list of files that we ignore. */
   public static final ImmutableList<String> IGNORED_FILE_EXTENSIONS = ImmutableList.of("orig");
 
@@ -74,16 +77,6 @@ public class MiniAapt implements Step {
   private static final String ITEM_TAG = "item";
   private static final String CUSTOM_DRAWABLE_PREFIX = "app-";
 
-  private static final XPathExpression ANDROID_ID_USAGE =
-      createExpression(
-          "//@*[starts-with(., '@') and "
-              + "not(starts-with(., '@+')) and "
-              + "not(starts-with(., '@android:')) and "
-              + "not(starts-with(., '@null'))]");
-
-  private static final XPathExpression ANDROID_ID_DEFINITION =
-      createExpression("//@*[starts-with(., '@+') and " + "not(starts-with(., '@+android:id'))]");
-
   private static final ImmutableMap<String, RType> RESOURCE_TYPES = getResourceTypes();
   private static final ImmutableSet<String> IGNORED_TAGS = ImmutableSet.of("eat-comment", "skip");
 
@@ -97,10 +90,19 @@ public class MiniAapt implements Step {
   private final SourcePath resDirectory;
   private final Path pathToOutputFile;
   private final ImmutableSet<Path> pathsToSymbolsOfDeps;
-  private final ResourceCollector resourceCollector;
+  private final ResourceUnionCollector resourceCollector;
   private final boolean resourceUnion;
   private final boolean isGrayscaleImageProcessingEnabled;
   private final ResourceCollectionType resourceCollectionType;
+  private final Optional<Path> pathToSymbolManifest;
+  private final String buckVersion;
+  private final ResourceFileScanner scanner = new ResourceFileScanner();
+
+  /** Symbols of the XML files processed so far, keyed by absolute path. */
+  private final Map<Path, FileSymbols> fileSymbols = new HashMap<>();
+
+  private final Map<Path, String> fileHashes = new HashMap<>();
+  private ResourceSymbolManifest previousSymbolManifest;
 
   public MiniAapt(
       SourcePathResolver resolver,
@@ -128,6 +130,57 @@ public class MiniAapt implements Step {
       boolean resourceUnion,
       boolean isGrayscaleImageProcessingEnabled,
       ResourceCollectionType resourceCollectionType) {
+    this(
+        resolver,
+        filesystem,
+        resDirectory,
+        pathToOutputFile,
+        pathsToSymbolsOfDeps,
+        resourceUnion,
+        isGrayscaleImageProcessingEnabled,
+        resourceCollectionType,
+        Optional.empty());
+  }
+
+  /**
+   * @param pathToSymbolManifest where to keep the symbols that each XML file contributed. When
+   *     present, only the files that changed since the previous run are parsed again.
+   */
+  public MiniAapt(
+      SourcePathResolver resolver,
+      ProjectFilesystem filesystem,
+      SourcePath resDirectory,
+      Path pathToOutputFile,
+      ImmutableSet<Path> pathsToSymbolsOfDeps,
+      boolean resourceUnion,
+      boolean isGrayscaleImageProcessingEnabled,
+      ResourceCollectionType resourceCollectionType,
+      Optional<Path> pathToSymbolManifest) {
+    this(
+        resolver,
+        filesystem,
+        resDirectory,
+        pathToOutputFile,
+        pathsToSymbolsOfDeps,
+        resourceUnion,
+        isGrayscaleImageProcessingEnabled,
+        resourceCollectionType,
+        pathToSymbolManifest,
+        BuckVersion.getVersion());
+  }
+
+  @VisibleForTesting
+  MiniAapt(
+      SourcePathResolver resolver,
+      ProjectFilesystem filesystem,
+      SourcePath resDirectory,
+      Path pathToOutputFile,
+      ImmutableSet<Path> pathsToSymbolsOfDeps,
+      boolean resourceUnion,
+      boolean isGrayscaleImageProcessingEnabled,
+      ResourceCollectionType resourceCollectionType,
+      Optional<Path> pathToSymbolManifest,
+      String buckVersion) {
     this.resolver = resolver;
     this.filesystem = filesystem;
     this.resDirectory = resDirectory;
@@ -136,6 +189,9 @@ public class MiniAapt implements Step {
     this.resourceUnion = resourceUnion;
     this.isGrayscaleImageProcessingEnabled = isGrayscaleImageProcessingEnabled;
     this.resourceCollectionType = resourceCollectionType;
+    this.pathToSymbolManifest = pathToSymbolManifest;
+    this.buckVersion = buckVersion;
+    this.previousSymbolManifest = new ResourceSymbolManifest(getSymbolManifestKey());
 
     switch (resourceCollectionType) {
       case R_DOT_TXT:
@@ -150,14 +206,6 @@ public class MiniAapt implements Step {
     }
   }
 
-  private static XPathExpression createExpression(String expressionStr) {
-    try {
-      return XPathFactory.newInstance().newXPath().compile(expressionStr);
-    } catch (XPathExpressionException e) {
-      throw new RuntimeException(e);
-    }
-  }
-
   private static ImmutableMap<String, RType> getResourceTypes() {
     ImmutableMap.Builder<String, RType> types = ImmutableMap.builder();
     for (RType rType : RType.values()) {
@@ -180,13 +228,18 @@ public class MiniAapt implements Step {
     ImmutableSet.Builder<RDotTxtEntry> references = ImmutableSet.builder();
 
     try {
+      scanXmlFilesInParallel(filesystem);
       collectResources(filesystem, context.getBuckEventBus());
       processXmlFilesForIds(filesystem, references);
-    } catch (XPathExpressionException | ResourceParseException e) {
+    } catch (ResourceParseException e) {
       context.logError(e, "Error parsing resources to generate resource IDs for %s.", resDirectory);
       return StepExecutionResult.ERROR;
     }
 
+    if (pathToSymbolManifest.isPresent()) {
+      writeSymbolManifest(filesystem, pathToSymbolManifest.get());
+    }
+
     Set<RDotTxtEntry> missing = verifyReferences(filesystem, references.build());
     if (!missing.isEmpty()) {
       context
@@ -247,6 +300,125 @@ public class MiniAapt implements Step {
     }
   }
 
+  /**
+   * Parses all the XML files under the {@code res} directory in parallel, ahead of processing them
+   * in order. When a symbol manifest is in use, the files are hashed first and only those whose
+   * symbols can't be taken from the previous manifest are parsed.
+   */
+  private void scanXmlFilesInParallel(ProjectFilesystem filesystem) throws IOException {
+    Collection<Path> allXmlFiles = getXmlFilesUnderResDirectory(filesystem);
+    if (pathToSymbolManifest.isPresent()) {
+      // Without a version to check, a change to the code that parsed the previous manifest would
+      // go unnoticed, so it is only ever written.
+      if (!buckVersion.equals(BuckVersion.UNKNOWN_VERSION)) {
+        previousSymbolManifest =
+            ResourceSymbolManifest.read(
+                filesystem, pathToSymbolManifest.get(), getSymbolManifestKey());
+      }
+      fileHashes.putAll(hashInParallel(filesystem, allXmlFiles));
+    }
+
+    Path relativeResDir = resolver.getRelativePath(resDirectory);
+    List<Path> valuesFiles = new ArrayList<>();
+    List<Path> xmlFiles = new ArrayList<>();
+    int unchangedFiles = 0;
+    for (Path path : allXmlFiles) {
+      if (getPreviousFileSymbols(filesystem, path).isPresent()) {
+        unchangedFiles++;
+        continue;
+      }
+      String dirname = relativeResDir.relativize(path).getName(0).toString();
+      (isAValuesDir(dirname) ? valuesFiles : xmlFiles).add(path);
+    }
+    LOG.debug(
+        "%s: reusing the symbols of %d out of %d XML files.",
+        resDirectory, unchangedFiles, allXmlFiles.size());
+    scanner.scanInParallel(filesystem, valuesFiles, xmlFiles);
+  }
+
+  private static Map<Path, String> hashInParallel(
+      ProjectFilesystem filesystem, Collection<Path> paths) throws IOException {
+    ConcurrentMap<Path, String> hashes = new ConcurrentHashMap<>();
+    MoreFutures.mapInParallel(
+        ResourceFileScanner.IO_EXECUTOR,
+        paths,
+        path -> {
+          try {
+            hashes.put(filesystem.resolve(path), filesystem.computeSha1(path).getHash());
+          } catch (IOException e) {
+            // Leave the file unhashed. It will be parsed again, which reports the error.
+          }
+          return null;
+        });
+    return hashes;
+  }
+
+  private Optional<FileSymbols> getPreviousFileSymbols(ProjectFilesystem filesystem, Path path) {
+    Path absolutePath = filesystem.resolve(path);
+    String hash = fileHashes.get(absolutePath);
+    if (hash == null) {
+      return Optional.empty();
+    }
+    return previousSymbolManifest.get(getSymbolManifestKey(absolutePath), hash);
+  }
+
+  /**
+   * @return the symbols collected from the file so far in this run, or the ones recorded in the
+   *     previous manifest if the file hasn't changed since.
+   */
+  private FileSymbols getFileSymbols(ProjectFilesystem filesystem, Path path) {
+    Path absolutePath = filesystem.resolve(path);
+    FileSymbols symbols = fileSymbols.get(absolutePath);
+    if (symbols == null) {
+      symbols =
+          getPreviousFileSymbols(filesystem, path)
+              .orElseGet(() -> FileSymbols.of(Optional.ofNullable(fileHashes.get(absolutePath))));
+      fileSymbols.put(absolutePath, symbols);
+    }
+    return symbols;
+  }
+
+  private void putFileSymbols(ProjectFilesystem filesystem, Path path, FileSymbols symbols) {
+    fileSymbols.put(filesystem.resolve(path), symbols);
+  }
+
+  private void replay(ImmutableList<Symbol> symbols, Path path) {
+    for (Symbol symbol : symbols) {
+      symbol.addTo(resourceCollector, path);
+    }
+  }
+
+  /**
+   * @return what the symbols recorded for a file depend on besides its contents: the version of
+   *     Buck that parsed it, which rule keys depend on as well, and the options that change what
+   *     parsing records.
+   */
+  private String getSymbolManifestKey() {
+    return String.format("%s:grayscale=%s", buckVersion, isGrayscaleImageProcessingEnabled);
+  }
+
+  private String getSymbolManifestKey(Path absolutePath) {
+    return MorePaths.pathWithUnixSeparators(
+        resolver.getAbsolutePath(resDirectory).relativize(absolutePath));
+  }
+
+  private void writeSymbolManifest(ProjectFilesystem filesystem, Path path) throws IOException {
+    ResourceSymbolManifest manifest = new ResourceSymbolManifest(getSymbolManifestKey());
+    for (Map.Entry<Path, FileSymbols> entry : fileSymbols.entrySet()) {
+      // Only hashed files can be matched up with their symbols in the next run.
+      if (entry.getValue().hash.isPresent()) {
+        manifest.put(getSymbolManifestKey(entry.getKey()), entry.getValue());
+      }
+    }
+    manifest.write(filesystem, path);
+  }
+
+  private Collection<Path> getXmlFilesUnderResDirectory(ProjectFilesystem filesystem)
+      throws IOException {
+    return filesystem.getFilesUnderPath(
+        resolver.getAbsolutePath(resDirectory), input -> input.toString().endsWith(".xml"));
+  }
+
   /**
    * Collects file names under the {@code res} directory, except those under directories starting
    * with {@code values}, as resources based on their parent directory.
@@ -334,6 +506,18 @@ public class MiniAapt implements Step {
 
   void processDrawables(ProjectFilesystem filesystem, Path resourceFile)
       throws IOException, ResourceParseException {
+    if (resourceFile.getFileName().toString().endsWith(".xml")) {
+      // Only XML drawables need to be parsed, so only they are worth recording.
+      collectDefinitions(
+          filesystem, resourceFile, collector -> addDrawable(filesystem, resourceFile, collector));
+    } else {
+      addDrawable(filesystem, resourceFile, resourceCollector);
+    }
+  }
+
+  private void addDrawable(
+      ProjectFilesystem filesystem, Path resourceFile, ResourceCollector collector)
+      throws IOException, ResourceParseException {
     String filename = resourceFile.getFileName().toString();
     int dotIndex = filename.indexOf('.');
     String resourceName = dotIndex != -1 ? filename.substring(0, dotIndex) : filename;
@@ -342,25 +526,21 @@ public class MiniAapt implements Step {
     boolean isGrayscaleImage = false;
     boolean isCustomDrawable = false;
     if (filename.endsWith(".xml")) {
-      try (InputStream stream = filesystem.newFileInputStream(resourceFile)) {
-        Document dom = parseXml(resourceFile, stream);
-        Element root = dom.getDocumentElement();
-        isCustomDrawable = root.getNodeName().startsWith(CUSTOM_DRAWABLE_PREFIX);
-      }
+      String rootElementName = scanner.getXmlFile(filesystem, resourceFile).rootElementName;
+      isCustomDrawable = rootElementName.startsWith(CUSTOM_DRAWABLE_PREFIX);
     } else if (isGrayscaleImageProcessingEnabled) {
       isGrayscaleImage = filename.endsWith(".g.png");
     }
 
     DocumentLocation location = DocumentLocation.of(0, 0);
     if (isCustomDrawable) {
-      resourceCollector.addCustomDrawableResourceIfNotPresent(
+      collector.addCustomDrawableResourceIfNotPresent(
           RType.DRAWABLE, resourceName, resourceFile, location);
     } else if (isGrayscaleImage) {
-      resourceCollector.addGrayscaleImageResourceIfNotPresent(
+      collector.addGrayscaleImageResourceIfNotPresent(
           RType.DRAWABLE, resourceName, resourceFile, location);
     } else {
-      resourceCollector.addIntResourceIfNotPresent(
-          RType.DRAWABLE, resourceName, resourceFile, location);
+      collector.addIntResourceIfNotPresent(RType.DRAWABLE, resourceName, resourceFile, location);
     }
   }
 
@@ -407,93 +587,114 @@ public class MiniAapt implements Step {
   @VisibleForTesting
   void processValuesFile(ProjectFilesystem filesystem, Path valuesFile)
       throws IOException, ResourceParseException {
-    try (InputStream stream = filesystem.newFileInputStream(valuesFile)) {
-      Document dom = parseXml(valuesFile, stream);
-      Element root = dom.getDocumentElement();
-
-      // Exclude resources annotated with the attribute {@code exclude-from-resource-map}.
-      // This is useful to exclude using generated strings to build the
-      // resource map, which ensures a build break will show up at build time
-      // rather than being hidden until generated resources are updated.
-      if (root.getAttribute("exclude-from-buck-resource-map").equals("true")) {
-        return;
-      }
-
-      for (Node node = root.getFirstChild(); node != null; node = node.getNextSibling()) {
-        if (node.getNodeType() != Node.ELEMENT_NODE) {
-          continue;
-        }
-
-        String resourceType = node.getNodeName();
-        if (resourceType.equals(ITEM_TAG)) {
-          Node typeNode = node.getAttributes().getNamedItem("type");
-          if (typeNode == null) {
-            throw new ResourceParseException(
-                "Error parsing file '%s', expected a 'type' attribute in: \n'%s'\n",
-                valuesFile, node.toString());
-          }
-          resourceType = typeNode.getNodeValue();
-        }
+    collectDefinitions(
+        filesystem, valuesFile, collector -> collectValuesFile(filesystem, valuesFile, collector));
+  }
 
-        if (IGNORED_TAGS.contains(resourceType)) {
-          continue;
-        }
+  private void collectValuesFile(
+      ProjectFilesystem filesystem, Path valuesFile, ResourceCollector collector)
+      throws IOException, ResourceParseException {
+    ResourceFileScanner.ValuesFile scannedFile = scanner.getValuesFile(filesystem, valuesFile);
+
+    // Exclude resources annotated with the attribute {@code exclude-from-resource-map}.
+    // This is useful to exclude using generated strings to build the
+    // resource map, which ensures a build break will show up at build time
+    // rather than being hidden until generated resources are updated.
+    if (scannedFile.excludedFromResourceMap) {
+      return;
+    }
 
-        if (!RESOURCE_TYPES.containsKey(resourceType)) {
+    for (ResourceFileScanner.ValuesResource resource : scannedFile.resources) {
+      String resourceType = resource.elementName;
+      if (resourceType.equals(ITEM_TAG)) {
+        if (resource.type == null) {
           throw new ResourceParseException(
-              "Invalid resource type '<%s>' in '%s'.", resourceType, valuesFile);
+              "Error parsing file '%s', expected a 'type' attribute in %s at line %d, column %d.",
+              valuesFile,
+              describeStartTag(resource),
+              resource.location.getLineNumber() + 1,
+              resource.location.getColumnNumber() + 1);
         }
+        resourceType = resource.type;
+      }
+
+      if (IGNORED_TAGS.contains(resourceType)) {
+        continue;
+      }
 
-        RType rType = Preconditions.checkNotNull(RESOURCE_TYPES.get(resourceType));
-        addToResourceCollector(node, rType, valuesFile);
+      if (!RESOURCE_TYPES.containsKey(resourceType)) {
+        throw new ResourceParseException(
+            "Invalid resource type '<%s>' in '%s'.", resourceType, valuesFile);
       }
+
+      RType rType = Preconditions.checkNotNull(RESOURCE_TYPES.get(resourceType));
+      addToResourceCollector(collector, resource, rType, valuesFile);
     }
   }
 
-  private void addToResourceCollector(Node node, RType rType, Path file)
+  private static String describeStartTag(ResourceFileScanner.ValuesResource resource) {
+    return resource.name == null
+        ? String.format("<%s>", resource.elementName)
+        : String.format("<%s name=\"%s\">", resource.elementName, resource.name);
+  }
+
+  private static void addToResourceCollector(
+      ResourceCollector collector,
+      ResourceFileScanner.ValuesResource resource,
+      RType rType,
+      Path file)
       throws ResourceParseException {
-    String resourceName = sanitizeName(extractNameAttribute(node));
-    DocumentLocation location = extractDocumentLocation(node);
+    String resourceName =
+        sanitizeName(extractNameAttribute(resource.elementName, resource.name, resource.text));
+    DocumentLocation location = resource.location;
 
     if (rType.equals(RType.STYLEABLE)) {
       int count = 0;
-      for (Node attrNode = node.getFirstChild();
-          attrNode != null;
-          attrNode = attrNode.getNextSibling()) {
-        if (attrNode.getNodeType() != Node.ELEMENT_NODE || !attrNode.getNodeName().equals("attr")) {
-          continue;
-        }
-
-        String rawAttrName = extractNameAttribute(attrNode);
+      for (ResourceFileScanner.StyleableAttr attr : resource.attrs) {
+        String rawAttrName = extractNameAttribute("attr", attr.name, attr.text);
         String attrName = sanitizeName(rawAttrName);
-        resourceCollector.addResource(
+        collector.addResource(
             RType.STYLEABLE,
             IdType.INT,
             String.format("%s_%s", resourceName, attrName),
             Integer.toString(count++),
             resourceName,
             file,
-            extractDocumentLocation(node));
+            location);
 
         if (!rawAttrName.startsWith("android:")) {
-          resourceCollector.addIntResourceIfNotPresent(
-              RType.ATTR, attrName, file, extractDocumentLocation(node));
+          collector.addIntResourceIfNotPresent(RType.ATTR, attrName, file, location);
         }
       }
 
-      resourceCollector.addIntArrayResourceIfNotPresent(rType, resourceName, count, file, location);
+      collector.addIntArrayResourceIfNotPresent(rType, resourceName, count, file, location);
     } else {
-      resourceCollector.addIntResourceIfNotPresent(rType, resourceName, file, location);
+      collector.addIntResourceIfNotPresent(rType, resourceName, file, location);
     }
   }
 
+  /**
+   * Adds the resources that the file defines to the collector, recording them first if this is
+   * the first time the file is processed.
+   */
+  private void collectDefinitions(
+      ProjectFilesystem filesystem, Path file, SymbolCollector symbolCollector)
+      throws IOException, ResourceParseException {
+    FileSymbols symbols = getFileSymbols(filesystem, file);
+    if (symbols.definitions == null) {
+      RecordingResourceCollector recorder = new RecordingResourceCollector();
+      symbolCollector.collect(recorder);
+      symbols = symbols.withDefinitions(recorder.getSymbols());
+      putFileSymbols(filesystem, file, symbols);
+    }
+    replay(Preconditions.checkNotNull(symbols.definitions), file);
+  }
+
   void processXmlFilesForIds(
       ProjectFilesystem filesystem, ImmutableSet.Builder<RDotTxtEntry> references)
-      throws IOException, XPathExpressionException, ResourceParseException {
-    Path absoluteResDir = resolver.getAbsolutePath(resDirectory);
+      throws IOException, ResourceParseException {
     Path relativeResDir = resolver.getRelativePath(resDirectory);
-    for (Path path :
-        filesystem.getFilesUnderPath(absoluteResDir, input -> input.toString().endsWith(".xml"))) {
+    for (Path path : getXmlFilesUnderResDirectory(filesystem)) {
       String dirname = relativeResDir.relativize(path).getName(0).toString();
       if (isAValuesDir(dirname)) {
         // Ignore files under values* directories.
@@ -506,67 +707,72 @@ public class MiniAapt implements Step {
   @VisibleForTesting
   void processXmlFile(
       ProjectFilesystem filesystem, Path xmlFile, ImmutableSet.Builder<RDotTxtEntry> references)
-      throws IOException, XPathExpressionException, ResourceParseException {
-    try (InputStream stream = filesystem.newFileInputStream(xmlFile)) {
-      Document dom = parseXml(xmlFile, stream);
-      NodeList nodesWithIds =
-          (NodeList) ANDROID_ID_DEFINITION.evaluate(dom, XPathConstants.NODESET);
-      for (int i = 0; i < nodesWithIds.getLength(); i++) {
-        String resourceName = nodesWithIds.item(i).getNodeValue();
-        if (!resourceName.startsWith(ID_DEFINITION_PREFIX)) {
-          throw new ResourceParseException("Invalid definition of a resource: '%s'", resourceName);
-        }
-        Preconditions.checkState(resourceName.startsWith(ID_DEFINITION_PREFIX));
+      throws IOException, ResourceParseException {
+    FileSymbols symbols = getFileSymbols(filesystem, xmlFile);
+    if (symbols.ids == null || symbols.references == null) {
+      RecordingResourceCollector recorder = new RecordingResourceCollector();
+      ImmutableList.Builder<Reference> fileReferences = ImmutableList.builder();
+      collectIdsAndReferences(filesystem, xmlFile, recorder, fileReferences);
+      symbols = symbols.withIdsAndReferences(recorder.getSymbols(), fileReferences.build());
+      putFileSymbols(filesystem, xmlFile, symbols);
+    }
+    replay(Preconditions.checkNotNull(symbols.ids), xmlFile);
+    for (Reference reference : Preconditions.checkNotNull(symbols.references)) {
+      references.add(reference.toEntry());
+    }
+  }
 
-        Element ownerElement = ((Attr) nodesWithIds.item(i)).getOwnerElement();
-        DocumentLocation location = extractDocumentLocation(ownerElement);
-        resourceCollector.addIntResourceIfNotPresent(
-            RType.ID, resourceName.substring(ID_DEFINITION_PREFIX.length()), xmlFile, location);
+  private void collectIdsAndReferences(
+      ProjectFilesystem filesystem,
+      Path xmlFile,
+      ResourceCollector collector,
+      ImmutableList.Builder<Reference> references)
+      throws IOException, ResourceParseException {
+    ResourceFileScanner.XmlFile scannedFile = scanner.getXmlFile(filesystem, xmlFile);
+    for (ResourceFileScanner.ResourceAttribute definition : scannedFile.idDefinitions) {
+      String resourceName = definition.value;
+      if (!resourceName.startsWith(ID_DEFINITION_PREFIX)) {
+        throw new ResourceParseException("Invalid definition of a resource: '%s'", resourceName);
       }
 
-      NodeList nodesUsingIds = (NodeList) ANDROID_ID_USAGE.evaluate(dom, XPathConstants.NODESET);
-      for (int i = 0; i < nodesUsingIds.getLength(); i++) {
-        String resourceName = nodesUsingIds.item(i).getNodeValue();
-        int slashPosition = resourceName.indexOf('/');
-        if (resourceName.charAt(0) != '@' || slashPosition == -1) {
-          throw new ResourceParseException("Invalid definition of a resource: '%s'", resourceName);
-        }
+      collector.addIntResourceIfNotPresent(
+          RType.ID,
+          resourceName.substring(ID_DEFINITION_PREFIX.length()),
+          xmlFile,
+          definition.location);
+    }
 
-        String rawRType = resourceName.substring(1, slashPosition);
-        String name = resourceName.substring(slashPosition + 1);
+    for (ResourceFileScanner.ResourceAttribute reference : scannedFile.references) {
+      String resourceName = reference.value;
+      int slashPosition = resourceName.indexOf('/');
+      if (resourceName.charAt(0) != '@' || slashPosition == -1) {
+        throw new ResourceParseException("Invalid definition of a resource: '%s'", resourceName);
+      }
 
-        String nodeName = nodesUsingIds.item(i).getNodeName();
-        if (name.startsWith("android:") || nodeName.startsWith("tools:")) {
-          continue;
-        }
-        if (!RESOURCE_TYPES.containsKey(rawRType)) {
-          throw new ResourceParseException("Invalid reference '%s' in '%s'", resourceName, xmlFile);
-        }
-        RType rType = Preconditions.checkNotNull(RESOURCE_TYPES.get(rawRType));
+      String rawRType = resourceName.substring(1, slashPosition);
+      String name = resourceName.substring(slashPosition + 1);
 
-        references.add(new FakeRDotTxtEntry(IdType.INT, rType, sanitizeName(name)));
+      if (name.startsWith("android:") || reference.name.startsWith("tools:")) {
+        continue;
       }
-    }
-  }
+      if (!RESOURCE_TYPES.containsKey(rawRType)) {
+        throw new ResourceParseException("Invalid reference '%s' in '%s'", resourceName, xmlFile);
+      }
+      RType rType = Preconditions.checkNotNull(RESOURCE_TYPES.get(rawRType));
 
-  private static Document parseXml(Path filepath, InputStream inputStream)
-      throws IOException, ResourceParseException {
-    try {
-      return XmlDomParserWithLineNumbers.parse(inputStream);
-    } catch (SAXException e) {
-      throw new ResourceParseException(
-          "Error parsing xml file '%s': %s.", filepath, e.getMessage());
+      references.add(new Reference(rType, sanitizeName(name)));
     }
   }
 
-  private static String extractNameAttribute(Node node) throws ResourceParseException {
-    Node attribute = node.getAttributes().getNamedItem("name");
-    if (attribute == null) {
+  private static String extractNameAttribute(
+      String elementName, @Nullable String name, @Nullable String textContent)
+      throws ResourceParseException {
+    if (name == null) {
       throw new ResourceParseException(
           "Error: expected a 'name' attribute in node '%s' with value '%s'",
-          node.getNodeName(), node.getTextContent());
+          elementName, textContent);
     }
-    return attribute.getNodeValue();
+    return name;
   }
 
   private static String sanitizeName(String rawName) {
@@ -585,16 +791,6 @@ public class MiniAapt implements Step {
         || AaptStep.isSilentlyIgnored(path);
   }
 
-  /**
-   * Extracts document location saved by XmlDomParserWithLineNumbers
-   *
-   * @param node a DOM node
-   * @return the document location stored in node
-   */
-  private DocumentLocation extractDocumentLocation(Node node) {
-    return (DocumentLocation) node.getUserData(PositionalXmlHandler.LOCATION_USER_DATA_KEY);
-  }
-
   @VisibleForTesting
   ImmutableSet<RDotTxtEntry> verifyReferences(
       ProjectFilesystem filesystem, ImmutableSet<RDotTxtEntry> references) throws IOException {
@@ -639,6 +835,10 @@ public class MiniAapt implements Step {
     return getShortName() + " " + resDirectory;
   }
 
+  private interface SymbolCollector {
+    void collect(ResourceCollector collector) throws IOException, ResourceParseException;
+  }
+
   @SuppressWarnings("serial")
   @VisibleForTesting
   static class ResourceParseException extends Exception {
@@ -36,7 +36,7 @@ import javax.annotation.Nullable;
  * to those resources. Resource ids are of the type {@code 0x7fxxyyyy}, where {@code xx} represents
  * the resource type, and {@code yyyy} represents the id within that resource type.
  */
-public class RDotTxtResourceCollector implements ResourceCollector {
+public class RDotTxtResourceCollector implements ResourceUnionCollector {
 
   private int currentTypeId;
   private final Map<RType, ResourceIdEnumerator> enumerators;
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.android.aapt;
+
+import com.facebook.buck.android.aapt.RDotTxtEntry.IdType;
+import com.facebook.buck.android.aapt.RDotTxtEntry.RType;
+import com.facebook.buck.android.aapt.ResourceSymbolManifest.Symbol;
+import com.facebook.buck.android.aapt.ResourceSymbolManifest.SymbolKind;
+import com.facebook.buck.util.xml.DocumentLocation;
+import com.google.common.collect.ImmutableList;
+import java.nio.file.Path;
+import javax.annotation.Nullable;
+
+/**
+ * Records the calls made while processing a single file, so that they can be stored in a {@link
+ * ResourceSymbolManifest} and replayed on the real collector in order.
+ */
+class RecordingResourceCollector implements ResourceCollector {
+
+  private final ImmutableList.Builder<Symbol> symbols = ImmutableList.builder();
+
+  ImmutableList<Symbol> getSymbols() {
+    return symbols.build();
+  }
+
+  @Override
+  public void addIntResourceIfNotPresent(
+      RType rType, String name, Path path, DocumentLocation documentLocation) {
+    record(SymbolKind.INT, rType, name, documentLocation, 0, null, null, null);
+  }
+
+  @Override
+  public void addCustomDrawableResourceIfNotPresent(
+      RType rType, String name, Path path, DocumentLocation documentLocation) {
+    record(SymbolKind.CUSTOM_DRAWABLE, rType, name, documentLocation, 0, null, null, null);
+  }
+
+  @Override
+  public void addGrayscaleImageResourceIfNotPresent(
+      RType rType, String name, Path path, DocumentLocation documentLocation) {
+    record(SymbolKind.GRAYSCALE_IMAGE, rType, name, documentLocation, 0, null, null, null);
+  }
+
+  @Override
+  public void addIntArrayResourceIfNotPresent(
+      RType rType, String name, int numValues, Path path, DocumentLocation documentLocation) {
+    record(SymbolKind.INT_ARRAY, rType, name, documentLocation, numValues, null, null, null);
+  }
+
+  @Override
+  public void addResource(
+      RType rType,
+      IdType idType,
+      String name,
+      String idValue,
+      @Nullable String parent,
+      Path path,
+      DocumentLocation documentLocation) {
+    record(SymbolKind.RESOURCE, rType, name, documentLocation, 0, idType, idValue, parent);
+  }
+
+  private void record(
+      SymbolKind kind,
+      RType rType,
+      String name,
+      DocumentLocation location,
+      int numValues,
+      @Nullable IdType idType,
+      @Nullable String idValue,
+      @Nullable String parent) {
+    symbols.add(
+        new Symbol(
+            kind,
+            rType,
+            name,
+            location.getLineNumber(),
+            location.getColumnNumber(),
+            numValues,
+            idType,
+            idValue,
+            parent));
+  }
+}
@@ -0,0 +1,443 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.android.aapt;
+
+import com.facebook.buck.android.aapt.MiniAapt.ResourceParseException;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.util.concurrent.MoreFutures;
+import com.facebook.buck.util.concurrent.MostExecutors;
+import com.facebook.buck.util.xml.DocumentLocation;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import javax.annotation.Nullable;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Pulls what {@link MiniAapt} needs out of resource XML files with a single streaming (StAX) pass
+ * over each file, rather than building a DOM and querying it.
+ *
+ * <p>Files can be scanned in parallel ahead of being processed in order, and the results of scans
+ * are cached by the contents of the files, so a daemon only parses the files that changed.
+ */
+class ResourceFileScanner {
+
+  private static final String EXCLUDE_FROM_RESOURCE_MAP_ATTRIBUTE =
+      "exclude-from-buck-resource-map";
+
+  /** Reads, hashes and parses resource files, as that blocks on I/O unfit for the common pool. */
+  static final ExecutorService IO_EXECUTOR =
+      MostExecutors.newIdleTimeoutExecutor(
+          "resource-scanner", Runtime.getRuntime().availableProcessors());
+
+  private static final Cache<HashCode, ValuesFile> VALUES_FILE_CACHE =
+      CacheBuilder.newBuilder().softValues().build();
+  private static final Cache<HashCode, XmlFile> XML_FILE_CACHE =
+      CacheBuilder.newBuilder().softValues().build();
+
+  private static final ThreadLocal<XMLInputFactory> INPUT_FACTORY =
+      ThreadLocal.withInitial(
+          () -> {
+            XMLInputFactory factory = XMLInputFactory.newInstance();
+            // Resource files routinely use prefixes such as "tools:" without declaring them, so,
+            // like aapt, treat prefixed names as plain names.
+            factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+            factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+            return factory;
+          });
+
+  private final ConcurrentMap<Path, Scan<ValuesFile>> valuesFiles = new ConcurrentHashMap<>();
+  private final ConcurrentMap<Path, Scan<XmlFile>> xmlFiles = new ConcurrentHashMap<>();
+
+  /**
+   * Scans the given files in parallel, so that looking them up later doesn't have to wait for I/O
+   * or parsing. Errors are only reported when the broken file is looked up.
+   *
+   * @throws java.io.InterruptedIOException if interrupted while waiting for the scans.
+   */
+  void scanInParallel(
+      ProjectFilesystem filesystem,
+      Collection<Path> valuesFilesToScan,
+      Collection<Path> xmlFilesToScan)
+      throws IOException {
+    MoreFutures.mapInParallel(
+        IO_EXECUTOR,
+        valuesFilesToScan,
+        path -> scan(filesystem, path, valuesFiles, VALUES_FILE_CACHE, VALUES));
+    MoreFutures.mapInParallel(
+        IO_EXECUTOR,
+        xmlFilesToScan,
+        path -> scan(filesystem, path, xmlFiles, XML_FILE_CACHE, XML));
+  }
+
+  /** Returns the resources defined by a file under a {@code values} directory. */
+  ValuesFile getValuesFile(ProjectFilesystem filesystem, Path path)
+      throws IOException, ResourceParseException {
+    return scan(filesystem, path, valuesFiles, VALUES_FILE_CACHE, VALUES).get();
+  }
+
+  /** Returns the ids defined and resources referenced by any other XML file. */
+  XmlFile getXmlFile(ProjectFilesystem filesystem, Path path)
+      throws IOException, ResourceParseException {
+    return scan(filesystem, path, xmlFiles, XML_FILE_CACHE, XML).get();
+  }
+
+  @VisibleForTesting
+  static void invalidateCache() {
+    VALUES_FILE_CACHE.invalidateAll();
+    XML_FILE_CACHE.invalidateAll();
+  }
+
+  private static <T> Scan<T> scan(
+      ProjectFilesystem filesystem,
+      Path path,
+      ConcurrentMap<Path, Scan<T>> scans,
+      Cache<HashCode, T> cache,
+      Parser<T> parser) {
+    return scans.computeIfAbsent(
+        filesystem.resolve(path),
+        absolutePath -> {
+          try {
+            return new Scan<>(read(filesystem, path, cache, parser), null);
+          } catch (IOException | ResourceParseException e) {
+            return new Scan<>(null, e);
+          }
+        });
+  }
+
+  private static <T> T read(
+      ProjectFilesystem filesystem, Path path, Cache<HashCode, T> cache, Parser<T> parser)
+      throws IOException, ResourceParseException {
+    byte[] contents;
+    try (InputStream stream = filesystem.newFileInputStream(path)) {
+      contents = ByteStreams.toByteArray(stream);
+    }
+    HashCode hash = Hashing.sha1().hashBytes(contents);
+    T result = cache.getIfPresent(hash);
+    if (result != null) {
+      return result;
+    }
+
+    try {
+      XMLStreamReader reader =
+          INPUT_FACTORY.get().createXMLStreamReader(new ByteArrayInputStream(contents));
+      try {
+        result = parser.parse(reader);
+      } finally {
+        reader.close();
+      }
+    } catch (XMLStreamException e) {
+      throw new ResourceParseException("Error parsing xml file '%s': %s.", path, e.getMessage());
+    }
+    cache.put(hash, result);
+    return result;
+  }
+
+  private static final Parser<ValuesFile> VALUES =
+      reader -> {
+        boolean excluded = false;
+        ImmutableList.Builder<ValuesResource> resources = ImmutableList.builder();
+
+        int depth = 0;
+        @Nullable ValuesResourceBuilder resource = null;
+        @Nullable StyleableAttrBuilder attr = null;
+        while (reader.hasNext()) {
+          switch (reader.next()) {
+            case XMLStreamConstants.START_ELEMENT:
+              depth++;
+              if (excluded) {
+                continue;
+              } else if (depth == 1) {
+                excluded =
+                    "true".equals(getAttribute(reader, EXCLUDE_FROM_RESOURCE_MAP_ATTRIBUTE));
+              } else if (depth == 2) {
+                resource = new ValuesResourceBuilder(reader);
+              } else if (depth == 3 && getName(reader).equals("attr")) {
+                attr = new StyleableAttrBuilder(reader);
+              }
+              break;
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.CDATA:
+            case XMLStreamConstants.SPACE:
+              if (resource != null && resource.text != null) {
+                resource.text.append(reader.getText());
+              }
+              if (attr != null && attr.text != null) {
+                attr.text.append(reader.getText());
+              }
+              break;
+            case XMLStreamConstants.END_ELEMENT:
+              if (depth == 3 && attr != null) {
+                Preconditions.checkNotNull(resource).attrs.add(attr.build());
+                attr = null;
+              } else if (depth == 2 && resource != null) {
+                resources.add(resource.build());
+                resource = null;
+              }
+              depth--;
+              break;
+            default:
+              break;
+          }
+        }
+        return excluded ? ValuesFile.EXCLUDED : new ValuesFile(false, resources.build());
+      };
+
+  private static final Parser<XmlFile> XML =
+      reader -> {
+        String rootElementName = null;
+        ImmutableList.Builder<ResourceAttribute> idDefinitions = ImmutableList.builder();
+        ImmutableList.Builder<ResourceAttribute> references = ImmutableList.builder();
+        List<ResourceAttribute> attributes = new ArrayList<>();
+
+        while (reader.hasNext()) {
+          if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+            continue;
+          }
+          if (rootElementName == null) {
+            rootElementName = getName(reader);
+          }
+
+          DocumentLocation location = getLocation(reader);
+          attributes.clear();
+          for (int i = 0; i < reader.getAttributeCount(); i++) {
+            String value = reader.getAttributeValue(i);
+            if (value.startsWith("@")) {
+              attributes.add(new ResourceAttribute(getAttributeName(reader, i), value, location));
+            }
+          }
+          // The DOM orders attributes by name, and ids are assigned in the order they're found.
+          attributes.sort(Comparator.comparing(attribute -> attribute.name));
+          for (ResourceAttribute attribute : attributes) {
+            String value = attribute.value;
+            if (value.startsWith("@+")) {
+              if (!value.startsWith("@+android:id")) {
+                idDefinitions.add(attribute);
+              }
+            } else if (!value.startsWith("@android:") && !value.startsWith("@null")) {
+              references.add(attribute);
+            }
+          }
+        }
+        return new XmlFile(
+            Preconditions.checkNotNull(rootElementName),
+            idDefinitions.build(),
+            references.build());
+      };
+
+  private static String getName(XMLStreamReader reader) {
+    return qualify(reader.getPrefix(), reader.getLocalName());
+  }
+
+  private static String getAttributeName(XMLStreamReader reader, int index) {
+    return qualify(reader.getAttributePrefix(index), reader.getAttributeLocalName(index));
+  }
+
+  private static String qualify(@Nullable String prefix, String localName) {
+    return prefix == null || prefix.isEmpty() ? localName : prefix + ":" + localName;
+  }
+
+  @Nullable
+  private static String getAttribute(XMLStreamReader reader, String name) {
+    for (int i = 0; i < reader.getAttributeCount(); i++) {
+      if (getAttributeName(reader, i).equals(name)) {
+        return reader.getAttributeValue(i);
+      }
+    }
+    return null;
+  }
+
+  /** Matches the locations the DOM parser used to record: the end of the start tag, 0-based. */
+  private static DocumentLocation getLocation(XMLStreamReader reader) {
+    return DocumentLocation.of(
+        reader.getLocation().getLineNumber() - 1, reader.getLocation().getColumnNumber() - 1);
+  }
+
+  private interface Parser<T> {
+    T parse(XMLStreamReader reader) throws XMLStreamException;
+  }
+
+  /** The outcome of scanning a file, which is only reported once the file is looked up. */
+  private static class Scan<T> {
+    @Nullable private final T result;
+    @Nullable private final Exception exception;
+
+    Scan(@Nullable T result, @Nullable Exception exception) {
+      this.result = result;
+      this.exception = exception;
+    }
+
+    T get() throws IOException, ResourceParseException {
+      if (exception instanceof IOException) {
+        throw (IOException) exception;
+      } else if (exception instanceof ResourceParseException) {
+        throw (ResourceParseException) exception;
+      }
+      return Preconditions.checkNotNull(result);
+    }
+  }
+
+  /** A file under a {@code values} directory. */
+  static class ValuesFile {
+    static final ValuesFile EXCLUDED = new ValuesFile(true, ImmutableList.of());
+
+    /** Whether the root element asks for the file to be left out of the resource map. */
+    final boolean excludedFromResourceMap;
+
+    /** The children of the root element. */
+    final ImmutableList<ValuesResource> resources;
+
+    private ValuesFile(boolean excludedFromResourceMap, ImmutableList<ValuesResource> resources) {
+      this.excludedFromResourceMap = excludedFromResourceMap;
+      this.resources = resources;
+    }
+  }
+
+  /** An element defining a resource in a values file, such as {@code <string name="...">}. */
+  static class ValuesResource {
+    final String elementName;
+    @Nullable final String type;
+    @Nullable final String name;
+
+    /** The text content of the element, only kept when it lacks a name, for error messages. */
+    @Nullable final String text;
+
+    final DocumentLocation location;
+
+    /** The {@code <attr>} children of the element, as found in {@code <declare-styleable>}. */
+    final ImmutableList<StyleableAttr> attrs;
+
+    private ValuesResource(
+        String elementName,
+        @Nullable String type,
+        @Nullable String name,
+        @Nullable String text,
+        DocumentLocation location,
+        ImmutableList<StyleableAttr> attrs) {
+      this.elementName = elementName;
+      this.type = type;
+      this.name = name;
+      this.text = text;
+      this.location = location;
+      this.attrs = attrs;
+    }
+  }
+
+  /** An {@code <attr>} element inside a resource definition. */
+  static class StyleableAttr {
+    @Nullable final String name;
+    @Nullable final String text;
+
+    private StyleableAttr(@Nullable String name, @Nullable String text) {
+      this.name = name;
+      this.text = text;
+    }
+  }
+
+  /** Any XML file outside of the {@code values} directories, such as a layout or a drawable. */
+  static class XmlFile {
+    final String rootElementName;
+
+    /** Attributes starting with {@code @+}, other than {@code @+android:id}, in document order. */
+    final ImmutableList<ResourceAttribute> idDefinitions;
+
+    /** Attributes referring to resources that might be defined by this rule or its deps. */
+    final ImmutableList<ResourceAttribute> references;
+
+    private XmlFile(
+        String rootElementName,
+        ImmutableList<ResourceAttribute> idDefinitions,
+        ImmutableList<ResourceAttribute> references) {
+      this.rootElementName = rootElementName;
+      this.idDefinitions = idDefinitions;
+      this.references = references;
+    }
+  }
+
+  /** An attribute whose value refers to a resource, with the location of its element. */
+  static class ResourceAttribute {
+    final String name;
+    final String value;
+    final DocumentLocation location;
+
+    private ResourceAttribute(String name, String value, DocumentLocation location) {
+      this.name = name;
+      this.value = value;
+      this.location = location;
+    }
+  }
+
+  private static class ValuesResourceBuilder {
+    private final String elementName;
+    @Nullable private final String type;
+    @Nullable private final String name;
+    @Nullable private final StringBuilder text;
+    private final DocumentLocation location;
+    private final ImmutableList.Builder<StyleableAttr> attrs = ImmutableList.builder();
+
+    ValuesResourceBuilder(XMLStreamReader reader) {
+      this.elementName = getName(reader);
+      this.type = getAttribute(reader, "type");
+      this.name = getAttribute(reader, "name");
+      this.text = name == null ? new StringBuilder() : null;
+      this.location = getLocation(reader);
+    }
+
+    ValuesResource build() {
+      return new ValuesResource(
+          elementName,
+          type,
+          name,
+          text == null ? null : text.toString(),
+          location,
+          attrs.build());
+    }
+  }
+
+  private static class StyleableAttrBuilder {
+    @Nullable private final String name;
+    @Nullable private final StringBuilder text;
+
+    StyleableAttrBuilder(XMLStreamReader reader) {
+      this.name = getAttribute(reader, "name");
+      this.text = name == null ? new StringBuilder() : null;
+    }
+
+    StyleableAttr build() {
+      return new StyleableAttr(name, text == null ? null : text.toString());
+    }
+  }
+}
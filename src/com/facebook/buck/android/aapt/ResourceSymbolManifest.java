@@ -0,0 +1,255 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.android.aapt;
+
+import com.facebook.buck.android.aapt.RDotTxtEntry.IdType;
+import com.facebook.buck.android.aapt.RDotTxtEntry.RType;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.util.ObjectMappers;
+import com.facebook.buck.util.xml.DocumentLocation;
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedMap;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import javax.annotation.Nullable;
+
+/**
+ * Records the resources that each XML file under a {@code res} directory contributed the last time
+ * {@link MiniAapt} processed it, keyed by the hash of the file's contents. Replaying the symbols of
+ * unchanged files in their original order produces exactly the same resource ids as rescanning
+ * them, so only the files that changed need to be parsed again.
+ *
+ * <p>Besides the contents of each file, the recorded symbols depend on the code that parsed them
+ * and on how it was configured. Those are summed up in the key of the manifest, and a manifest
+ * read with a different key is treated as empty.
+ */
+class ResourceSymbolManifest {
+
+  private static final Logger LOG = Logger.get(ResourceSymbolManifest.class);
+
+  private final String key;
+  private final Map<String, FileSymbols> files;
+
+  ResourceSymbolManifest(String key) {
+    this.key = key;
+    this.files = new TreeMap<>();
+  }
+
+  @JsonCreator
+  private ResourceSymbolManifest(
+      @JsonProperty("key") String key,
+      @JsonProperty("files") @Nullable Map<String, FileSymbols> files) {
+    this(key);
+    if (files != null) {
+      this.files.putAll(files);
+    }
+  }
+
+  @JsonProperty("key")
+  private String getKey() {
+    return key;
+  }
+
+  @JsonProperty("files")
+  private Map<String, FileSymbols> getFiles() {
+    return ImmutableSortedMap.copyOf(files);
+  }
+
+  /**
+   * Reads a manifest written by a previous run. A missing or unreadable manifest, or one written
+   * with a different key, is treated as empty, which simply makes every file get rescanned.
+   */
+  static ResourceSymbolManifest read(ProjectFilesystem filesystem, Path path, String key) {
+    if (!filesystem.isFile(path)) {
+      return new ResourceSymbolManifest(key);
+    }
+    ResourceSymbolManifest manifest;
+    try {
+      manifest = ObjectMappers.readValue(filesystem.resolve(path), ResourceSymbolManifest.class);
+    } catch (IOException e) {
+      LOG.debug(e, "Ignoring unreadable resource symbol manifest %s.", path);
+      return new ResourceSymbolManifest(key);
+    }
+    if (!key.equals(manifest.key)) {
+      LOG.debug("Ignoring resource symbol manifest %s written with key %s.", path, manifest.key);
+      return new ResourceSymbolManifest(key);
+    }
+    return manifest;
+  }
+
+  void write(ProjectFilesystem filesystem, Path path) throws IOException {
+    filesystem.createParentDirs(path);
+    try (OutputStream stream = filesystem.newFileOutputStream(path)) {
+      ObjectMappers.WRITER.writeValue(stream, this);
+    }
+  }
+
+  /** @return the symbols recorded for the file, if its contents haven't changed since. */
+  Optional<FileSymbols> get(String relativePath, String hash) {
+    FileSymbols symbols = files.get(relativePath);
+    if (symbols == null || !symbols.hash.equals(Optional.of(hash))) {
+      return Optional.empty();
+    }
+    return Optional.of(symbols);
+  }
+
+  void put(String relativePath, FileSymbols symbols) {
+    files.put(relativePath, symbols);
+  }
+
+  /**
+   * Everything {@link MiniAapt} derives from parsing a single XML file. Each part is only filled in
+   * once the file has been processed in the corresponding way.
+   */
+  static class FileSymbols {
+    /** Hash of the file's contents, if it was hashed. */
+    @JsonProperty final Optional<String> hash;
+
+    /**
+     * Resources defined by the file itself: the entries of a values file, or the drawable defined
+     * by a drawable XML file.
+     */
+    @JsonProperty @Nullable final ImmutableList<Symbol> definitions;
+
+    /** Ids defined with {@code @+id/} in a non-values XML file. */
+    @JsonProperty @Nullable final ImmutableList<Symbol> ids;
+
+    /** Resources referenced from a non-values XML file, which must be defined somewhere. */
+    @JsonProperty @Nullable final ImmutableList<Reference> references;
+
+    @JsonCreator
+    private FileSymbols(
+        @JsonProperty("hash") Optional<String> hash,
+        @JsonProperty("definitions") @Nullable ImmutableList<Symbol> definitions,
+        @JsonProperty("ids") @Nullable ImmutableList<Symbol> ids,
+        @JsonProperty("references") @Nullable ImmutableList<Reference> references) {
+      this.hash = hash;
+      this.definitions = definitions;
+      this.ids = ids;
+      this.references = references;
+    }
+
+    static FileSymbols of(Optional<String> hash) {
+      return new FileSymbols(hash, null, null, null);
+    }
+
+    FileSymbols withDefinitions(ImmutableList<Symbol> definitions) {
+      return new FileSymbols(hash, definitions, ids, references);
+    }
+
+    FileSymbols withIdsAndReferences(
+        ImmutableList<Symbol> ids, ImmutableList<Reference> references) {
+      return new FileSymbols(hash, definitions, ids, references);
+    }
+  }
+
+  /** The kind of {@link ResourceCollector} call that a {@link Symbol} replays. */
+  enum SymbolKind {
+    INT,
+    CUSTOM_DRAWABLE,
+    GRAYSCALE_IMAGE,
+    INT_ARRAY,
+    RESOURCE,
+  }
+
+  /** A single call that processing a file made on its {@link ResourceCollector}. */
+  static class Symbol {
+    @JsonProperty final SymbolKind kind;
+    @JsonProperty final RType type;
+    @JsonProperty final String name;
+    @JsonProperty final int line;
+    @JsonProperty final int column;
+    @JsonProperty final int numValues;
+    @JsonProperty @Nullable final IdType idType;
+    @JsonProperty @Nullable final String idValue;
+    @JsonProperty @Nullable final String parent;
+
+    @JsonCreator
+    Symbol(
+        @JsonProperty("kind") SymbolKind kind,
+        @JsonProperty("type") RType type,
+        @JsonProperty("name") String name,
+        @JsonProperty("line") int line,
+        @JsonProperty("column") int column,
+        @JsonProperty("numValues") int numValues,
+        @JsonProperty("idType") @Nullable IdType idType,
+        @JsonProperty("idValue") @Nullable String idValue,
+        @JsonProperty("parent") @Nullable String parent) {
+      this.kind = kind;
+      this.type = type;
+      this.name = name;
+      this.line = line;
+      this.column = column;
+      this.numValues = numValues;
+      this.idType = idType;
+      this.idValue = idValue;
+      this.parent = parent;
+    }
+
+    void addTo(ResourceCollector collector, Path path) {
+      DocumentLocation location = DocumentLocation.of(line, column);
+      switch (kind) {
+        case INT:
+          collector.addIntResourceIfNotPresent(type, name, path, location);
+          break;
+        case CUSTOM_DRAWABLE:
+          collector.addCustomDrawableResourceIfNotPresent(type, name, path, location);
+          break;
+        case GRAYSCALE_IMAGE:
+          collector.addGrayscaleImageResourceIfNotPresent(type, name, path, location);
+          break;
+        case INT_ARRAY:
+          collector.addIntArrayResourceIfNotPresent(type, name, numValues, path, location);
+          break;
+        case RESOURCE:
+          collector.addResource(
+              type,
+              Preconditions.checkNotNull(idType),
+              name,
+              Preconditions.checkNotNull(idValue),
+              parent,
+              path,
+              location);
+          break;
+      }
+    }
+  }
+
+  /** A reference such as {@code @string/name}, which must resolve to a defined resource. */
+  static class Reference {
+    @JsonProperty final RType type;
+    @JsonProperty final String name;
+
+    @JsonCreator
+    Reference(@JsonProperty("type") RType type, @JsonProperty("name") String name) {
+      this.type = type;
+      this.name = name;
+    }
+
+    RDotTxtEntry toEntry() {
+      return new FakeRDotTxtEntry(IdType.INT, type, name);
+    }
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.android.dx_worker;
+
+import com.android.dx.command.dexer.DxContext;
+import com.android.dx.command.dexer.Main;
+import com.facebook.buck.worker.WorkerProcessCommand;
+import com.facebook.buck.worker.WorkerProcessProtocol;
+import com.facebook.buck.worker.WorkerProcessProtocolZero;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Entry point of a persistent worker process that runs the dexer bundled with buck. Each job's
+ * args file holds the arguments of a single dx invocation, one per line, without the leading
+ * {@code dx --dex}. The dexer's output goes to the job's stdout and stderr files, and its return
+ * code is the job's exit code.
+ *
+ * <p>Staying alive between jobs means class loading and JIT warm-up of the dexer are only paid for
+ * once per worker, rather than once per dex file.
+ */
+public class DxWorkerMain {
+
+  private DxWorkerMain() {}
+
+  public static void main(String[] args) {
+    // Stdout carries the worker protocol, so keep anything else from writing to it.
+    PrintStream protocolOut = System.out;
+    System.setOut(System.err);
+
+    AtomicInteger messageCounter = new AtomicInteger();
+    try (WorkerProcessProtocol.CommandReceiver protocol =
+        new WorkerProcessProtocolZero.CommandReceiver(protocolOut, System.in)) {
+      protocol.handshake(messageCounter.getAndIncrement());
+      while (!protocol.shouldClose()) {
+        int messageId = messageCounter.getAndIncrement();
+        WorkerProcessCommand command = protocol.receiveCommand(messageId);
+        protocol.sendResponse(messageId, "result", runJob(command));
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+      System.exit(1);
+    }
+  }
+
+  private static int runJob(WorkerProcessCommand command) throws IOException {
+    List<String> dexerArgs = Files.readAllLines(command.getArgsPath(), StandardCharsets.UTF_8);
+    try (OutputStream out = Files.newOutputStream(command.getStdOutPath());
+        PrintStream err =
+            new PrintStream(Files.newOutputStream(command.getStdErrPath()), true, "UTF-8")) {
+      try {
+        return runDexer(dexerArgs, out, err);
+      } catch (Exception e) {
+        // Bad input makes dx throw rather than return an error code. That leaves nothing behind
+        // that would affect later jobs, so report it like any other failure.
+        e.printStackTrace(err);
+        return 1;
+      } finally {
+        // These would otherwise keep growing for as long as the worker lives.
+        Main.clearInternTables();
+      }
+    }
+  }
+
+  static int runDexer(List<String> dexerArgs, OutputStream out, OutputStream err)
+      throws IOException {
+    DxContext dxContext = new DxContext(out, err);
+    Main.Arguments arguments = new Main.Arguments();
+    arguments.parseCommandLine(dexerArgs.toArray(new String[dexerArgs.size()]), dxContext);
+    return new Main(dxContext).run(arguments);
+  }
+}
@@ -57,6 +57,13 @@ public interface AndroidDevice {
 
   void mkDirP(String dirpath) throws Exception;
 
+  /** Creates all of the directories, in as few round trips to the device as possible. */
+  default void mkDirsP(Iterable<String> dirpaths) throws Exception {
+    for (String dirpath : dirpaths) {
+      mkDirP(dirpath);
+    }
+  }
+
   String getProperty(String name) throws Exception;
 
   List<String> getDeviceAbis() throws Exception;
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.android.exopackage;
+
+import com.facebook.buck.util.MoreCollectors;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.ImmutableSortedSet;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+/**
+ * The difference between the exopackage files on a device and the ones the app needs, for every
+ * kind of exopackage file at once. All paths are relative to the package's exopackage directory.
+ *
+ * <p>Exopackage files are named after the hash of their contents, so a file that is already on the
+ * device never has to be pushed again. Metadata files are always deleted and pushed again.
+ */
+class ExopackageInstallPlan {
+  private final ImmutableMap<String, ImmutableSortedMap<Path, Path>> filesToInstallByType;
+  private final ImmutableSortedMap<Path, Path> filesToInstall;
+  private final ImmutableSortedMap<Path, String> metadataToInstall;
+  private final ImmutableSortedSet<Path> filesToDelete;
+
+  private ExopackageInstallPlan(
+      ImmutableMap<String, ImmutableSortedMap<Path, Path>> filesToInstallByType,
+      ImmutableSortedMap<Path, String> metadataToInstall,
+      ImmutableSortedSet<Path> filesToDelete) {
+    this.filesToInstallByType = filesToInstallByType;
+    this.filesToInstall =
+        filesToInstallByType
+            .values()
+            .stream()
+            .flatMap(files -> files.entrySet().stream())
+            .collect(MoreCollectors.toImmutableSortedMap(Map.Entry::getKey, Map.Entry::getValue));
+    this.metadataToInstall = metadataToInstall;
+    this.filesToDelete = filesToDelete;
+  }
+
+  /**
+   * @param presentFiles the files found on the device
+   * @param wantedFilesByType the files the app needs, mapped to their local sources, for each kind
+   *     of exopackage file
+   * @param metadata the contents of the metadata files the app needs
+   */
+  static ExopackageInstallPlan create(
+      ImmutableSortedSet<Path> presentFiles,
+      ImmutableMap<String, ImmutableMap<Path, Path>> wantedFilesByType,
+      ImmutableMap<Path, String> metadata) {
+    ImmutableMap.Builder<String, ImmutableSortedMap<Path, Path>> filesToInstallByType =
+        ImmutableMap.builder();
+    for (Map.Entry<String, ImmutableMap<Path, Path>> entry : wantedFilesByType.entrySet()) {
+      ImmutableSortedMap<Path, Path> missingFiles =
+          entry
+              .getValue()
+              .entrySet()
+              .stream()
+              .filter(file -> !presentFiles.contains(file.getKey()))
+              .collect(
+                  MoreCollectors.toImmutableSortedMap(Map.Entry::getKey, Map.Entry::getValue));
+      if (!missingFiles.isEmpty()) {
+        filesToInstallByType.put(entry.getKey(), missingFiles);
+      }
+    }
+    ImmutableSortedSet<Path> filesToDelete =
+        presentFiles
+            .stream()
+            .filter(
+                path ->
+                    !path.getFileName().toString().equals("lock")
+                        && wantedFilesByType
+                            .values()
+                            .stream()
+                            .noneMatch(wantedFiles -> wantedFiles.containsKey(path)))
+            .collect(MoreCollectors.toImmutableSortedSet());
+    return new ExopackageInstallPlan(
+        filesToInstallByType.build(), ImmutableSortedMap.copyOf(metadata), filesToDelete);
+  }
+
+  /**
+   * Files missing from the device, mapped to their local sources, for each kind of exopackage file
+   * that has any.
+   */
+  ImmutableMap<String, ImmutableSortedMap<Path, Path>> getFilesToInstallByType() {
+    return filesToInstallByType;
+  }
+
+  /** Files missing from the device, mapped to their local sources. */
+  ImmutableSortedMap<Path, Path> getFilesToInstall() {
+    return filesToInstall;
+  }
+
+  ImmutableSortedMap<Path, String> getMetadataToInstall() {
+    return metadataToInstall;
+  }
+
+  /**
+   * Files on the device that the app no longer needs, including the old metadata, but not the lock
+   * file.
+   */
+  ImmutableSortedSet<Path> getFilesToDelete() {
+    return filesToDelete;
+  }
+
+  /** Directories that have to exist before the files and metadata can be pushed. */
+  ImmutableSortedSet<Path> getDirectoriesToCreate() {
+    return Stream.concat(filesToInstall.keySet().stream(), metadataToInstall.keySet().stream())
+        .map(Path::getParent)
+        .filter(Objects::nonNull)
+        .collect(MoreCollectors.toImmutableSortedSet());
+  }
+}
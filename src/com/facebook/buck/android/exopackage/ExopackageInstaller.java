@@ -36,7 +36,6 @@ import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.io.Closer;
 import java.io.File;
@@ -85,9 +84,10 @@ public class ExopackageInstaller {
     if (exopackageEnabled(apkInfo)) {
       device.mkDirP(dataRoot.toString());
       ImmutableSortedSet<Path> presentFiles = device.listDirRecursive(dataRoot);
-      ExopackageInfo exoInfo = apkInfo.getExopackageInfo().get();
-      installMissingExopackageFiles(presentFiles, exoInfo);
-      finishExoFileInstallation(presentFiles, exoInfo);
+      ExopackageInstallPlan plan =
+          planInstallation(presentFiles, apkInfo.getExopackageInfo().get());
+      installMissingExopackageFiles(plan);
+      finishExoFileInstallation(plan);
     }
     installApkIfNecessary(apkInfo);
     killApp(apkInfo, processName);
@@ -124,55 +124,55 @@ public class ExopackageInstaller {
 
   public void finishExoFileInstallation(
       ImmutableSortedSet<Path> presentFiles, ExopackageInfo exoInfo) throws Exception {
-    ImmutableSet.Builder<Path> wantedPaths = ImmutableSet.builder();
-    ImmutableMap.Builder<Path, String> metadata = ImmutableMap.builder();
-
-    if (exoInfo.getDexInfo().isPresent()) {
-      DexExoHelper dexExoHelper =
-          new DexExoHelper(pathResolver, projectFilesystem, exoInfo.getDexInfo().get());
-      wantedPaths.addAll(dexExoHelper.getFilesToInstall().keySet());
-      metadata.putAll(dexExoHelper.getMetadataToInstall());
-    }
+    finishExoFileInstallation(planInstallation(presentFiles, exoInfo));
+  }
 
-    if (exoInfo.getNativeLibsInfo().isPresent()) {
-      NativeExoHelper nativeExoHelper =
-          new NativeExoHelper(
-              device, pathResolver, projectFilesystem, exoInfo.getNativeLibsInfo().get());
-      wantedPaths.addAll(nativeExoHelper.getFilesToInstall().keySet());
-      metadata.putAll(nativeExoHelper.getMetadataToInstall());
-    }
+  public void installMissingExopackageFiles(
+      ImmutableSortedSet<Path> presentFiles, ExopackageInfo exoInfo) throws Exception {
+    installMissingExopackageFiles(planInstallation(presentFiles, exoInfo));
+  }
 
-    if (exoInfo.getResourcesInfo().isPresent()) {
-      ResourcesExoHelper resourcesExoHelper =
-          new ResourcesExoHelper(pathResolver, projectFilesystem, exoInfo.getResourcesInfo().get());
-      wantedPaths.addAll(resourcesExoHelper.getFilesToInstall().keySet());
-      metadata.putAll(resourcesExoHelper.getMetadataToInstall());
-    }
+  private void installMissingExopackageFiles(ExopackageInstallPlan plan) throws Exception {
+    installFiles(plan.getFilesToInstallByType(), plan.getDirectoriesToCreate());
+  }
 
-    deleteUnwantedFiles(presentFiles, wantedPaths.build());
-    installMetadata(metadata.build());
+  private void finishExoFileInstallation(ExopackageInstallPlan plan) throws Exception {
+    deleteFiles(plan.getFilesToDelete());
+    installMetadata(plan.getMetadataToInstall());
   }
 
-  public void installMissingExopackageFiles(
+  /**
+   * Works out what to push and delete for every kind of exopackage file from a single listing of
+   * the device, so that each step below touches the device once rather than once per kind.
+   */
+  private ExopackageInstallPlan planInstallation(
       ImmutableSortedSet<Path> presentFiles, ExopackageInfo exoInfo) throws Exception {
+    ImmutableMap.Builder<String, ImmutableMap<Path, Path>> wantedFiles = ImmutableMap.builder();
+    ImmutableMap.Builder<Path, String> metadata = ImmutableMap.builder();
+
     if (exoInfo.getDexInfo().isPresent()) {
       DexExoHelper dexExoHelper =
           new DexExoHelper(pathResolver, projectFilesystem, exoInfo.getDexInfo().get());
-      installMissingFiles(presentFiles, dexExoHelper.getFilesToInstall(), "secondary_dex");
+      wantedFiles.put("secondary_dex", dexExoHelper.getFilesToInstall());
+      metadata.putAll(dexExoHelper.getMetadataToInstall());
     }
 
     if (exoInfo.getNativeLibsInfo().isPresent()) {
       NativeExoHelper nativeExoHelper =
           new NativeExoHelper(
               device, pathResolver, projectFilesystem, exoInfo.getNativeLibsInfo().get());
-      installMissingFiles(presentFiles, nativeExoHelper.getFilesToInstall(), "native_library");
+      wantedFiles.put("native_library", nativeExoHelper.getFilesToInstall());
+      metadata.putAll(nativeExoHelper.getMetadataToInstall());
     }
 
     if (exoInfo.getResourcesInfo().isPresent()) {
       ResourcesExoHelper resourcesExoHelper =
           new ResourcesExoHelper(pathResolver, projectFilesystem, exoInfo.getResourcesInfo().get());
-      installMissingFiles(presentFiles, resourcesExoHelper.getFilesToInstall(), "resources");
+      wantedFiles.put("resources", resourcesExoHelper.getFilesToInstall());
+      metadata.putAll(resourcesExoHelper.getMetadataToInstall());
     }
+
+    return ExopackageInstallPlan.create(presentFiles, wantedFiles.build(), metadata.build());
   }
 
   private boolean exopackageEnabled(ApkInfo apkInfo) {
@@ -230,31 +230,6 @@ public class ExopackageInstaller {
     }
   }
 
-  public void installMissingFiles(
-      ImmutableSortedSet<Path> presentFiles,
-      ImmutableMap<Path, Path> wantedFilesToInstall,
-      String filesType)
-      throws Exception {
-    ImmutableSortedMap<Path, Path> filesToInstall =
-        wantedFilesToInstall
-            .entrySet()
-            .stream()
-            .filter(entry -> !presentFiles.contains(entry.getKey()))
-            .collect(MoreCollectors.toImmutableSortedMap(Map.Entry::getKey, Map.Entry::getValue));
-
-    installFiles(filesType, filesToInstall);
-  }
-
-  private void deleteUnwantedFiles(
-      ImmutableSortedSet<Path> presentFiles, ImmutableSet<Path> wantedFiles) {
-    ImmutableSortedSet<Path> filesToDelete =
-        presentFiles
-            .stream()
-            .filter(p -> !p.getFileName().equals("lock") && !wantedFiles.contains(p))
-            .collect(MoreCollectors.toImmutableSortedSet());
-    deleteFiles(filesToDelete);
-  }
-
   private void deleteFiles(ImmutableSortedSet<Path> filesToDelete) {
     filesToDelete
         .stream()
@@ -272,40 +247,49 @@ public class ExopackageInstaller {
             });
   }
 
-  private void installFiles(String filesType, ImmutableMap<Path, Path> filesToInstall)
+  /**
+   * Installs each kind of file in turn, so that each gets its own perf event, but creates the
+   * directories and the port forwards only once for all of them.
+   */
+  private void installFiles(
+      ImmutableMap<String, ? extends Map<Path, Path>> filesToInstallByType,
+      ImmutableSet<Path> directories)
       throws Exception {
-    try (SimplePerfEvent.Scope ignored =
-            SimplePerfEvent.scope(eventBus, "multi_install_" + filesType);
-        AutoCloseable ignored1 = device.createForward()) {
+    if (filesToInstallByType.isEmpty()) {
+      return;
+    }
+    try (AutoCloseable ignored = device.createForward()) {
       // Make sure all the directories exist.
-      filesToInstall
-          .keySet()
-          .stream()
-          .map(p -> dataRoot.resolve(p).getParent())
-          .distinct()
-          .forEach(
-              p -> {
-                try {
-                  device.mkDirP(p.toString());
-                } catch (Exception e) {
-                  throw new RuntimeException(e);
-                }
-              });
-      // Plan the installation.
-      Map<Path, Path> installPaths =
-          filesToInstall
-              .entrySet()
+      device.mkDirsP(
+          directories
               .stream()
-              .collect(
-                  Collectors.toMap(
-                      entry -> dataRoot.resolve(entry.getKey()),
-                      entry -> projectFilesystem.resolve(entry.getValue())));
-      // Install the files.
-      device.installFiles(filesType, installPaths);
+              .map(p -> dataRoot.resolve(p).toString())
+              .collect(MoreCollectors.toImmutableList()));
+      for (Map.Entry<String, ? extends Map<Path, Path>> entry : filesToInstallByType.entrySet()) {
+        String filesType = entry.getKey();
+        try (SimplePerfEvent.Scope ignored1 =
+            SimplePerfEvent.scope(eventBus, "multi_install_" + filesType)) {
+          // Plan the installation.
+          Map<Path, Path> installPaths =
+              entry
+                  .getValue()
+                  .entrySet()
+                  .stream()
+                  .collect(
+                      Collectors.toMap(
+                          file -> dataRoot.resolve(file.getKey()),
+                          file -> projectFilesystem.resolve(file.getValue())));
+          // Install the files.
+          device.installFiles(filesType, installPaths);
+        }
+      }
     }
   }
 
   private void installMetadata(ImmutableMap<Path, String> metadataToInstall) throws Exception {
+    if (metadataToInstall.isEmpty()) {
+      return;
+    }
     try (Closer closer = Closer.create()) {
       Map<Path, Path> filesToInstall = new HashMap<>();
       for (Map.Entry<Path, String> entry : metadataToInstall.entrySet()) {
@@ -314,7 +298,13 @@ public class ExopackageInstaller {
             entry.getValue().getBytes(Charsets.UTF_8), temp.get().toFile());
         filesToInstall.put(entry.getKey(), temp.get());
       }
-      installFiles("metadata", ImmutableMap.copyOf(filesToInstall));
+      installFiles(
+          ImmutableMap.of("metadata", filesToInstall),
+          filesToInstall
+              .keySet()
+              .stream()
+              .map(Path::getParent)
+              .collect(MoreCollectors.toImmutableSet()));
     }
   }
 
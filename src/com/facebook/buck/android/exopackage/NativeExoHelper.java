@@ -29,6 +29,7 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Map;
+import javax.annotation.Nullable;
 
 public class NativeExoHelper {
   @VisibleForTesting public static final Path NATIVE_LIBS_DIR = Paths.get("native-libs");
@@ -36,6 +37,7 @@ public class NativeExoHelper {
   private final SourcePathResolver pathResolver;
   private final ProjectFilesystem projectFilesystem;
   private final ExopackageInfo.NativeLibsInfo nativeLibsInfo;
+  @Nullable private ImmutableMap<String, ImmutableMap<String, Path>> filesByHashForAbis;
 
   NativeExoHelper(
       AndroidDevice device,
@@ -83,6 +85,15 @@ public class NativeExoHelper {
 
   private ImmutableMap<String, ImmutableMap<String, Path>> getFilesByHashForAbis()
       throws Exception {
+    // Both the files and the metadata need this, and working it out asks the device for its abis.
+    if (filesByHashForAbis == null) {
+      filesByHashForAbis = computeFilesByHashForAbis();
+    }
+    return filesByHashForAbis;
+  }
+
+  private ImmutableMap<String, ImmutableMap<String, Path>> computeFilesByHashForAbis()
+      throws Exception {
     ImmutableMap.Builder<String, ImmutableMap<String, Path>> filesByHashForAbisBuilder =
         ImmutableMap.builder();
     ImmutableMultimap<String, Path> allLibraries = getAllLibraries();
@@ -31,16 +31,24 @@ import com.facebook.buck.event.ConsoleEvent;
 import com.facebook.buck.event.SimplePerfEvent;
 import com.facebook.buck.log.Logger;
 import com.facebook.buck.util.Console;
+import com.facebook.buck.util.MoreCollectors;
+import com.facebook.buck.util.concurrent.MostExecutors;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Splitter;
 import com.google.common.base.Supplier;
 import com.google.common.base.Suppliers;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Sets;
 import com.google.common.io.Closer;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
@@ -49,13 +57,18 @@ import java.net.Socket;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Queue;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 import javax.annotation.Nullable;
@@ -78,6 +91,12 @@ public class RealAndroidDevice implements AndroidDevice {
 
   private static final Pattern LINE_ENDING = Pattern.compile("\r?\n");
 
+  /**
+   * Number of consecutive ports, starting at the agent port, that are forwarded to a device. Each
+   * port carries one file transfer at a time, so this is how many files are pushed at once.
+   */
+  public static final int AGENT_PORTS_PER_DEVICE = 4;
+
   private final BuckEventBus eventBus;
   private final IDevice device;
   private final Console console;
@@ -612,44 +631,111 @@ public class RealAndroidDevice implements AndroidDevice {
 
   @Override
   public AutoCloseable createForward() throws Exception {
-    device.createForward(agentPort, agentPort);
-    return () -> {
+    int created = 0;
+    try {
+      for (; created < AGENT_PORTS_PER_DEVICE; created++) {
+        device.createForward(agentPort + created, agentPort + created);
+      }
+    } catch (Exception e) {
+      // Don't leave behind the forwards that were created before this one failed.
       try {
-        device.removeForward(agentPort, agentPort);
-      } catch (AdbCommandRejectedException e) {
-        LOG.warn(e, "Failed to remove adb forward on port %d for device %s", agentPort, device);
-        eventBus.post(
-            ConsoleEvent.warning(
-                "Failed to remove adb forward %d. This is not necessarily a problem\n"
-                    + "because it will be recreated during the next exopackage installation.\n"
-                    + "See the log for the full exception.",
-                agentPort));
+        removeForwards(created);
+      } catch (Exception removeException) {
+        e.addSuppressed(removeException);
       }
-    };
+      throw e;
+    }
+    return () -> removeForwards(AGENT_PORTS_PER_DEVICE);
+  }
+
+  private void removeForwards(int count) throws TimeoutException, IOException {
+    for (int i = 0; i < count; i++) {
+      removeForward(agentPort + i);
+    }
+  }
+
+  private void removeForward(int port) throws TimeoutException, IOException {
+    try {
+      device.removeForward(port, port);
+    } catch (AdbCommandRejectedException e) {
+      LOG.warn(e, "Failed to remove adb forward on port %d for device %s", port, device);
+      eventBus.post(
+          ConsoleEvent.warning(
+              "Failed to remove adb forward %d. This is not necessarily a problem\n"
+                  + "because it will be recreated during the next exopackage installation.\n"
+                  + "See the log for the full exception.",
+              port));
+    }
   }
 
+  /**
+   * Pushes the files over all of the forwarded agent ports at once. Each port is drained by its own
+   * thread, which takes the next file from a shared queue as soon as its previous transfer is done,
+   * so a few large files don't hold up the rest. The files are made readable afterwards in as few
+   * commands as possible.
+   */
   @Override
   public void installFiles(String filesType, Map<Path, Path> installPaths) throws Exception {
-    for (Map.Entry<Path, Path> entry : installPaths.entrySet()) {
-      try (SimplePerfEvent.Scope ignored2 =
-          SimplePerfEvent.scope(eventBus, "install_" + filesType)) {
-        installFile(entry.getKey(), entry.getValue());
+    if (installPaths.isEmpty()) {
+      return;
+    }
+    Queue<Map.Entry<Path, Path>> remaining = new ConcurrentLinkedQueue<>(installPaths.entrySet());
+    int streamCount = Math.min(AGENT_PORTS_PER_DEVICE, installPaths.size());
+    ListeningExecutorService executor =
+        MoreExecutors.listeningDecorator(
+            MostExecutors.newMultiThreadExecutor("exo-install-" + getSerialNumber(), streamCount));
+    try {
+      List<ListenableFuture<Void>> streams = new ArrayList<>();
+      for (int i = 0; i < streamCount; i++) {
+        int port = agentPort + i;
+        streams.add(
+            executor.<Void>submit(
+                () -> {
+                  try {
+                    for (Map.Entry<Path, Path> entry = remaining.poll();
+                        entry != null;
+                        entry = remaining.poll()) {
+                      try (SimplePerfEvent.Scope ignored =
+                          SimplePerfEvent.scope(eventBus, "install_" + filesType)) {
+                        transferFile(entry.getKey(), entry.getValue(), port);
+                      }
+                    }
+                  } catch (Exception e) {
+                    // Stop the other streams from starting any more transfers.
+                    remaining.clear();
+                    throw e;
+                  }
+                  return null;
+                }));
       }
+      Futures.allAsList(streams).get();
+    } catch (ExecutionException e) {
+      Throwables.throwIfInstanceOf(e.getCause(), Exception.class);
+      Throwables.throwIfUnchecked(e.getCause());
+      throw e;
+    } finally {
+      executor.shutdownNow();
     }
+    chmod644(installPaths.keySet());
   }
 
   @Override
   public void installFile(final Path targetDevicePath, final Path source) throws Exception {
+    transferFile(targetDevicePath, source, agentPort);
+    chmod644(ImmutableList.of(targetDevicePath));
+  }
+
+  private void transferFile(Path targetDevicePath, Path source, int port) throws Exception {
     Preconditions.checkArgument(source.isAbsolute());
     Preconditions.checkArgument(targetDevicePath.isAbsolute());
     Closer closer = Closer.create();
-    FileInstallReceiver receiver = new FileInstallReceiver(closer, source);
+    FileInstallReceiver receiver = new FileInstallReceiver(closer, source, port);
 
     String command =
         "umask 022 && "
             + agent.get().getAgentCommand()
             + "receive-file "
-            + agentPort
+            + port
             + " "
             + Files.size(source)
             + " "
@@ -689,11 +775,9 @@ public class RealAndroidDevice implements AndroidDevice {
     if (shellException != null) {
       throw shellException;
     }
-
-    chmod644(targetDevicePath);
   }
 
-  private void chmod644(Path targetDevicePath)
+  private void chmod644(Collection<Path> targetDevicePaths)
       throws TimeoutException, AdbCommandRejectedException, ShellCommandUnresponsiveException,
           IOException {
     // The standard Java libraries on Android always create new files un-readable by other users.
@@ -701,7 +785,20 @@ public class RealAndroidDevice implements AndroidDevice {
     // to allow the app to read them.  Ideally, the agent would do this automatically, but
     // there's no easy way to do this in Java.  We can drop this if we drop support for the
     // Java agent.
-    executeCommandWithErrorChecking("chmod 644 " + targetDevicePath);
+    ImmutableListMultimap<Path, String> filesByDir =
+        targetDevicePaths
+            .stream()
+            .collect(
+                MoreCollectors.toImmutableListMultimap(
+                    Path::getParent, path -> path.getFileName().toString()));
+    for (Map.Entry<Path, Collection<String>> entry : filesByDir.asMap().entrySet()) {
+      String commandPrefix = "cd " + entry.getKey() + " && chmod 644 ";
+      // Add a fudge factor for separators and error checking.
+      final int overhead = commandPrefix.length() + 100;
+      for (List<String> args : chunkArgs(entry.getValue(), MAX_ADB_COMMAND_SIZE - overhead)) {
+        executeCommandWithErrorChecking(commandPrefix + Joiner.on(' ').join(args));
+      }
+    }
   }
 
   @Override
@@ -711,6 +808,21 @@ public class RealAndroidDevice implements AndroidDevice {
     executeCommandWithErrorChecking("umask 022 && " + mkdirCommand + " " + dirpath);
   }
 
+  @Override
+  public void mkDirsP(Iterable<String> dirpaths) throws Exception {
+    // The agent only creates one directory per invocation, so chain them in a single command.
+    String mkdirCommand = agent.get().getMkDirCommand() + " ";
+    String commandPrefix = "umask 022";
+    ImmutableList.Builder<String> mkdirs = ImmutableList.builder();
+    for (String dirpath : dirpaths) {
+      mkdirs.add(" && " + mkdirCommand + dirpath);
+    }
+    final int overhead = commandPrefix.length() + 100;
+    for (List<String> group : chunkArgs(mkdirs.build(), MAX_ADB_COMMAND_SIZE - overhead)) {
+      executeCommandWithErrorChecking(commandPrefix + Joiner.on("").join(group));
+    }
+  }
+
   @Override
   public String getProperty(String name) throws Exception {
     return executeCommandWithErrorChecking("getprop " + name).trim();
@@ -808,14 +920,16 @@ public class RealAndroidDevice implements AndroidDevice {
   private class FileInstallReceiver extends CollectingOutputReceiver {
     private final Closer closer;
     private final Path source;
+    private final int port;
     private boolean startedPayload;
     private boolean wrotePayload;
     @Nullable private OutputStream outToDevice;
     private Optional<Exception> error;
 
-    public FileInstallReceiver(Closer closer, Path source) {
+    public FileInstallReceiver(Closer closer, Path source, int port) {
       this.closer = closer;
       this.source = source;
+      this.port = port;
       this.startedPayload = false;
       this.wrotePayload = false;
       this.error = Optional.empty();
@@ -834,7 +948,7 @@ public class RealAndroidDevice implements AndroidDevice {
         if (!startedPayload && getOutput().length() >= AgentUtil.TEXT_SECRET_KEY_SIZE) {
           LOG.verbose("Got key: %s", getOutput().split("[\\r\\n]", 1)[0]);
           startedPayload = true;
-          Socket clientSocket = new Socket("127.0.0.1", agentPort); // NOPMD
+          Socket clientSocket = new Socket("127.0.0.1", port); // NOPMD
           closer.register(clientSocket);
           LOG.verbose("Connected");
           outToDevice = clientSocket.getOutputStream();
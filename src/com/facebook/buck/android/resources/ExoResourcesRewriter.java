@@ -16,22 +16,30 @@
 
 package com.facebook.buck.android.resources;
 
+import com.facebook.buck.io.file.MappedByteBuffers;
 import com.facebook.buck.io.file.MoreFiles;
 import com.facebook.buck.util.MoreCollectors;
 import com.facebook.buck.util.RichStream;
+import com.facebook.buck.util.zip.ByteBufferInputStream;
+import com.facebook.buck.util.zip.CentralDirectory;
+import com.facebook.buck.util.zip.CentralDirectory.FileHeader;
 import com.google.common.base.Charsets;
 import com.google.common.base.Supplier;
 import com.google.common.base.Suppliers;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
 import com.google.common.io.ByteStreams;
-import java.io.ByteArrayInputStream;
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystemException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -45,7 +53,7 @@ import java.util.stream.Collectors;
 import java.util.zip.CRC32;
 import java.util.zip.Deflater;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
+import javax.annotation.Nullable;
 
 /**
  * ExoResourceRewriter is the core of constructing build outputs for exo-for-resources.
@@ -133,13 +141,8 @@ public class ExoResourcesRewriter {
       }
       // Write the full (rearranged) resources to the exo resources.
       try (ResourcesZipBuilder zipBuilder = new ResourcesZipBuilder(exoResources)) {
-        for (ZipEntry entry : apkZip.getEntries()) {
-          addEntry(
-              zipBuilder,
-              entry.getName(),
-              apkZip.getContent(entry.getName()),
-              entry.getMethod() == ZipEntry.STORED ? 0 : Deflater.BEST_COMPRESSION,
-              false);
+        for (FileHeader entry : apkZip.getEntries()) {
+          apkZip.addEntryTo(zipBuilder, entry.getName());
         }
       }
       // Then, slice out the resources needed for the primary apk.
@@ -151,19 +154,13 @@ public class ExoResourcesRewriter {
         addEntry(
             zipBuilder,
             "resources.arsc",
-            primaryResourceTable.serialize(),
+            ResChunk.wrap(primaryResourceTable.serialize()),
             apkZip.getEntry("resources.arsc").getMethod() == ZipEntry.STORED
                 ? 0
                 : Deflater.BEST_COMPRESSION,
             false);
         for (String path : RichStream.from(closure.files).sorted().toOnceIterable()) {
-          ZipEntry entry = apkZip.getEntry(path);
-          addEntry(
-              zipBuilder,
-              entry.getName(),
-              apkZip.getContent(entry.getName()),
-              entry.getMethod() == ZipEntry.STORED ? 0 : Deflater.BEST_COMPRESSION,
-              false);
+          apkZip.addEntryTo(zipBuilder, path);
         }
       }
       return resMapping;
@@ -239,40 +236,62 @@ public class ExoResourcesRewriter {
   private static void addEntry(
       ResourcesZipBuilder zipBuilder,
       String name,
-      byte[] content,
+      ByteBuffer content,
       int compressionLevel,
       boolean isDirectory)
       throws IOException {
-    // TODO(cjhopman): for files that we don't already have in memory, we should use the builder's
-    // stream api.
     CRC32 crc32 = new CRC32();
-    crc32.update(content);
+    crc32.update(content.duplicate());
     zipBuilder.addEntry(
-        new ByteArrayInputStream(content),
-        content.length,
+        new ByteBufferInputStream(content.duplicate()),
+        content.remaining(),
         crc32.getValue(),
         name,
         compressionLevel,
         isDirectory);
   }
 
+  /**
+   * The input apk, mapped into memory. The resource table and the compiled xml files are parsed
+   * straight out of the mapping and rewritten in place, so the mapping is private: the pages that
+   * get rewritten are copied on write and the apk on disk is left untouched. If the apk can't be
+   * opened for writing, it is read into the heap instead. Compressed entries are inflated to the
+   * heap the first time they are needed. The mapping is released on {@link #close()}, so nothing
+   * read out of the apk may be used after that.
+   */
   private static class ApkZip implements Closeable, UsedResourcesFinder.ApkContentProvider {
-    private final ZipFile zipFile;
-    private final SortedMap<String, ZipEntry> entries;
-    private final Map<String, byte[]> entryContents;
+    private final ByteBuffer zip;
+    @Nullable private final MappedByteBuffer mapping;
+    private final SortedMap<String, FileHeader> entries;
+    private final Map<String, ByteBuffer> entryContents;
     private final Map<String, ResourcesXml> xmlEntries;
     private final Supplier<ResourceTable> resourceTable;
 
     public ApkZip(Path inputPath) throws IOException {
-      this.zipFile = new ZipFile(inputPath.toFile());
+      this.mapping = mapPrivately(inputPath);
+      this.zip = mapping != null ? mapping : ByteBuffer.wrap(Files.readAllBytes(inputPath));
       this.entries =
-          Collections.list(zipFile.entries())
+          CentralDirectory.readFileHeaders(zip)
               .stream()
-              .collect(MoreCollectors.toImmutableSortedMap(ZipEntry::getName, e -> e));
+              .collect(MoreCollectors.toImmutableSortedMap(FileHeader::getName, e -> e));
       this.entryContents = new HashMap<>();
       this.xmlEntries = new HashMap<>();
       this.resourceTable =
-          Suppliers.memoize(() -> ResourceTable.get(ResChunk.wrap(getContent("resources.arsc"))));
+          Suppliers.memoize(() -> ResourceTable.get(getContent("resources.arsc")));
+    }
+
+    /** @return the private mapping of the apk, or null if it can't be opened for writing. */
+    @Nullable
+    private static MappedByteBuffer mapPrivately(Path inputPath) throws IOException {
+      // A private mapping requires a writable channel, even though nothing is ever written back.
+      // Opening one fails with an AccessDeniedException if the apk isn't writable, and with a
+      // plain FileSystemException if it is on a read-only filesystem.
+      try (FileChannel channel =
+          FileChannel.open(inputPath, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+        return channel.map(FileChannel.MapMode.PRIVATE, 0, channel.size());
+      } catch (FileSystemException e) {
+        return null;
+      }
     }
 
     @Override
@@ -291,15 +310,34 @@ public class ExoResourcesRewriter {
     }
 
     @Override
-    public void close() throws IOException {
-      zipFile.close();
+    public void close() {
+      if (mapping != null) {
+        MappedByteBuffers.unmap(mapping);
+      }
     }
 
-    public Iterable<ZipEntry> getEntries() {
+    public Iterable<FileHeader> getEntries() {
       return entries.values();
     }
 
-    public ZipEntry getEntry(String path) {
+    /**
+     * Copies an entry to {@code zipBuilder}, including any changes made to it. Entries that were
+     * never read are streamed straight out of the apk.
+     */
+    void addEntryTo(ResourcesZipBuilder zipBuilder, String path) throws IOException {
+      FileHeader header = entries.get(path);
+      int compressionLevel = header.getMethod() == ZipEntry.STORED ? 0 : Deflater.BEST_COMPRESSION;
+      if (entryContents.containsKey(path)) {
+        addEntry(zipBuilder, path, getContent(path), compressionLevel, false);
+        return;
+      }
+      try (InputStream stream = CentralDirectory.openEntryData(zip, header)) {
+        zipBuilder.addEntry(
+            stream, header.getSize(), header.getCrc(), path, compressionLevel, false);
+      }
+    }
+
+    public FileHeader getEntry(String path) {
       return entries.get(path);
     }
 
@@ -317,13 +355,23 @@ public class ExoResourcesRewriter {
           .collect(MoreCollectors.toImmutableList());
     }
 
-    byte[] getContent(String path) {
-      return entryContents.computeIfAbsent(path, this::extractContent);
+    /**
+     * @return a little-endian view of the entry's contents. Changes made through it are seen by
+     *     every later call for the same entry.
+     */
+    ByteBuffer getContent(String path) {
+      return ResChunk.slice(entryContents.computeIfAbsent(path, this::extractContent), 0);
     }
 
-    private byte[] extractContent(String path) {
+    private ByteBuffer extractContent(String path) {
+      FileHeader header = entries.get(path);
       try {
-        return ByteStreams.toByteArray(zipFile.getInputStream(entries.get(path)));
+        if (header.getMethod() == ZipEntry.STORED) {
+          return CentralDirectory.sliceEntryData(zip, header);
+        }
+        try (InputStream stream = CentralDirectory.openEntryData(zip, header)) {
+          return ResChunk.wrap(ByteStreams.toByteArray(stream));
+        }
       } catch (IOException e) {
         throw new RuntimeException(e);
       }
@@ -331,7 +379,7 @@ public class ExoResourcesRewriter {
 
     private ResourcesXml extractXml(String path) {
       try {
-        return ResourcesXml.get(ResChunk.wrap(getContent(path)));
+        return ResourcesXml.get(getContent(path));
       } catch (Exception e) {
         throw new RuntimeException("When extracting " + path, e);
       }
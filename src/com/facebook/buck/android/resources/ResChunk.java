@@ -20,7 +20,6 @@ import com.google.common.base.Preconditions;
 import com.google.common.primitives.Shorts;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.util.Arrays;
 
 /**
  * ResChunk is the base of most structures in Android's .arsc and compiled .xml files. It consists
@@ -130,10 +129,14 @@ public abstract class ResChunk {
     }
   }
 
-  // These are some utilities used widely by subclasses for dealing with ByteBuffers.
+  // These are some utilities used widely by subclasses for dealing with ByteBuffers. Chunks are
+  // usually slices of a larger buffer, which may be a mapped file rather than a heap array, so
+  // these must not assume that the buffers have a backing array.
   static ByteBuffer copy(ByteBuffer buf) {
-    return wrap(
-        Arrays.copyOfRange(buf.array(), buf.arrayOffset(), buf.arrayOffset() + buf.limit()));
+    ByteBuffer result = wrap(new byte[buf.limit()]);
+    result.put(slice(buf, 0));
+    result.rewind();
+    return result;
   }
 
   public static ByteBuffer wrap(byte[] data) {
@@ -188,6 +188,11 @@ public abstract class AbstractCommand implements Command {
     return noCache;
   }
 
+  /** @return the number of threads given with {@code -j}, if one was. */
+  public Optional<Integer> getNumThreadsOption() {
+    return Optional.ofNullable(numThreads);
+  }
+
   public Optional<Path> getEventsOutputPath() {
     if (eventsOutputPath == null) {
       return Optional.empty();
@@ -64,6 +64,8 @@ import com.google.common.util.concurrent.UncheckedExecutionException;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
@@ -96,6 +98,8 @@ public class BuckQueryEnvironment implements QueryEnvironment {
   // traverses the graph in parallel.
   private MutableDirectedGraph<TargetNode<?, ?>> graph = MutableDirectedGraph.createConcurrent();
   private Map<BuildTarget, TargetNode<?, ?>> targetsToNodes = new ConcurrentHashMap<>();
+  // The same graph, for the traversals that cover much of it.
+  private final QueryGraphIndex graphIndex = new QueryGraphIndex();
 
   private BuckQueryEnvironment(
       Cell rootCell,
@@ -189,17 +193,21 @@ public class BuckQueryEnvironment implements QueryEnvironment {
   }
 
   TargetNode<?, ?> getNode(QueryTarget target) throws QueryException {
+    checkIsBuildTarget(target);
+    try {
+      return parserState.getTargetNode(((QueryBuildTarget) target).getBuildTarget());
+    } catch (BuildTargetException | BuildFileParseException e) {
+      throw new QueryException(e, "Error getting target node for %s\n%s", target, e.getMessage());
+    }
+  }
+
+  private static void checkIsBuildTarget(QueryTarget target) {
     if (!(target instanceof QueryBuildTarget)) {
       throw new IllegalArgumentException(
           String.format(
               "Expected %s to be a build target but it was an instance of %s",
               target, target.getClass().getName()));
     }
-    try {
-      return parserState.getTargetNode(((QueryBuildTarget) target).getBuildTarget());
-    } catch (BuildTargetException | BuildFileParseException e) {
-      throw new QueryException(e, "Error getting target node for %s\n%s", target, e.getMessage());
-    }
   }
 
   private QueryTarget getOrCreateQueryBuildTarget(BuildTarget buildTarget) {
@@ -290,6 +298,133 @@ public class BuckQueryEnvironment implements QueryEnvironment {
     return result.build();
   }
 
+  @Override
+  public Set<QueryTarget> getReverseTransitiveClosure(
+      Set<QueryTarget> universe, Set<QueryTarget> targets, int maxDepth) throws QueryException {
+    Optional<ImmutableMap<BuildTarget, TargetNode<?, ?>>> closure = lookupCachedClosure(universe);
+    if (closure.isPresent()) {
+      return getCachedReverseTransitiveClosure(closure.get(), targets, maxDepth);
+    }
+    buildTransitiveClosure(universe, Integer.MAX_VALUE);
+    BitSet universeIds = graphIndex.getTransitiveClosure(getIndexedTargets(universe));
+    return graphIndex.getReverseTransitiveClosure(universeIds, targets, maxDepth);
+  }
+
+  @Override
+  public Set<QueryTarget> getAllPaths(Set<QueryTarget> from, Set<QueryTarget> to)
+      throws QueryException {
+    Optional<ImmutableMap<BuildTarget, TargetNode<?, ?>>> closure = lookupCachedClosure(from);
+    if (closure.isPresent()) {
+      // Start from the smaller of the two sets, as QueryGraphIndex#getAllPaths does.
+      Iterable<QueryTarget> firstLevel = to;
+      if (closure.get().size() <= to.size()) {
+        firstLevel =
+            Iterables.filter(getCachedTransitiveClosure(closure.get(), from), to::contains);
+      }
+      return getCachedReverseTransitiveClosure(closure.get(), firstLevel, Integer.MAX_VALUE);
+    }
+    buildTransitiveClosure(from, Integer.MAX_VALUE);
+    return graphIndex.getAllPaths(from, to);
+  }
+
+  /**
+   * Looks up the transitive closure of the given targets in the nodes the daemon already holds, so
+   * that it needn't be built into the graph to walk the reverse edges the daemon also keeps.
+   */
+  private Optional<ImmutableMap<BuildTarget, TargetNode<?, ?>>> lookupCachedClosure(
+      Set<QueryTarget> targets) throws QueryException {
+    List<BuildTarget> buildTargets = new ArrayList<>(targets.size());
+    for (QueryTarget target : targets) {
+      checkIsBuildTarget(target);
+      buildTargets.add(((QueryBuildTarget) target).getBuildTarget());
+    }
+    Optional<ImmutableMap<BuildTarget, TargetNode<?, ?>>> closure;
+    try {
+      closure = parserState.lookupTransitiveClosure(buildTargets);
+    } catch (BuildTargetException e) {
+      throw new QueryException(
+          e, "Failed parsing: " + MoreExceptions.getHumanReadableOrLocalizedMessage(e));
+    }
+    if (!closure.isPresent()) {
+      return closure;
+    }
+    // Building the graph would have found any cycle, so this has to as well.
+    ImmutableMap<BuildTarget, TargetNode<?, ?>> nodes = closure.get();
+    try {
+      new AcyclicDepthFirstPostOrderTraversal<BuildTarget>(
+              target -> nodes.get(target).getParseDeps().iterator())
+          .traverse(buildTargets);
+    } catch (AcyclicDepthFirstPostOrderTraversal.CycleException e) {
+      throw new QueryException(e, e.getMessage());
+    }
+    return closure;
+  }
+
+  /** @return the given targets and everything they transitively depend on, breadth first. */
+  private ImmutableSet<QueryTarget> getCachedTransitiveClosure(
+      ImmutableMap<BuildTarget, TargetNode<?, ?>> closure, Set<QueryTarget> targets) {
+    ImmutableSet.Builder<QueryTarget> result = ImmutableSet.builder();
+    new AbstractBreadthFirstTraversal<BuildTarget>(
+        Iterables.transform(targets, target -> ((QueryBuildTarget) target).getBuildTarget())) {
+      @Override
+      public Iterable<BuildTarget> visit(BuildTarget target) {
+        result.add(getOrCreateQueryBuildTarget(target));
+        return closure.get(target).getParseDeps();
+      }
+    }.start();
+    return result.build();
+  }
+
+  /**
+   * Walks the reverse edges the daemon keeps level by level from the given targets that are in
+   * {@code closure}, staying within it, in the order {@link QueryGraphIndex} would.
+   */
+  private Set<QueryTarget> getCachedReverseTransitiveClosure(
+      ImmutableMap<BuildTarget, TargetNode<?, ?>> closure,
+      Iterable<QueryTarget> targets,
+      int maxDepth) {
+    Set<BuildTarget> visited = new HashSet<>();
+    List<BuildTarget> level = new ArrayList<>();
+    for (QueryTarget target : targets) {
+      if (target instanceof QueryBuildTarget) {
+        BuildTarget buildTarget = ((QueryBuildTarget) target).getBuildTarget();
+        if (closure.containsKey(buildTarget) && visited.add(buildTarget)) {
+          level.add(buildTarget);
+        }
+      }
+    }
+    ImmutableSet.Builder<QueryTarget> result = ImmutableSet.builder();
+    for (int depth = 0; !level.isEmpty(); depth++) {
+      List<BuildTarget> next = new ArrayList<>();
+      for (BuildTarget target : level) {
+        result.add(getOrCreateQueryBuildTarget(target));
+        if (depth == maxDepth) {
+          continue;
+        }
+        List<QueryTarget> dependents = new ArrayList<>();
+        for (BuildTarget dependent : parserState.getCachedDependents(target)) {
+          TargetNode<?, ?> node = closure.get(dependent);
+          if (node != null && node.getParseDeps().contains(target) && visited.add(dependent)) {
+            dependents.add(getOrCreateQueryBuildTarget(dependent));
+          }
+        }
+        Collections.sort(dependents);
+        for (QueryTarget dependent : dependents) {
+          next.add(((QueryBuildTarget) dependent).getBuildTarget());
+        }
+      }
+      level = next;
+    }
+    return result.build();
+  }
+
+  private BitSet getIndexedTargets(Set<QueryTarget> targets) {
+    for (QueryTarget target : targets) {
+      checkIsBuildTarget(target);
+    }
+    return graphIndex.getIds(targets);
+  }
+
   @Override
   public void buildTransitiveClosure(Set<QueryTarget> targets, int maxDepth) throws QueryException {
     // Filter QueryTargets that are build targets and not yet present in the build target graph.
@@ -359,6 +494,12 @@ public class BuckQueryEnvironment implements QueryEnvironment {
               Preconditions.checkNotNull(
                   targetsToNodes.get(dep), "Couldn't find TargetNode for %s", dep));
         }
+        // The traversal is post order, so the deps of the node are already in the index.
+        QueryTarget target = getOrCreateQueryBuildTarget(buildTarget);
+        if (!graphIndex.contains(target)) {
+          graphIndex.add(
+              target, Iterables.transform(node.getParseDeps(), this::getOrCreateQueryBuildTarget));
+        }
       }
     } catch (AcyclicDepthFirstPostOrderTraversal.CycleException e) {
       throw new QueryException(e, e.getMessage());
@@ -145,6 +145,22 @@ final class OwnersReport {
         Path basePath,
         Path cellRelativePath) {
       Path buckFile = cell.getFilesystem().resolve(basePath).resolve(cell.getBuildFileName());
+      // Only the owners of a file contribute to the report, so if the daemon knows who they are,
+      // they are all that need looking at.
+      if (!map.containsKey(buckFile)
+          && Files.isRegularFile(
+              cell.getFilesystem().getPathForRelativePath(cellRelativePath.toString()))) {
+        Optional<ImmutableSet<TargetNode<?, ?>>> owners =
+            parser.lookupInputOwners(cell, buckFile, cellRelativePath);
+        if (owners.isPresent()) {
+          return owners
+              .get()
+              .stream()
+              .map(
+                  targetNode -> generateOwnersReport(cell, targetNode, cellRelativePath.toString()))
+              .reduce(OwnersReport.emptyReport(), OwnersReport::updatedWith);
+        }
+      }
       ImmutableSet<TargetNode<?, ?>> targetNodes =
           map.computeIfAbsent(
               buckFile,
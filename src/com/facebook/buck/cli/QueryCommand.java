@@ -233,6 +233,8 @@ public class QueryCommand extends AbstractCommand {
   private void printDotOutput(
       CommandRunnerParams params, BuckQueryEnvironment env, Set<QueryTarget> queryResult)
       throws IOException, QueryException {
+    // Some functions answer from the nodes the daemon holds without adding them to the graph.
+    env.buildTransitiveClosure(queryResult, Integer.MAX_VALUE);
     Dot.getInstance(env.getTargetGraph(), "result_graph")
         .setNodesToFilter(env.getNodesFromQueryTargets(queryResult))
         .setNodeToName(targetNode -> targetNode.getBuildTarget().getFullyQualifiedName())
@@ -0,0 +1,258 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cli;
+
+import com.facebook.buck.query.QueryTarget;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+/**
+ * The graph of a query, with its targets numbered densely in the order they were added, so that
+ * sets of them are bitsets and their edges arrays of numbers, rather than sets of targets hashed
+ * again at every step of a traversal.
+ *
+ * <p>Targets are added after their deps, so a target's deps are all known when it is added. The
+ * reverse edges are worked out when first needed after targets were added.
+ *
+ * <p>Traversals that return targets visit them level by level, and each target's dependents in
+ * the order of the targets, rather than in the order of a hash set of the target's dependents.
+ */
+final class QueryGraphIndex {
+
+  /** Below this, the cost of farming a level out to other threads outweighs the gain. */
+  private static final int MIN_LEVEL_SIZE_FOR_PARALLEL_TRAVERSAL = 4096;
+
+  private static final int[] NO_EDGES = new int[0];
+
+  private final Map<QueryTarget, Integer> ids = new HashMap<>();
+  private final List<QueryTarget> targets = new ArrayList<>();
+  private final List<int[]> deps = new ArrayList<>();
+
+  private int[][] reverseDeps = new int[0][];
+
+  /** Adds a target, whose deps must already have been added. */
+  void add(QueryTarget target, Iterable<QueryTarget> targetDeps) {
+    Preconditions.checkState(!ids.containsKey(target), "%s was already added", target);
+    List<Integer> depIds = new ArrayList<>();
+    for (QueryTarget dep : targetDeps) {
+      Integer depId = ids.get(dep);
+      Preconditions.checkState(depId != null, "%s was added before its dep %s", target, dep);
+      depIds.add(depId);
+    }
+    ids.put(target, targets.size());
+    targets.add(target);
+    deps.add(depIds.isEmpty() ? NO_EDGES : depIds.stream().mapToInt(Integer::intValue).toArray());
+  }
+
+  boolean contains(QueryTarget target) {
+    return ids.containsKey(target);
+  }
+
+  /** @return the ids of the given targets, which must all have been added. */
+  BitSet getIds(Iterable<QueryTarget> targetsToFind) {
+    BitSet result = new BitSet(targets.size());
+    for (QueryTarget target : targetsToFind) {
+      result.set(getId(target));
+    }
+    return result;
+  }
+
+  private int getId(QueryTarget target) {
+    Integer id = ids.get(target);
+    Preconditions.checkState(id != null, "%s isn't in the graph", target);
+    return id;
+  }
+
+  /** @return the targets with the given ids, in the order of their ids. */
+  ImmutableSet<QueryTarget> getTargets(BitSet targetIds) {
+    ImmutableSet.Builder<QueryTarget> result = ImmutableSet.builder();
+    for (int id = targetIds.nextSetBit(0); id >= 0; id = targetIds.nextSetBit(id + 1)) {
+      result.add(targets.get(id));
+    }
+    return result.build();
+  }
+
+  /** @return the ids of the given targets and everything they transitively depend on. */
+  BitSet getTransitiveClosure(BitSet roots) {
+    int[][] edges = deps.toArray(new int[deps.size()][]);
+    BitSet closure = (BitSet) roots.clone();
+    BitSet level = roots;
+    while (!level.isEmpty()) {
+      BitSet next = getNeighbours(edges, level);
+      next.andNot(closure);
+      closure.or(next);
+      level = next;
+    }
+    return closure;
+  }
+
+  /** Every target in a large level is independent of the others, so they are split up. */
+  private static BitSet getNeighbours(int[][] edges, BitSet level) {
+    IntStream ids = level.stream();
+    if (level.cardinality() >= MIN_LEVEL_SIZE_FOR_PARALLEL_TRAVERSAL) {
+      ids = ids.parallel();
+    }
+    return ids.collect(
+        BitSet::new,
+        (neighbours, id) -> {
+          for (int neighbour : edges[id]) {
+            neighbours.set(neighbour);
+          }
+        },
+        BitSet::or);
+  }
+
+  /**
+   * @return the given targets that are in {@code universe}, followed by the targets in {@code
+   *     universe} that transitively depend on them through targets in {@code universe}, up to
+   *     {@code maxDepth} edges away, nearest first.
+   */
+  ImmutableSet<QueryTarget> getReverseTransitiveClosure(
+      BitSet universe, Iterable<QueryTarget> roots, int maxDepth) {
+    BitSet visited = new BitSet(targets.size());
+    int[] level = new int[targets.size()];
+    int levelSize = 0;
+    for (QueryTarget root : roots) {
+      Integer id = ids.get(root);
+      if (id != null && universe.get(id) && !visited.get(id)) {
+        visited.set(id);
+        level[levelSize++] = id;
+      }
+    }
+    return getReachable(universe, visited, level, levelSize, maxDepth);
+  }
+
+  /**
+   * @return the targets on the paths from the targets in {@code from} to the targets in {@code
+   *     to}: those of {@code to} that {@code from} transitively depends on, followed by the
+   *     targets they are depended on through, nearest first. The first ones come in the order of
+   *     the smaller of {@code to} and the transitive closure of {@code from}, taken breadth first,
+   *     as when intersecting the two sets.
+   */
+  ImmutableSet<QueryTarget> getAllPaths(Iterable<QueryTarget> from, Set<QueryTarget> to) {
+    BitSet closure = getTransitiveClosure(getIds(from));
+    Iterable<QueryTarget> firstLevel = to;
+    if (closure.cardinality() <= to.size()) {
+      firstLevel = Iterables.filter(getTransitiveClosureInBreadthFirstOrder(from), to::contains);
+    }
+    return getReverseTransitiveClosure(closure, firstLevel, Integer.MAX_VALUE);
+  }
+
+  /**
+   * @return the given targets and everything they transitively depend on, each target's deps in
+   *     the order they were added in.
+   */
+  private List<QueryTarget> getTransitiveClosureInBreadthFirstOrder(Iterable<QueryTarget> roots) {
+    BitSet visited = new BitSet(targets.size());
+    int[] queue = new int[targets.size()];
+    int size = 0;
+    for (QueryTarget root : roots) {
+      int id = getId(root);
+      if (!visited.get(id)) {
+        visited.set(id);
+        queue[size++] = id;
+      }
+    }
+    for (int i = 0; i < size; i++) {
+      for (int dep : deps.get(queue[i])) {
+        if (!visited.get(dep)) {
+          visited.set(dep);
+          queue[size++] = dep;
+        }
+      }
+    }
+    List<QueryTarget> result = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      result.add(targets.get(queue[i]));
+    }
+    return result;
+  }
+
+  /**
+   * Walks the reverse edges level by level from the given first level, already marked visited,
+   * staying within {@code universe}.
+   */
+  private ImmutableSet<QueryTarget> getReachable(
+      BitSet universe, BitSet visited, int[] level, int levelSize, int maxDepth) {
+    int[][] edges = getReverseDeps();
+    ImmutableSet.Builder<QueryTarget> result = ImmutableSet.builder();
+    int[] next = new int[level.length];
+    for (int depth = 0; levelSize > 0; depth++) {
+      int nextSize = 0;
+      for (int i = 0; i < levelSize; i++) {
+        int id = level[i];
+        result.add(targets.get(id));
+        if (depth == maxDepth) {
+          continue;
+        }
+        for (int dependent : edges[id]) {
+          if (universe.get(dependent) && !visited.get(dependent)) {
+            visited.set(dependent);
+            next[nextSize++] = dependent;
+          }
+        }
+      }
+      int[] swap = level;
+      level = next;
+      next = swap;
+      levelSize = nextSize;
+    }
+    return result.build();
+  }
+
+  /** The dependents of every target, in the order of the targets. */
+  private int[][] getReverseDeps() {
+    if (reverseDeps.length == targets.size()) {
+      return reverseDeps;
+    }
+    int size = targets.size();
+    int[] counts = new int[size];
+    for (int[] targetDeps : deps) {
+      for (int dep : targetDeps) {
+        counts[dep]++;
+      }
+    }
+    int[][] result = new int[size][];
+    for (int id = 0; id < size; id++) {
+      result[id] = counts[id] == 0 ? NO_EDGES : new int[counts[id]];
+      counts[id] = 0;
+    }
+    // Filling the edges in from the targets in order leaves every list of dependents sorted.
+    int[] order =
+        IntStream.range(0, size)
+            .boxed()
+            .sorted(Comparator.comparing(targets::get))
+            .mapToInt(Integer::intValue)
+            .toArray();
+    for (int id : order) {
+      for (int dep : deps.get(id)) {
+        result[dep][counts[dep]++] = id;
+      }
+    }
+    reverseDeps = result;
+    return result;
+  }
+}
@@ -252,7 +252,11 @@ public class TestCommand extends BuildCommand {
     if (isDebugEnabled()) {
       return 1;
     }
-    return buckConfig.getNumThreads();
+    // An explicit -j applies to the tests as well as the build.
+    if (getNumThreadsOption().isPresent()) {
+      return getNumThreadsOption().get();
+    }
+    return buckConfig.getInteger("test", "threads").orElse(buckConfig.getNumThreads());
   }
 
   public int getNumTestManagedThreads(ResourcesConfig resourcesConfig) {
@@ -279,7 +283,8 @@ public class TestCommand extends BuildCommand {
             .setPathToJavaAgent(Optional.ofNullable(pathToJavaAgent))
             .setCoverageReportFormats(coverageFormats)
             .setCoverageReportTitle(coverageReportTitle)
-            .setEnvironmentOverrides(environmentOverrides);
+            .setEnvironmentOverrides(environmentOverrides)
+            .setJavaTestWorkers(params.getBuckConfig().getInteger("test", "java_test_workers"));
 
     Optional<ImmutableList<String>> coverageIncludes =
         params.getBuckConfig().getOptionalListWithoutComments("test", "coverageIncludes", ',');
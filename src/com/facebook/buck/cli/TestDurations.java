@@ -0,0 +1,116 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cli;
+
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.util.ObjectMappers;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * How long the steps of each test rule took the last time they ran, kept in buck-out from one run
+ * to the next.
+ *
+ * <p>Tests handed to a fixed number of threads longest first finish soonest overall: a long test
+ * started last would otherwise keep one thread busy after all the others have run out of work.
+ */
+final class TestDurations {
+  private static final Logger LOG = Logger.get(TestDurations.class);
+
+  private static final String FILE_NAME = "test_durations.json";
+
+  private final ProjectFilesystem filesystem;
+  private final Path path;
+  private final Map<String, Long> durations;
+
+  private TestDurations(ProjectFilesystem filesystem, Path path, Map<String, Long> durations) {
+    this.filesystem = filesystem;
+    this.path = path;
+    this.durations = new ConcurrentHashMap<>(durations);
+  }
+
+  /** @return the durations recorded in the given filesystem's buck-out, if any. */
+  static TestDurations load(ProjectFilesystem filesystem) {
+    Path path = filesystem.getBuckPaths().getLogDir().resolve(FILE_NAME);
+    Map<String, Long> durations = ImmutableMap.of();
+    if (filesystem.isFile(path)) {
+      try (InputStream input = filesystem.newFileInputStream(path)) {
+        durations =
+            ObjectMappers.READER
+                .forType(new TypeReference<Map<String, Long>>() {})
+                .readValue(input);
+      } catch (IOException e) {
+        // They only decide the order the tests start in, so they can always be recorded afresh.
+        LOG.warn(e, "Unable to read test durations from %s.", path);
+      }
+    }
+    return new TestDurations(filesystem, path, durations);
+  }
+
+  Optional<Long> get(BuildTarget target) {
+    return Optional.ofNullable(durations.get(target.getFullyQualifiedName()));
+  }
+
+  /** Records how long the steps of a test rule took, replacing what was recorded before. */
+  void record(BuildTarget target, long millis) {
+    durations.put(target.getFullyQualifiedName(), millis);
+  }
+
+  /**
+   * @return the given items, those of tests that ran before longest first, after those of tests
+   *     that never did, which could take any time, in the order they were given.
+   */
+  <T> ImmutableList<T> sortLongestFirst(Iterable<T> items, Function<T, BuildTarget> getTarget) {
+    List<T> sorted = new ArrayList<>();
+    for (T item : items) {
+      sorted.add(item);
+    }
+    // The sort is stable, so tests that took as long as each other keep their order.
+    sorted.sort(
+        Comparator.<T, Long>comparing(
+                item -> get(getTarget.apply(item)).orElse(Long.MAX_VALUE))
+            .reversed());
+    return ImmutableList.copyOf(sorted);
+  }
+
+  /** Writes the durations back to buck-out, for the next run to start its tests in order. */
+  void save() {
+    try {
+      filesystem.mkdirs(path.getParent());
+      try (OutputStream output = filesystem.newFileOutputStream(path)) {
+        ObjectMappers.WRITER.writeValue(output, new TreeMap<>(durations));
+      }
+    } catch (IOException e) {
+      LOG.warn(e, "Unable to write test durations to %s.", path);
+    }
+  }
+}
@@ -294,7 +294,11 @@ public class TestRunning {
       }
     }
 
-    for (TestRun testRun : parallelTestRuns) {
+    // The executor starts tests in the order they are submitted, as its threads become free, so
+    // submitting the longest first keeps the last threads to finish from being left with them.
+    TestDurations durations = TestDurations.load(params.getCell().getFilesystem());
+    for (TestRun testRun :
+        durations.sortLongestFirst(parallelTestRuns, run -> run.getTest().getBuildTarget())) {
       ListenableFuture<TestResults> testResults =
           runStepsAndYieldResult(
               stepRunner,
@@ -303,7 +307,8 @@ public class TestRunning {
               testRun.getTestResultsCallable(),
               testRun.getTest().getBuildTarget(),
               params.getBuckEventBus(),
-              service);
+              service,
+              durations);
       results.add(
           transformTestResults(
               params,
@@ -340,7 +345,8 @@ public class TestRunning {
                               testRun.getTestResultsCallable(),
                               testRun.getTest().getBuildTarget(),
                               params.getBuckEventBus(),
-                              directExecutorService),
+                              directExecutorService,
+                              durations),
                           testRun.getTest(),
                           testRun.getTestReportingCallback(),
                           testTargets,
@@ -389,6 +395,8 @@ public class TestRunning {
       }
       Threads.interruptCurrentThread();
       throw e;
+    } finally {
+      durations.save();
     }
 
     params.getBuckEventBus().post(TestRunEvent.finished(testTargets, completedResults));
@@ -796,15 +804,21 @@ public class TestRunning {
       final Callable<TestResults> interpretResults,
       final BuildTarget buildTarget,
       BuckEventBus eventBus,
-      ListeningExecutorService listeningExecutorService) {
+      ListeningExecutorService listeningExecutorService,
+      TestDurations durations) {
     Preconditions.checkState(!listeningExecutorService.isShutdown());
     Callable<TestResults> callable =
         () -> {
           LOG.debug("Test steps will run for %s", buildTarget);
           eventBus.post(TestRuleEvent.started(buildTarget));
+          long start = System.currentTimeMillis();
           for (Step step : steps) {
             stepRunner.runStepForBuildTarget(context, step, Optional.of(buildTarget));
           }
+          // A test with no steps has cached results, which say nothing about how long it takes.
+          if (!steps.isEmpty()) {
+            durations.record(buildTarget, System.currentTimeMillis() - start);
+          }
           LOG.debug("Test steps did run for %s", buildTarget);
           eventBus.post(TestRuleEvent.finished(buildTarget));
 
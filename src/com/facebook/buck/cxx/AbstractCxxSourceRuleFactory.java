@@ -369,7 +369,8 @@ abstract class AbstractCxxSourceRuleFactory {
         source.getPath(),
         source.getType(),
         getSanitizerForSourceType(source.getType()),
-        getSandboxTree());
+        getSandboxTree(),
+        getCxxBuckConfig().shouldCacheCompileOutputs());
   }
 
   @VisibleForTesting
@@ -520,7 +521,8 @@ abstract class AbstractCxxSourceRuleFactory {
         source.getType(),
         precompiledHeaderRule,
         getSanitizerForSourceType(source.getType()),
-        getSandboxTree());
+        getSandboxTree(),
+        getCxxBuckConfig().shouldCacheCompileOutputs());
   }
 
   Optional<CxxPrecompiledHeader> getOptionalPrecompiledHeader(
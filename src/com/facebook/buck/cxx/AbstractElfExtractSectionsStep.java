@@ -0,0 +1,82 @@
+/*
+ * Copyright 2016-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import com.facebook.buck.cxx.toolchain.elf.ElfSectionExtractor;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.StepExecutionResult;
+import com.facebook.buck.util.immutables.BuckStylePackageVisibleTuple;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableSet;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.immutables.value.Value;
+
+/** A step which extracts specific sections from an ELF file into a new ELF file. */
+@Value.Immutable
+@BuckStylePackageVisibleTuple
+abstract class AbstractElfExtractSectionsStep implements Step {
+
+  abstract ImmutableSet<String> getSections();
+
+  abstract ProjectFilesystem getInputFilesystem();
+
+  abstract Path getInput();
+
+  abstract ProjectFilesystem getOutputFilesystem();
+
+  abstract Path getOutput();
+
+  @Value.Check
+  void check() {
+    Preconditions.checkState(!getInput().isAbsolute());
+    Preconditions.checkState(!getOutput().isAbsolute());
+  }
+
+  @Override
+  public StepExecutionResult execute(ExecutionContext context) throws IOException {
+    try (FileChannel input =
+            FileChannel.open(getInputFilesystem().resolve(getInput()), StandardOpenOption.READ);
+        FileChannel output =
+            FileChannel.open(
+                getOutputFilesystem().resolve(getOutput()),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+      ElfSectionExtractor.extract(input, output, getSections());
+    }
+    return StepExecutionResult.SUCCESS;
+  }
+
+  @Override
+  public final String getShortName() {
+    return "elf_extract_sections";
+  }
+
+  @Override
+  public String getDescription(ExecutionContext context) {
+    return String.format(
+        "Extract sections %s of %s into %s",
+        getSections(),
+        getInputFilesystem().resolve(getInput()),
+        getOutputFilesystem().resolve(getOutput()));
+  }
+}
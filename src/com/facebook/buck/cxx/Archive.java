@@ -207,7 +207,10 @@ public class Archive extends AbstractBuildRule implements SupportsInputBasedRule
                   context.getBuildCellRootPath(), getProjectFilesystem(), getScratchPath())));
     }
 
-    builder.add(
+    ImmutableList<Path> inputPaths =
+        inputs.stream().map(resolver::getRelativePath).collect(MoreCollectors.toImmutableList());
+    ImmutableList.Builder<Step> archiveSteps = ImmutableList.builder();
+    archiveSteps.add(
         new ArchiveStep(
             getProjectFilesystem(),
             archiver.getEnvironment(resolver),
@@ -215,15 +218,12 @@ public class Archive extends AbstractBuildRule implements SupportsInputBasedRule
             archiverFlags,
             archiver.getArchiveOptions(contents == ArchiveContents.THIN),
             output,
-            inputs
-                .stream()
-                .map(resolver::getRelativePath)
-                .collect(MoreCollectors.toImmutableList()),
+            inputPaths,
             archiver,
             getScratchPath()));
 
     if (archiver.isRanLibStepRequired()) {
-      builder.add(
+      archiveSteps.add(
           new RanlibStep(
               getBuildTarget(),
               getProjectFilesystem(),
@@ -233,6 +233,20 @@ public class Archive extends AbstractBuildRule implements SupportsInputBasedRule
               output));
     }
 
+    // Extra flags could ask the tools for anything, so only archives without any are written
+    // in-process.
+    if (archiver.supportsInProcessArchiving() && archiverFlags.isEmpty() && ranlibFlags.isEmpty()) {
+      builder.add(
+          new GnuArchiveStep(
+              getProjectFilesystem(),
+              output,
+              inputPaths,
+              contents == ArchiveContents.THIN,
+              archiveSteps.build()));
+    } else {
+      builder.addAll(archiveSteps.build());
+    }
+
     if (!archiver.getScrubbers().isEmpty()) {
       builder.add(new FileScrubberStep(getProjectFilesystem(), output, archiver.getScrubbers()));
     }
@@ -23,6 +23,7 @@ import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.StepExecutionResult;
 import com.facebook.buck.util.CommandSplitter;
+import com.facebook.buck.util.MoreCollectors;
 import com.facebook.buck.util.ProcessExecutor;
 import com.facebook.buck.util.ProcessExecutorParams;
 import com.google.common.base.Joiner;
@@ -82,10 +83,19 @@ class ArchiveStep implements Step {
   }
 
   private ImmutableList<String> getAllInputs() throws IOException {
-    ImmutableList.Builder<String> allInputs = ImmutableList.builder();
+    return getAllInputs(filesystem, inputs)
+        .stream()
+        .map(Object::toString)
+        .collect(MoreCollectors.toImmutableList());
+  }
 
-    // Inputs can either be files or directories.  In the case of the latter, we add all files
-    // found from a recursive search.
+  /**
+   * Inputs can either be files or directories. In the case of the latter, we add all files found
+   * from a recursive search, by their absolute paths.
+   */
+  static ImmutableList<Path> getAllInputs(ProjectFilesystem filesystem, ImmutableList<Path> inputs)
+      throws IOException {
+    ImmutableList.Builder<Path> allInputs = ImmutableList.builder();
     for (Path input : inputs) {
       if (filesystem.isDirectory(input)) {
         // We make sure to sort the files we find under the directories so that we get
@@ -100,9 +110,11 @@ class ArchiveStep implements Step {
                 return FileVisitResult.CONTINUE;
               }
             });
-        allInputs.addAll(dirFiles);
+        for (String dirFile : dirFiles) {
+          allInputs.add(filesystem.getPath(dirFile));
+        }
       } else {
-        allInputs.add(input.toString());
+        allInputs.add(input);
       }
     }
 
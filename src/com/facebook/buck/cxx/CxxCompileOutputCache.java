@@ -0,0 +1,439 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import com.facebook.buck.cxx.toolchain.Compiler;
+import com.facebook.buck.cxx.toolchain.DependencyTrackingMode;
+import com.facebook.buck.io.file.MoreFiles;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.model.BuildId;
+import com.facebook.buck.model.Either;
+import com.facebook.buck.rules.AddsToRuleKey;
+import com.facebook.buck.rules.BuildRule;
+import com.facebook.buck.rules.NonHashableSourcePathContainer;
+import com.facebook.buck.rules.RuleKeyObjectSink;
+import com.facebook.buck.rules.SourcePath;
+import com.facebook.buck.rules.SourcePathResolver;
+import com.facebook.buck.rules.SourceWithFlags;
+import com.facebook.buck.rules.args.Arg;
+import com.facebook.buck.rules.keys.AlterRuleKeys;
+import com.facebook.buck.util.DirectoryCacheTrimmer;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Charsets;
+import com.google.common.base.Supplier;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.annotation.Nullable;
+
+/**
+ * A local store of the outputs of compilations, shared by every rule in the project, so that a
+ * source compiled the same way by several rules (typically several flavors of the same library) is
+ * only compiled once.
+ *
+ * <p>Outputs are stored under a key covering the compiler command (other than the paths it writes
+ * to), what the compiler tool and the arguments add to rule keys, with the contents of the files
+ * they reference, the contents of any other file named by an argument, the contents of the source,
+ * and the fingerprint of the headers that the preprocessor can see. Files that the compiler read
+ * besides those, such as headers found through {@code -isystem} or {@code --sysroot}, are taken
+ * from the dep file and stored with their hashes; the outputs are only reused if they still match.
+ *
+ * <p>The store lives in the scratch directory, is trimmed to {@link #MAX_SIZE_BYTES} by deleting
+ * the entries used least recently, and is emptied by {@code buck clean}.
+ */
+final class CxxCompileOutputCache {
+  private static final Logger LOG = Logger.get(CxxCompileOutputCache.class);
+
+  @VisibleForTesting static final long MAX_SIZE_BYTES = 1024L * 1024 * 1024;
+
+  private static final String CACHE_DIR = "__cxx_compile_cache__";
+  private static final String OUTPUT = "output";
+  private static final String DEP_FILE = "depfile";
+  private static final String STDERR = "stderr";
+  private static final String DEPENDENCIES = "dependencies";
+
+  // Flags naming profile data, which the compiler reads without listing it in the dep file. If the
+  // data isn't a file we can hash, the compilation can't be cached.
+  private static final ImmutableList<String> PROFILE_FLAGS =
+      ImmutableList.of(
+          "-fprofile-use", "-fprofile-instr-use", "-fprofile-sample-use", "-fauto-profile");
+
+  // Hashes of the files that keys and dependencies cover, kept for as long as the files don't
+  // change, so that the compiler and common headers aren't hashed again for every compilation.
+  private static final Cache<Path, FileHash> FILE_HASHES =
+      CacheBuilder.newBuilder().softValues().build();
+
+  private final ProjectFilesystem filesystem;
+  private final SourcePathResolver resolver;
+  private final Optional<PreprocessorDelegate> preprocessorDelegate;
+  private final Compiler compiler;
+  private final ImmutableList<Arg> arguments;
+
+  CxxCompileOutputCache(
+      ProjectFilesystem filesystem,
+      SourcePathResolver resolver,
+      Optional<PreprocessorDelegate> preprocessorDelegate,
+      Compiler compiler,
+      ImmutableList<Arg> arguments) {
+    this.filesystem = filesystem;
+    this.resolver = resolver;
+    this.preprocessorDelegate = preprocessorDelegate;
+    this.compiler = compiler;
+    this.arguments = arguments;
+  }
+
+  /**
+   * @param command everything that determines the compiler's output other than its input files:
+   *     the command, its environment and arguments, with the paths of its outputs left out.
+   * @return the key to store the compilation's outputs under, or nothing if they can't be stored.
+   */
+  Optional<String> getKey(BuildId buildId, Iterable<String> command, Path input)
+      throws IOException {
+    Hasher hasher = Hashing.sha1().newHasher();
+    for (String part : command) {
+      hasher.putString(part, Charsets.UTF_8);
+      hasher.putBoolean(false); // separator
+      if (!hashNamedFile(hasher, part)) {
+        return Optional.empty();
+      }
+    }
+    try {
+      KeySink sink = new KeySink(hasher);
+      sink.setReflectively("compiler", compiler).setReflectively("arguments", arguments);
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+    if (preprocessorDelegate.isPresent()) {
+      Optional<HashCode> headers = preprocessorDelegate.get().getHeaderSetFingerprint(buildId);
+      if (!headers.isPresent()) {
+        return Optional.empty();
+      }
+      hasher.putBytes(headers.get().asBytes());
+    }
+    hasher.putBytes(filesystem.computeSha1(input).getHash().getBytes(Charsets.UTF_8));
+    return Optional.of(hasher.hash().toString());
+  }
+
+  /**
+   * Copies the outputs stored under the given key into place.
+   *
+   * @return the compiler's diagnostics, or nothing if no usable outputs are stored under the key.
+   */
+  Optional<String> restore(String key, Path output, Optional<Path> depFile) {
+    Path entry = getEntryPath(key);
+    if (!Files.isDirectory(entry)) {
+      return Optional.empty();
+    }
+    try {
+      if (!dependenciesAreUnchanged(entry)) {
+        LOG.debug("Dropping %s, as a file it was compiled from has changed.", entry);
+        MoreFiles.deleteRecursivelyIfExists(entry);
+        return Optional.empty();
+      }
+      DirectoryCacheTrimmer.markUsed(entry);
+      Files.copy(
+          entry.resolve(OUTPUT), filesystem.resolve(output), StandardCopyOption.REPLACE_EXISTING);
+      if (depFile.isPresent()) {
+        Files.copy(
+            entry.resolve(DEP_FILE),
+            filesystem.resolve(depFile.get()),
+            StandardCopyOption.REPLACE_EXISTING);
+      }
+      return Optional.of(new String(Files.readAllBytes(entry.resolve(STDERR)), Charsets.UTF_8));
+    } catch (IOException e) {
+      // The entry may have been trimmed or replaced while we read it; just compile instead.
+      LOG.debug(e, "Unable to restore the outputs of compiling to %s.", output);
+      return Optional.empty();
+    }
+  }
+
+  /**
+   * Stores the outputs of a successful compilation under the given key.
+   *
+   * @param input the source compiled, which the key covers already.
+   */
+  void store(String key, Path input, Path output, Optional<Path> depFile, String stderr) {
+    Path entry = getEntryPath(key);
+    Path tempEntry = null;
+    try {
+      Files.createDirectories(entry.getParent());
+      // Entries are written aside and moved into place whole, so that a reader never sees a
+      // partial one and rules storing the same entry at the same time don't trip over each other.
+      // The name starts with a dot so that the cache isn't trimmed of it while it is written.
+      tempEntry = Files.createTempDirectory(entry.getParent(), "." + key);
+      Files.copy(filesystem.resolve(output), tempEntry.resolve(OUTPUT));
+      if (depFile.isPresent()) {
+        Files.copy(filesystem.resolve(depFile.get()), tempEntry.resolve(DEP_FILE));
+        writeDependencies(tempEntry.resolve(DEPENDENCIES), depFile.get(), input);
+      }
+      Files.write(tempEntry.resolve(STDERR), stderr.getBytes(Charsets.UTF_8));
+      long size = 0;
+      try (Stream<Path> files = Files.list(tempEntry)) {
+        for (Path file : (Iterable<Path>) files::iterator) {
+          size += Files.size(file);
+        }
+      }
+      Files.move(tempEntry, entry, StandardCopyOption.ATOMIC_MOVE);
+      tempEntry = null;
+      DirectoryCacheTrimmer.onStored(getCacheRoot(), MAX_SIZE_BYTES, size);
+    } catch (FileAlreadyExistsException | DirectoryNotEmptyException e) {
+      // Someone else stored the same outputs first
+    } catch (IOException e) {
+      LOG.warn(e, "Unable to store the outputs of compiling to %s.", output);
+    } finally {
+      if (tempEntry != null) {
+        try {
+          MoreFiles.deleteRecursivelyIfExists(tempEntry);
+        } catch (IOException e) {
+          LOG.warn(e, "Unable to delete %s.", tempEntry);
+        }
+      }
+    }
+  }
+
+  /**
+   * Records the hashes of the files in the dep file that nothing else in the key covers: headers
+   * outside of the header set, and files named by flags, like {@code -fsanitize-blacklist}.
+   */
+  private void writeDependencies(Path dependencies, Path depFile, Path input) throws IOException {
+    Path absoluteInput = filesystem.resolve(input).normalize();
+    Optional<HeaderPathNormalizer> headerPathNormalizer =
+        preprocessorDelegate.map(PreprocessorDelegate::getHeaderPathNormalizer);
+    List<String> lines = new ArrayList<>();
+    for (String rawPath : readDependencies(depFile)) {
+      Path path = filesystem.resolve(rawPath).normalize();
+      if (path.equals(absoluteInput)
+          || (headerPathNormalizer.isPresent()
+              && headerPathNormalizer.get().getAbsolutePathForUnnormalizedPath(path).isPresent())) {
+        continue;
+      }
+      lines.add(hashFile(path) + " " + path);
+    }
+    Files.write(dependencies, lines, Charsets.UTF_8);
+  }
+
+  private List<String> readDependencies(Path depFile) throws IOException {
+    if (compiler.getDependencyTrackingMode() == DependencyTrackingMode.SHOW_INCLUDES) {
+      return filesystem.readLines(depFile);
+    }
+    try (Reader reader = Files.newBufferedReader(filesystem.resolve(depFile), Charsets.UTF_8)) {
+      return Depfiles.parseDepfile(reader).getPrereqs();
+    }
+  }
+
+  private static boolean dependenciesAreUnchanged(Path entry) throws IOException {
+    Path dependencies = entry.resolve(DEPENDENCIES);
+    if (!Files.exists(dependencies)) {
+      return true;
+    }
+    for (String line : Files.readAllLines(dependencies, Charsets.UTF_8)) {
+      int separator = line.indexOf(' ');
+      Path path = entry.getFileSystem().getPath(line.substring(separator + 1));
+      if (!Files.isRegularFile(path) || !hashFile(path).equals(line.substring(0, separator))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Hashes the contents of the file that an argument names, either as a whole or as the value of a
+   * flag, like {@code -fprofile-use=<path>}.
+   *
+   * @return whether the argument can be cached.
+   */
+  private boolean hashNamedFile(Hasher hasher, String argument) throws IOException {
+    int equals = argument.indexOf('=');
+    String flag = equals == -1 ? argument : argument.substring(0, equals);
+    String value =
+        equals == -1 || !argument.startsWith("-") ? argument : argument.substring(equals + 1);
+    Optional<Path> path = Optional.empty();
+    if (!value.isEmpty() && !value.startsWith("-") && !value.startsWith("<")) {
+      try {
+        path = Optional.of(filesystem.resolve(value)).filter(Files::isRegularFile);
+      } catch (IllegalArgumentException e) {
+        // Not a path at all
+      }
+    }
+    if (path.isPresent()) {
+      hasher.putString(hashFile(path.get()), Charsets.UTF_8);
+      return true;
+    }
+    return !PROFILE_FLAGS.contains(flag);
+  }
+
+  private Path getCacheRoot() {
+    return filesystem.resolve(filesystem.getBuckPaths().getScratchDir()).resolve(CACHE_DIR);
+  }
+
+  private Path getEntryPath(String key) {
+    return getCacheRoot().resolve(key.substring(0, 2)).resolve(key);
+  }
+
+  private static String hashFile(Path path) throws IOException {
+    BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+    FileHash cached = FILE_HASHES.getIfPresent(path);
+    if (cached != null && cached.matches(attributes)) {
+      return cached.hash;
+    }
+    FileHash hash =
+        new FileHash(
+            attributes,
+            com.google.common.io.Files.asByteSource(path.toFile())
+                .hash(Hashing.sha1())
+                .toString());
+    FILE_HASHES.put(path, hash);
+    return hash.hash;
+  }
+
+  private static String hashDirectory(Path directory) throws IOException {
+    Hasher hasher = Hashing.sha1().newHasher();
+    List<Path> files;
+    try (Stream<Path> walk = Files.walk(directory)) {
+      files = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+    }
+    for (Path file : files) {
+      hasher.putString(directory.relativize(file).toString(), Charsets.UTF_8);
+      hasher.putString(hashFile(file), Charsets.UTF_8);
+    }
+    return hasher.hash().toString();
+  }
+
+  @VisibleForTesting
+  static void invalidateFileHashes() {
+    FILE_HASHES.invalidateAll();
+  }
+
+  private static final class FileHash {
+    private final long size;
+    private final long lastModifiedMillis;
+    private final String hash;
+
+    private FileHash(BasicFileAttributes attributes, String hash) {
+      this.size = attributes.size();
+      this.lastModifiedMillis = attributes.lastModifiedTime().toMillis();
+      this.hash = hash;
+    }
+
+    private boolean matches(BasicFileAttributes attributes) {
+      return size == attributes.size()
+          && lastModifiedMillis == attributes.lastModifiedTime().toMillis();
+    }
+  }
+
+  /**
+   * Adds what the compiler and arguments contribute to their rule keys to the cache key. The rule
+   * keys themselves can't be used, as building them needs the whole action graph, but the values
+   * are walked the same way, with the contents of every {@link SourcePath} hashed in.
+   */
+  private class KeySink implements RuleKeyObjectSink {
+    private final Hasher hasher;
+
+    private KeySink(Hasher hasher) {
+      this.hasher = hasher;
+    }
+
+    @Override
+    public RuleKeyObjectSink setReflectively(String key, @Nullable Object val) {
+      hasher.putString(key, Charsets.UTF_8);
+      setValue(val);
+      return this;
+    }
+
+    @Override
+    public RuleKeyObjectSink setPath(Path absolutePath, Path ideallyRelative) throws IOException {
+      hasher.putString(ideallyRelative.toString(), Charsets.UTF_8);
+      hasher.putString(hashFile(absolutePath), Charsets.UTF_8);
+      return this;
+    }
+
+    private void setValue(@Nullable Object val) {
+      hasher.putChar('(');
+      try {
+        if (val == null) {
+          hasher.putBoolean(false);
+        } else if (val instanceof AddsToRuleKey) {
+          AlterRuleKeys.amendKey(this, (AddsToRuleKey) val);
+        } else if (val instanceof BuildRule) {
+          BuildRule rule = (BuildRule) val;
+          hasher.putString(rule.getBuildTarget().toString(), Charsets.UTF_8);
+          setValue(rule.getSourcePathToOutput());
+        } else if (val instanceof Supplier) {
+          setValue(((Supplier<?>) val).get());
+        } else if (val instanceof Optional) {
+          setValue(((Optional<?>) val).orElse(null));
+        } else if (val instanceof Either) {
+          Either<?, ?> either = (Either<?, ?>) val;
+          hasher.putBoolean(either.isLeft());
+          setValue(either.isLeft() ? either.getLeft() : either.getRight());
+        } else if (val instanceof Iterable && !(val instanceof Path)) {
+          ((Iterable<?>) val).forEach(this::setValue);
+        } else if (val instanceof Iterator) {
+          ((Iterator<?>) val).forEachRemaining(this::setValue);
+        } else if (val instanceof Map) {
+          for (Map.Entry<?, ?> entry : ((Map<?, ?>) val).entrySet()) {
+            setValue(entry.getKey());
+            setValue(entry.getValue());
+          }
+        } else if (val instanceof SourcePath) {
+          Path path = resolver.getAbsolutePath((SourcePath) val);
+          hasher.putString(path.toString(), Charsets.UTF_8);
+          hasher.putString(
+              Files.isDirectory(path) ? hashDirectory(path) : hashFile(path), Charsets.UTF_8);
+        } else if (val instanceof NonHashableSourcePathContainer) {
+          hasher.putString(
+              resolver
+                  .getAbsolutePath(((NonHashableSourcePathContainer) val).getSourcePath())
+                  .toString(),
+              Charsets.UTF_8);
+        } else if (val instanceof SourceWithFlags) {
+          setValue(((SourceWithFlags) val).getSourcePath());
+          setValue(((SourceWithFlags) val).getFlags());
+        } else if (val instanceof byte[]) {
+          hasher.putBytes((byte[]) val);
+        } else {
+          // Rule keys only take values whose string forms tell them apart.
+          hasher.putString(val.getClass().getName(), Charsets.UTF_8);
+          hasher.putString(String.valueOf(val), Charsets.UTF_8);
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      hasher.putChar(')');
+    }
+  }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import com.facebook.buck.io.file.FileFingerprint;
+import com.facebook.buck.model.BuildId;
+import com.facebook.buck.rules.SourcePath;
+import com.facebook.buck.rules.SourcePathResolver;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Charsets;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.annotation.Nullable;
+
+/**
+ * Fingerprints the headers a preprocessor can see: the names it can include them by, where it
+ * searches for them, and their contents.
+ *
+ * <p>The same header packs are included by thousands of translation units, so each pack is only
+ * fingerprinted once per build, and the contents of each header are only rehashed when its file
+ * changes.
+ */
+final class CxxHeaderSetFingerprint {
+  private static final Cache<CxxHeaders, PackFingerprint> PACK_FINGERPRINTS =
+      CacheBuilder.newBuilder().softValues().build();
+  private static final Cache<Path, ContentHash> CONTENT_HASHES =
+      CacheBuilder.newBuilder().softValues().build();
+
+  private CxxHeaderSetFingerprint() {}
+
+  static HashCode of(
+      BuildId buildId,
+      SourcePathResolver resolver,
+      Iterable<CxxHeaders> includes,
+      Optional<SourcePath> prefixHeader)
+      throws IOException {
+    Hasher hasher = Hashing.sha1().newHasher();
+    for (CxxHeaders headers : includes) {
+      hasher.putBytes(getPackFingerprint(buildId, resolver, headers).asBytes());
+    }
+    if (prefixHeader.isPresent()) {
+      hasher.putBytes(hashContents(resolver.getAbsolutePath(prefixHeader.get())).asBytes());
+    }
+    return hasher.hash();
+  }
+
+  private static HashCode getPackFingerprint(
+      BuildId buildId, SourcePathResolver resolver, CxxHeaders headers) throws IOException {
+    PackFingerprint cached = PACK_FINGERPRINTS.getIfPresent(headers);
+    if (cached != null && cached.buildId.equals(buildId)) {
+      return cached.hash;
+    }
+
+    HeaderPathNormalizer.Builder builder = new HeaderPathNormalizer.Builder(resolver);
+    headers.addToHeaderPathNormalizer(builder);
+    ImmutableSortedMap<Path, SourcePath> paths =
+        ImmutableSortedMap.copyOf(builder.build().getNormalizedPaths());
+
+    Hasher hasher = Hashing.sha1().newHasher();
+    hasher.putString(headers.getIncludeType().toString(), Charsets.UTF_8);
+    putPath(hasher, resolver, headers.getIncludeRoot());
+    Optional<SourcePath> headerMap = headers.getHeaderMap();
+    if (headerMap.isPresent()) {
+      hasher.putBytes(hashContents(resolver.getAbsolutePath(headerMap.get())).asBytes());
+    }
+    for (Map.Entry<Path, SourcePath> entry : paths.entrySet()) {
+      hasher.putString(entry.getKey().toString(), Charsets.UTF_8);
+      hasher.putBytes(hashContents(resolver.getAbsolutePath(entry.getValue())).asBytes());
+    }
+    HashCode hash = hasher.hash();
+    PACK_FINGERPRINTS.put(headers, new PackFingerprint(buildId, hash));
+    return hash;
+  }
+
+  private static void putPath(
+      Hasher hasher, SourcePathResolver resolver, @Nullable SourcePath path) {
+    hasher.putString(
+        path == null ? "" : resolver.getAbsolutePath(path).toString(), Charsets.UTF_8);
+    hasher.putBoolean(false); // separator
+  }
+
+  /** @return a hash of the contents of the given file, or of every file under a directory. */
+  private static HashCode hashContents(Path path) throws IOException {
+    if (!Files.isDirectory(path)) {
+      return hashFile(path);
+    }
+    List<Path> files;
+    try (Stream<Path> walk = Files.walk(path)) {
+      files = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+    }
+    Hasher hasher = Hashing.sha1().newHasher();
+    for (Path file : files) {
+      hasher.putString(path.relativize(file).toString(), Charsets.UTF_8);
+      hasher.putBytes(hashFile(file).asBytes());
+    }
+    return hasher.hash();
+  }
+
+  private static HashCode hashFile(Path file) throws IOException {
+    FileFingerprint fingerprint = FileFingerprint.of(file);
+    ContentHash cached = CONTENT_HASHES.getIfPresent(file);
+    if (cached != null && cached.fingerprint.equals(fingerprint)) {
+      return cached.hash;
+    }
+    // The fingerprint is taken before reading, so a file rewritten meanwhile is just read again.
+    HashCode hash =
+        fingerprint.isRegularFile()
+            ? com.google.common.io.Files.asByteSource(file.toFile()).hash(Hashing.sha1())
+            : HashCode.fromInt(0);
+    CONTENT_HASHES.put(file, new ContentHash(fingerprint, hash));
+    return hash;
+  }
+
+  @VisibleForTesting
+  static void invalidateCache() {
+    PACK_FINGERPRINTS.invalidateAll();
+    CONTENT_HASHES.invalidateAll();
+  }
+
+  private static class PackFingerprint {
+    private final BuildId buildId;
+    private final HashCode hash;
+
+    private PackFingerprint(BuildId buildId, HashCode hash) {
+      this.buildId = buildId;
+      this.hash = hash;
+    }
+  }
+
+  private static class ContentHash {
+    private final FileFingerprint fingerprint;
+    private final HashCode hash;
+
+    private ContentHash(FileFingerprint fingerprint, HashCode hash) {
+      this.fingerprint = fingerprint;
+      this.hash = hash;
+    }
+  }
+}
@@ -275,6 +275,7 @@ class CxxPrecompiledHeader extends AbstractBuildRuleWithDeclaredAndExtraDeps
         scratchDir,
         /* useArgFile*/ true,
         compilerDelegate.getCompiler(),
+        Optional.empty(),
         Optional.empty());
   }
 }
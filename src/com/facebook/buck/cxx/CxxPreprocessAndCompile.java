@@ -69,6 +69,7 @@ public class CxxPreprocessAndCompile extends AbstractBuildRuleWithDeclaredAndExt
   private final CxxSource.Type inputType;
   private final DebugPathSanitizer sanitizer;
   private final Optional<SymlinkTree> sandboxTree;
+  private final boolean useCompileOutputCache;
 
   private CxxPreprocessAndCompile(
       BuildTarget buildTarget,
@@ -81,9 +82,11 @@ public class CxxPreprocessAndCompile extends AbstractBuildRuleWithDeclaredAndExt
       CxxSource.Type inputType,
       Optional<CxxPrecompiledHeader> precompiledHeaderRule,
       DebugPathSanitizer sanitizer,
-      Optional<SymlinkTree> sandboxTree) {
+      Optional<SymlinkTree> sandboxTree,
+      boolean useCompileOutputCache) {
     super(buildTarget, projectFilesystem, params);
     this.sandboxTree = sandboxTree;
+    this.useCompileOutputCache = useCompileOutputCache;
     if (precompiledHeaderRule.isPresent()) {
       Preconditions.checkState(
           preprocessDelegate.isPresent(),
@@ -117,7 +120,8 @@ public class CxxPreprocessAndCompile extends AbstractBuildRuleWithDeclaredAndExt
       SourcePath input,
       CxxSource.Type inputType,
       DebugPathSanitizer sanitizer,
-      Optional<SymlinkTree> sandboxTree) {
+      Optional<SymlinkTree> sandboxTree,
+      boolean useCompileOutputCache) {
     return new CxxPreprocessAndCompile(
         buildTarget,
         projectFilesystem,
@@ -129,7 +133,8 @@ public class CxxPreprocessAndCompile extends AbstractBuildRuleWithDeclaredAndExt
         inputType,
         Optional.empty(),
         sanitizer,
-        sandboxTree);
+        sandboxTree,
+        useCompileOutputCache);
   }
 
   /**
@@ -146,7 +151,8 @@ public class CxxPreprocessAndCompile extends AbstractBuildRuleWithDeclaredAndExt
       CxxSource.Type inputType,
       Optional<CxxPrecompiledHeader> precompiledHeaderRule,
       DebugPathSanitizer sanitizer,
-      Optional<SymlinkTree> sandboxTree) {
+      Optional<SymlinkTree> sandboxTree,
+      boolean useCompileOutputCache) {
     return new CxxPreprocessAndCompile(
         buildTarget,
         projectFilesystem,
@@ -158,7 +164,8 @@ public class CxxPreprocessAndCompile extends AbstractBuildRuleWithDeclaredAndExt
         inputType,
         precompiledHeaderRule,
         sanitizer,
-        sandboxTree);
+        sandboxTree,
+        useCompileOutputCache);
   }
 
   @Override
@@ -228,7 +235,17 @@ public class CxxPreprocessAndCompile extends AbstractBuildRuleWithDeclaredAndExt
                 .setTarget(getBuildTarget())
                 .setSourcePath(relativeInputPath)
                 .setOutputPath(output)
-                .build()));
+                .build()),
+        // The contents of a precompiled header aren't part of the header set's fingerprint.
+        useCompileOutputCache && !precompiledHeaderRule.isPresent()
+            ? Optional.of(
+                new CxxCompileOutputCache(
+                    getProjectFilesystem(),
+                    resolver,
+                    preprocessDelegate,
+                    compilerDelegate.getCompiler(),
+                    arguments))
+            : Optional.empty());
   }
 
   public Path getRelativeInputPath(SourcePathResolver resolver) {
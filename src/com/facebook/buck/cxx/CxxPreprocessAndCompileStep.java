@@ -62,6 +62,7 @@ class CxxPreprocessAndCompileStep implements Step {
   private final DebugPathSanitizer sanitizer;
   private final Compiler compiler;
   private final Optional<CxxLogInfo> cxxLogInfo;
+  private final Optional<CxxCompileOutputCache> outputCache;
 
   /** Directory to use to store intermediate/temp files used for compilation. */
   private final Path scratchDir;
@@ -86,7 +87,8 @@ class CxxPreprocessAndCompileStep implements Step {
       Path scratchDir,
       boolean useArgfile,
       Compiler compiler,
-      Optional<CxxLogInfo> cxxLogInfo) {
+      Optional<CxxLogInfo> cxxLogInfo,
+      Optional<CxxCompileOutputCache> outputCache) {
     this.filesystem = filesystem;
     this.operation = operation;
     this.output = output;
@@ -100,6 +102,7 @@ class CxxPreprocessAndCompileStep implements Step {
     this.useArgfile = useArgfile;
     this.compiler = compiler;
     this.cxxLogInfo = cxxLogInfo;
+    this.outputCache = outputCache;
   }
 
   @Override
@@ -278,11 +281,69 @@ class CxxPreprocessAndCompileStep implements Step {
     }
   }
 
+  /**
+   * @return the parts of the command that determine the compiler's output, other than its inputs,
+   *     or nothing if the command has outputs besides those that {@link CxxCompileOutputCache}
+   *     stores.
+   */
+  private Optional<ImmutableList<String>> getOutputCacheCommand(ExecutionContext context) {
+    if (command.getArguments().contains("-ftest-coverage")) {
+      return Optional.empty();
+    }
+    String outputPath = output.toString();
+    Optional<String> depFilePath = depFile.map(Path::toString);
+    ImmutableList.Builder<String> builder =
+        ImmutableList.<String>builder()
+            .add(operation.toString())
+            .addAll(command.getCommandPrefix())
+            .add(filesystem.getRootPath().toAbsolutePath().toString());
+    makeSubprocessBuilder(context)
+        .build()
+        .getEnvironment()
+        .ifPresent(
+            env ->
+                env.entrySet()
+                    .stream()
+                    // Scratch space and logging context, which differ between rules
+                    .filter(
+                        entry ->
+                            !entry.getKey().equals("TMPDIR")
+                                && !entry.getKey().startsWith("BUCK_"))
+                    .sorted(Map.Entry.comparingByKey())
+                    .forEach(entry -> builder.add(entry.getKey() + "=" + entry.getValue())));
+    for (String argument : getArguments(context.getAnsi().isAnsiTerminal())) {
+      argument = argument.replace(outputPath, "<output>");
+      if (depFilePath.isPresent()) {
+        argument = argument.replace(depFilePath.get(), "<depfile>");
+      }
+      builder.add(argument);
+    }
+    return Optional.of(builder.build());
+  }
+
   @Override
   public StepExecutionResult execute(ExecutionContext context)
       throws IOException, InterruptedException {
     LOG.debug("%s %s -> %s", operation.toString().toLowerCase(), input, output);
 
+    Optional<String> cacheKey = Optional.empty();
+    if (outputCache.isPresent()) {
+      Optional<ImmutableList<String>> cacheCommand = getOutputCacheCommand(context);
+      if (cacheCommand.isPresent()) {
+        cacheKey = outputCache.get().getKey(context.getBuildId(), cacheCommand.get(), input);
+      }
+    }
+    if (cacheKey.isPresent()) {
+      Optional<String> cachedErr = outputCache.get().restore(cacheKey.get(), output, depFile);
+      if (cachedErr.isPresent()) {
+        LOG.debug("Reusing the output of an identical compilation for %s", input);
+        ProcessExecutor.Result result =
+            new ProcessExecutor.Result(0, false, Optional.empty(), cachedErr);
+        processResult(result, context);
+        return StepExecutionResult.of(result);
+      }
+    }
+
     ProcessExecutor.Result result = executeCompilation(context);
     int exitCode = result.getExitCode();
 
@@ -298,6 +359,10 @@ class CxxPreprocessAndCompileStep implements Step {
 
     if (exitCode != 0) {
       LOG.warn("error %d %s %s", exitCode, operation.toString().toLowerCase(), input);
+    } else if (cacheKey.isPresent()) {
+      outputCache
+          .get()
+          .store(cacheKey.get(), input, output, depFile, result.getStderr().orElse(""));
     }
 
     return StepExecutionResult.of(result);
@@ -22,22 +22,32 @@ import com.facebook.buck.event.BuckEventBus;
 import com.facebook.buck.event.ConsoleEvent;
 import com.facebook.buck.event.PerfEventId;
 import com.facebook.buck.event.SimplePerfEvent;
+import com.facebook.buck.io.file.MappedByteBuffers;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.log.Logger;
 import com.facebook.buck.util.ExceptionWithHumanReadableMessage;
 import com.facebook.buck.util.HumanReadableException;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
 import java.util.logging.Level;
 
 /** Specialized parser for .d Makefiles emitted by {@code gcc -MD}. */
@@ -57,110 +67,144 @@ class Depfiles {
     ADD_PREREQ
   }
 
-  private static final String WHITESPACE_CHARS = " \n\r\t";
-  private static final String ESCAPED_TARGET_CHARS = ": #";
-  private static final String ESCAPED_PREREQ_CHARS = " #";
+  /**
+   * Mappings are only released when their buffers are collected, so small depfiles, which are read
+   * in a single call anyway, are read onto the heap rather than holding on to a mapping each.
+   */
+  private static final long MIN_SIZE_TO_MAP = 128 * 1024;
+
+  /**
+   * Paths of headers found in depfiles, resolved against the root of the filesystem the depfile
+   * was written for, and shared by every depfile that lists them. The same few thousand headers
+   * appear in the depfiles of tens of thousands of objects, so this saves resolving and normalizing
+   * them again and again, and lets every object's list of used headers share the same instances.
+   */
+  private static final Cache<ProjectFilesystem, Cache<String, Path>> HEADER_PATHS =
+      CacheBuilder.newBuilder().weakKeys().build();
 
   /**
    * Parses the input as a .d Makefile as emitted by {@code gcc -MD} and returns the (target, [dep,
    * dep2, ...]) inside.
    */
   public static Depfile parseDepfile(Readable readable) throws IOException {
+    StringBuilder contents = new StringBuilder();
+    CharBuffer buffer = CharBuffer.allocate(4096);
+    while (readable.read(buffer) != -1) {
+      buffer.flip();
+      contents.append(buffer);
+      buffer.clear();
+    }
+    return parseDepfile(ByteBuffer.wrap(contents.toString().getBytes(StandardCharsets.UTF_8)));
+  }
+
+  /**
+   * Parses the UTF-8 encoded bytes between the buffer's position and limit as a .d Makefile as
+   * emitted by {@code gcc -MD} and returns the (target, [dep, dep2, ...]) inside.
+   *
+   * <p>Every character with a special meaning in a depfile is ASCII, and no byte of a multi-byte
+   * UTF-8 sequence is, so this works on the bytes directly and only decodes whole identifiers.
+   */
+  public static Depfile parseDepfile(ByteBuffer buffer) throws IOException {
     String target = null;
     ImmutableList.Builder<String> prereqsBuilder = ImmutableList.builder();
     State state = State.LOOKING_FOR_TARGET;
-    StringBuilder identifierBuilder = new StringBuilder();
-
-    CharBuffer buffer = CharBuffer.allocate(4096);
+    byte[] identifier = new byte[256];
+    int identifierLength = 0;
+    boolean identifierIsAscii = true;
     int numBackslashes = 0;
 
-    while (readable.read(buffer) != -1) {
-      buffer.flip();
+    while (buffer.hasRemaining()) {
+      byte c = buffer.get();
+      Action action = Action.NONE;
+      boolean isBackslash = c == '\\';
+      boolean isCarriageReturn = c == '\r';
+      boolean isNewline = c == '\n';
+      boolean isWhitespace = c == ' ' || isNewline || isCarriageReturn || c == '\t';
+      boolean inIdentifier = identifierLength > 0;
+      boolean isEscaped;
+      if (state == State.LOOKING_FOR_TARGET) {
+        isEscaped = c == ':' || c == ' ' || c == '#';
+      } else {
+        isEscaped = c == ' ' || c == '#';
+      }
 
-      while (buffer.hasRemaining()) {
-        char c = buffer.get();
-        Action action = Action.NONE;
-        boolean isBackslash = c == '\\';
-        boolean isCarriageReturn = c == '\r';
-        boolean isNewline = c == '\n';
-        boolean isWhitespace = WHITESPACE_CHARS.indexOf(c) != -1;
-        boolean inIdentifier = identifierBuilder.length() > 0;
-        boolean isEscaped;
-        if (state == State.LOOKING_FOR_TARGET) {
-          isEscaped = ESCAPED_TARGET_CHARS.indexOf(c) != -1;
-        } else {
-          isEscaped = ESCAPED_PREREQ_CHARS.indexOf(c) != -1;
+      if (isBackslash) {
+        // We need to count the number of backslashes in case the
+        // first non-backslash is an escaped character.
+        numBackslashes++;
+      } else if (numBackslashes > 0 && isEscaped) {
+        // Consume one backslash to escape the special char.
+        numBackslashes--;
+        if (inIdentifier) {
+          action = Action.APPEND_TO_IDENTIFIER;
         }
-
-        if (isBackslash) {
-          // We need to count the number of backslashes in case the
-          // first non-backslash is an escaped character.
-          numBackslashes++;
-        } else if (numBackslashes > 0 && isEscaped) {
-          // Consume one backslash to escape the special char.
-          numBackslashes--;
-          if (inIdentifier) {
-            action = Action.APPEND_TO_IDENTIFIER;
+      } else if (isWhitespace) {
+        if (numBackslashes == 0) {
+          if (state == State.FOUND_TARGET && inIdentifier) {
+            action = Action.ADD_PREREQ;
           }
-        } else if (isWhitespace) {
-          if (numBackslashes == 0) {
-            if (state == State.FOUND_TARGET && inIdentifier) {
-              action = Action.ADD_PREREQ;
-            }
-            if (state == State.FOUND_TARGET && (isNewline || isCarriageReturn)) {
-              state = State.LOOKING_FOR_TARGET;
-            }
-          } else if (isNewline) {
-            // Consume one backslash to escape \n or \r\n.
-            numBackslashes--;
-          } else if (!isCarriageReturn) {
-            action = Action.APPEND_TO_IDENTIFIER;
+          if (state == State.FOUND_TARGET && (isNewline || isCarriageReturn)) {
+            state = State.LOOKING_FOR_TARGET;
           }
-        } else if (c == ':' && state == State.LOOKING_FOR_TARGET) {
-          state = State.FOUND_TARGET;
-          action = Action.SET_TARGET;
-        } else {
+        } else if (isNewline) {
+          // Consume one backslash to escape \n or \r\n.
+          numBackslashes--;
+        } else if (!isCarriageReturn) {
           action = Action.APPEND_TO_IDENTIFIER;
         }
+      } else if (c == ':' && state == State.LOOKING_FOR_TARGET) {
+        state = State.FOUND_TARGET;
+        action = Action.SET_TARGET;
+      } else {
+        action = Action.APPEND_TO_IDENTIFIER;
+      }
 
-        if (!isBackslash && numBackslashes > 0 && !isCarriageReturn) {
-          int numBackslashesToAppend;
-          if (isEscaped || isWhitespace) {
-            // Backslashes escape themselves before an escaped character or whitespace.
-            numBackslashesToAppend = numBackslashes / 2;
-          } else {
-            // Backslashes are literal before a non-escaped character.
-            numBackslashesToAppend = numBackslashes;
-          }
-
-          for (int i = 0; i < numBackslashesToAppend; i++) {
-            identifierBuilder.append('\\');
-          }
-          numBackslashes = 0;
+      if (!isBackslash && numBackslashes > 0 && !isCarriageReturn) {
+        int numBackslashesToAppend;
+        if (isEscaped || isWhitespace) {
+          // Backslashes escape themselves before an escaped character or whitespace.
+          numBackslashesToAppend = numBackslashes / 2;
+        } else {
+          // Backslashes are literal before a non-escaped character.
+          numBackslashesToAppend = numBackslashes;
         }
 
-        switch (action) {
-          case NONE:
-            break;
-          case APPEND_TO_IDENTIFIER:
-            identifierBuilder.append(c);
-            break;
-          case SET_TARGET:
-            if (target != null) {
-              throw new HumanReadableException(
-                  "Depfile parser cannot handle .d file with multiple targets");
-            }
-            target = identifierBuilder.toString();
-            identifierBuilder.setLength(0);
-            break;
-          case ADD_PREREQ:
-            prereqsBuilder.add(identifierBuilder.toString());
-            identifierBuilder.setLength(0);
-            break;
+        if (identifierLength + numBackslashesToAppend >= identifier.length) {
+          identifier =
+              Arrays.copyOf(
+                  identifier, Math.max(identifier.length * 2, identifierLength + numBackslashes));
         }
+        Arrays.fill(
+            identifier, identifierLength, identifierLength + numBackslashesToAppend, (byte) '\\');
+        identifierLength += numBackslashesToAppend;
+        numBackslashes = 0;
       }
 
-      buffer.clear();
+      switch (action) {
+        case NONE:
+          break;
+        case APPEND_TO_IDENTIFIER:
+          if (identifierLength == identifier.length) {
+            identifier = Arrays.copyOf(identifier, identifier.length * 2);
+          }
+          identifier[identifierLength++] = c;
+          identifierIsAscii &= c >= 0;
+          break;
+        case SET_TARGET:
+          if (target != null) {
+            throw new HumanReadableException(
+                "Depfile parser cannot handle .d file with multiple targets");
+          }
+          target = decode(identifier, identifierLength, identifierIsAscii);
+          identifierLength = 0;
+          identifierIsAscii = true;
+          break;
+        case ADD_PREREQ:
+          prereqsBuilder.add(decode(identifier, identifierLength, identifierIsAscii));
+          identifierLength = 0;
+          identifierIsAscii = true;
+          break;
+      }
     }
 
     ImmutableList<String> prereqs = prereqsBuilder.build();
@@ -171,6 +215,43 @@ class Depfiles {
     }
   }
 
+  private static String decode(byte[] bytes, int length, boolean isAscii) {
+    // Decoding ASCII as Latin-1 is a plain widening copy.
+    return new String(
+        bytes, 0, length, isAscii ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8);
+  }
+
+  private static Depfile parseDepfile(ProjectFilesystem filesystem, Path depFile)
+      throws IOException {
+    ByteBuffer contents = readDepfile(filesystem, depFile);
+    // The parsed names are copies, so a mapping can go as soon as the parse is done.
+    try {
+      return parseDepfile(contents);
+    } finally {
+      if (contents instanceof MappedByteBuffer) {
+        MappedByteBuffers.unmap((MappedByteBuffer) contents);
+      }
+    }
+  }
+
+  private static ByteBuffer readDepfile(ProjectFilesystem filesystem, Path depFile)
+      throws IOException {
+    Path path = filesystem.resolve(depFile);
+    if (path.getFileSystem() != FileSystems.getDefault()) {
+      return ByteBuffer.wrap(Files.readAllBytes(path));
+    }
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size >= MIN_SIZE_TO_MAP) {
+        return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      }
+      ByteBuffer buffer = ByteBuffer.allocate((int) size);
+      while (buffer.hasRemaining() && channel.read(buffer) != -1) {}
+      buffer.flip();
+      return buffer;
+    }
+  }
+
   private static List<String> getRawUsedHeadersFromDepfile(
       ProjectFilesystem filesystem,
       Path sourceDepFile,
@@ -179,9 +260,9 @@ class Depfiles {
       throws IOException {
     switch (dependencyTrackingMode) {
       case MAKEFILE:
-        try (InputStream input = filesystem.newFileInputStream(sourceDepFile);
-            BufferedReader reader = new BufferedReader(new InputStreamReader(input))) {
-          ImmutableList<String> prereqs = Depfiles.parseDepfile(reader).getPrereqs();
+        {
+          ImmutableList<String> prereqs =
+              Depfiles.parseDepfile(filesystem, sourceDepFile).getPrereqs();
           // Additional files passed in via command-line flags (e.g. `-fsanitize-blacklist=<file>`)
           // appear first in the dep file, followed by the input source file.  So, just skip over
           // everything until just after the input source which should position us at the headers.
@@ -273,14 +354,22 @@ class Depfiles {
       List<String> headers)
       throws IOException, HeaderVerificationException {
     ImmutableList.Builder<Path> resultBuilder = ImmutableList.builder();
+    Cache<String, Path> headerPaths = getHeaderPaths(filesystem);
     for (String rawHeader : headers) {
-      Path header = filesystem.resolve(rawHeader).normalize();
+      Path header;
+      try {
+        header = headerPaths.get(rawHeader, () -> filesystem.resolve(rawHeader).normalize());
+      } catch (ExecutionException e) {
+        throw new IllegalStateException(e.getCause());
+      }
       Optional<Path> absolutePath = headerPathNormalizer.getAbsolutePathForUnnormalizedPath(header);
-      Optional<Path> repoRelativePath = filesystem.getPathRelativeToProjectRoot(header);
       if (absolutePath.isPresent()) {
         Preconditions.checkState(absolutePath.get().isAbsolute());
         resultBuilder.add(absolutePath.get());
-      } else if ((headerVerification.getMode() != HeaderVerification.Mode.IGNORE)
+        continue;
+      }
+      Optional<Path> repoRelativePath = filesystem.getPathRelativeToProjectRoot(header);
+      if ((headerVerification.getMode() != HeaderVerification.Mode.IGNORE)
           && (!(headerVerification.isWhitelisted(header.toString())
               || repoRelativePath
                   .map(path -> headerVerification.isWhitelisted(path.toString()))
@@ -309,6 +398,19 @@ class Depfiles {
     return resultBuilder.build();
   }
 
+  private static Cache<String, Path> getHeaderPaths(ProjectFilesystem filesystem) {
+    try {
+      return HEADER_PATHS.get(filesystem, () -> CacheBuilder.newBuilder().softValues().build());
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  @VisibleForTesting
+  static void invalidateCache() {
+    HEADER_PATHS.invalidateAll();
+  }
+
   public static class Depfile {
 
     private final String target;
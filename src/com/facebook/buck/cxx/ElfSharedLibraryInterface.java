@@ -125,9 +125,7 @@ class ElfSharedLibraryInterface extends AbstractBuildRuleWithDeclaredAndExtraDep
             BuildCellRelativePath.fromCellRelativePath(
                 context.getBuildCellRootPath(), getProjectFilesystem(), getOutputDir())));
     steps.add(
-        new ElfExtractSectionsStep(
-            getBuildTarget(),
-            objcopy.getCommandPrefix(context.getSourcePathResolver()),
+        ElfExtractSectionsStep.of(
             getSections(),
             context.getSourcePathResolver().getFilesystem(input),
             context.getSourcePathResolver().getRelativePath(input),
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import com.facebook.buck.cxx.toolchain.objectfile.GnuArchiveWriter;
+import com.facebook.buck.io.file.FileFingerprint;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.StepExecutionResult;
+import com.facebook.buck.util.concurrent.MoreFutures;
+import com.facebook.buck.util.concurrent.MostExecutors;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Writes an archive of ELF objects in GNU ar's format, along with its symbol index, without running
+ * ar or ranlib.
+ *
+ * <p>The symbols of the members are read on several threads, and are remembered for as long as
+ * their files don't change, so an archive rebuilt after one of its objects changed only reads that
+ * object again. A thin archive is then just a list of headers, cheap to write out whole.
+ *
+ * <p>Archives with members that aren't ELF objects, whose symbols only the tools know how to read,
+ * are left to the steps that run ar and ranlib.
+ */
+class GnuArchiveStep implements Step {
+  private static final Logger LOG = Logger.get(GnuArchiveStep.class);
+
+  /** Below this, the cost of farming the members out to other threads outweighs the gain. */
+  private static final int MIN_MEMBERS_FOR_PARALLEL_INDEXING = 16;
+
+  /** Reads the symbols of the members, rather than the common pool, as that blocks on I/O. */
+  private static final ExecutorService INDEXING_EXECUTOR =
+      MostExecutors.newIdleTimeoutExecutor(
+          "archive-symbols", Runtime.getRuntime().availableProcessors());
+
+  private static final Cache<Path, MemberSymbols> SYMBOLS =
+      CacheBuilder.newBuilder().softValues().build();
+
+  private final ProjectFilesystem filesystem;
+  private final Path output;
+  private final ImmutableList<Path> inputs;
+  private final boolean thin;
+  private final ImmutableList<Step> fallbackSteps;
+
+  /** @param fallbackSteps the steps that write the archive by running ar and ranlib. */
+  public GnuArchiveStep(
+      ProjectFilesystem filesystem,
+      Path output,
+      ImmutableList<Path> inputs,
+      boolean thin,
+      ImmutableList<Step> fallbackSteps) {
+    Preconditions.checkArgument(!output.isAbsolute());
+    for (Path input : inputs) {
+      Preconditions.checkArgument(!input.isAbsolute());
+    }
+    this.filesystem = filesystem;
+    this.output = output;
+    this.inputs = inputs;
+    this.thin = thin;
+    this.fallbackSteps = fallbackSteps;
+  }
+
+  @Override
+  public StepExecutionResult execute(ExecutionContext context)
+      throws IOException, InterruptedException {
+    ImmutableList<Path> allInputs = ArchiveStep.getAllInputs(filesystem, inputs);
+    if (allInputs.isEmpty()) {
+      filesystem.writeContentsToPath("!<arch>\n", output);
+      return StepExecutionResult.SUCCESS;
+    }
+
+    List<Optional<ImmutableList<String>>> symbols;
+    if (allInputs.size() >= MIN_MEMBERS_FOR_PARALLEL_INDEXING) {
+      symbols =
+          MoreFutures.mapInParallel(
+              INDEXING_EXECUTOR, allInputs, input -> readSymbols(filesystem.resolve(input)));
+    } else {
+      symbols = new ArrayList<>(allInputs.size());
+      for (Path input : allInputs) {
+        symbols.add(readSymbols(filesystem.resolve(input)));
+      }
+    }
+
+    ImmutableList.Builder<GnuArchiveWriter.Member> membersBuilder = ImmutableList.builder();
+    for (int i = 0; i < allInputs.size(); i++) {
+      Path input = allInputs.get(i);
+      if (!symbols.get(i).isPresent()) {
+        LOG.debug("%s isn't an ELF object, running ar to archive it into %s.", input, output);
+        return runFallbackSteps(context);
+      }
+      Path file = filesystem.resolve(input);
+      membersBuilder.add(
+          new GnuArchiveWriter.Member(
+              file, getMemberName(input), Files.size(file), symbols.get(i).get()));
+    }
+    ImmutableList<GnuArchiveWriter.Member> members = membersBuilder.build();
+    // The offsets of the members, which count the headers and the index too, have to fit.
+    if (!GnuArchiveWriter.isIndexable(thin, members)) {
+      LOG.debug("%s is too large for a 32-bit symbol index, running ar to write it.", output);
+      return runFallbackSteps(context);
+    }
+
+    GnuArchiveWriter.write(filesystem.resolve(output), thin, members);
+    return StepExecutionResult.SUCCESS;
+  }
+
+  /**
+   * Thin archives refer to their members by their paths relative to the archive, or absolute
+   * paths if that's how they were given, as ar does.
+   */
+  private String getMemberName(Path input) {
+    if (!thin) {
+      return input.getFileName().toString();
+    }
+    Path outputDir = output.getParent();
+    if (input.isAbsolute() || outputDir == null) {
+      return input.toString();
+    }
+    return outputDir.relativize(input).toString();
+  }
+
+  private StepExecutionResult runFallbackSteps(ExecutionContext context)
+      throws IOException, InterruptedException {
+    for (Step step : fallbackSteps) {
+      StepExecutionResult result = step.execute(context);
+      if (!result.isSuccess()) {
+        return result;
+      }
+    }
+    return StepExecutionResult.SUCCESS;
+  }
+
+  private static Optional<ImmutableList<String>> readSymbols(Path file) throws IOException {
+    FileFingerprint fingerprint = FileFingerprint.of(file);
+    MemberSymbols cached = SYMBOLS.getIfPresent(file);
+    if (cached != null && cached.fingerprint.equals(fingerprint)) {
+      return cached.symbols;
+    }
+    // The fingerprint is taken before reading, so a file rewritten meanwhile is just read again.
+    Optional<ImmutableList<String>> symbols = GnuArchiveWriter.readSymbols(file);
+    SYMBOLS.put(file, new MemberSymbols(fingerprint, symbols));
+    return symbols;
+  }
+
+  @VisibleForTesting
+  static void invalidateCache() {
+    SYMBOLS.invalidateAll();
+  }
+
+  @Override
+  public String getDescription(ExecutionContext context) {
+    return String.format("write %sarchive %s", thin ? "thin " : "", output);
+  }
+
+  @Override
+  public String getShortName() {
+    return "archive";
+  }
+
+  private static class MemberSymbols {
+    private final FileFingerprint fingerprint;
+    private final Optional<ImmutableList<String>> symbols;
+
+    private MemberSymbols(FileFingerprint fingerprint, Optional<ImmutableList<String>> symbols) {
+      this.fingerprint = fingerprint;
+      this.symbols = symbols;
+    }
+  }
+}
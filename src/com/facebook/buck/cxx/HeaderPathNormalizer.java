@@ -96,6 +96,14 @@ class HeaderPathNormalizer {
     return path.get().getValue();
   }
 
+  /**
+   * @return every path by which the tooling may refer to a header (or header directory), mapped to
+   *     the header's source path.
+   */
+  ImmutableMap<Path, SourcePath> getNormalizedPaths() {
+    return normalized;
+  }
+
   /**
    * @return a map of replacement prefix paths to convert unnormalized paths to their original
    *     locations.
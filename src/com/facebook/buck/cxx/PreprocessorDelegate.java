@@ -20,6 +20,7 @@ import com.facebook.buck.cxx.toolchain.DebugPathSanitizer;
 import com.facebook.buck.cxx.toolchain.HeaderVerification;
 import com.facebook.buck.cxx.toolchain.PathShortener;
 import com.facebook.buck.cxx.toolchain.Preprocessor;
+import com.facebook.buck.model.BuildId;
 import com.facebook.buck.rules.BuildRule;
 import com.facebook.buck.rules.ExplicitBuildTargetSourcePath;
 import com.facebook.buck.rules.RuleKeyAppendable;
@@ -39,8 +40,10 @@ import com.google.common.base.Supplier;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
+import com.google.common.hash.HashCode;
 import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
+import java.io.IOException;
 import java.nio.file.Path;
 import java.util.Optional;
 import java.util.function.Predicate;
@@ -251,6 +254,26 @@ final class PreprocessorDelegate implements RuleKeyAppendable {
     return inputs.build();
   }
 
+  /**
+   * @return a fingerprint of the headers this preprocessor can see, or nothing if they can't be
+   *     fingerprinted from the header packs alone (as with frameworks, a sandbox, or the include
+   *     paths of a precompiled header).
+   * @see CxxHeaderSetFingerprint
+   */
+  public Optional<HashCode> getHeaderSetFingerprint(BuildId buildId) throws IOException {
+    if (sandbox.isPresent()
+        || leadingIncludePaths.isPresent()
+        || !preprocessorFlags.getFrameworkPaths().isEmpty()) {
+      return Optional.empty();
+    }
+    return Optional.of(
+        CxxHeaderSetFingerprint.of(
+            buildId,
+            resolver,
+            preprocessorFlags.getIncludes(),
+            preprocessorFlags.getPrefixHeader()));
+  }
+
   public Predicate<SourcePath> getCoveredByDepFilePredicate() {
     // TODO(jkeljo): I didn't know how to implement this, and didn't have time to figure it out.
     return (SourcePath path) -> true;
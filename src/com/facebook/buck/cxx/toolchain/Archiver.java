@@ -32,6 +32,12 @@ public interface Archiver extends Tool {
 
   boolean isRanLibStepRequired();
 
+  /**
+   * @return whether archives of ELF objects in this archiver's format, along with the symbol index
+   *     that ranlib would add, can be written in-process rather than by running this tool.
+   */
+  boolean supportsInProcessArchiving();
+
   /**
    * Whether an argfile is required for a long command line (false means that it is possible to
    * split a long command line into chunks). Eg, ar on *nix allows to add new files to an already
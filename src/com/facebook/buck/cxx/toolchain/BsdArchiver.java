@@ -63,6 +63,11 @@ public class BsdArchiver implements Archiver {
     return true;
   }
 
+  @Override
+  public boolean supportsInProcessArchiving() {
+    return false;
+  }
+
   @Override
   public ImmutableCollection<BuildRule> getDeps(SourcePathRuleFinder ruleFinder) {
     return tool.getDeps(ruleFinder);
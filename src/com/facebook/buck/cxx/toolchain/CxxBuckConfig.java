@@ -245,6 +245,14 @@ public class CxxBuckConfig {
     return delegate.getBooleanValue(cxxSection, "cache_links", true);
   }
 
+  /**
+   * @return whether to keep the outputs of compilations in a local store and reuse them for any
+   *     other compilation of the same source with the same flags and headers.
+   */
+  public boolean shouldCacheCompileOutputs() {
+    return delegate.getBooleanValue(cxxSection, "compile_output_cache", false);
+  }
+
   public boolean isPCHEnabled() {
     return delegate.getBooleanValue(cxxSection, "pch_enabled", true);
   }
@@ -63,6 +63,11 @@ public class GnuArchiver implements Archiver {
     return true;
   }
 
+  @Override
+  public boolean supportsInProcessArchiving() {
+    return true;
+  }
+
   @Override
   public ImmutableCollection<BuildRule> getDeps(SourcePathRuleFinder ruleFinder) {
     return tool.getDeps(ruleFinder);
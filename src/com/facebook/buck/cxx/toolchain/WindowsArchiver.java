@@ -60,6 +60,11 @@ public class WindowsArchiver implements Archiver {
     return false;
   }
 
+  @Override
+  public boolean supportsInProcessArchiving() {
+    return false;
+  }
+
   @Override
   public ImmutableCollection<BuildRule> getDeps(SourcePathRuleFinder ruleFinder) {
     return tool.getDeps(ruleFinder);
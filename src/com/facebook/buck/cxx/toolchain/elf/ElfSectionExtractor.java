@@ -0,0 +1,208 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx.toolchain.elf;
+
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableSet;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Copies specific sections of an ELF file into a new ELF file, like {@code objcopy
+ * --only-section}.
+ *
+ * <p>Only the file header, the section header table and the section name table of the input are
+ * mapped, and the sections kept are transferred between the files without passing through the
+ * heap, so this reads just the parts of the input it keeps, however large the input (typically an
+ * unstripped library, mostly debug info) is.
+ *
+ * <p>The new file keeps the input's file header, other than the section header table fields, and
+ * the same number of program headers, which are left blank: the sections are moved, so the
+ * segments of the input no longer describe them. The sections are laid out in their original
+ * order, with their original addresses.
+ */
+// CHECKSTYLE.OFF: LocalVariableName
+public class ElfSectionExtractor {
+
+  private static final long SHF_INFO_LINK = 0x40L;
+  private static final String SECTION_NAME_TABLE = ".shstrtab";
+
+  private ElfSectionExtractor() {}
+
+  public static void extract(FileChannel input, FileChannel output, ImmutableSet<String> sections)
+      throws IOException {
+    ByteBuffer headerBuffer = input.map(READ_ONLY, 0, Math.min(input.size(), 64));
+    ElfHeader header = ElfHeader.parse(headerBuffer);
+
+    // Read the section headers and pick out the ones to keep.
+    ByteBuffer sectionHeaderBuffer =
+        input
+            .map(READ_ONLY, header.e_shoff, (long) header.e_shnum * header.e_shentsize)
+            .order(headerBuffer.order());
+    List<ElfSectionHeader> sectionHeaders = new ArrayList<>(header.e_shnum);
+    for (int index = 0; index < header.e_shnum; index++) {
+      sectionHeaderBuffer.position(index * header.e_shentsize);
+      sectionHeaders.add(ElfSectionHeader.parse(header.ei_class, sectionHeaderBuffer));
+    }
+    ElfSectionHeader nameTableHeader = sectionHeaders.get(header.e_shstrndx);
+    ElfSection nameTable =
+        new ElfSection(
+            nameTableHeader,
+            input.map(READ_ONLY, nameTableHeader.sh_off, nameTableHeader.sh_size));
+
+    // The section at index 0 is reserved, and always kept.
+    List<Integer> kept = new ArrayList<>();
+    int[] newIndices = new int[header.e_shnum];
+    kept.add(0);
+    for (int index = 1; index < header.e_shnum; index++) {
+      if (sections.contains(nameTable.lookupString(sectionHeaders.get(index).sh_name))) {
+        newIndices[index] = kept.size();
+        kept.add(index);
+      }
+    }
+    int newNameTableIndex = kept.size();
+
+    // Lay out the new file: the file header, the blank program headers, the sections, a new
+    // section name table and finally the section header table.
+    long phoff = header.e_phnum == 0 ? 0 : header.e_ehsize;
+    long offset = header.e_ehsize + (long) header.e_phnum * header.e_phentsize;
+    ByteArrayOutputStream newNames = new ByteArrayOutputStream();
+    newNames.write(0);
+    List<ElfSectionHeader> newSectionHeaders = new ArrayList<>();
+    newSectionHeaders.add(sectionHeaders.get(0));
+    for (int index : kept.subList(1, kept.size())) {
+      ElfSectionHeader sectionHeader = sectionHeaders.get(index);
+      long sh_name = newNames.size();
+      byte[] name = nameTable.lookupString(sectionHeader.sh_name).getBytes(Charsets.UTF_8);
+      newNames.write(name, 0, name.length);
+      newNames.write(0);
+      if (sectionHeader.sh_type != ElfSectionHeader.SHType.SHT_NOBITS) {
+        offset = align(offset, sectionHeader.sh_addralign);
+      }
+      newSectionHeaders.add(
+          new ElfSectionHeader(
+              sh_name,
+              sectionHeader.sh_type,
+              sectionHeader.sh_flags,
+              sectionHeader.sh_addr,
+              offset,
+              sectionHeader.sh_size,
+              newIndices[(int) sectionHeader.sh_link],
+              (sectionHeader.sh_flags & SHF_INFO_LINK) != 0
+                  ? newIndices[(int) sectionHeader.sh_info]
+                  : sectionHeader.sh_info,
+              sectionHeader.sh_addralign,
+              sectionHeader.sh_entsize));
+      if (sectionHeader.sh_type != ElfSectionHeader.SHType.SHT_NOBITS) {
+        offset += sectionHeader.sh_size;
+      }
+    }
+    long nameTableOffset = offset;
+    long nameTableName = newNames.size();
+    byte[] nameTableNameBytes = SECTION_NAME_TABLE.getBytes(Charsets.UTF_8);
+    newNames.write(nameTableNameBytes, 0, nameTableNameBytes.length);
+    newNames.write(0);
+    ByteBuffer nameTableBuffer = ByteBuffer.wrap(newNames.toByteArray());
+    newSectionHeaders.add(
+        new ElfSectionHeader(
+            nameTableName,
+            ElfSectionHeader.SHType.SHT_STRTAB,
+            0,
+            0,
+            nameTableOffset,
+            nameTableBuffer.remaining(),
+            0,
+            0,
+            1,
+            0));
+    long shoff =
+        align(
+            nameTableOffset + nameTableBuffer.remaining(),
+            header.ei_class == ElfHeader.EIClass.ELFCLASS32 ? 4 : 8);
+
+    // Write the file header and blank program headers.
+    ByteBuffer newHeaderBuffer =
+        ByteBuffer.allocate(header.e_ehsize + header.e_phnum * header.e_phentsize)
+            .order(headerBuffer.order());
+    new ElfHeader(
+            header.ei_class,
+            header.ei_data,
+            header.e_ident,
+            header.e_type,
+            header.e_machine,
+            header.e_version,
+            header.e_entry,
+            phoff,
+            shoff,
+            header.e_flags,
+            header.e_ehsize,
+            header.e_phentsize,
+            header.e_phnum,
+            header.e_shentsize,
+            newSectionHeaders.size(),
+            newNameTableIndex)
+        .write(newHeaderBuffer);
+    newHeaderBuffer.clear();
+    write(output, newHeaderBuffer, 0);
+
+    // Transfer the sections straight from the input.
+    for (int newIndex = 1; newIndex < newNameTableIndex; newIndex++) {
+      ElfSectionHeader sectionHeader = sectionHeaders.get(kept.get(newIndex));
+      if (sectionHeader.sh_type == ElfSectionHeader.SHType.SHT_NOBITS) {
+        continue;
+      }
+      output.position(newSectionHeaders.get(newIndex).sh_off);
+      long transferred = 0;
+      while (transferred < sectionHeader.sh_size) {
+        transferred +=
+            input.transferTo(
+                sectionHeader.sh_off + transferred, sectionHeader.sh_size - transferred, output);
+      }
+    }
+
+    // Write the section name table and the section header table.
+    write(output, nameTableBuffer, nameTableOffset);
+    ByteBuffer newSectionHeaderBuffer =
+        ByteBuffer.allocate(newSectionHeaders.size() * header.e_shentsize)
+            .order(headerBuffer.order());
+    for (int index = 0; index < newSectionHeaders.size(); index++) {
+      newSectionHeaderBuffer.position(index * header.e_shentsize);
+      newSectionHeaders.get(index).write(header.ei_class, newSectionHeaderBuffer);
+    }
+    newSectionHeaderBuffer.clear();
+    write(output, newSectionHeaderBuffer, shoff);
+  }
+
+  private static long align(long offset, long alignment) {
+    return alignment <= 1 ? offset : (offset + alignment - 1) / alignment * alignment;
+  }
+
+  private static void write(FileChannel output, ByteBuffer buffer, long position)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      position += output.write(buffer, position);
+    }
+  }
+}
+
+// CHECKSTYLE.ON: LocalVariableName
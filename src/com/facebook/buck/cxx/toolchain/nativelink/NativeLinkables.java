@@ -22,24 +22,46 @@ import com.facebook.buck.graph.AbstractBreadthFirstTraversal;
 import com.facebook.buck.graph.MutableDirectedGraph;
 import com.facebook.buck.graph.TopologicalSort;
 import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.model.Flavor;
+import com.facebook.buck.model.Pair;
 import com.facebook.buck.rules.BuildRule;
 import com.facebook.buck.rules.BuildTargetSourcePath;
 import com.facebook.buck.rules.SourcePath;
 import com.facebook.buck.util.HumanReadableException;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Sets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 
 public class NativeLinkables {
 
+  /**
+   * Keyed by the libraries themselves, so that what's remembered about them goes away with the
+   * action graph they belong to.
+   */
+  private static final Cache<
+          NativeLinkable, Map<Pair<Flavor, Linker.LinkableDepType>, LinkableNode>>
+      LINKABLE_NODES = CacheBuilder.newBuilder().weakKeys().build();
+
   private NativeLinkables() {}
 
   /**
@@ -129,21 +151,8 @@ public class NativeLinkables {
             Iterable<? extends NativeLinkable> nativeLinkableDeps =
                 nativeLinkable.getNativeLinkableExportedDepsForPlatform(cxxPlatform);
 
-            boolean shouldTraverse = true;
-            switch (nativeLinkable.getPreferredLinkage(cxxPlatform)) {
-              case ANY:
-                shouldTraverse = linkStyle != Linker.LinkableDepType.SHARED;
-                break;
-              case SHARED:
-                shouldTraverse = false;
-                break;
-              case STATIC:
-                shouldTraverse = true;
-                break;
-            }
-
             // If we're linking this dependency statically, we also need to traverse its deps.
-            if (shouldTraverse) {
+            if (shouldTraverseDeps(cxxPlatform, linkStyle, nativeLinkable)) {
               nativeLinkableDeps =
                   Iterables.concat(
                       nativeLinkableDeps,
@@ -176,11 +185,168 @@ public class NativeLinkables {
     return result.build();
   }
 
+  /**
+   * Extract from the dependency graph all the libraries which must be considered for linking, in
+   * the same order as {@link #getNativeLinkables(CxxPlatform, Iterable, Linker.LinkableDepType,
+   * Predicate)} with a predicate that accepts everything.
+   *
+   * <p>Every binary, test and omnibus root links against much the same libraries, so rather than
+   * building and sorting a graph of them each time, the deps to traverse from each library and its
+   * height in the graph below it are remembered with the library, for as long as the library is
+   * around. That ordering only depends on the height of each library and its target, so any set of
+   * libraries can be ordered from what's remembered for them.
+   */
   public static ImmutableMap<BuildTarget, NativeLinkable> getNativeLinkables(
       final CxxPlatform cxxPlatform,
       Iterable<? extends NativeLinkable> inputs,
       final Linker.LinkableDepType linkStyle) {
-    return getNativeLinkables(cxxPlatform, inputs, linkStyle, x -> true);
+    Pair<Flavor, Linker.LinkableDepType> key = new Pair<>(cxxPlatform.getFlavor(), linkStyle);
+
+    Map<BuildTarget, NativeLinkable> nativeLinkables = new HashMap<>();
+    Map<BuildTarget, LinkableNode> nodes = new HashMap<>();
+    Queue<NativeLinkable> toVisit = new ArrayDeque<>();
+    for (NativeLinkable nativeLinkable : inputs) {
+      nativeLinkables.put(nativeLinkable.getBuildTarget(), nativeLinkable);
+    }
+    toVisit.addAll(nativeLinkables.values());
+    while (!toVisit.isEmpty()) {
+      NativeLinkable nativeLinkable = toVisit.remove();
+      BuildTarget target = nativeLinkable.getBuildTarget();
+      if (nodes.containsKey(target)) {
+        continue;
+      }
+      LinkableNode node = getLinkableNode(cxxPlatform, linkStyle, key, nativeLinkable);
+      nodes.put(target, node);
+      for (NativeLinkable dep : node.deps) {
+        nativeLinkables.put(dep.getBuildTarget(), dep);
+        toVisit.add(dep);
+      }
+    }
+
+    List<BuildTarget> ordered = new ArrayList<>(nodes.keySet());
+    ordered.sort(
+        Comparator.<BuildTarget>comparingInt(target -> nodes.get(target).height)
+            .thenComparing(Comparator.naturalOrder())
+            .reversed());
+    ImmutableMap.Builder<BuildTarget, NativeLinkable> result = ImmutableMap.builder();
+    for (BuildTarget target : ordered) {
+      result.put(target, nativeLinkables.get(target));
+    }
+    return result.build();
+  }
+
+  private static LinkableNode getLinkableNode(
+      CxxPlatform cxxPlatform,
+      Linker.LinkableDepType linkStyle,
+      Pair<Flavor, Linker.LinkableDepType> key,
+      NativeLinkable nativeLinkable) {
+    LinkableNode node = getLinkableNodes(nativeLinkable).get(key);
+    if (node != null) {
+      return node;
+    }
+
+    // Link graphs can be deep enough to overflow the stack if walked recursively, so the libraries
+    // still waiting on nodes for some of their deps are kept on an explicit stack instead.
+    Deque<PendingLinkableNode> stack = new ArrayDeque<>();
+    Set<NativeLinkable> onStack = Sets.newIdentityHashSet();
+    stack.push(new PendingLinkableNode(cxxPlatform, linkStyle, nativeLinkable));
+    onStack.add(nativeLinkable);
+    while (true) {
+      PendingLinkableNode pending = stack.peek();
+      if (pending.nextDep < pending.deps.size()) {
+        NativeLinkable dep = pending.deps.get(pending.nextDep);
+        LinkableNode depNode = getLinkableNodes(dep).get(key);
+        if (depNode == null) {
+          Preconditions.checkState(
+              onStack.add(dep), "Cycle in the native link graph at %s", dep.getBuildTarget());
+          stack.push(new PendingLinkableNode(cxxPlatform, linkStyle, dep));
+        } else {
+          pending.height = Math.max(pending.height, depNode.height + 1);
+          pending.nextDep++;
+        }
+        continue;
+      }
+      node = new LinkableNode(pending.deps, pending.height);
+      getLinkableNodes(pending.nativeLinkable).put(key, node);
+      stack.pop();
+      onStack.remove(pending.nativeLinkable);
+      if (stack.isEmpty()) {
+        return node;
+      }
+    }
+  }
+
+  private static Map<Pair<Flavor, Linker.LinkableDepType>, LinkableNode> getLinkableNodes(
+      NativeLinkable nativeLinkable) {
+    try {
+      return LINKABLE_NODES.get(nativeLinkable, ConcurrentHashMap::new);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  private static ImmutableList<NativeLinkable> getDepsToTraverse(
+      CxxPlatform cxxPlatform, Linker.LinkableDepType linkStyle, NativeLinkable nativeLinkable) {
+    // We always traverse a rule's exported native linkables.
+    Iterable<? extends NativeLinkable> nativeLinkableDeps =
+        nativeLinkable.getNativeLinkableExportedDepsForPlatform(cxxPlatform);
+    // If we're linking this dependency statically, we also need to traverse its deps.
+    if (shouldTraverseDeps(cxxPlatform, linkStyle, nativeLinkable)) {
+      nativeLinkableDeps =
+          Iterables.concat(
+              nativeLinkableDeps, nativeLinkable.getNativeLinkableDepsForPlatform(cxxPlatform));
+    }
+
+    Map<BuildTarget, NativeLinkable> deps = new LinkedHashMap<>();
+    for (NativeLinkable dep : nativeLinkableDeps) {
+      deps.put(dep.getBuildTarget(), dep);
+    }
+    return ImmutableList.copyOf(deps.values());
+  }
+
+  private static boolean shouldTraverseDeps(
+      CxxPlatform cxxPlatform, Linker.LinkableDepType linkStyle, NativeLinkable nativeLinkable) {
+    switch (nativeLinkable.getPreferredLinkage(cxxPlatform)) {
+      case ANY:
+        return linkStyle != Linker.LinkableDepType.SHARED;
+      case SHARED:
+        return false;
+      case STATIC:
+        return true;
+    }
+    return true;
+  }
+
+  /** A library whose node is waiting on the nodes of some of its deps. */
+  private static class PendingLinkableNode {
+    private final NativeLinkable nativeLinkable;
+    private final ImmutableList<NativeLinkable> deps;
+    /** The index of the first dep whose node hasn't been accounted for. */
+    private int nextDep = 0;
+    /** The height of the library, as far as the deps accounted for go. */
+    private int height = 0;
+
+    private PendingLinkableNode(
+        CxxPlatform cxxPlatform, Linker.LinkableDepType linkStyle, NativeLinkable nativeLinkable) {
+      this.nativeLinkable = nativeLinkable;
+      this.deps = getDepsToTraverse(cxxPlatform, linkStyle, nativeLinkable);
+    }
+  }
+
+  /**
+   * What {@link #getNativeLinkables(CxxPlatform, Iterable, Linker.LinkableDepType)} remembers about
+   * a library when linked for a platform with a link style.
+   */
+  private static class LinkableNode {
+    /** The deps to traverse from the library. */
+    private final ImmutableList<NativeLinkable> deps;
+    /** The length of the longest path from the library to one without deps to traverse. */
+    private final int height;
+
+    private LinkableNode(ImmutableList<NativeLinkable> deps, int height) {
+      this.deps = deps;
+      this.height = height;
+    }
   }
 
   public static Linker.LinkableDepType getLinkStyle(
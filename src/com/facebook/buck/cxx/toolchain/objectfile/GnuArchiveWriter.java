@@ -0,0 +1,310 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx.toolchain.objectfile;
+
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+
+import com.facebook.buck.cxx.toolchain.elf.Elf;
+import com.facebook.buck.cxx.toolchain.elf.ElfSection;
+import com.facebook.buck.cxx.toolchain.elf.ElfSectionHeader;
+import com.facebook.buck.cxx.toolchain.elf.ElfSymbolTable;
+import com.facebook.buck.io.file.MappedByteBuffers;
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Writes archives the way GNU ar does in deterministic mode, complete with the symbol index that
+ * ranlib adds, without running either tool.
+ *
+ * <p>The symbols of each member are read with the ELF parser, so only archives of ELF relocatable
+ * objects can be written.
+ */
+public class GnuArchiveWriter {
+
+  /** The largest offset of a member that the 32-bit symbol index can hold. */
+  public static final long MAX_INDEXED_OFFSET = 0xffffffffL;
+
+  private static final int ET_REL = 1;
+  private static final int SHN_UNDEF = 0;
+  private static final int SHN_COMMON = 0xfff2;
+
+  private static final int HEADER_SIZE = 60;
+  private static final int MAX_SHORT_NAME_LENGTH = 15;
+
+  private GnuArchiveWriter() {}
+
+  /**
+   * @return the names of the symbols that the archive index lists for the given object: its
+   *     defined global, weak and unique symbols, in the order of its symbol table. Nothing if the
+   *     object isn't an ELF relocatable object this parser understands.
+   */
+  public static Optional<ImmutableList<String>> readSymbols(Path object) throws IOException {
+    MappedByteBuffer buffer;
+    try (FileChannel channel = FileChannel.open(object, StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        return Optional.empty();
+      }
+      buffer = channel.map(READ_ONLY, 0, channel.size());
+    }
+    // The names are copied out, so nothing refers to the mapping once this returns.
+    try {
+      return readSymbols(buffer);
+    } finally {
+      MappedByteBuffers.unmap(buffer);
+    }
+  }
+
+  private static Optional<ImmutableList<String>> readSymbols(ByteBuffer buffer) {
+    try {
+      if (!Elf.isElf(buffer)) {
+        return Optional.empty();
+      }
+      Elf elf = new Elf(buffer);
+      if (elf.header.e_type != ET_REL) {
+        return Optional.empty();
+      }
+      ImmutableList.Builder<String> symbols = ImmutableList.builder();
+      for (int index = 0; index < elf.getNumberOfSections(); index++) {
+        ElfSection section = elf.getSectionByIndex(index);
+        if (section.header.sh_type != ElfSectionHeader.SHType.SHT_SYMTAB) {
+          continue;
+        }
+        ElfSection stringTable = elf.getSectionByIndex((int) section.header.sh_link);
+        ElfSymbolTable table = ElfSymbolTable.parse(elf.header.ei_class, section.body);
+        for (ElfSymbolTable.Entry entry : table.entries.subList(1, table.entries.size())) {
+          if (entry.st_shndx == SHN_UNDEF) {
+            continue;
+          }
+          if (entry.st_info.st_bind != ElfSymbolTable.Entry.Info.Bind.STB_LOCAL
+              || entry.st_shndx == SHN_COMMON) {
+            symbols.add(lookupName(stringTable, entry.st_name));
+          }
+        }
+      }
+      return Optional.of(symbols.build());
+    } catch (IllegalArgumentException e) {
+      // A symbol binding or type the parser doesn't know.
+      return Optional.empty();
+    }
+  }
+
+  /** Symbol names are bytes, which Latin-1 maps to and from chars one for one. */
+  private static String lookupName(ElfSection stringTable, long offset) {
+    ByteBuffer body = stringTable.body;
+    int end = (int) offset;
+    while (body.get(end) != 0) {
+      end++;
+    }
+    byte[] bytes = new byte[end - (int) offset];
+    body.position((int) offset);
+    body.get(bytes);
+    return new String(bytes, Charsets.ISO_8859_1);
+  }
+
+  /**
+   * @return whether the 32-bit symbol index can hold the offsets of all the members of the archive,
+   *     as {@link #write} needs it to.
+   */
+  public static boolean isIndexable(boolean thin, List<Member> members) {
+    return new Layout(thin, members).isIndexable();
+  }
+
+  /**
+   * Writes an archive of the given members, replacing any file at the given path.
+   *
+   * @param thin whether to write a thin archive, which refers to its members by the names they are
+   *     given rather than holding their contents.
+   * @throws IllegalArgumentException if the archive is too large to be indexed, which {@link
+   *     #isIndexable} tells beforehand.
+   */
+  public static void write(Path archive, boolean thin, List<Member> members) throws IOException {
+    Layout layout = new Layout(thin, members);
+    Preconditions.checkArgument(layout.isIndexable(), "%s is too large to be indexed", archive);
+
+    try (FileChannel output =
+        FileChannel.open(
+            archive,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.WRITE)) {
+      ByteBuffer index = ByteBuffer.allocate((int) layout.membersOffset);
+      index.put(
+          thin ? ObjectFileScrubbers.GLOBAL_THIN_HEADER : ObjectFileScrubbers.GLOBAL_HEADER);
+      putHeader(index, "/", "0", "0", "0", "0", layout.indexSize);
+      index.putInt(layout.symbolCount);
+      for (int i = 0; i < members.size(); i++) {
+        for (int j = 0; j < members.get(i).symbols.size(); j++) {
+          index.putInt((int) layout.offsets[i]);
+        }
+      }
+      index.put(layout.symbolNames.toByteArray());
+      if (layout.longNames.size() > 0) {
+        putHeader(index, "//", "", "", "", "", layout.longNames.size());
+        index.put(layout.longNames.toByteArray());
+      }
+      index.flip();
+      writeFully(output, index);
+
+      for (int i = 0; i < members.size(); i++) {
+        Member member = members.get(i);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        putHeader(header, layout.headerNames[i], "0", "0", "0", "644", member.size);
+        header.flip();
+        writeFully(output, header);
+        if (thin) {
+          continue;
+        }
+        try (FileChannel input = FileChannel.open(member.file, StandardOpenOption.READ)) {
+          long position = 0;
+          while (position < member.size) {
+            position += input.transferTo(position, member.size - position, output);
+          }
+        }
+        if (member.size % 2 != 0) {
+          writeFully(output, ByteBuffer.wrap(new byte[] {'\n'}));
+        }
+      }
+    }
+  }
+
+  private static void putHeader(
+      ByteBuffer buffer,
+      String name,
+      String date,
+      String uid,
+      String gid,
+      String mode,
+      long size) {
+    putField(buffer, name, 16);
+    putField(buffer, date, 12);
+    putField(buffer, uid, 6);
+    putField(buffer, gid, 6);
+    putField(buffer, mode, 8);
+    putField(buffer, String.valueOf(size), 10);
+    buffer.put(ObjectFileScrubbers.END_OF_FILE_HEADER_MARKER);
+  }
+
+  private static void putField(ByteBuffer buffer, String value, int length) {
+    Preconditions.checkState(value.length() <= length);
+    buffer.put(Strings.padEnd(value, length, ' ').getBytes(Charsets.US_ASCII));
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  /** A member of an archive. */
+  public static class Member {
+    private final Path file;
+    private final String name;
+    private final long size;
+    private final ImmutableList<String> symbols;
+
+    /**
+     * @param file the member's file.
+     * @param name the name to record the member under: its file name, or for thin archives the path
+     *     of its file relative to the archive.
+     * @param size the size of the member's file.
+     * @param symbols the symbols to index the member under.
+     */
+    public Member(Path file, String name, long size, ImmutableList<String> symbols) {
+      this.file = file;
+      this.name = name;
+      this.size = size;
+      this.symbols = symbols;
+    }
+  }
+
+  /**
+   * Where everything goes in an archive: the members come after the symbol index and the table of
+   * names too long for a header.
+   */
+  private static class Layout {
+    private final String[] headerNames;
+    private final ByteArrayOutputStream longNames = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream symbolNames = new ByteArrayOutputStream();
+    private final int symbolCount;
+    private final long indexSize;
+    private final long membersOffset;
+    private final long[] offsets;
+
+    private Layout(boolean thin, List<Member> members) {
+      headerNames = new String[members.size()];
+      for (int i = 0; i < members.size(); i++) {
+        String name = members.get(i).name;
+        if (!thin && name.length() <= MAX_SHORT_NAME_LENGTH) {
+          headerNames[i] = name + "/";
+        } else {
+          headerNames[i] = "/" + longNames.size();
+          byte[] bytes = (name + "/\n").getBytes(Charsets.UTF_8);
+          longNames.write(bytes, 0, bytes.length);
+        }
+      }
+      if (longNames.size() % 2 != 0) {
+        longNames.write('\n');
+      }
+
+      int count = 0;
+      for (Member member : members) {
+        count += member.symbols.size();
+        for (String symbol : member.symbols) {
+          byte[] bytes = symbol.getBytes(Charsets.ISO_8859_1);
+          symbolNames.write(bytes, 0, bytes.length);
+          symbolNames.write(0);
+        }
+      }
+      symbolCount = count;
+      long size = 4 + 4L * symbolCount + symbolNames.size();
+      if (size % 2 != 0) {
+        symbolNames.write(0);
+        size++;
+      }
+      indexSize = size;
+
+      long offset = ObjectFileScrubbers.GLOBAL_HEADER.length + HEADER_SIZE + indexSize;
+      if (longNames.size() > 0) {
+        offset += HEADER_SIZE + longNames.size();
+      }
+      membersOffset = offset;
+      offsets = new long[members.size()];
+      for (int i = 0; i < members.size(); i++) {
+        offsets[i] = offset;
+        offset += HEADER_SIZE;
+        if (!thin) {
+          offset += members.get(i).size + members.get(i).size % 2;
+        }
+      }
+    }
+
+    private boolean isIndexable() {
+      return offsets.length == 0 || offsets[offsets.length - 1] <= MAX_INDEXED_OFFSET;
+    }
+  }
+}
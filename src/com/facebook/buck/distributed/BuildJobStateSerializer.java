@@ -17,26 +17,109 @@
 package com.facebook.buck.distributed;
 
 import com.facebook.buck.distributed.thrift.BuildJobState;
+import com.facebook.buck.distributed.thrift.BuildJobStateFileHashEntry;
+import com.facebook.buck.distributed.thrift.BuildJobStateFileHashes;
+import com.facebook.buck.distributed.thrift.BuildJobStateTargetGraph;
+import com.facebook.buck.distributed.thrift.BuildJobStateTargetNode;
+import com.facebook.buck.slb.ThriftException;
 import com.facebook.buck.slb.ThriftProtocol;
 import com.facebook.buck.slb.ThriftUtil;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Lists;
+import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
 import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
 import java.util.zip.InflaterInputStream;
+import org.apache.thrift.TBase;
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.transport.TIOStreamTransport;
 
+/**
+ * Encodes a {@link BuildJobState} as a zlib compressed stream of chunks.
+ *
+ * <p>The state is written as a small header (everything but the target graph nodes and the file
+ * hashes) followed by bounded chunks of target nodes and file hash entries. This means neither
+ * side has to hold a second copy of the whole serialized state in memory, and readers can consume
+ * the chunks through a {@link Listener} as soon as they are decoded. Payloads written by the
+ * previous single blob encoding are still accepted by {@link #deserialize(InputStream)}.
+ */
 public abstract class BuildJobStateSerializer {
   private static final ThriftProtocol PROTOCOL = ThriftProtocol.COMPACT;
 
+  // Legacy payloads start with a zlib header (0x78), so this prefix can never be ambiguous.
+  private static final byte[] CHUNKED_MAGIC = {'B', 'J', 'S', 'C'};
+  private static final int CHUNKED_VERSION = 1;
+
+  @VisibleForTesting static final int MAX_ENTRIES_PER_CHUNK = 1024;
+
+  private static final byte CHUNK_END = 0;
+  private static final byte CHUNK_TARGET_NODES = 1;
+  private static final byte CHUNK_FILE_HASHES = 2;
+  private static final byte CHUNK_FILE_HASHES_CONTINUATION = 3;
+
+  private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
   private BuildJobStateSerializer() {
     // Do not instantiate.
   }
 
+  /** Receives the parts of a {@link BuildJobState} in the order they are decoded. */
+  public interface Listener {
+    /**
+     * Called exactly once, before any other callback, with everything but the target graph nodes
+     * and the file hashes. If the original state had a target graph, the header has an empty one.
+     */
+    void onHeader(BuildJobState header);
+
+    /** Called with each consecutive chunk of target graph nodes. */
+    void onTargetNodes(List<BuildJobStateTargetNode> nodes);
+
+    /**
+     * Called with each chunk of file hashes. When {@code continuesPrevious} is true, the entries
+     * belong to the same {@link BuildJobStateFileHashes} as the previous chunk.
+     */
+    void onFileHashes(BuildJobStateFileHashes fileHashes, boolean continuesPrevious);
+  }
+
   public static void serialize(BuildJobState state, OutputStream stream) throws IOException {
-    try (DeflaterOutputStream zlibStream = new DeflaterOutputStream(stream)) {
-      ThriftUtil.serialize(PROTOCOL, state, zlibStream);
+    stream.write(CHUNKED_MAGIC);
+    stream.write(CHUNKED_VERSION);
+    // A stream does not end a Deflater it was handed, so its native memory has to be freed here.
+    Deflater deflater = new Deflater();
+    try (DeflaterOutputStream zlibStream =
+        new DeflaterOutputStream(stream, deflater, STREAM_BUFFER_SIZE)) {
+      // The transport is deliberately never closed as that would close the underlying stream.
+      TProtocol protocol =
+          ThriftUtil.newProtocolInstance(PROTOCOL, new TIOStreamTransport(zlibStream));
+      writeStruct(protocol, createHeader(state));
+
+      if (state.isSetTargetGraph() && state.getTargetGraph().isSetNodes()) {
+        for (List<BuildJobStateTargetNode> nodes :
+            partitionNonEmpty(state.getTargetGraph().getNodes())) {
+          writeByte(protocol, CHUNK_TARGET_NODES);
+          writeStruct(protocol, new BuildJobStateTargetGraph().setNodes(nodes));
+        }
+      }
+
+      if (state.isSetFileHashes()) {
+        for (BuildJobStateFileHashes fileHashes : state.getFileHashes()) {
+          writeFileHashes(protocol, fileHashes);
+        }
+      }
+
+      writeByte(protocol, CHUNK_END);
+    } finally {
+      deflater.end();
     }
   }
 
@@ -48,17 +131,221 @@ public abstract class BuildJobStateSerializer {
   }
 
   public static BuildJobState deserialize(InputStream stream) throws IOException {
+    MergingListener listener = new MergingListener();
+    deserialize(stream, listener);
+    return listener.getState();
+  }
+
+  public static BuildJobState deserialize(byte[] data) throws IOException {
+    try (ByteArrayInputStream stream = new ByteArrayInputStream(data)) {
+      return deserialize(stream);
+    }
+  }
+
+  /**
+   * Decodes the state incrementally, handing each chunk to {@code listener} as soon as it has
+   * been read from {@code stream}. Legacy payloads are reported as a header plus one chunk for
+   * each part of the state.
+   */
+  public static void deserialize(InputStream stream, Listener listener) throws IOException {
+    BufferedInputStream bufferedStream = new BufferedInputStream(stream, STREAM_BUFFER_SIZE);
+    if (!readChunkedPreamble(bufferedStream)) {
+      deserializeLegacy(bufferedStream, listener);
+      return;
+    }
+
+    Inflater inflater = new Inflater();
+    try (InflaterInputStream zlibStream =
+        new InflaterInputStream(bufferedStream, inflater, STREAM_BUFFER_SIZE)) {
+      TProtocol protocol =
+          ThriftUtil.newProtocolInstance(PROTOCOL, new TIOStreamTransport(zlibStream));
+      listener.onHeader(readStruct(protocol, new BuildJobState()));
+
+      while (true) {
+        byte chunkType = readByte(protocol);
+        switch (chunkType) {
+          case CHUNK_END:
+            return;
+          case CHUNK_TARGET_NODES:
+            listener.onTargetNodes(readStruct(protocol, new BuildJobStateTargetGraph()).getNodes());
+            break;
+          case CHUNK_FILE_HASHES:
+          case CHUNK_FILE_HASHES_CONTINUATION:
+            listener.onFileHashes(
+                readStruct(protocol, new BuildJobStateFileHashes()),
+                chunkType == CHUNK_FILE_HASHES_CONTINUATION);
+            break;
+          default:
+            throw new ThriftException(
+                String.format("Unknown BuildJobState chunk type [%d].", chunkType));
+        }
+      }
+    } finally {
+      inflater.end();
+    }
+  }
+
+  /**
+   * Copies every field but the bulk ones, so fields added to {@link BuildJobState} later are
+   * carried in the header without having to be listed here. The bulk fields are left out before
+   * copying rather than unset after a {@link BuildJobState#deepCopy()}, which would copy the whole
+   * target graph and file hashes only to drop them.
+   */
+  private static BuildJobState createHeader(BuildJobState state) {
+    BuildJobState header = new BuildJobState();
+    for (BuildJobState._Fields field : BuildJobState._Fields.values()) {
+      if (field != BuildJobState._Fields.TARGET_GRAPH
+          && field != BuildJobState._Fields.FILE_HASHES
+          && state.isSet(field)) {
+        header.setFieldValue(field, state.getFieldValue(field));
+      }
+    }
+    if (state.isSetTargetGraph()) {
+      header.setTargetGraph(new BuildJobStateTargetGraph());
+    }
+    return header;
+  }
+
+  private static void writeFileHashes(TProtocol protocol, BuildJobStateFileHashes fileHashes)
+      throws ThriftException {
+    if (!fileHashes.isSetEntries()) {
+      writeByte(protocol, CHUNK_FILE_HASHES);
+      writeStruct(protocol, fileHashes);
+      return;
+    }
+
+    boolean first = true;
+    for (List<BuildJobStateFileHashEntry> entries : partitionNonEmpty(fileHashes.getEntries())) {
+      BuildJobStateFileHashes chunk = new BuildJobStateFileHashes().setEntries(entries);
+      if (first && fileHashes.isSetCellIndex()) {
+        chunk.setCellIndex(fileHashes.getCellIndex());
+      }
+      writeByte(protocol, first ? CHUNK_FILE_HASHES : CHUNK_FILE_HASHES_CONTINUATION);
+      writeStruct(protocol, chunk);
+      first = false;
+    }
+  }
+
+  /** Like {@link Lists#partition} but yields a single empty chunk for an empty list. */
+  private static <T> List<List<T>> partitionNonEmpty(List<T> list) {
+    if (list.isEmpty()) {
+      return Arrays.asList(list);
+    }
+    return Lists.partition(list, MAX_ENTRIES_PER_CHUNK);
+  }
+
+  private static boolean readChunkedPreamble(BufferedInputStream stream) throws IOException {
+    stream.mark(CHUNKED_MAGIC.length + 1);
+    byte[] preamble = new byte[CHUNKED_MAGIC.length];
+    int read = 0;
+    while (read < preamble.length) {
+      int count = stream.read(preamble, read, preamble.length - read);
+      if (count < 0) {
+        break;
+      }
+      read += count;
+    }
+
+    if (read < preamble.length || !Arrays.equals(preamble, CHUNKED_MAGIC)) {
+      stream.reset();
+      return false;
+    }
+
+    int version = stream.read();
+    if (version != CHUNKED_VERSION) {
+      throw new ThriftException(
+          String.format("Unsupported BuildJobState serialization version [%d].", version));
+    }
+    return true;
+  }
+
+  private static void deserializeLegacy(InputStream stream, Listener listener) throws IOException {
     BuildJobState state = new BuildJobState();
     try (InflaterInputStream zlibStream = new InflaterInputStream(stream)) {
       ThriftUtil.deserialize(PROTOCOL, zlibStream, state);
     }
 
-    return state;
+    listener.onHeader(createHeader(state));
+    if (state.isSetTargetGraph() && state.getTargetGraph().isSetNodes()) {
+      listener.onTargetNodes(state.getTargetGraph().getNodes());
+    }
+    if (state.isSetFileHashes()) {
+      for (BuildJobStateFileHashes fileHashes : state.getFileHashes()) {
+        listener.onFileHashes(fileHashes, false);
+      }
+    }
   }
 
-  public static BuildJobState deserialize(byte[] data) throws IOException {
-    try (ByteArrayInputStream stream = new ByteArrayInputStream(data)) {
-      return deserialize(stream);
+  private static void writeStruct(TProtocol protocol, TBase<?, ?> struct) throws ThriftException {
+    try {
+      struct.write(protocol);
+    } catch (TException e) {
+      throw new ThriftException(e);
+    }
+  }
+
+  private static void writeByte(TProtocol protocol, byte value) throws ThriftException {
+    try {
+      protocol.writeByte(value);
+    } catch (TException e) {
+      throw new ThriftException(e);
+    }
+  }
+
+  private static <T extends TBase<?, ?>> T readStruct(TProtocol protocol, T struct)
+      throws ThriftException {
+    try {
+      struct.read(protocol);
+    } catch (TException e) {
+      throw new ThriftException(e);
+    }
+    return struct;
+  }
+
+  private static byte readByte(TProtocol protocol) throws ThriftException {
+    try {
+      return protocol.readByte();
+    } catch (TException e) {
+      throw new ThriftException(e);
+    }
+  }
+
+  /** Reassembles the full {@link BuildJobState} from the decoded chunks. */
+  private static class MergingListener implements Listener {
+    private BuildJobState state = new BuildJobState();
+
+    @Override
+    public void onHeader(BuildJobState header) {
+      state = header;
+    }
+
+    @Override
+    public void onTargetNodes(List<BuildJobStateTargetNode> nodes) {
+      BuildJobStateTargetGraph targetGraph = state.getTargetGraph();
+      if (!targetGraph.isSetNodes()) {
+        targetGraph.setNodes(new ArrayList<>(nodes.size()));
+      }
+      targetGraph.getNodes().addAll(nodes);
+    }
+
+    @Override
+    public void onFileHashes(BuildJobStateFileHashes fileHashes, boolean continuesPrevious) {
+      if (!state.isSetFileHashes()) {
+        state.setFileHashes(new ArrayList<>());
+      }
+      List<BuildJobStateFileHashes> allFileHashes = state.getFileHashes();
+      if (continuesPrevious) {
+        allFileHashes.get(allFileHashes.size() - 1).getEntries().addAll(fileHashes.getEntries());
+      } else {
+        if (fileHashes.isSetEntries()) {
+          fileHashes.setEntries(new ArrayList<>(fileHashes.getEntries()));
+        }
+        allFileHashes.add(fileHashes);
+      }
+    }
+
+    public BuildJobState getState() {
+      return state;
     }
   }
 }
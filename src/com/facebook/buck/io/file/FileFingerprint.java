@@ -0,0 +1,98 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.io.file;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Objects;
+import javax.annotation.Nullable;
+
+/**
+ * Identifies the contents of a regular file well enough to tell whether something read from it
+ * earlier is stale, without reading the file. Every missing file or non-regular file has the same
+ * fingerprint.
+ */
+public final class FileFingerprint {
+  private static final FileFingerprint NOT_A_REGULAR_FILE =
+      new FileFingerprint(null, -1, null, null);
+
+  @Nullable private final Object fileKey;
+  private final long size;
+  @Nullable private final FileTime lastModifiedTime;
+  @Nullable private final Object changeTime;
+
+  private FileFingerprint(
+      @Nullable Object fileKey,
+      long size,
+      @Nullable FileTime lastModifiedTime,
+      @Nullable Object changeTime) {
+    this.fileKey = fileKey;
+    this.size = size;
+    this.lastModifiedTime = lastModifiedTime;
+    this.changeTime = changeTime;
+  }
+
+  public static FileFingerprint of(Path path) {
+    BasicFileAttributes attributes;
+    try {
+      attributes = Files.readAttributes(path, BasicFileAttributes.class);
+    } catch (IOException e) {
+      return NOT_A_REGULAR_FILE;
+    }
+    if (!attributes.isRegularFile()) {
+      return NOT_A_REGULAR_FILE;
+    }
+    Object changeTime = null;
+    try {
+      // Unlike the modification time, this can't be set back after the file is rewritten.
+      changeTime = Files.getAttribute(path, "unix:ctime");
+    } catch (UnsupportedOperationException | IllegalArgumentException | IOException e) {
+      // Not available on this platform; the other attributes will have to do.
+    }
+    return new FileFingerprint(
+        attributes.fileKey(), attributes.size(), attributes.lastModifiedTime(), changeTime);
+  }
+
+  public boolean isRegularFile() {
+    return this != NOT_A_REGULAR_FILE;
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (!(other instanceof FileFingerprint)) {
+      return false;
+    }
+    FileFingerprint that = (FileFingerprint) other;
+    return size == that.size
+        && Objects.equals(lastModifiedTime, that.lastModifiedTime)
+        && Objects.equals(fileKey, that.fileKey)
+        && Objects.equals(changeTime, that.changeTime);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(fileKey, size, lastModifiedTime, changeTime);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s:%d:%s:%s", fileKey, size, lastModifiedTime, changeTime);
+  }
+}
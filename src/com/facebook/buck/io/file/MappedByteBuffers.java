@@ -0,0 +1,63 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.io.file;
+
+import com.facebook.buck.log.Logger;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+
+/**
+ * Releases file mappings as soon as they are no longer needed. Otherwise a mapping lasts until its
+ * buffer happens to be garbage collected, which keeps the file open and, on Windows, keeps it from
+ * being deleted or replaced.
+ */
+public class MappedByteBuffers {
+  private static final Logger LOG = Logger.get(MappedByteBuffers.class);
+
+  private MappedByteBuffers() {}
+
+  /**
+   * Unmaps {@code buffer}. It, and every buffer sliced or duplicated from it, must never be used
+   * again: doing so crashes the JVM rather than throwing an exception. If the JVM offers no way to
+   * release a mapping, it is left for the garbage collector.
+   */
+  public static void unmap(MappedByteBuffer buffer) {
+    try {
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Method invokeCleaner;
+      try {
+        invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+      } catch (NoSuchMethodException e) {
+        // Before Java 9, the buffer holds its cleaner itself.
+        Method getCleaner = buffer.getClass().getMethod("cleaner");
+        getCleaner.setAccessible(true);
+        Object cleaner = getCleaner.invoke(buffer);
+        if (cleaner != null) {
+          cleaner.getClass().getMethod("clean").invoke(cleaner);
+        }
+        return;
+      }
+      Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+      theUnsafe.setAccessible(true);
+      invokeCleaner.invoke(theUnsafe.get(null), buffer);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      LOG.debug(e, "Unable to unmap a buffer, leaving it to the garbage collector.");
+    }
+  }
+}
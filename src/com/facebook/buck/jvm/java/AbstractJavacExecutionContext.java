@@ -54,4 +54,7 @@ abstract class AbstractJavacExecutionContext {
   public abstract ProcessExecutor getProcessExecutor();
 
   public abstract ImmutableList<Path> getAbsolutePathsForInputs();
+
+  /** @see AbstractJavacOptions#isFileManagerPoolingEnabled() */
+  public abstract boolean isFileManagerPoolingEnabled();
 }
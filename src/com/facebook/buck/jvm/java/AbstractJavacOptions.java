@@ -86,6 +86,15 @@ abstract class AbstractJavacOptions implements AddsToRuleKey {
     return false;
   }
 
+  /**
+   * Whether in-process compilations borrow javac's file managers from a pool shared between
+   * compilations, rather than creating new ones. The classes produced are the same either way.
+   */
+  @Value.Default
+  protected boolean isFileManagerPoolingEnabled() {
+    return true;
+  }
+
   @Value.Default
   @AddToRuleKey
   public String getSourceLevel() {
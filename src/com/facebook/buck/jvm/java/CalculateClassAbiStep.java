@@ -18,13 +18,31 @@ package com.facebook.buck.jvm.java;
 
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.jvm.java.abi.StubJar;
+import com.facebook.buck.log.Logger;
 import com.facebook.buck.step.ExecutionContext;
 import com.facebook.buck.step.Step;
 import com.facebook.buck.step.StepExecutionResult;
+import com.facebook.buck.util.DirectoryCacheTrimmer;
+import com.google.common.hash.Hashing;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 
+/**
+ * Writes the class ABI of a library jar.
+ *
+ * <p>The same prebuilt jars turn up under many rules, and stubbing a large one takes a while, so
+ * the ABIs of jars are also kept in the scratch directory under the hash of the jar's contents and
+ * the {@link StubJar#VERSION} that stubbed them, and copied from there whenever the same jar is
+ * seen again. The least recently used ABIs are deleted once they take up more than {@link
+ * #MAX_ABI_CACHE_SIZE_BYTES}.
+ */
 public class CalculateClassAbiStep implements Step {
+  private static final Logger LOG = Logger.get(CalculateClassAbiStep.class);
+
+  private static final String ABI_CACHE_DIR = "__class_abi_cache__";
+  private static final long MAX_ABI_CACHE_SIZE_BYTES = 512L * 1024 * 1024;
 
   private final ProjectFilesystem filesystem;
   private final Path binaryJar;
@@ -44,7 +62,19 @@ public class CalculateClassAbiStep implements Step {
       throws IOException, InterruptedException {
     try {
       Path binJar = filesystem.resolve(binaryJar);
+      Path cachedAbiJar = null;
+      if (Files.isRegularFile(binJar)) {
+        cachedAbiJar = getCachedAbiJarPath(binJar);
+        if (restoreFromCache(cachedAbiJar)) {
+          return StepExecutionResult.SUCCESS;
+        }
+      }
+
       new StubJar(binJar).setSourceAbiCompatible(sourceAbiCompatible).writeTo(filesystem, abiJar);
+
+      if (cachedAbiJar != null) {
+        addToCache(cachedAbiJar);
+      }
     } catch (IllegalArgumentException e) {
       context.logError(e, "Failed to calculate ABI for %s.", binaryJar);
       return StepExecutionResult.ERROR;
@@ -53,6 +83,62 @@ public class CalculateClassAbiStep implements Step {
     return StepExecutionResult.SUCCESS;
   }
 
+  private Path getCachedAbiJarPath(Path binJar) throws IOException {
+    String key =
+        Hashing.sha1()
+            .newHasher()
+            .putUnencodedChars(filesystem.computeSha1(binJar).getHash())
+            .putInt(StubJar.VERSION)
+            .putBoolean(sourceAbiCompatible)
+            .hash()
+            .toString();
+    return getCacheRoot().resolve(key.substring(0, 2)).resolve(key + ".jar");
+  }
+
+  private Path getCacheRoot() {
+    return filesystem.resolve(filesystem.getBuckPaths().getScratchDir()).resolve(ABI_CACHE_DIR);
+  }
+
+  private boolean restoreFromCache(Path cachedAbiJar) throws IOException {
+    if (!Files.isRegularFile(cachedAbiJar)) {
+      return false;
+    }
+    filesystem.createParentDirs(abiJar);
+    try {
+      DirectoryCacheTrimmer.markUsed(cachedAbiJar);
+      Files.copy(cachedAbiJar, filesystem.resolve(abiJar), StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      // The cache may have been trimmed in the meantime.
+      LOG.debug(e, "Unable to use the cached ABI of %s.", binaryJar);
+      return false;
+    }
+    return true;
+  }
+
+  private void addToCache(Path cachedAbiJar) {
+    // Another step may be adding the same jar, so each writes its own copy and then moves it into
+    // place; the copies are identical, so it doesn't matter which one ends up there.
+    Path tempJar = null;
+    try {
+      Files.createDirectories(cachedAbiJar.getParent());
+      // The leading dot keeps the cache from being trimmed of it while it's being written.
+      tempJar = Files.createTempFile(cachedAbiJar.getParent(), ".abi", ".tmp");
+      Files.copy(filesystem.resolve(abiJar), tempJar, StandardCopyOption.REPLACE_EXISTING);
+      Files.move(tempJar, cachedAbiJar, StandardCopyOption.ATOMIC_MOVE);
+      DirectoryCacheTrimmer.onStored(
+          getCacheRoot(), MAX_ABI_CACHE_SIZE_BYTES, Files.size(cachedAbiJar));
+    } catch (IOException e) {
+      LOG.warn(e, "Unable to cache the ABI of %s.", binaryJar);
+      if (tempJar != null) {
+        try {
+          Files.deleteIfExists(tempJar);
+        } catch (IOException ignored) {
+          // Nothing more to be done
+        }
+      }
+    }
+  }
+
   @Override
   public String getShortName() {
     return "class_abi";
@@ -16,18 +16,28 @@
 
 package com.facebook.buck.jvm.java;
 
+import com.facebook.buck.event.ConsoleEvent;
 import com.facebook.buck.io.ExecutableFinder;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.jvm.java.junit_worker.JUnitWorkerMain;
 import com.facebook.buck.log.Logger;
 import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.model.Pair;
 import com.facebook.buck.shell.ShellStep;
 import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.StepExecutionResult;
 import com.facebook.buck.util.ProcessExecutor;
 import com.facebook.buck.util.ProcessExecutorParams;
+import com.facebook.buck.util.Verbosity;
 import com.facebook.buck.util.environment.Platform;
+import com.facebook.buck.worker.WorkerJobResult;
+import com.facebook.buck.worker.WorkerProcess;
+import com.facebook.buck.worker.WorkerProcessPool;
+import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import java.io.IOException;
 import java.lang.reflect.Field;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -46,6 +56,7 @@ public class JUnitStep extends ShellStep {
   private final Optional<Long> testCaseTimeoutMs;
   private final ImmutableMap<String, String> env;
   private final JUnitJvmArgs junitJvmArgs;
+  private final Optional<Integer> maxWorkers;
 
   // Set when the junit command times out.
   private boolean hasTimedOut = false;
@@ -59,6 +70,33 @@ public class JUnitStep extends ShellStep {
       ImmutableMap<String, String> env,
       ImmutableList<String> javaRuntimeLauncher,
       JUnitJvmArgs junitJvmArgs) {
+    this(
+        buildTarget,
+        filesystem,
+        nativeLibsEnvironment,
+        testRuleTimeoutMs,
+        testCaseTimeoutMs,
+        env,
+        javaRuntimeLauncher,
+        junitJvmArgs,
+        Optional.empty());
+  }
+
+  /**
+   * @param maxWorkers If present, run JUnit tests in a pool of at most this many persistent JVMs,
+   *     shared with the other tests run with the same JVM options and environment, rather than in
+   *     a JVM of their own.
+   */
+  public JUnitStep(
+      BuildTarget buildTarget,
+      ProjectFilesystem filesystem,
+      Map<String, String> nativeLibsEnvironment,
+      Optional<Long> testRuleTimeoutMs,
+      Optional<Long> testCaseTimeoutMs,
+      ImmutableMap<String, String> env,
+      ImmutableList<String> javaRuntimeLauncher,
+      JUnitJvmArgs junitJvmArgs,
+      Optional<Integer> maxWorkers) {
     super(Optional.of(buildTarget), filesystem.getRootPath());
     this.filesystem = filesystem;
     this.javaRuntimeLauncher = javaRuntimeLauncher;
@@ -67,6 +105,7 @@ public class JUnitStep extends ShellStep {
     this.testCaseTimeoutMs = testCaseTimeoutMs;
     this.env = env;
     this.junitJvmArgs = junitJvmArgs;
+    this.maxWorkers = maxWorkers;
   }
 
   @Override
@@ -74,6 +113,76 @@ public class JUnitStep extends ShellStep {
     return "junit";
   }
 
+  @Override
+  public StepExecutionResult execute(ExecutionContext context)
+      throws IOException, InterruptedException {
+    if (maxWorkers.isPresent() && canRunInWorker()) {
+      return executeInWorker(context, maxWorkers.get());
+    }
+    return super.execute(context);
+  }
+
+  /**
+   * A rule's timeout is enforced by killing its JVM, and a debugger or the coverage agent has to
+   * be attached to a JVM as it starts, so those tests still get a JVM of their own.
+   */
+  private boolean canRunInWorker() {
+    return junitJvmArgs.getTestType() == TestType.JUNIT
+        && !testRuleTimeoutMs.isPresent()
+        && !junitJvmArgs.isDebugEnabled()
+        && !junitJvmArgs.isCodeCoverageEnabled();
+  }
+
+  private StepExecutionResult executeInWorker(ExecutionContext context, int maxWorkers)
+      throws IOException, InterruptedException {
+    Pair<ImmutableList<String>, ImmutableList<String>> command =
+        JUnitWorkers.splitCommand(getShellCommandInternal(context), javaRuntimeLauncher.size());
+
+    WorkerJobResult result;
+    try (JUnitWorkers.PoolLease lease =
+        JUnitWorkers.getPool(
+            context,
+            filesystem,
+            maxWorkers,
+            command.getFirst(),
+            getEnvironmentVariables(context))) {
+      WorkerProcessPool pool = lease.getPool();
+      WorkerProcess workerProcess = pool.borrowWorkerProcess();
+      try {
+        result = workerProcess.submitAndWaitForJob(Joiner.on('\0').join(command.getSecond()));
+      } catch (Exception e) {
+        // The worker is in an unknown state, so make sure it isn't used again.
+        pool.destroyWorkerProcess(workerProcess);
+        throw e;
+      }
+
+      // A runner that crashed may have left anything behind, so don't run more tests after it,
+      // nor after the worker asked to be recycled.
+      if (result.getExitCode() != 0) {
+        pool.destroyWorkerProcess(workerProcess);
+      } else {
+        pool.returnWorkerProcess(workerProcess);
+      }
+    }
+
+    int exitCode = result.getExitCode() & ~JUnitWorkerMain.RECYCLE_WORKER;
+    // Report the output as it would be for a JVM of the tests' own.
+    Verbosity verbosity = context.getVerbosity();
+    Optional<String> stdout = result.getStdout();
+    Optional<String> stderr = result.getStderr();
+    if (stdout.isPresent()
+        && !stdout.get().isEmpty()
+        && (exitCode != 0 || shouldPrintStdout(verbosity))) {
+      context.postEvent(ConsoleEvent.info("%s", stdout.get()));
+    }
+    if (stderr.isPresent()
+        && !stderr.get().isEmpty()
+        && (exitCode != 0 || shouldPrintStderr(verbosity))) {
+      context.postEvent(ConsoleEvent.warning("%s", stderr.get()));
+    }
+    return StepExecutionResult.of(exitCode, result.getStderr());
+  }
+
   @Override
   protected ImmutableList<String> getShellCommandInternal(ExecutionContext context) {
     ImmutableList.Builder<String> args = ImmutableList.builder();
@@ -0,0 +1,252 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.jvm.java.runner.FileClassPathRunner;
+import com.facebook.buck.log.Logger;
+import com.facebook.buck.model.Pair;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.external.BundledExternalProcessLauncher;
+import com.facebook.buck.worker.WorkerProcessIdentity;
+import com.facebook.buck.worker.WorkerProcessParams;
+import com.facebook.buck.worker.WorkerProcessPool;
+import com.facebook.buck.worker.WorkerProcessPoolFactory;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentMap;
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * Provides the pools of worker processes that {@link JUnitStep} runs tests in. The java launcher,
+ * the JVM's options and the environment can only be set as a JVM starts, so there is a pool for
+ * every combination of them. When buck runs as a daemon the pools are persistent, so the workers
+ * stay warm across builds. Rules with an environment or JVM options of their own each get a pool,
+ * so only the {@link #MAX_POOLS} pools used most recently are kept, and the others are shut down.
+ */
+class JUnitWorkers {
+  private static final Logger LOG = Logger.get(JUnitWorkers.class);
+
+  /** The most persistent pools kept at once, which bounds the number of idle worker JVMs. */
+  @VisibleForTesting static final int MAX_POOLS = 4;
+
+  private static final BundledExternalProcessLauncher LAUNCHER =
+      new BundledExternalProcessLauncher();
+  private static final Supplier<ImmutableList<String>> COMMAND_SUPPLIER =
+      Suppliers.memoize(LAUNCHER::getCommandForJUnitWorker);
+  private static final Supplier<ImmutableMap<String, String>> ENV_SUPPLIER =
+      Suppliers.memoize(LAUNCHER::getEnvForJUnitWorker);
+
+  /** System properties the JVM or the JDK read as the JVM starts, rather than when needed. */
+  private static final ImmutableList<String> STARTUP_PROPERTY_PREFIXES =
+      ImmutableList.of("-Djava.", "-Djavax.", "-Djdk.", "-Dsun.", "-Dfile.", "-Duser.");
+
+  /** The persistent pools by their keys, least recently used first. */
+  @GuardedBy("POOL_USES")
+  private static final Map<String, PoolUse> POOL_USES = new LinkedHashMap<>(16, 0.75f, true);
+
+  private JUnitWorkers() {}
+
+  /**
+   * @param jvmCommand the java launcher and the JVM options the tests are run with.
+   * @param env the environment the tests are run with.
+   * @return the pool to run the tests in, which is kept from being shut down until the lease is
+   *     closed.
+   */
+  static PoolLease getPool(
+      ExecutionContext context,
+      ProjectFilesystem filesystem,
+      int maxWorkers,
+      ImmutableList<String> jvmCommand,
+      ImmutableMap<String, String> env) {
+    ImmutableList<String> command = getCommand(COMMAND_SUPPLIER.get(), jvmCommand);
+    Map<String, String> mergedEnv = new HashMap<>(ENV_SUPPLIER.get());
+    mergedEnv.putAll(env);
+    ImmutableSortedMap<String, String> startupEnv = ImmutableSortedMap.copyOf(mergedEnv);
+
+    Hasher hasher = Hashing.sha1().newHasher();
+    command.forEach(arg -> hasher.putString(arg, StandardCharsets.UTF_8).putByte((byte) 0));
+    for (Map.Entry<String, String> entry : startupEnv.entrySet()) {
+      hasher
+          .putString(entry.getKey(), StandardCharsets.UTF_8)
+          .putByte((byte) 0)
+          .putString(entry.getValue(), StandardCharsets.UTF_8)
+          .putByte((byte) 0);
+    }
+    hasher.putInt(maxWorkers);
+    HashCode hash = hasher.hash();
+
+    // Each pool numbers its workers from zero, so they need a directory of their own.
+    WorkerProcessParams params =
+        WorkerProcessParams.of(
+            filesystem
+                .getBuckPaths()
+                .getScratchDir()
+                .resolve("__junit_worker_tmp__")
+                .resolve(hash.toString()),
+            command,
+            startupEnv,
+            maxWorkers,
+            Optional.of(WorkerProcessIdentity.of("junit_worker_" + hash, hash)));
+    Optional<PoolUse> use =
+        context
+            .getPersistentWorkerPools()
+            .map(pools -> lease(pools, params.getWorkerProcessIdentity().get()));
+    try {
+      return new PoolLease(
+          new WorkerProcessPoolFactory(filesystem).getWorkerProcessPool(context, params), use);
+    } catch (RuntimeException e) {
+      use.ifPresent(JUnitWorkers::release);
+      throw e;
+    }
+  }
+
+  /**
+   * Marks the pool with the given identity as in use, and shuts down the least recently used pools
+   * that aren't in use while there are more than {@link #MAX_POOLS}.
+   */
+  @VisibleForTesting
+  static PoolUse lease(
+      ConcurrentMap<String, WorkerProcessPool> pools, WorkerProcessIdentity identity) {
+    String key = identity.getPersistentWorkerKey();
+    synchronized (POOL_USES) {
+      PoolUse use = POOL_USES.computeIfAbsent(key, k -> new PoolUse(pools));
+      use.leases++;
+      Iterator<Map.Entry<String, PoolUse>> leastRecentlyUsed = POOL_USES.entrySet().iterator();
+      while (POOL_USES.size() > MAX_POOLS && leastRecentlyUsed.hasNext()) {
+        Map.Entry<String, PoolUse> entry = leastRecentlyUsed.next();
+        if (entry.getValue().leases > 0) {
+          continue;
+        }
+        leastRecentlyUsed.remove();
+        // Nothing can borrow from the pool while it's closed, as getting it takes a lease first.
+        WorkerProcessPool pool = entry.getValue().pools.remove(entry.getKey());
+        if (pool != null) {
+          try {
+            pool.close();
+          } catch (RuntimeException e) {
+            LOG.warn(e, "Failed to shut down the JUnit workers of %s.", entry.getKey());
+          }
+        }
+      }
+      return use;
+    }
+  }
+
+  @VisibleForTesting
+  static void release(PoolUse use) {
+    synchronized (POOL_USES) {
+      use.leases--;
+    }
+  }
+
+  @VisibleForTesting
+  static void forgetPools() {
+    synchronized (POOL_USES) {
+      POOL_USES.clear();
+    }
+  }
+
+  /** Runs the worker with the java launcher and the JVM options of the tests. */
+  static ImmutableList<String> getCommand(
+      ImmutableList<String> launcherCommand, ImmutableList<String> jvmCommand) {
+    Preconditions.checkState(launcherCommand.get(0).equals("java"));
+    return ImmutableList.<String>builder()
+        .addAll(jvmCommand)
+        .addAll(launcherCommand.subList(1, launcherCommand.size()))
+        .build();
+  }
+
+  /**
+   * Splits the command line of a JVM that runs tests into the java launcher and the options the
+   * JVM must be started with, and the arguments of a job that runs the same tests in a worker: the
+   * other system properties, the classpath, and the test runner and its arguments.
+   *
+   * @param launcherLength the number of arguments the java launcher takes up.
+   */
+  static Pair<ImmutableList<String>, ImmutableList<String>> splitCommand(
+      ImmutableList<String> command, int launcherLength) {
+    ImmutableList.Builder<String> jvmCommand = ImmutableList.builder();
+    ImmutableList.Builder<String> jobArgs = ImmutableList.builder();
+    jvmCommand.addAll(command.subList(0, launcherLength));
+    int index = launcherLength;
+    for (; !command.get(index).equals("-classpath"); index++) {
+      String arg = command.get(index);
+      if (arg.startsWith("-D") && !isStartupProperty(arg)) {
+        jobArgs.add(arg);
+      } else {
+        jvmCommand.add(arg);
+      }
+    }
+    jobArgs.add(command.get(index), command.get(index + 1));
+    // The worker reads the classpath files itself.
+    Preconditions.checkState(command.get(index + 2).equals(FileClassPathRunner.class.getName()));
+    jobArgs.addAll(command.subList(index + 3, command.size()));
+    return new Pair<>(jvmCommand.build(), jobArgs.build());
+  }
+
+  private static boolean isStartupProperty(String arg) {
+    return STARTUP_PROPERTY_PREFIXES.stream().anyMatch(arg::startsWith);
+  }
+
+  /** How many times a persistent pool is in use, and the map it is kept in. */
+  @VisibleForTesting
+  static class PoolUse {
+    private final ConcurrentMap<String, WorkerProcessPool> pools;
+
+    @GuardedBy("POOL_USES")
+    private int leases = 0;
+
+    private PoolUse(ConcurrentMap<String, WorkerProcessPool> pools) {
+      this.pools = pools;
+    }
+  }
+
+  /** A pool of workers that is kept from being shut down until this is closed. */
+  static class PoolLease implements AutoCloseable {
+    private final WorkerProcessPool pool;
+    private final Optional<PoolUse> use;
+
+    private PoolLease(WorkerProcessPool pool, Optional<PoolUse> use) {
+      this.pool = pool;
+      this.use = use;
+    }
+
+    WorkerProcessPool getPool() {
+      return pool;
+    }
+
+    @Override
+    public void close() {
+      use.ifPresent(JUnitWorkers::release);
+    }
+  }
+}
@@ -36,6 +36,9 @@ import javax.tools.SimpleJavaFileObject;
  * A {@link SimpleJavaFileObject} implementation that forwards the content of the file to a Jar
  * output stream instead of writing it to disk. Since the Jar can be shared between multiple
  * threads, a semaphore is used to ensure exclusive access to the output stream.
+ *
+ * <p>The content is kept in a single growable buffer. Reading it back, whether by javac or by the
+ * {@link JarBuilder} writing the jar, streams straight out of that buffer without copying it.
  */
 public class JavaInMemoryFileObject extends JarFileObject {
   // Bump the initial buffer size because usual file sizes using this are way more than 4K and the
@@ -45,7 +48,7 @@ public class JavaInMemoryFileObject extends JarFileObject {
 
   private boolean isOpened = false;
   private boolean isWritten = false;
-  private final ByteArrayOutputStream bos = new ByteArrayOutputStream(BUFFER_SIZE);
+  private final Contents contents = new Contents();
 
   public JavaInMemoryFileObject(URI uri, String pathInJar, Kind kind) {
     super(uri, pathInJar, kind);
@@ -56,7 +59,7 @@ public class JavaInMemoryFileObject extends JarFileObject {
     if (!isWritten) {
       throw new FileNotFoundException(uri.toString());
     }
-    return new ByteArrayInputStream(bos.toByteArray());
+    return contents.openInputStream();
   }
 
   @Override
@@ -67,13 +70,19 @@ public class JavaInMemoryFileObject extends JarFileObject {
     isOpened = true;
     return new OutputStream() {
       @Override
-      public void write(int b) throws IOException {
-        bos.write(b);
+      public void write(int b) {
+        contents.write(b);
       }
 
+      // javac writes whole class files through here; the default implementation would copy them
+      // into the buffer one byte at a time.
       @Override
-      public void close() throws IOException {
-        bos.close();
+      public void write(byte[] b, int off, int len) {
+        contents.write(b, off, len);
+      }
+
+      @Override
+      public void close() {
         isWritten = true;
       }
     };
@@ -89,7 +98,7 @@ public class JavaInMemoryFileObject extends JarFileObject {
     if (!isWritten) {
       throw new FileNotFoundException(uri.toString());
     }
-    return new String(bos.toByteArray());
+    return contents.toString();
   }
 
   @Override
@@ -106,4 +115,15 @@ public class JavaInMemoryFileObject extends JarFileObject {
     jarBuilder.addEntry(
         new JarEntrySupplier(new CustomZipEntry(getName()), owner, this::openInputStream));
   }
+
+  /** A {@link ByteArrayOutputStream} whose contents can be read without copying them. */
+  private static class Contents extends ByteArrayOutputStream {
+    Contents() {
+      super(BUFFER_SIZE);
+    }
+
+    synchronized InputStream openInputStream() {
+      return new ByteArrayInputStream(buf, 0, count);
+    }
+  }
 }
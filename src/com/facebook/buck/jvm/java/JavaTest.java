@@ -262,7 +262,8 @@ public class JavaTest extends AbstractBuildRuleWithDeclaredAndExtraDeps
         testCaseTimeoutMs,
         Arg.stringify(env, pathResolver),
         javaRuntimeLauncher.getCommandPrefix(pathResolver),
-        args);
+        args,
+        options.getJavaTestWorkers());
   }
 
   /** Returns the underlying java library containing the compiled tests. */
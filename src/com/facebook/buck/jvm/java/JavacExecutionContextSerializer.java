@@ -46,6 +46,7 @@ public class JavacExecutionContextSerializer {
   private static final String ENVIRONMENT = "env";
   private static final String PROCESS_EXECUTOR = "process_executor";
   private static final String ABSOLUTE_PATHS_FOR_INPUTS = "absolute_paths_for_inputs";
+  private static final String FILE_MANAGER_POOLING_ENABLED = "file_manager_pooling_enabled";
 
   public static ImmutableMap<String, Object> serialize(JavacExecutionContext context) {
     ImmutableMap.Builder<String, Object> builder = ImmutableMap.builder();
@@ -63,6 +64,7 @@ public class JavacExecutionContextSerializer {
         ABSOLUTE_PATHS_FOR_INPUTS,
         ImmutableList.copyOf(
             context.getAbsolutePathsForInputs().stream().map(Path::toString).iterator()));
+    builder.put(FILE_MANAGER_POOLING_ENABLED, context.isFileManagerPoolingEnabled());
 
     return builder.build();
   }
@@ -117,6 +119,7 @@ public class JavacExecutionContextSerializer {
                 data.get(ENVIRONMENT),
                 "Missing environment when deserializing JavacExectionContext"),
         processExecutor,
-        absolutePathsForInputs);
+        absolutePathsForInputs,
+        (Boolean) Preconditions.checkNotNull(data.get(FILE_MANAGER_POOLING_ENABLED)));
   }
 }
@@ -0,0 +1,287 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.io.file.FileFingerprint;
+import com.facebook.buck.log.Logger;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+
+/**
+ * Lends out javac's standard file managers and takes them back after each compilation, so that the
+ * archives they have opened (the boot classpath and the jars on the classpath) stay open and
+ * indexed from one compilation to the next instead of being reopened for every library.
+ *
+ * <p>Reusing a file manager is only safe if it behaves exactly like a new one would. javac works
+ * out each location from the options only once, so:
+ *
+ * <ul>
+ *   <li>the locations that differ between libraries (the output directories, classpath,
+ *       sourcepath and processor path) are set explicitly from the options on every loan;
+ *   <li>a manager is only lent to compilations whose other file manager options (the boot
+ *       classpath, encoding, and so on) are identical to those it was first used with;
+ *   <li>a manager is closed, dropping every archive it has open, before it is lent to a
+ *       compilation that reads a jar which has changed on disk since the manager last saw it.
+ * </ul>
+ *
+ * Symbol tables are not shared: javac still completes every class from its archive in each
+ * compilation, since nothing guarantees that a symbol from one compilation is valid in the next.
+ */
+final class JavacFileManagerPool {
+  private static final Logger LOG = Logger.get(JavacFileManagerPool.class);
+
+  private static final JavacFileManagerPool INSTANCE = new JavacFileManagerPool();
+
+  /** Options naming the locations that are set explicitly on every loan. */
+  private static final ImmutableMap<String, StandardLocation> PER_COMPILATION_LOCATIONS =
+      ImmutableMap.<String, StandardLocation>builder()
+          .put("-d", StandardLocation.CLASS_OUTPUT)
+          .put("-s", StandardLocation.SOURCE_OUTPUT)
+          .put("-classpath", StandardLocation.CLASS_PATH)
+          .put("-cp", StandardLocation.CLASS_PATH)
+          .put("-sourcepath", StandardLocation.SOURCE_PATH)
+          .put("-processorpath", StandardLocation.ANNOTATION_PROCESSOR_PATH)
+          .build();
+
+  /**
+   * Every archive a manager has seen may still be open, so the number of them kept by idle
+   * managers is bounded to stay well clear of the limit on open files.
+   */
+  private static final int MAX_IDLE_ARCHIVES = 4000;
+
+  private final int maxIdleManagersPerKey;
+
+  /** Used only to ask which options configure the file manager, never lent out. */
+  private final Map<Class<?>, StandardJavaFileManager> optionParsers = new HashMap<>();
+
+  private final Map<PoolKey, Deque<PooledFileManager>> idleManagers = new HashMap<>();
+  private int idleArchives = 0;
+
+  @VisibleForTesting
+  JavacFileManagerPool(int maxIdleManagersPerKey) {
+    this.maxIdleManagersPerKey = maxIdleManagersPerKey;
+  }
+
+  private JavacFileManagerPool() {
+    this(Runtime.getRuntime().availableProcessors());
+  }
+
+  static JavacFileManagerPool getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Returns a file manager for a compilation with the given options. Closing it returns it to the
+   * pool; it must not be used afterwards.
+   */
+  StandardJavaFileManager acquire(JavaCompiler compiler, List<String> options)
+      throws IOException {
+    ImmutableList.Builder<String> sharedOptions = ImmutableList.builder();
+    Map<StandardLocation, List<File>> locations = new EnumMap<>(StandardLocation.class);
+    synchronized (this) {
+      StandardJavaFileManager optionParser =
+          optionParsers.computeIfAbsent(
+              compiler.getClass(), key -> compiler.getStandardFileManager(null, null, null));
+      for (int i = 0; i < options.size(); i++) {
+        String option = options.get(i);
+        int argumentCount = optionParser.isSupportedOption(option);
+        if (argumentCount < 0) {
+          // Not a file manager option, so javac keeps it with the rest of the compilation's state.
+          continue;
+        }
+        List<String> arguments =
+            options.subList(i + 1, Math.min(options.size(), i + 1 + argumentCount));
+        i += arguments.size();
+        StandardLocation location = PER_COMPILATION_LOCATIONS.get(option);
+        if (location != null && arguments.size() == 1) {
+          locations.put(location, parseLocation(location, arguments.get(0)));
+        } else {
+          sharedOptions.add(option).addAll(arguments);
+        }
+      }
+    }
+
+    PoolKey key =
+        new PoolKey(compiler.getClass(), sharedOptions.build(), locations.keySet());
+    List<File> filesToCheck = new ArrayList<>();
+    for (Map.Entry<StandardLocation, List<File>> entry : locations.entrySet()) {
+      if (!entry.getKey().isOutputLocation()) {
+        filesToCheck.addAll(entry.getValue());
+      }
+    }
+
+    PooledFileManager manager;
+    synchronized (this) {
+      Deque<PooledFileManager> idle = idleManagers.get(key);
+      manager = idle == null ? null : idle.pollFirst();
+      if (manager != null) {
+        idleArchives -= manager.fingerprints.size();
+      }
+    }
+
+    if (manager != null) {
+      Iterable<? extends File> platformClassPath =
+          manager.fileManager.getLocation(StandardLocation.PLATFORM_CLASS_PATH);
+      if (platformClassPath != null) {
+        platformClassPath.forEach(filesToCheck::add);
+      }
+      if (!manager.updateFingerprints(filesToCheck)) {
+        LOG.debug("Discarding a pooled javac file manager whose archives have changed.");
+        manager.fileManager.close();
+        manager = null;
+      }
+    }
+    if (manager == null) {
+      manager = new PooledFileManager(compiler.getStandardFileManager(null, null, null));
+      manager.updateFingerprints(filesToCheck);
+    }
+
+    for (Map.Entry<StandardLocation, List<File>> entry : locations.entrySet()) {
+      manager.fileManager.setLocation(entry.getKey(), entry.getValue());
+    }
+    return new Loan(key, manager);
+  }
+
+  private synchronized void release(PoolKey key, PooledFileManager manager) throws IOException {
+    Deque<PooledFileManager> idle = idleManagers.computeIfAbsent(key, k -> new ArrayDeque<>());
+    if (idle.size() >= maxIdleManagersPerKey
+        || idleArchives + manager.fingerprints.size() > MAX_IDLE_ARCHIVES) {
+      manager.fileManager.close();
+      return;
+    }
+    idle.addFirst(manager);
+    idleArchives += manager.fingerprints.size();
+  }
+
+  private static List<File> parseLocation(StandardLocation location, String value) {
+    if (location.isOutputLocation()) {
+      return Collections.singletonList(new File(value));
+    }
+    List<File> files = new ArrayList<>();
+    for (String element : Splitter.on(File.pathSeparatorChar).split(value)) {
+      if (!element.isEmpty()) {
+        files.add(new File(element));
+      } else if (location == StandardLocation.CLASS_PATH) {
+        // javac reads an empty element of the classpath, and only the classpath, as "."
+        files.add(new File("."));
+      }
+    }
+    return files;
+  }
+
+  private static class PooledFileManager {
+    private final StandardJavaFileManager fileManager;
+    private final Map<File, FileFingerprint> fingerprints = new HashMap<>();
+
+    private PooledFileManager(StandardJavaFileManager fileManager) {
+      this.fileManager = fileManager;
+    }
+
+    /**
+     * Records the current state of the given files.
+     *
+     * @return false if any of them has changed since it was last recorded.
+     */
+    private boolean updateFingerprints(Iterable<File> files) {
+      boolean upToDate = true;
+      for (File file : files) {
+        FileFingerprint fingerprint = FileFingerprint.of(file.toPath());
+        FileFingerprint previous = fingerprints.put(file, fingerprint);
+        if (previous != null && !previous.equals(fingerprint)) {
+          upToDate = false;
+        }
+      }
+      return upToDate;
+    }
+  }
+
+  /** Returns the pooled file manager to the pool when closed, rather than closing it. */
+  private class Loan extends ForwardingStandardJavaFileManager {
+    private final PoolKey key;
+    private final PooledFileManager manager;
+    private boolean returned = false;
+
+    private Loan(PoolKey key, PooledFileManager manager) {
+      super(manager.fileManager);
+      this.key = key;
+      this.manager = manager;
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (returned) {
+        return;
+      }
+      returned = true;
+      fileManager.flush();
+      release(key, manager);
+    }
+  }
+
+  @VisibleForTesting
+  static StandardJavaFileManager getPooledFileManager(StandardJavaFileManager loan) {
+    return ((Loan) loan).manager.fileManager;
+  }
+
+  private static class PoolKey {
+    private final Class<?> compilerClass;
+    private final ImmutableList<String> sharedOptions;
+    private final ImmutableSet<StandardLocation> perCompilationLocations;
+
+    private PoolKey(
+        Class<?> compilerClass,
+        ImmutableList<String> sharedOptions,
+        Iterable<StandardLocation> perCompilationLocations) {
+      this.compilerClass = compilerClass;
+      this.sharedOptions = sharedOptions;
+      this.perCompilationLocations = ImmutableSet.copyOf(perCompilationLocations);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof PoolKey)) {
+        return false;
+      }
+      PoolKey that = (PoolKey) other;
+      return compilerClass.equals(that.compilerClass)
+          && sharedOptions.equals(that.sharedOptions)
+          && perCompilationLocations.equals(that.perCompilationLocations);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(compilerClass, sharedOptions, perCompilationLocations);
+    }
+  }
+}
@@ -122,7 +122,8 @@ public class JavacPipelineState implements RulePipelineState {
               context.getProjectFilesystemFactory(),
               firstOrderContext.getEnvironment(),
               firstOrderContext.getProcessExecutor(),
-              getAbsolutePathsForJavacInputs(getJavac()));
+              getAbsolutePathsForJavacInputs(getJavac()),
+              javacOptions.isFileManagerPoolingEnabled());
 
       ImmutableList<JavacPluginJsr199Fields> pluginFields =
           ImmutableList.copyOf(
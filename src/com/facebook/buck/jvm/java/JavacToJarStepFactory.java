@@ -196,10 +196,11 @@ public class JavacToJarStepFactory extends CompileToJarStepFactory implements Ad
                 .contains(compilerParameters.getOutputDirectory()));
 
     String spoolMode = javacOptions.getSpoolMode().name();
-    // In order to use direct spooling to the Jar:
-    // (1) It must be enabled through a .buckconfig.
+    // Source ABI generation always spools to the jar. Otherwise, in order to use direct spooling
+    // to the Jar:
+    // (1) It must be enabled with [java] jar_spool_mode = direct_to_jar in a .buckconfig.
     // (2) The target must have 0 postprocessing steps.
-    // (3) Tha compile API must be JSR 199.
+    // (3) The compile API must be JSR 199.
     boolean isSpoolingToJarEnabled =
         compilerParameters.getAbiGenerationMode().isSourceAbi()
             || (postprocessClassesCommands.isEmpty()
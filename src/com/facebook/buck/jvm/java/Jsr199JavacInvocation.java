@@ -56,6 +56,7 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
@@ -189,6 +190,7 @@ class Jsr199JavacInvocation implements Javac.Invocation {
 
     @Nullable private String compilerThreadName;
     @Nullable private JavacPhaseEventLogger phaseEventLogger;
+    @Nullable private String sourceOnlyAbiFingerprint;
 
     private CompilerWorker(ListeningExecutorService executor) {
       this.executor = executor;
@@ -234,13 +236,15 @@ class Jsr199JavacInvocation implements Javac.Invocation {
                       context.getEventSink(),
                       options.contains("-parameters"));
               stubGenerator.generate(topLevelTypes);
-              jarBuilder.createJarFile(
-                  context
-                      .getProjectFilesystem()
-                      .getPathForRelativePath(jarParameters.getJarPath()));
+              Path jarPath =
+                  context.getProjectFilesystem().getPathForRelativePath(jarParameters.getJarPath());
+              jarBuilder.createJarFile(jarPath);
 
               debugLogDiagnostics();
               if (buildSuccessful()) {
+                if (sourceOnlyAbiFingerprint != null) {
+                  SourceOnlyAbiCache.record(invokingRule, sourceOnlyAbiFingerprint, jarPath);
+                }
                 if (classUsageTracker != null) {
                   new DefaultClassUsageFileWriter()
                       .writeFile(
@@ -450,7 +454,9 @@ class Jsr199JavacInvocation implements Javac.Invocation {
       JavaCompiler compiler = compilerConstructor.apply(context);
 
       StandardJavaFileManager standardFileManager =
-          compiler.getStandardFileManager(null, null, null);
+          context.isFileManagerPoolingEnabled()
+              ? JavacFileManagerPool.getInstance().acquire(compiler, options)
+              : compiler.getStandardFileManager(null, null, null);
       addCloseable(standardFileManager);
 
       StandardJavaFileManager fileManager;
@@ -529,6 +535,10 @@ class Jsr199JavacInvocation implements Javac.Invocation {
                 javacTask,
                 ruleInfo,
                 abiGenerationMode.getDiagnosticKindForSourceOnlyAbiCompatibility());
+      } else if (generatingSourceOnlyAbi && canReuseSourceOnlyAbi()) {
+        taskListener =
+            SourceBasedAbiStubber.newFingerprintingTaskListener(
+                pluginLoader, javacTask, this::restoreSourceOnlyAbiIfUnchanged);
       }
 
       phaseEventLogger = new JavacPhaseEventLogger(invokingRule, context.getEventSink());
@@ -554,6 +564,53 @@ class Jsr199JavacInvocation implements Javac.Invocation {
       return javacTask;
     }
 
+    /**
+     * Whether the source-only ABI jar is determined by nothing but the sources, the options and
+     * the classpath, so that it can be reused while none of them change. Annotation processors
+     * and jar parameters that add or remove entries could make it depend on anything.
+     */
+    private boolean canReuseSourceOnlyAbi() {
+      return abiJarParameters != null
+          && pluginFields.isEmpty()
+          && classUsageTracker == null
+          && abiJarParameters.getEntriesToJar().isEmpty()
+          && !abiJarParameters.getMainClass().isPresent()
+          && !abiJarParameters.getManifestFile().isPresent()
+          && abiJarParameters.getRemoveEntryPredicate() == RemoveClassesPatternsMatcher.EMPTY;
+    }
+
+    /**
+     * Called once the sources have been parsed, with a fingerprint of the parts of them that can
+     * affect the ABI. Restores the jar generated by a previous build if it was generated from the
+     * same fingerprint.
+     *
+     * @return whether the jar was restored, and so the compiler can stop
+     */
+    private boolean restoreSourceOnlyAbiIfUnchanged(String sourcesFingerprint) {
+      JarParameters jarParameters = Preconditions.checkNotNull(abiJarParameters);
+      Optional<String> environmentFingerprint =
+          SourceOnlyAbiCache.fingerprintEnvironment(options);
+      if (!environmentFingerprint.isPresent()) {
+        return false;
+      }
+
+      String fingerprint =
+          environmentFingerprint.get() + jarParameters + '\0' + sourcesFingerprint;
+      try {
+        if (SourceOnlyAbiCache.restore(
+            invokingRule,
+            fingerprint,
+            context.getProjectFilesystem().getPathForRelativePath(jarParameters.getJarPath()))) {
+          LOG.debug("Reusing the source-only ABI of %s; its ABI is unchanged.", invokingRule);
+          return true;
+        }
+      } catch (IOException e) {
+        LOG.warn(e, "Unable to reuse the source-only ABI of %s.", invokingRule);
+      }
+      sourceOnlyAbiFingerprint = fingerprint;
+      return false;
+    }
+
     private JarBuilder newJarBuilder(JarParameters jarParameters) throws IOException {
       JarBuilder jarBuilder = new JarBuilder();
       Preconditions.checkNotNull(inMemoryFileManager).writeToJar(jarBuilder);
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import com.facebook.buck.io.file.FileFingerprint;
+import com.facebook.buck.model.BuildTarget;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Splitter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableSet;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Remembers, for the life of the daemon, the last source-only ABI jar generated for each rule
+ * together with a fingerprint of everything it was generated from. A rule whose sources have only
+ * changed in ways that can't affect its ABI (method bodies, most often) gets the remembered jar
+ * back instead of entering and stubbing its sources again.
+ */
+final class SourceOnlyAbiCache {
+  private static final Cache<BuildTarget, Entry> CACHE =
+      CacheBuilder.newBuilder().softValues().build();
+
+  private static final ImmutableSet<String> PATH_OPTIONS =
+      ImmutableSet.of("-classpath", "-cp", "-bootclasspath");
+
+  private SourceOnlyAbiCache() {}
+
+  /**
+   * @return a fingerprint of the compiler options and of every jar that they put on the classpath,
+   *     or nothing if the classpath includes something other than jars, whose contents can't be
+   *     cheaply fingerprinted.
+   */
+  static Optional<String> fingerprintEnvironment(List<String> options) {
+    StringBuilder builder = new StringBuilder();
+    for (String option : options) {
+      builder.append(option).append('\0');
+    }
+    for (int i = 0; i < options.size() - 1; i++) {
+      if (!PATH_OPTIONS.contains(options.get(i))) {
+        continue;
+      }
+      for (String element : Splitter.on(File.pathSeparatorChar).split(options.get(i + 1))) {
+        if (element.isEmpty()) {
+          continue;
+        }
+        Path path = Paths.get(element);
+        if (Files.isDirectory(path)) {
+          return Optional.empty();
+        }
+        builder.append(FileFingerprint.of(path)).append('\0');
+      }
+    }
+    return Optional.of(builder.toString());
+  }
+
+  /**
+   * Writes the jar remembered for the target to the given path, if it was generated from the same
+   * fingerprint.
+   *
+   * @return whether the jar was written
+   */
+  static boolean restore(BuildTarget target, String fingerprint, Path jarPath)
+      throws IOException {
+    Entry entry = CACHE.getIfPresent(target);
+    if (entry == null || !entry.fingerprint.equals(fingerprint)) {
+      return false;
+    }
+    Files.createDirectories(jarPath.getParent());
+    Files.write(jarPath, entry.jar);
+    return true;
+  }
+
+  static void record(BuildTarget target, String fingerprint, Path jarPath) throws IOException {
+    CACHE.put(target, new Entry(fingerprint, Files.readAllBytes(jarPath)));
+  }
+
+  @VisibleForTesting
+  static void invalidateCache() {
+    CACHE.invalidateAll();
+  }
+
+  private static class Entry {
+    private final String fingerprint;
+    private final byte[] jar;
+
+    private Entry(String fingerprint, byte[] jar) {
+      this.fingerprint = fingerprint;
+      this.jar = jar;
+    }
+  }
+}
@@ -62,6 +62,11 @@ class DirectoryReader implements LibraryReader {
     }
   }
 
+  @Override
+  public boolean isThreadSafe() {
+    return true;
+  }
+
   @Override
   public void close() {
     // Nothing in particular needed
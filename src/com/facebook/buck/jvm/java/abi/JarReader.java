@@ -53,6 +53,11 @@ class JarReader implements LibraryReader {
     getInner().visitClass(relativePath, cv);
   }
 
+  @Override
+  public boolean isThreadSafe() {
+    return true;
+  }
+
   @Override
   public void close() throws IOException {
     if (fileSystem != null) {
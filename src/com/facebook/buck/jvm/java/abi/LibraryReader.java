@@ -56,6 +56,14 @@ interface LibraryReader extends AutoCloseable {
   @Override
   void close() throws IOException;
 
+  /**
+   * @return whether {@link #visitClass} and {@link #openResourceFile} may be called from several
+   *     threads at once, once {@link #getRelativePaths()} has returned.
+   */
+  default boolean isThreadSafe() {
+    return false;
+  }
+
   default boolean isResource(Path path) {
     return !isClass(path);
   }
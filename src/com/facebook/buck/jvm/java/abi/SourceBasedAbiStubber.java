@@ -16,6 +16,7 @@
 
 package com.facebook.buck.jvm.java.abi;
 
+import com.facebook.buck.jvm.java.abi.source.api.SourceAbiFingerprintListener;
 import com.facebook.buck.jvm.java.abi.source.api.SourceOnlyAbiRuleInfo;
 import com.facebook.buck.jvm.java.plugin.api.BuckJavacTaskListener;
 import com.facebook.buck.jvm.java.plugin.api.BuckJavacTaskProxy;
@@ -48,5 +49,27 @@ public final class SourceBasedAbiStubber {
     }
   }
 
+  public static BuckJavacTaskListener newFingerprintingTaskListener(
+      PluginClassLoader pluginLoader,
+      BuckJavacTaskProxy task,
+      SourceAbiFingerprintListener listener) {
+    try {
+      Class<?> fingerprintingTaskListenerClass =
+          pluginLoader.loadClass(
+              "com.facebook.buck.jvm.java.abi.source.AbiFingerprintingTaskListener", Object.class);
+      final Constructor<?> constructor =
+          fingerprintingTaskListenerClass.getConstructor(
+              BuckJavacTaskProxy.class, SourceAbiFingerprintListener.class);
+
+      return BuckJavacTaskListener.wrapRealTaskListener(
+          pluginLoader, constructor.newInstance(task, listener));
+    } catch (ReflectiveOperationException e) {
+      throw new HumanReadableException(
+          e,
+          "Could not load source-only ABI fingerprinter. Your compiler might not support this. "
+              + "If it doesn't, you may need to disable source-only ABI generation.");
+    }
+  }
+
   private SourceBasedAbiStubber() {}
 }
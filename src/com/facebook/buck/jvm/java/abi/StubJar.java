@@ -19,10 +19,21 @@ package com.facebook.buck.jvm.java.abi;
 import com.facebook.buck.io.file.MorePaths;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.util.zip.JarBuilder;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import javax.annotation.processing.Messager;
@@ -31,6 +42,19 @@ import javax.lang.model.element.Element;
 import javax.lang.model.util.Elements;
 
 public class StubJar {
+  /**
+   * Identifies the stubs written for a given library. Bump this whenever a change makes the stubs
+   * of the same library differ, so that stubs kept from earlier versions aren't reused.
+   */
+  public static final int VERSION = 1;
+
+  /** Below this, the cost of farming the classes out to other threads outweighs the gain. */
+  private static final int MIN_ENTRIES_FOR_PARALLEL_STUBBING = 64;
+
+  // Stubbing reads the library, which blocks on I/O, so it gets threads of its own rather than the
+  // common ForkJoinPool, whose other users it would starve.
+  private static final ExecutorService STUBBING_EXECUTOR = createStubbingExecutor();
+
   private final Supplier<LibraryReader> libraryReaderSupplier;
   private boolean sourceAbiCompatible;
 
@@ -89,12 +113,100 @@ public class StubJar {
             .sorted(Comparator.comparing(MorePaths::pathWithUnixSeparators))
             .collect(Collectors.toList());
 
-    for (Path path : paths) {
-      StubJarEntry entry = StubJarEntry.of(input, path, sourceAbiCompatible);
+    List<StubJarEntry> entries;
+    if (input.isThreadSafe() && paths.size() >= MIN_ENTRIES_FOR_PARALLEL_STUBBING) {
+      entries = stubInParallel(input, paths);
+    } else {
+      entries = new ArrayList<>(paths.size());
+      for (Path path : paths) {
+        entries.add(StubJarEntry.of(input, path, sourceAbiCompatible));
+      }
+    }
+
+    for (StubJarEntry entry : entries) {
       if (entry == null) {
         continue;
       }
       entry.write(writer);
     }
   }
+
+  /**
+   * Stubs the classes on {@link #STUBBING_EXECUTOR}, returning the entries in the order of the
+   * paths. Returns or throws only once every task has finished, so the caller may close the reader
+   * as soon as this returns. Once a class fails, the classes that haven't been started yet are
+   * skipped.
+   */
+  private List<StubJarEntry> stubInParallel(LibraryReader input, List<Path> paths)
+      throws IOException {
+    AtomicBoolean failed = new AtomicBoolean();
+    List<Future<StubJarEntry>> stubs = new ArrayList<>(paths.size());
+    for (Path path : paths) {
+      stubs.add(
+          STUBBING_EXECUTOR.submit(
+              () -> {
+                if (failed.get()) {
+                  return null;
+                }
+                boolean stubbed = false;
+                try {
+                  StubJarEntry entry = StubJarEntry.of(input, path, sourceAbiCompatible);
+                  stubbed = true;
+                  return entry;
+                } finally {
+                  if (!stubbed) {
+                    failed.set(true);
+                  }
+                }
+              }));
+    }
+
+    List<StubJarEntry> entries = new ArrayList<>(paths.size());
+    Throwable failure = null;
+    boolean interrupted = false;
+    for (Future<StubJarEntry> stub : stubs) {
+      while (true) {
+        try {
+          entries.add(stub.get());
+          break;
+        } catch (InterruptedException e) {
+          // Keep waiting, so that no task outlives this call, but skip the remaining classes.
+          interrupted = true;
+          failed.set(true);
+        } catch (ExecutionException e) {
+          if (failure == null) {
+            failure = e.getCause();
+          }
+          break;
+        }
+      }
+    }
+
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+      if (failure == null) {
+        throw new InterruptedIOException("Interrupted while stubbing classes.");
+      }
+    }
+    if (failure != null) {
+      Throwables.throwIfInstanceOf(failure, IOException.class);
+      Throwables.throwIfUnchecked(failure);
+      throw new RuntimeException(failure);
+    }
+    return entries;
+  }
+
+  private static ExecutorService createStubbingExecutor() {
+    int threads = Runtime.getRuntime().availableProcessors();
+    ThreadPoolExecutor executor =
+        new ThreadPoolExecutor(
+            threads,
+            threads,
+            30,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            new ThreadFactoryBuilder().setNameFormat("stub-jar-%d").setDaemon(true).build());
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
 }
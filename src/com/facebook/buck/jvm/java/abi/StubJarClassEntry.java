@@ -31,9 +31,8 @@ import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.InnerClassNode;
 
 class StubJarClassEntry extends StubJarEntry {
-  @Nullable private final Set<String> referencedClassNames;
   private final Path path;
-  private final ClassNode stub;
+  private final byte[] stubBytes;
 
   @Nullable
   public static StubJarClassEntry of(LibraryReader input, Path path, boolean sourceAbiCompatible)
@@ -57,16 +56,16 @@ class StubJarClassEntry extends StubJarEntry {
     // The synthetic package-info class is how package annotations are recorded; that one is
     // actually used by the compiler
     if (!isAnonymousOrLocalOrSyntheticClass(stub) || stub.name.endsWith("/package-info")) {
-      return new StubJarClassEntry(path, stub, referenceTracker.getReferencedClassNames());
+      return new StubJarClassEntry(
+          path, toByteArray(stub, referenceTracker.getReferencedClassNames()));
     }
 
     return null;
   }
 
-  private StubJarClassEntry(Path path, ClassNode stub, Set<String> referencedClassNames) {
+  private StubJarClassEntry(Path path, byte[] stubBytes) {
     this.path = path;
-    this.stub = stub;
-    this.referencedClassNames = referencedClassNames;
+    this.stubBytes = stubBytes;
   }
 
   @Override
@@ -75,13 +74,21 @@ class StubJarClassEntry extends StubJarEntry {
   }
 
   private InputStream openInputStream() {
+    return new ByteArrayInputStream(stubBytes);
+  }
+
+  /**
+   * Renders the stub straight away, so that the work is done by whichever thread is stubbing the
+   * class and the much larger {@link ClassNode} can be dropped.
+   */
+  private static byte[] toByteArray(ClassNode stub, Set<String> referencedClassNames) {
     ClassWriter writer = new ClassWriter(0);
     ClassVisitor visitor = writer;
     visitor = new InnerClassSortingClassVisitor(stub.name, visitor);
     visitor = new AbiFilteringClassVisitor(visitor, referencedClassNames);
     stub.accept(visitor);
 
-    return new ByteArrayInputStream(writer.toByteArray());
+    return writer.toByteArray();
   }
 
   private static boolean isAnonymousOrLocalOrSyntheticClass(ClassNode node) {
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java.abi.source;
+
+import com.facebook.buck.jvm.java.abi.source.api.SourceAbiFingerprintListener;
+import com.facebook.buck.jvm.java.abi.source.api.StopCompilation;
+import com.facebook.buck.jvm.java.plugin.adapter.BuckJavacTaskProxyImpl;
+import com.facebook.buck.jvm.java.plugin.api.BuckJavacTaskProxy;
+import com.facebook.buck.util.liteinfersupport.Nullable;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.MethodTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.tree.VariableTree;
+import com.sun.source.util.TaskEvent;
+import com.sun.source.util.TaskListener;
+import com.sun.source.util.TreePath;
+import com.sun.source.util.Trees;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import javax.lang.model.element.Modifier;
+
+/**
+ * A {@link TaskListener} that fingerprints, as each file is parsed, the parts of it that can affect
+ * the source-only ABI: everything but the bodies of methods and initializer blocks, and the
+ * initializers of fields that can't be constants. Once all files are parsed it hands the combined
+ * fingerprint to a {@link SourceAbiFingerprintListener}, and stops the compiler before anything is
+ * entered if that listener already has the ABI.
+ *
+ * <p>The fingerprint errs on the side of changing too often: anything it isn't sure is irrelevant,
+ * such as private members and the bodies of enum constants, is included.
+ */
+public class AbiFingerprintingTaskListener implements TaskListener {
+  private final BuckJavacTaskProxy task;
+  private final SourceAbiFingerprintListener listener;
+  private final MessageDigest digest;
+  @Nullable private Trees trees;
+  private boolean notified = false;
+
+  public AbiFingerprintingTaskListener(
+      BuckJavacTaskProxy task, SourceAbiFingerprintListener listener) {
+    this.task = task;
+    this.listener = listener;
+    try {
+      digest = MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  @Override
+  public void started(TaskEvent e) {
+    if (e.getKind() == TaskEvent.Kind.ENTER && !notified) {
+      notified = true;
+      if (listener.onSourcesParsed(toHex(digest.digest()))) {
+        throw new StopCompilation();
+      }
+    }
+  }
+
+  @Override
+  public void finished(TaskEvent e) {
+    if (e.getKind() == TaskEvent.Kind.PARSE && !notified) {
+      CompilationUnitTree compilationUnit = e.getCompilationUnit();
+      digest.update(fingerprint(compilationUnit).getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  private String fingerprint(CompilationUnitTree compilationUnit) {
+    // Only the file's own name: where the sources were checked out doesn't affect their ABI
+    String fileName = compilationUnit.getSourceFile().getName();
+    fileName =
+        fileName.substring(
+            Math.max(fileName.lastIndexOf('/'), fileName.lastIndexOf(File.separatorChar)) + 1);
+    StringBuilder builder = new StringBuilder();
+    builder
+        .append(fileName)
+        .append('\n')
+        .append(compilationUnit.getPackageAnnotations())
+        .append(compilationUnit.getPackageName())
+        .append('\n')
+        .append(compilationUnit.getImports())
+        .append('\n');
+    TreePath root = new TreePath(compilationUnit);
+    for (Tree typeDecl : compilationUnit.getTypeDecls()) {
+      appendMember(builder, new TreePath(root, typeDecl), Tree.Kind.COMPILATION_UNIT);
+    }
+    builder.append('\0');
+    return builder.toString();
+  }
+
+  private void appendMember(StringBuilder builder, TreePath path, Tree.Kind enclosingKind) {
+    Tree member = path.getLeaf();
+    switch (member.getKind()) {
+      case CLASS:
+      case INTERFACE:
+      case ENUM:
+      case ANNOTATION_TYPE:
+        ClassTree classTree = (ClassTree) member;
+        appendDeprecation(builder, path);
+        builder
+            .append(classTree.getKind())
+            .append(' ')
+            .append(classTree.getModifiers())
+            .append(classTree.getSimpleName())
+            .append(classTree.getTypeParameters())
+            .append(" extends ")
+            .append(classTree.getExtendsClause())
+            .append(" implements ")
+            .append(classTree.getImplementsClause())
+            .append(" {\n");
+        for (Tree classMember : classTree.getMembers()) {
+          appendMember(builder, new TreePath(path, classMember), classTree.getKind());
+        }
+        builder.append("}\n");
+        break;
+      case METHOD:
+        MethodTree method = (MethodTree) member;
+        appendDeprecation(builder, path);
+        builder
+            .append(method.getModifiers())
+            .append(method.getTypeParameters())
+            .append(method.getReturnType())
+            .append(' ')
+            .append(method.getName())
+            .append(method.getReceiverParameter())
+            .append(method.getParameters())
+            .append(" throws ")
+            .append(method.getThrows())
+            .append(" default ")
+            .append(method.getDefaultValue())
+            .append(";\n");
+        break;
+      case VARIABLE:
+        VariableTree variable = (VariableTree) member;
+        appendDeprecation(builder, path);
+        builder
+            .append(variable.getModifiers())
+            .append(variable.getType())
+            .append(' ')
+            .append(variable.getName());
+        // Only final fields can be constants, and all interface fields are implicitly final
+        if (variable.getModifiers().getFlags().contains(Modifier.FINAL)
+            || enclosingKind != Tree.Kind.CLASS) {
+          builder.append(" = ").append(variable.getInitializer());
+        }
+        builder.append(";\n");
+        break;
+      case BLOCK:
+        // Initializer blocks aren't part of the ABI
+        break;
+        // $CASES-OMITTED$
+      default:
+        builder.append(member).append('\n');
+        break;
+    }
+  }
+
+  /** Deprecation can come from a javadoc tag, which isn't part of the tree. */
+  private void appendDeprecation(StringBuilder builder, TreePath path) {
+    Trees trees = this.trees;
+    if (trees == null) {
+      trees = ((BuckJavacTaskProxyImpl) task).getInner().getTrees();
+      this.trees = trees;
+    }
+    String docComment = trees.getDocComment(path);
+    if (docComment != null && docComment.contains("@deprecated")) {
+      builder.append("@deprecated ");
+    }
+  }
+
+  private static String toHex(byte[] bytes) {
+    StringBuilder builder = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      builder.append(Character.forDigit((b >> 4) & 0xf, 16));
+      builder.append(Character.forDigit(b & 0xf, 16));
+    }
+    return builder.toString();
+  }
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java.abi.source.api;
+
+/**
+ * Told the ABI fingerprint of a rule's sources once they have all been parsed, before any of them
+ * is entered.
+ */
+public interface SourceAbiFingerprintListener {
+  /**
+   * @param fingerprint covers every part of the sources that can affect the source-only ABI of the
+   *     rule or its validation
+   * @return true if the ABI for this fingerprint is already available, in which case the compiler
+   *     is stopped without entering anything
+   */
+  boolean onSourcesParsed(String fingerprint);
+}
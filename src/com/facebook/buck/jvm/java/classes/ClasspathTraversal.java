@@ -16,10 +16,11 @@
 
 package com.facebook.buck.jvm.java.classes;
 
+import com.facebook.buck.io.file.FileFingerprint;
 import com.facebook.buck.io.file.MorePaths;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
-import com.facebook.buck.util.ZipFileTraversal;
 import com.google.common.collect.ImmutableSet;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.FileVisitOption;
@@ -31,6 +32,7 @@ import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Collection;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
+import javax.annotation.Nullable;
 
 /**
  * Traversal strategy for traversing a set of paths that themselves are traversed. The provided
@@ -82,25 +84,59 @@ public abstract class ClasspathTraversal {
     }
 
     @Override
-    public void traverse(final ClasspathTraversal traversal) throws IOException {
-      ZipFileTraversal impl =
-          new ZipFileTraversal(file) {
-            @Override
-            public void visit(ZipFile zipFile, ZipEntry zipEntry) throws IOException {
-              traversal.visit(new FileLikeInZip(file, zipFile, zipEntry));
-            }
-          };
-      impl.traverse();
+    public void traverse(ClasspathTraversal traversal) throws IOException {
+      JarIndex index = JarIndex.get(file);
+      try (LazyZipFile zipFile = new LazyZipFile(file, index)) {
+        for (int entry = 0; entry < index.size(); entry++) {
+          traversal.visit(new FileLikeInZip(file, zipFile, index, entry));
+        }
+      }
+    }
+
+    /**
+     * Opens the jar only once an entry is read, since many traversals only look at the names of
+     * the entries, which the index already has.
+     */
+    private static class LazyZipFile implements Closeable {
+      private final Path file;
+      private final JarIndex index;
+      @Nullable private ZipFile zipFile;
+
+      private LazyZipFile(Path file, JarIndex index) {
+        this.file = file;
+        this.index = index;
+      }
+
+      private synchronized ZipFile get() throws IOException {
+        if (zipFile == null) {
+          zipFile = new ZipFile(file.toFile());
+          if (!FileFingerprint.of(file).equals(index.getFingerprint())) {
+            zipFile.close();
+            zipFile = null;
+            throw new IOException(String.format("%s changed while it was being traversed.", file));
+          }
+        }
+        return zipFile;
+      }
+
+      @Override
+      public synchronized void close() throws IOException {
+        if (zipFile != null) {
+          zipFile.close();
+        }
+      }
     }
 
     private static class FileLikeInZip extends AbstractFileLike {
       private final Path container;
-      private final ZipFile zipFile;
-      private final ZipEntry entry;
+      private final LazyZipFile zipFile;
+      private final JarIndex index;
+      private final int entry;
 
-      public FileLikeInZip(Path container, ZipFile zipFile, ZipEntry entry) {
+      public FileLikeInZip(Path container, LazyZipFile zipFile, JarIndex index, int entry) {
         this.container = container;
         this.zipFile = zipFile;
+        this.index = index;
         this.entry = entry;
       }
 
@@ -111,17 +147,23 @@ public abstract class ClasspathTraversal {
 
       @Override
       public String getRelativePath() {
-        return entry.getName();
+        return index.getName(entry);
       }
 
       @Override
       public long getSize() {
-        return entry.getSize();
+        return index.getSize(entry);
       }
 
       @Override
       public InputStream getInput() throws IOException {
-        return zipFile.getInputStream(entry);
+        ZipFile zip = zipFile.get();
+        ZipEntry zipEntry = zip.getEntry(getRelativePath());
+        if (zipEntry == null) {
+          throw new IOException(
+              String.format("%s is missing from %s.", getRelativePath(), container));
+        }
+        return zip.getInputStream(zipEntry);
       }
     }
   }
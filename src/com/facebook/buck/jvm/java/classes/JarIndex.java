@@ -0,0 +1,104 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java.classes;
+
+import com.facebook.buck.io.file.FileFingerprint;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Enumeration;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * The names and sizes of the entries of a jar, in the order of its central directory.
+ *
+ * <p>Indexes are cached for the life of the daemon and reused for as long as the jar is unchanged
+ * on disk, so the same prebuilt and dependency jars aren't reopened and their central directories
+ * reread by every traversal of every build. The names are stored in a single string to keep the
+ * thousands of cached indexes compact.
+ */
+final class JarIndex {
+  private static final Cache<Path, JarIndex> CACHE =
+      CacheBuilder.newBuilder().softValues().build();
+
+  private final FileFingerprint fingerprint;
+  private final String names;
+  private final int[] nameEnds;
+  private final long[] sizes;
+
+  private JarIndex(FileFingerprint fingerprint, String names, int[] nameEnds, long[] sizes) {
+    this.fingerprint = fingerprint;
+    this.names = names;
+    this.nameEnds = nameEnds;
+    this.sizes = sizes;
+  }
+
+  /** @return the index of the jar at the given absolute path. */
+  static JarIndex get(Path jar) throws IOException {
+    FileFingerprint fingerprint = FileFingerprint.of(jar);
+    JarIndex index = CACHE.getIfPresent(jar);
+    if (index != null && index.fingerprint.equals(fingerprint)) {
+      return index;
+    }
+    // The fingerprint is taken before reading, so a jar rewritten meanwhile is just read again.
+    index = read(jar, fingerprint);
+    CACHE.put(jar, index);
+    return index;
+  }
+
+  @VisibleForTesting
+  static void invalidateCache() {
+    CACHE.invalidateAll();
+  }
+
+  private static JarIndex read(Path jar, FileFingerprint fingerprint) throws IOException {
+    try (ZipFile zipFile = new ZipFile(jar.toFile())) {
+      StringBuilder names = new StringBuilder();
+      int[] nameEnds = new int[zipFile.size()];
+      long[] sizes = new long[zipFile.size()];
+      int count = 0;
+      Enumeration<? extends ZipEntry> entries = zipFile.entries();
+      while (entries.hasMoreElements()) {
+        ZipEntry entry = entries.nextElement();
+        names.append(entry.getName());
+        nameEnds[count] = names.length();
+        sizes[count] = entry.getSize();
+        count++;
+      }
+      return new JarIndex(fingerprint, names.toString(), nameEnds, sizes);
+    }
+  }
+
+  FileFingerprint getFingerprint() {
+    return fingerprint;
+  }
+
+  int size() {
+    return nameEnds.length;
+  }
+
+  String getName(int entry) {
+    return names.substring(entry == 0 ? 0 : nameEnds[entry - 1], nameEnds[entry]);
+  }
+
+  long getSize(int entry) {
+    return sizes[entry];
+  }
+}
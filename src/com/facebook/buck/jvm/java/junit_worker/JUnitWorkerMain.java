@@ -0,0 +1,227 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java.junit_worker;
+
+import com.facebook.buck.worker.WorkerProcessCommand;
+import com.facebook.buck.worker.WorkerProcessProtocol;
+import com.facebook.buck.worker.WorkerProcessProtocolZero;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.LogManager;
+
+/**
+ * Entry point of a persistent worker process that runs the JUnit tests of java_test() rules, a rule
+ * per job, so that starting and warming up a JVM is paid for once per worker rather than once per
+ * rule.
+ *
+ * <p>A job's args file holds, separated by NUL characters, what would follow the JVM's own options
+ * on the command line of a JVM started for the rule alone: its {@code -D} system properties, then
+ * {@code -classpath} and the classpath, then the test runner's class and its arguments. The
+ * classpath is loaded by a classloader of its own, whose parent is the extension classloader, so
+ * the tests see neither the worker's classes nor those of earlier jobs. The system properties,
+ * standard streams and logging configuration are put back once the job is done.
+ *
+ * <p>Tests can leave threads and static state behind, which would go away with a JVM of their own,
+ * and which keep their classloaders from being collected. A thread left running, such as that of a
+ * test that timed out, could also write to the output of later jobs. So when a thread started by
+ * the job is still alive {@link #THREAD_GRACE_MS} after it, or once the heap in use after a job is
+ * above {@link #MAX_HEAP_IN_USE} of the maximum, the worker adds {@link #RECYCLE_WORKER} to the
+ * job's exit code for buck to replace it.
+ */
+public class JUnitWorkerMain {
+
+  /** Added to a job's exit code when the worker should be replaced by a new one. */
+  public static final int RECYCLE_WORKER = 0x100;
+
+  /** The fraction of the maximum heap in use after a job above which the worker is replaced. */
+  private static final double MAX_HEAP_IN_USE = 0.75;
+
+  /** How long the threads started by a job get to finish once it is done. */
+  private static final long THREAD_GRACE_MS = 1000;
+
+  private JUnitWorkerMain() {}
+
+  public static void main(String[] args) {
+    // Stdout carries the worker protocol, so keep anything else from writing to it.
+    PrintStream protocolOut = System.out;
+    System.setOut(System.err);
+
+    AtomicInteger messageCounter = new AtomicInteger();
+    try (WorkerProcessProtocol.CommandReceiver protocol =
+        new WorkerProcessProtocolZero.CommandReceiver(protocolOut, System.in)) {
+      protocol.handshake(messageCounter.getAndIncrement());
+      while (!protocol.shouldClose()) {
+        int messageId = messageCounter.getAndIncrement();
+        WorkerProcessCommand command = protocol.receiveCommand(messageId);
+        protocol.sendResponse(messageId, "result", runJob(command));
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+      System.exit(1);
+    }
+  }
+
+  private static int runJob(WorkerProcessCommand command) throws IOException {
+    String jobArgs = new String(Files.readAllBytes(command.getArgsPath()), StandardCharsets.UTF_8);
+
+    PrintStream originalOut = System.out;
+    PrintStream originalErr = System.err;
+    Properties originalProperties = (Properties) System.getProperties().clone();
+    ClassLoader originalContextClassLoader = Thread.currentThread().getContextClassLoader();
+    Set<Thread> originalThreads = new HashSet<>(Thread.getAllStackTraces().keySet());
+    int exitCode;
+    try (PrintStream out =
+            new PrintStream(Files.newOutputStream(command.getStdOutPath()), true, "UTF-8");
+        PrintStream err =
+            new PrintStream(Files.newOutputStream(command.getStdErrPath()), true, "UTF-8")) {
+      System.setOut(out);
+      System.setErr(err);
+      try {
+        exitCode = runTests(Arrays.asList(jobArgs.split("\0")));
+      } catch (Exception e) {
+        e.printStackTrace(err);
+        exitCode = 1;
+      } finally {
+        System.setOut(originalOut);
+        System.setErr(originalErr);
+        System.setProperties(originalProperties);
+        Thread.currentThread().setContextClassLoader(originalContextClassLoader);
+        LogManager.getLogManager().reset();
+      }
+    }
+
+    if (hasThreadsLeft(originalThreads) || isHeapFull()) {
+      exitCode += RECYCLE_WORKER;
+    }
+    return exitCode;
+  }
+
+  static int runTests(List<String> args) throws IOException, ReflectiveOperationException {
+    int index = 0;
+    for (; !args.get(index).equals("-classpath"); index++) {
+      String property = args.get(index).substring("-D".length());
+      int equals = property.indexOf('=');
+      if (equals == -1) {
+        System.setProperty(property, "");
+      } else {
+        System.setProperty(property.substring(0, equals), property.substring(equals + 1));
+      }
+    }
+    List<Path> classpath = getClasspath(args.get(index + 1));
+    String mainClass = args.get(index + 2);
+    List<String> mainArgs = args.subList(index + 3, args.size());
+
+    List<URL> urls = new ArrayList<>();
+    StringBuilder classpathProperty = new StringBuilder();
+    for (Path entry : classpath) {
+      urls.add(entry.toUri().toURL());
+      if (classpathProperty.length() > 0) {
+        classpathProperty.append(File.pathSeparatorChar);
+      }
+      classpathProperty.append(entry);
+    }
+    System.setProperty("java.class.path", classpathProperty.toString());
+
+    try (URLClassLoader loader =
+        new URLClassLoader(
+            urls.toArray(new URL[urls.size()]), ClassLoader.getSystemClassLoader().getParent())) {
+      Thread.currentThread().setContextClassLoader(loader);
+      Method run = Class.forName(mainClass, true, loader).getMethod("run", String[].class);
+      try {
+        return (Integer) run.invoke(null, (Object) mainArgs.toArray(new String[mainArgs.size()]));
+      } catch (InvocationTargetException e) {
+        e.getCause().printStackTrace();
+        return 1;
+      }
+    }
+  }
+
+  /** Reads the entries of the {@code @file}s in the classpath the way FileClassPathRunner does. */
+  static List<Path> getClasspath(String classpath) throws IOException {
+    List<Path> entries = new ArrayList<>();
+    for (String entry : classpath.split(File.pathSeparator)) {
+      if (entry.isEmpty()) {
+        continue;
+      }
+      if (!entry.startsWith("@")) {
+        entries.add(Paths.get(entry));
+        continue;
+      }
+      Path file = Paths.get(entry.substring(1));
+      if (!Files.exists(file)) {
+        continue;
+      }
+      for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+        if (!line.isEmpty()) {
+          entries.add(Paths.get(line));
+        }
+      }
+    }
+    return entries;
+  }
+
+  /** Whether a thread that wasn't running before the job is still running after it. */
+  private static boolean hasThreadsLeft(Set<Thread> originalThreads) {
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(THREAD_GRACE_MS);
+    for (Thread thread : Thread.getAllStackTraces().keySet()) {
+      if (originalThreads.contains(thread)) {
+        continue;
+      }
+      long remainingNanos = deadline - System.nanoTime();
+      if (remainingNanos > 0) {
+        try {
+          thread.join(TimeUnit.NANOSECONDS.toMillis(remainingNanos) + 1);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return true;
+        }
+      }
+      if (thread.isAlive()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Only collects garbage when the heap looks full, since that takes a while. */
+  private static boolean isHeapFull() {
+    Runtime runtime = Runtime.getRuntime();
+    long limit = (long) (runtime.maxMemory() * MAX_HEAP_IN_USE);
+    if (runtime.totalMemory() - runtime.freeMemory() <= limit) {
+      return false;
+    }
+    System.gc();
+    return runtime.totalMemory() - runtime.freeMemory() > limit;
+  }
+}
@@ -17,8 +17,12 @@
 package com.facebook.buck.model;
 
 public class BuckVersion {
+  /** The version reported when Buck wasn't started with one, as when running from an IDE. */
+  public static final String UNKNOWN_VERSION = "N/A";
+
   private static final String BUCK_VERSION_UID_KEY = "buck.version_uid";
-  private static final String BUCK_VERSION_UID = System.getProperty(BUCK_VERSION_UID_KEY, "N/A");
+  private static final String BUCK_VERSION_UID =
+      System.getProperty(BUCK_VERSION_UID_KEY, UNKNOWN_VERSION);
 
   private BuckVersion() {
     // Not to be constructed.
@@ -23,6 +23,7 @@ import com.facebook.buck.model.UnflavoredBuildTarget;
 import com.facebook.buck.parser.thrift.BuildFileEnvProperty;
 import com.facebook.buck.parser.thrift.RemoteDaemonicCellState;
 import com.facebook.buck.rules.Cell;
+import com.facebook.buck.rules.TargetNode;
 import com.facebook.buck.util.MoreCollectors;
 import com.facebook.buck.util.ObjectMappers;
 import com.facebook.buck.util.concurrent.AutoCloseableLock;
@@ -80,6 +81,9 @@ class DaemonicCellState {
             target);
         if (updatedNode.equals(targetNode)) {
           targetsCornucopia.put(target.getUnflavoredBuildTarget(), target);
+          if (targetNode instanceof TargetNode) {
+            indexTargetNode((TargetNode<?, ?>) targetNode);
+          }
         }
         return updatedNode;
       }
@@ -109,6 +113,15 @@ class DaemonicCellState {
   @GuardedBy("rawAndComputedNodesLock")
   private final ConcurrentMap<Class<?>, CacheImpl<?>> typedNodeCaches;
 
+  // The reverse of the parse deps and the inputs of the target nodes in the cache, kept as nodes
+  // are added and invalidated, so that rdeps and owner queries over the nodes we hold don't have to
+  // build a graph of them first. The deps may be in other cells.
+  @GuardedBy("rawAndComputedNodesLock")
+  private final SetMultimap<BuildTarget, BuildTarget> targetNodeDependents;
+
+  @GuardedBy("rawAndComputedNodesLock")
+  private final SetMultimap<Path, BuildTarget> targetNodeInputOwners;
+
   private final AutoCloseableReadWriteUpdateLock rawAndComputedNodesLock;
   private final int parsingThreads;
 
@@ -123,6 +136,8 @@ class DaemonicCellState {
     this.allRawNodes = new ConcurrentMapCache<>(parsingThreads);
     this.allRawNodeTargets = new HashSet<>();
     this.typedNodeCaches = Maps.newConcurrentMap();
+    this.targetNodeDependents = HashMultimap.create();
+    this.targetNodeInputOwners = HashMultimap.create();
     this.rawAndComputedNodesLock = new AutoCloseableReadWriteUpdateLock();
   }
 
@@ -156,6 +171,71 @@ class DaemonicCellState {
     }
   }
 
+  /** @return the target nodes in the cache that depend directly on the given target. */
+  ImmutableSet<BuildTarget> getTargetNodeDependents(BuildTarget target) {
+    try (AutoCloseableLock readLock = rawAndComputedNodesLock.readLock()) {
+      return ImmutableSet.copyOf(targetNodeDependents.get(target));
+    }
+  }
+
+  /**
+   * @param input a path relative to the cell root.
+   * @return the target nodes of the targets defined in the given build file that have the given
+   *     path, or a directory containing it, as an input, if the nodes of every target the build
+   *     file defines are in the cache.
+   */
+  Optional<ImmutableSet<TargetNode<?, ?>>> lookupInputOwners(Path buildFile, Path input) {
+    try (AutoCloseableLock readLock = rawAndComputedNodesLock.readLock()) {
+      ImmutableSet<Map<String, Object>> rawNodes = allRawNodes.getIfPresent(buildFile);
+      CacheImpl<?> cache = typedNodeCaches.get(TargetNode.class);
+      if (rawNodes == null || cache == null) {
+        return Optional.empty();
+      }
+      Map<BuildTarget, TargetNode<?, ?>> nodes = new HashMap<>();
+      for (Map<String, Object> rawNode : rawNodes) {
+        BuildTarget target =
+            BuildTarget.of(
+                RawNodeParsePipeline.parseBuildTargetFromRawRule(
+                    cellRoot, cellCanonicalName, rawNode, buildFile));
+        Object node = cache.allComputedNodes.getIfPresent(target);
+        if (node == null) {
+          return Optional.empty();
+        }
+        nodes.put(target, (TargetNode<?, ?>) node);
+      }
+      ImmutableSet.Builder<TargetNode<?, ?>> owners = ImmutableSet.builder();
+      for (Path path = input; path != null; path = path.getParent()) {
+        for (BuildTarget owner : targetNodeInputOwners.get(path)) {
+          TargetNode<?, ?> node = nodes.get(owner);
+          if (node != null) {
+            owners.add(node);
+          }
+        }
+      }
+      return Optional.of(owners.build());
+    }
+  }
+
+  @GuardedBy("rawAndComputedNodesLock")
+  private void indexTargetNode(TargetNode<?, ?> node) {
+    for (BuildTarget dep : node.getParseDeps()) {
+      targetNodeDependents.put(dep, node.getBuildTarget());
+    }
+    for (Path input : node.getInputs()) {
+      targetNodeInputOwners.put(input, node.getBuildTarget());
+    }
+  }
+
+  @GuardedBy("rawAndComputedNodesLock")
+  private void unindexTargetNode(TargetNode<?, ?> node) {
+    for (BuildTarget dep : node.getParseDeps()) {
+      targetNodeDependents.remove(dep, node.getBuildTarget());
+    }
+    for (Path input : node.getInputs()) {
+      targetNodeInputOwners.remove(input, node.getBuildTarget());
+    }
+  }
+
   Optional<ImmutableSet<Map<String, Object>>> lookupRawNodes(Path buildFile) {
     try (AutoCloseableLock readLock = rawAndComputedNodesLock.readLock()) {
       return Optional.ofNullable(allRawNodes.getIfPresent(buildFile));
@@ -199,6 +279,15 @@ class DaemonicCellState {
               RawNodeParsePipeline.parseBuildTargetFromRawRule(
                   cellRoot, cellCanonicalName, rawNode, path);
           LOG.debug("Invalidating target for path %s: %s", path, target);
+          CacheImpl<?> targetNodeCache = typedNodeCaches.get(TargetNode.class);
+          if (targetNodeCache != null) {
+            for (BuildTarget flavoredTarget : targetsCornucopia.get(target)) {
+              Object node = targetNodeCache.allComputedNodes.getIfPresent(flavoredTarget);
+              if (node != null) {
+                unindexTargetNode((TargetNode<?, ?>) node);
+              }
+            }
+          }
           for (CacheImpl<?> cache : typedNodeCaches.values()) {
             cache.allComputedNodes.invalidateAll(targetsCornucopia.get(target));
           }
@@ -33,6 +33,7 @@ import com.facebook.buck.parser.exceptions.BuildFileParseException;
 import com.facebook.buck.parser.thrift.RemoteDaemonicCellState;
 import com.facebook.buck.parser.thrift.RemoteDaemonicParserState;
 import com.facebook.buck.rules.Cell;
+import com.facebook.buck.rules.TargetNode;
 import com.facebook.buck.rules.coercer.TypeCoercerFactory;
 import com.facebook.buck.util.concurrent.AutoCloseableLock;
 import com.facebook.buck.util.concurrent.AutoCloseableReadWriteUpdateLock;
@@ -52,6 +53,9 @@ import com.google.common.util.concurrent.UncheckedExecutionException;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -361,6 +365,68 @@ public class DaemonicParserState {
     return rawNodeCache;
   }
 
+  /**
+   * Looks up the target nodes of the given targets and of everything they transitively depend on,
+   * invalidating stale nodes on the way as any other lookup would.
+   *
+   * @return the nodes, or nothing if any of them isn't cached.
+   */
+  public Optional<ImmutableMap<BuildTarget, TargetNode<?, ?>>> lookupTransitiveClosure(
+      Function<BuildTarget, Cell> cells, Iterable<BuildTarget> targets)
+      throws BuildTargetException {
+    PipelineNodeCache.Cache<BuildTarget, TargetNode<?, ?>> cache =
+        getOrCreateNodeCache(TargetNode.class);
+    Map<BuildTarget, TargetNode<?, ?>> nodes = new HashMap<>();
+    Deque<BuildTarget> toVisit = new ArrayDeque<>();
+    Iterables.addAll(toVisit, targets);
+    while (!toVisit.isEmpty()) {
+      BuildTarget target = toVisit.pop();
+      if (nodes.containsKey(target)) {
+        continue;
+      }
+      Optional<TargetNode<?, ?>> node = cache.lookupComputedNode(cells.apply(target), target);
+      if (!node.isPresent()) {
+        return Optional.empty();
+      }
+      nodes.put(target, node.get());
+      toVisit.addAll(node.get().getParseDeps());
+    }
+    return Optional.of(ImmutableMap.copyOf(nodes));
+  }
+
+  /**
+   * @return the targets whose cached target nodes depend directly on the given target. Only
+   *     complete for targets whose dependents are all cached.
+   */
+  public ImmutableSet<BuildTarget> getCachedDependents(BuildTarget target) {
+    try (AutoCloseableLock readLock = cellStateLock.readLock()) {
+      ImmutableSet.Builder<BuildTarget> dependents = ImmutableSet.builder();
+      for (DaemonicCellState state : cellPathToDaemonicState.values()) {
+        dependents.addAll(state.getTargetNodeDependents(target));
+      }
+      return dependents.build();
+    }
+  }
+
+  /**
+   * @param input a path relative to the cell root.
+   * @return the target nodes of the targets defined in the given build file that have the given
+   *     path, or a directory containing it, as an input, if every target the build file defines is
+   *     cached.
+   */
+  public Optional<ImmutableSet<TargetNode<?, ?>>> lookupInputOwners(
+      Cell cell, Path buildFile, Path input) {
+    Preconditions.checkState(buildFile.isAbsolute());
+    invalidateIfProjectBuildFileParserStateChanged(cell);
+    invalidateIfBuckConfigOrEnvHasChanged(cell, buildFile);
+
+    DaemonicCellState state = getCellState(cell);
+    if (state == null) {
+      return Optional.empty();
+    }
+    return state.lookupInputOwners(buildFile, input);
+  }
+
   @Nullable
   private DaemonicCellState getCellState(Cell cell) {
     try (AutoCloseableLock readLock = cellStateLock.readLock()) {
@@ -146,6 +146,20 @@ public class Parser {
     }
   }
 
+  /**
+   * Finds the targets defined in a build file that have the given file, or a directory containing
+   * it, as an input, without parsing anything.
+   *
+   * @param input a path relative to the root of the cell.
+   * @return the target nodes of the owners, or nothing if the daemon doesn't hold the nodes of all
+   *     the targets the build file defines.
+   */
+  public Optional<ImmutableSet<TargetNode<?, ?>>> lookupInputOwners(
+      Cell cell, Path buildFile, Path input) {
+    Preconditions.checkState(buildFile.startsWith(cell.getRoot()));
+    return permState.lookupInputOwners(cell, buildFile, input);
+  }
+
   public TargetNode<?, ?> getTargetNode(
       BuckEventBus eventBus,
       Cell cell,
@@ -34,6 +34,7 @@ import com.facebook.buck.util.HumanReadableException;
 import com.facebook.buck.util.Verbosity;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
@@ -176,6 +177,23 @@ public class PerBuildState implements AutoCloseable {
     return rawNodeParsePipeline.getAllNodes(cell, buildFile, parseProcessedBytes);
   }
 
+  /**
+   * @return the target nodes of the given targets and everything they transitively depend on, if
+   *     the daemon already holds them all.
+   */
+  public Optional<ImmutableMap<BuildTarget, TargetNode<?, ?>>> lookupTransitiveClosure(
+      Iterable<BuildTarget> targets) throws BuildTargetException {
+    return parser.getPermState().lookupTransitiveClosure(this::getCell, targets);
+  }
+
+  /**
+   * @return the targets whose target nodes the daemon holds that depend directly on the given
+   *     target.
+   */
+  public ImmutableSet<BuildTarget> getCachedDependents(BuildTarget target) {
+    return parser.getPermState().getCachedDependents(target);
+  }
+
   private ProjectBuildFileParser createBuildFileParser(Cell cell) {
     return cell.createBuildFileParser(
         this.parser.getTypeCoercerFactory(), console, eventBus, enableProfiling);
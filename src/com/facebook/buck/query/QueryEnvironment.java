@@ -30,10 +30,16 @@
 
 package com.facebook.buck.query;
 
+import com.facebook.buck.util.MoreSets;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
@@ -226,6 +232,66 @@ public interface QueryEnvironment {
    */
   Set<QueryTarget> getTransitiveClosure(Set<QueryTarget> targets) throws QueryException;
 
+  /**
+   * Returns the targets among {@code targets} in the forward transitive closure of {@code
+   * universe}, followed by the targets in that closure that depend on them, up to {@code maxDepth}
+   * edges away, level by level. Builds the transitive closure of {@code universe} as needed.
+   */
+  default Set<QueryTarget> getReverseTransitiveClosure(
+      Set<QueryTarget> universe, Set<QueryTarget> targets, int maxDepth) throws QueryException {
+    buildTransitiveClosure(universe, Integer.MAX_VALUE);
+    Predicate<QueryTarget> inUniversePredicate = getTransitiveClosure(universe)::contains;
+
+    // LinkedHashSet preserves the order of insertion when iterating over the values.
+    // The order by which we traverse the result is meaningful because the dependencies are
+    // traversed level-by-level.
+    Set<QueryTarget> visited = new LinkedHashSet<>();
+    Collection<QueryTarget> current = targets;
+
+    // Iterating maxDepth+1 times because the first one processes the given targets.
+    for (int i = 0; i <= maxDepth; i++) {
+      // Restrict the search to nodes in the transitive closure of the universe set.
+      Iterable<QueryTarget> currentInUniverse = Iterables.filter(current, inUniversePredicate);
+
+      // Filter nodes visited before.
+      Collection<QueryTarget> next =
+          getReverseDeps(Iterables.filter(currentInUniverse, Predicates.not(visited::contains)));
+      Iterables.addAll(visited, currentInUniverse);
+      if (next.isEmpty()) {
+        break;
+      }
+      current = next;
+    }
+    return visited;
+  }
+
+  /**
+   * Returns the targets on the paths from the targets in {@code from} to the targets in {@code to}.
+   * Builds the transitive closure of {@code from} as needed.
+   */
+  default Set<QueryTarget> getAllPaths(Set<QueryTarget> from, Set<QueryTarget> to)
+      throws QueryException {
+    buildTransitiveClosure(from, Integer.MAX_VALUE);
+    // Algorithm:
+    // 1) compute "reachableFromX", the forward transitive closure of the "from" set;
+    // 2) find the intersection of "reachableFromX" with the "to" set, and traverse the graph using
+    //    the reverse dependencies. This will effectively compute the intersection between the nodes
+    //    reachable from the "from" set and the reverse transitive closure of the "to" set.
+    Set<QueryTarget> reachableFromX = getTransitiveClosure(from);
+    Set<QueryTarget> result = MoreSets.intersection(reachableFromX, to);
+    Collection<QueryTarget> worklist = result;
+    while (!worklist.isEmpty()) {
+      Collection<QueryTarget> reverseDeps = getReverseDeps(worklist);
+      worklist = new ArrayList<>();
+      for (QueryTarget target : reverseDeps) {
+        if (reachableFromX.contains(target) && result.add(target)) {
+          worklist.add(target);
+        }
+      }
+    }
+    return result;
+  }
+
   /**
    * Construct the dependency graph for a depth-bounded forward transitive closure of all nodes in
    * "targetNodes". The identity of the calling expression is required to produce error messages.
@@ -62,6 +62,18 @@ public class TargetVariablesQueryEnvironment implements QueryEnvironment {
     return delegate.getTransitiveClosure(targets);
   }
 
+  @Override
+  public Set<QueryTarget> getReverseTransitiveClosure(
+      Set<QueryTarget> universe, Set<QueryTarget> targets, int maxDepth) throws QueryException {
+    return delegate.getReverseTransitiveClosure(universe, targets, maxDepth);
+  }
+
+  @Override
+  public Set<QueryTarget> getAllPaths(Set<QueryTarget> from, Set<QueryTarget> to)
+      throws QueryException {
+    return delegate.getAllPaths(from, to);
+  }
+
   @Override
   public void buildTransitiveClosure(Set<QueryTarget> targetNodes, int maxDepth)
       throws QueryException {
@@ -39,6 +39,8 @@ public class BundledExternalProcessLauncher {
   enum EntryPoints {
     EXTERNAL_STEP_EXECUTOR("com.facebook.buck.step.external.executor.ExternalStepExecutorMain"),
     OOP_JAVAC("com.facebook.buck.oop_javac.Main"),
+    DX_WORKER("com.facebook.buck.android.dx_worker.DxWorkerMain"),
+    JUNIT_WORKER("com.facebook.buck.jvm.java.junit_worker.JUnitWorkerMain"),
     ;
 
     private final String entryPointName;
@@ -60,7 +62,27 @@ public class BundledExternalProcessLauncher {
     return getCommand(EntryPoints.OOP_JAVAC);
   }
 
+  public ImmutableList<String> getCommandForDxWorker() {
+    return getCommand(EntryPoints.DX_WORKER);
+  }
+
+  public ImmutableList<String> getCommandForJUnitWorker() {
+    return getCommand(EntryPoints.JUNIT_WORKER);
+  }
+
   public ImmutableMap<String, String> getEnvForOutOfProcessJavac() {
+    return getEnv(EntryPoints.OOP_JAVAC);
+  }
+
+  public ImmutableMap<String, String> getEnvForDxWorker() {
+    return getEnv(EntryPoints.DX_WORKER);
+  }
+
+  public ImmutableMap<String, String> getEnvForJUnitWorker() {
+    return getEnv(EntryPoints.JUNIT_WORKER);
+  }
+
+  private ImmutableMap<String, String> getEnv(EntryPoints entryPoint) {
     ImmutableMap.Builder<String, String> builder = ImmutableMap.builder();
     Map<String, String> environment = System.getenv();
     if (environment.containsKey("JAVA_HOME")) {
@@ -75,7 +97,7 @@ public class BundledExternalProcessLauncher {
         return builder
             .put(
                 BuckClasspath.ENV_VAR_NAME,
-                getClasspathArgumentForUnknownBuild(EntryPoints.OOP_JAVAC))
+                getClasspathArgumentForUnknownBuild(entryPoint))
             .build();
       case RELEASE_PEX:
       case LOCAL_PEX:
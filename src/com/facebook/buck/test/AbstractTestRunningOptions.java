@@ -72,4 +72,10 @@ abstract class AbstractTestRunningOptions {
   public abstract Optional<String> getCoverageExcludes();
 
   public abstract Optional<String> getCoverageIncludes();
+
+  /**
+   * The number of persistent JVMs each combination of JVM options runs JUnit tests in, if they
+   * should be run in such workers rather than in a JVM of their own.
+   */
+  public abstract Optional<Integer> getJavaTestWorkers();
 }
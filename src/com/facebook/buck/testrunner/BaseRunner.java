@@ -265,8 +265,16 @@ public abstract class BaseRunner {
   }
 
   protected void runAndExit() {
-    int exitCode;
+    int exitCode = runAndGetExitCode();
 
+    // Explicitly exit to force the test runner to complete even if tests have sloppily left
+    // behind non-daemon threads that would have otherwise forced the process to wait and
+    // eventually timeout.
+    System.exit(exitCode);
+  }
+
+  /** Runs the tests, returning the exit code the runner's JVM should exit with. */
+  protected int runAndGetExitCode() {
     // Run the tests.
     try {
       run();
@@ -274,17 +282,12 @@ public abstract class BaseRunner {
       // We're using a successful exit code regardless of test outcome since JUnitRunner
       // is designed to execute all tests and produce a report of success or failure.  We've done
       // that successfully if we've gotten here.
-      exitCode = 0;
+      return 0;
     } catch (Throwable e) {
       e.printStackTrace();
       // We're using a failed exit code here because something in the test runner crashed. We can't
       // tell whether there were still tests left to be run, so it's safest if we fail.
-      exitCode = 1;
+      return 1;
     }
-
-    // Explicitly exit to force the test runner to complete even if tests have sloppily left
-    // behind non-daemon threads that would have otherwise forced the process to wait and
-    // eventually timeout.
-    System.exit(exitCode);
   }
 }
@@ -159,4 +159,10 @@ class DelegateRunnerWithTimeout extends Runner {
   private void shutdown() {
     executor.get().shutdownNow();
   }
+
+  /** Stops the calling thread's executor, for a JVM that carries on once its tests have run. */
+  static void shutdownExecutor() {
+    executor.get().shutdownNow();
+    executor.remove();
+  }
 }
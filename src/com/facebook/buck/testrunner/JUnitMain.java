@@ -47,4 +47,23 @@ public class JUnitMain {
     runner.parseArgs(args);
     runner.runAndExit();
   }
+
+  /**
+   * Runs the tests like {@link #main}, but returns the exit code rather than exiting, for a worker
+   * that runs the tests of one rule after another in the same JVM, each in a classloader of its
+   * own.
+   */
+  public static int run(String[] args) {
+    CheckDependency.isPresent("junit", "org.junit.Test");
+    CheckDependency.isPresent("hamcrest", "org.hamcrest.Description");
+
+    JUnitRunner runner = new JUnitRunner();
+    runner.parseArgs(args);
+    try {
+      return runner.runAndGetExitCode();
+    } finally {
+      // The worker's thread would otherwise keep the executor, and with it this classloader.
+      DelegateRunnerWithTimeout.shutdownExecutor();
+    }
+  }
 }
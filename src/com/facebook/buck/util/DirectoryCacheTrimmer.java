@@ -0,0 +1,128 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util;
+
+import com.facebook.buck.log.Logger;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ComparisonChain;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps a local cache directory under a size limit by deleting the entries that were used least
+ * recently. The cache spreads its entries over shard directories, {@code <root>/<shard>/<entry>},
+ * where each entry is a file or a directory. Entries whose names start with a dot are still being
+ * written, and are left alone.
+ */
+public final class DirectoryCacheTrimmer {
+  private static final Logger LOG = Logger.get(DirectoryCacheTrimmer.class);
+
+  // How much has to be stored, as a ratio of the max size, before the cache is trimmed again.
+  private static final float STORED_TO_MAX_BYTES_RATIO_TRIM_TRIGGER = 0.5f;
+  // How much of the max size to leave when the cache is trimmed.
+  private static final float MAX_BYTES_TRIM_RATIO = 2 / 3f;
+
+  private static final ConcurrentMap<Path, AtomicLong> BYTES_STORED_SINCE_TRIM =
+      new ConcurrentHashMap<>();
+
+  private DirectoryCacheTrimmer() {}
+
+  /**
+   * Marks the entry as used now, so that it is among the last to be deleted. Access times aren't
+   * reliably updated by reads, so callers mark the entries they read from.
+   */
+  public static void markUsed(Path entry) throws IOException {
+    Files.getFileAttributeView(entry, BasicFileAttributeView.class)
+        .setTimes(null, FileTime.fromMillis(System.currentTimeMillis()), null);
+  }
+
+  /**
+   * Records that an entry of the given size was stored in the cache, and trims the cache if enough
+   * has been stored since it was last trimmed. The first entry this process stores in a cache also
+   * trims it, since an earlier process may have left it over the limit.
+   */
+  public static void onStored(Path root, long maxSizeBytes, long entrySizeBytes) {
+    long trigger = (long) (maxSizeBytes * STORED_TO_MAX_BYTES_RATIO_TRIM_TRIGGER);
+    AtomicLong stored =
+        BYTES_STORED_SINCE_TRIM.computeIfAbsent(root, key -> new AtomicLong(trigger));
+    // Only the one caller that swaps the total out trims, however many cross the trigger at once.
+    if (stored.addAndGet(entrySizeBytes) >= trigger && stored.getAndSet(0) >= trigger) {
+      trim(root, maxSizeBytes);
+    }
+  }
+
+  @VisibleForTesting
+  static void trim(Path root, long maxSizeBytes) {
+    DirectoryCleaner cleaner =
+        new DirectoryCleaner(
+            DirectoryCleanerArgs.builder()
+                .setPathSelector(
+                    new DirectoryCleaner.PathSelector() {
+                      @Override
+                      public Iterable<Path> getCandidatesToDelete(Path rootPath)
+                          throws IOException {
+                        return getEntries(rootPath);
+                      }
+
+                      @Override
+                      public int comparePaths(
+                          DirectoryCleaner.PathStats path1, DirectoryCleaner.PathStats path2) {
+                        return ComparisonChain.start()
+                            .compare(path1.getLastAccessMillis(), path2.getLastAccessMillis())
+                            .compare(path1.getCreationMillis(), path2.getCreationMillis())
+                            .result();
+                      }
+                    })
+                .setMaxTotalSizeBytes(maxSizeBytes)
+                .setMaxBytesAfterDeletion((long) (maxSizeBytes * MAX_BYTES_TRIM_RATIO))
+                .build());
+    try {
+      cleaner.clean(root);
+    } catch (IOException | IllegalArgumentException e) {
+      // Another process may be trimming the same cache; whatever is left will be trimmed next time.
+      LOG.warn(e, "Failed to trim the cache in %s.", root);
+    }
+  }
+
+  private static List<Path> getEntries(Path root) throws IOException {
+    List<Path> entries = new ArrayList<>();
+    if (!Files.isDirectory(root)) {
+      return entries;
+    }
+    try (DirectoryStream<Path> shards = Files.newDirectoryStream(root, Files::isDirectory)) {
+      for (Path shard : shards) {
+        try (DirectoryStream<Path> shardEntries = Files.newDirectoryStream(shard)) {
+          for (Path entry : shardEntries) {
+            if (!entry.getFileName().toString().startsWith(".")) {
+              entries.add(entry);
+            }
+          }
+        }
+      }
+    }
+    return entries;
+  }
+}
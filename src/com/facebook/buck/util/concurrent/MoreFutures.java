@@ -18,6 +18,7 @@ package com.facebook.buck.util.concurrent;
 
 import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
 
+import com.facebook.buck.util.function.ThrowingFunction;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
@@ -26,11 +27,18 @@ import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.SettableFuture;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.annotation.Nonnull;
 
 public class MoreFutures {
@@ -70,6 +78,78 @@ public class MoreFutures {
     }
   }
 
+  /**
+   * Applies {@code function} to each of {@code inputs} on {@code executor}, and returns the results
+   * in the order of the inputs. Once an application fails or the calling thread is interrupted, the
+   * applications that haven't started yet are skipped. This only returns or throws once every
+   * application is done, so none of them outlives the call, and must not be called from a thread of
+   * {@code executor}.
+   *
+   * @throws IOException the first failure, with an interrupt reported as an {@link
+   *     InterruptedIOException} and the thread's interrupt flag set again.
+   */
+  public static <T, R> List<R> mapInParallel(
+      ExecutorService executor,
+      Collection<? extends T> inputs,
+      ThrowingFunction<? super T, ? extends R, IOException> function)
+      throws IOException {
+    AtomicBoolean failed = new AtomicBoolean(false);
+    List<Future<R>> futures = new ArrayList<>(inputs.size());
+    for (T input : inputs) {
+      futures.add(
+          executor.submit(
+              () -> {
+                if (failed.get()) {
+                  return null;
+                }
+                boolean applied = false;
+                try {
+                  R result = function.apply(input);
+                  applied = true;
+                  return result;
+                } finally {
+                  if (!applied) {
+                    failed.set(true);
+                  }
+                }
+              }));
+    }
+
+    List<R> results = new ArrayList<>(inputs.size());
+    Throwable failure = null;
+    boolean interrupted = false;
+    for (Future<R> future : futures) {
+      while (true) {
+        try {
+          results.add(future.get());
+          break;
+        } catch (InterruptedException e) {
+          // Keep waiting, so that no application outlives this call, but skip the remaining ones.
+          interrupted = true;
+          failed.set(true);
+        } catch (ExecutionException e) {
+          if (failure == null) {
+            failure = e.getCause();
+          }
+          break;
+        }
+      }
+    }
+
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+      if (failure == null) {
+        throw new InterruptedIOException("Interrupted while waiting for parallel work.");
+      }
+    }
+    if (failure != null) {
+      Throwables.throwIfInstanceOf(failure, IOException.class);
+      Throwables.throwIfUnchecked(failure);
+      throw new RuntimeException(failure);
+    }
+    return results;
+  }
+
   /**
    * Create a convenience method for checking whether a future completed successfully because this
    * does not appear to be possible to do in a more direct way:
@@ -99,6 +99,32 @@ public class MostExecutors {
         /* handler */ new ThreadPoolExecutor.DiscardPolicy());
   }
 
+  /**
+   * Creates an executor of daemon threads for bursts of blocking work, such as file I/O, that
+   * shouldn't tie up the common fork-join pool. Threads that have been idle for a while go away, so
+   * the executor can be kept in a static field.
+   *
+   * @param threadName a thread name prefix used to easily identify threads when debugging.
+   * @param count the most threads that run at once.
+   */
+  public static ExecutorService newIdleTimeoutExecutor(final String threadName, int count) {
+    ThreadFactory namedThreadFactory = new NamedThreadFactory(threadName);
+    ThreadPoolExecutor executor =
+        new ThreadPoolExecutor(
+            /* corePoolSize */ count,
+            /* maximumPoolSize */ count,
+            /* keepAliveTime */ 30L,
+            TimeUnit.SECONDS,
+            /* workQueue */ new LinkedBlockingQueue<Runnable>(),
+            /* threadFactory */ runnable -> {
+              Thread thread = namedThreadFactory.newThread(runnable);
+              thread.setDaemon(true);
+              return thread;
+            });
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
   /**
    * Shutdown {@code service} and wait for all it's tasks to terminate. In the event of {@link
    * InterruptedException}, propagate the interrupt to all tasks, wait for them to finish, then
@@ -17,8 +17,16 @@
 package com.facebook.buck.util.zip;
 
 import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 import java.util.zip.ZipEntry;
 
 /**
@@ -28,7 +36,14 @@ import java.util.zip.ZipEntry;
  * <p>The central directory consists of a series of "file headers", describing each entry in the
  * zip, and a "end of central directory" signature containing book keeping information.
  */
-class CentralDirectory {
+public class CentralDirectory {
+
+  // Values of the 16 and 32 bit fields which mean the real value lives in a zip64 record.
+  private static final int ZIP64_MAGIC_SHORT = 0xffff;
+  private static final long ZIP64_MAGIC_INT = 0xffffffffL;
+
+  // The end of central directory record may be followed by a comment of up to this many bytes.
+  private static final int MAX_COMMENT_LENGTH = 0xffff;
 
   /**
    * Write the entire central directory, including the file headers and the end of central directory
@@ -90,4 +105,299 @@ class CentralDirectory {
 
     return size;
   }
+
+  /**
+   * Read the file headers of the central directory of a zip file that has been loaded or mapped in
+   * its entirety into {@code zip}. Zip64 archives are not supported.
+   *
+   * @throws IOException if the archive is malformed or uses zip64 extensions.
+   */
+  public static ImmutableList<FileHeader> readFileHeaders(ByteBuffer zip) throws IOException {
+    ByteBuffer buffer = zip.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    int eocdOffset = findEndOfCentralDirectory(buffer);
+    int entryCount = getEntryCount(buffer, eocdOffset);
+    long directoryOffset = getDirectoryOffset(buffer, eocdOffset);
+    check(directoryOffset <= eocdOffset, "central directory offset out of range");
+
+    buffer.limit(eocdOffset);
+    buffer.position((int) directoryOffset);
+    return parseFileHeaders(buffer.slice().order(ByteOrder.LITTLE_ENDIAN), entryCount);
+  }
+
+  /**
+   * Read the file headers of the central directory of the zip file open as {@code channel},
+   * reading only the end of the file rather than all of it. Zip64 archives are not supported.
+   *
+   * @throws IOException if the archive is malformed or uses zip64 extensions.
+   */
+  public static ImmutableList<FileHeader> readFileHeaders(FileChannel channel) throws IOException {
+    long size = channel.size();
+    int tailLength = (int) Math.min(size, ZipEntry.ENDHDR + MAX_COMMENT_LENGTH);
+    long tailOffset = size - tailLength;
+    ByteBuffer tail = read(channel, tailOffset, tailLength);
+    int eocdOffset = findEndOfCentralDirectory(tail);
+    long directoryOffset = getDirectoryOffset(tail, eocdOffset);
+    long directoryEnd = tailOffset + eocdOffset;
+    check(directoryOffset <= directoryEnd, "central directory offset out of range");
+
+    return parseFileHeaders(
+        read(channel, directoryOffset, (int) (directoryEnd - directoryOffset)),
+        getEntryCount(tail, eocdOffset));
+  }
+
+  /** Searches backwards from the end for the EOCD signature, skipping over any comment. */
+  private static int findEndOfCentralDirectory(ByteBuffer buffer) throws IOException {
+    int eocdOffset = buffer.limit() - ZipEntry.ENDHDR;
+    while (eocdOffset >= 0 && buffer.getInt(eocdOffset) != ZipEntry.ENDSIG) {
+      eocdOffset--;
+    }
+    check(eocdOffset >= 0, "missing end of central directory record");
+    return eocdOffset;
+  }
+
+  private static int getEntryCount(ByteBuffer buffer, int eocdOffset) throws IOException {
+    int entryCount = Short.toUnsignedInt(buffer.getShort(eocdOffset + ZipEntry.ENDTOT));
+    check(entryCount != ZIP64_MAGIC_SHORT, "zip64 archives are not supported");
+    return entryCount;
+  }
+
+  private static long getDirectoryOffset(ByteBuffer buffer, int eocdOffset) throws IOException {
+    long directoryOffset = Integer.toUnsignedLong(buffer.getInt(eocdOffset + ZipEntry.ENDOFF));
+    check(directoryOffset != ZIP64_MAGIC_INT, "zip64 archives are not supported");
+    return directoryOffset;
+  }
+
+  /** Parses {@code entryCount} file headers out of {@code directory}, which holds nothing else. */
+  private static ImmutableList<FileHeader> parseFileHeaders(ByteBuffer directory, int entryCount)
+      throws IOException {
+    ImmutableList.Builder<FileHeader> headers = ImmutableList.builder();
+    int offset = 0;
+    for (int i = 0; i < entryCount; i++) {
+      check(
+          offset + ZipEntry.CENHDR <= directory.limit()
+              && directory.getInt(offset) == ZipEntry.CENSIG,
+          "expected central directory header signature");
+
+      int nameLength = Short.toUnsignedInt(directory.getShort(offset + ZipEntry.CENNAM));
+      int extraLength = Short.toUnsignedInt(directory.getShort(offset + ZipEntry.CENEXT));
+      int commentLength = Short.toUnsignedInt(directory.getShort(offset + ZipEntry.CENCOM));
+      check(
+          offset + ZipEntry.CENHDR + nameLength <= directory.limit(),
+          "central directory header out of range");
+
+      byte[] nameBytes = new byte[nameLength];
+      ByteBuffer nameBuffer = directory.duplicate();
+      nameBuffer.position(offset + ZipEntry.CENHDR);
+      nameBuffer.get(nameBytes);
+
+      FileHeader header =
+          new FileHeader(
+              new String(nameBytes, Charsets.UTF_8),
+              Short.toUnsignedInt(directory.getShort(offset + ZipEntry.CENVEM)),
+              Short.toUnsignedInt(directory.getShort(offset + ZipEntry.CENHOW)),
+              Integer.toUnsignedLong(directory.getInt(offset + ZipEntry.CENTIM)),
+              Integer.toUnsignedLong(directory.getInt(offset + ZipEntry.CENCRC)),
+              Integer.toUnsignedLong(directory.getInt(offset + ZipEntry.CENSIZ)),
+              Integer.toUnsignedLong(directory.getInt(offset + ZipEntry.CENLEN)),
+              Integer.toUnsignedLong(directory.getInt(offset + ZipEntry.CENOFF)),
+              Integer.toUnsignedLong(directory.getInt(offset + ZipEntry.CENATX)));
+      check(
+          header.getCompressedSize() != ZIP64_MAGIC_INT
+              && header.getSize() != ZIP64_MAGIC_INT
+              && header.getLocalHeaderOffset() != ZIP64_MAGIC_INT,
+          "zip64 archives are not supported");
+      headers.add(header);
+
+      offset += ZipEntry.CENHDR + nameLength + extraLength + commentLength;
+    }
+
+    return headers.build();
+  }
+
+  /**
+   * Slice the (possibly compressed) data of the entry described by {@code header} out of {@code
+   * zip}, without copying it.
+   */
+  public static ByteBuffer sliceEntryData(ByteBuffer zip, FileHeader header) throws IOException {
+    ByteBuffer buffer = zip.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    long localOffset = header.getLocalHeaderOffset();
+    check(
+        localOffset + ZipEntry.LOCHDR <= buffer.limit()
+            && buffer.getInt((int) localOffset) == ZipEntry.LOCSIG,
+        "expected local header signature");
+
+    long dataOffset =
+        localOffset
+            + ZipEntry.LOCHDR
+            + Short.toUnsignedInt(buffer.getShort((int) localOffset + ZipEntry.LOCNAM))
+            + Short.toUnsignedInt(buffer.getShort((int) localOffset + ZipEntry.LOCEXT));
+    long dataEnd = dataOffset + header.getCompressedSize();
+    check(dataEnd <= buffer.limit(), "entry data out of range");
+
+    buffer.limit((int) dataEnd);
+    buffer.position((int) dataOffset);
+    return buffer.slice();
+  }
+
+  /**
+   * Read the (possibly compressed) data of the entry described by {@code header} out of the zip
+   * file open as {@code channel}.
+   */
+  public static ByteBuffer readEntryData(FileChannel channel, FileHeader header)
+      throws IOException {
+    long localOffset = header.getLocalHeaderOffset();
+    ByteBuffer localHeader = read(channel, localOffset, ZipEntry.LOCHDR);
+    check(localHeader.getInt(0) == ZipEntry.LOCSIG, "expected local header signature");
+
+    long dataOffset =
+        localOffset
+            + ZipEntry.LOCHDR
+            + Short.toUnsignedInt(localHeader.getShort(ZipEntry.LOCNAM))
+            + Short.toUnsignedInt(localHeader.getShort(ZipEntry.LOCEXT));
+    return read(channel, dataOffset, (int) header.getCompressedSize());
+  }
+
+  /** Reads {@code length} bytes at {@code position} of {@code channel} into a heap buffer. */
+  private static ByteBuffer read(FileChannel channel, long position, int length)
+      throws IOException {
+    check(
+        position >= 0 && length >= 0 && position + length <= channel.size(),
+        "read out of range");
+    ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw new EOFException("Unexpected end of zip file");
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  /**
+   * Open a stream over the uncompressed contents of the entry described by {@code header}. Stored
+   * entries are read straight out of {@code zip}.
+   *
+   * @throws IOException if the entry uses a compression method other than stored or deflated.
+   */
+  public static InputStream openEntryData(ByteBuffer zip, FileHeader header) throws IOException {
+    InputStream data = new ByteBufferInputStream(sliceEntryData(zip, header));
+    if (header.getMethod() == ZipEntry.STORED) {
+      return data;
+    }
+    check(header.getMethod() == ZipEntry.DEFLATED, "unsupported compression method");
+    return new EntryInflaterInputStream(data);
+  }
+
+  private static void check(boolean expression, String msg) throws IOException {
+    if (!expression) {
+      throw new IOException(msg);
+    }
+  }
+
+  /** The fields of a central directory file header needed to locate and decode an entry. */
+  public static class FileHeader {
+    private final String name;
+    private final int versionMadeBy;
+    private final int method;
+    private final long dosTime;
+    private final long crc;
+    private final long compressedSize;
+    private final long size;
+    private final long localHeaderOffset;
+    private final long externalAttributes;
+
+    FileHeader(
+        String name,
+        int versionMadeBy,
+        int method,
+        long dosTime,
+        long crc,
+        long compressedSize,
+        long size,
+        long localHeaderOffset,
+        long externalAttributes) {
+      this.name = name;
+      this.versionMadeBy = versionMadeBy;
+      this.method = method;
+      this.dosTime = dosTime;
+      this.crc = crc;
+      this.compressedSize = compressedSize;
+      this.size = size;
+      this.localHeaderOffset = localHeaderOffset;
+      this.externalAttributes = externalAttributes;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    /** The upper byte identifies the host system, which tells how to read the attributes. */
+    public int getVersionMadeBy() {
+      return versionMadeBy;
+    }
+
+    public int getMethod() {
+      return method;
+    }
+
+    /** The modification time in MS-DOS format. */
+    public long getDosTime() {
+      return dosTime;
+    }
+
+    public long getCrc() {
+      return crc;
+    }
+
+    public long getCompressedSize() {
+      return compressedSize;
+    }
+
+    public long getSize() {
+      return size;
+    }
+
+    public long getLocalHeaderOffset() {
+      return localHeaderOffset;
+    }
+
+    public long getExternalAttributes() {
+      return externalAttributes;
+    }
+
+    public boolean isDirectory() {
+      return name.endsWith("/");
+    }
+  }
+
+  /** Inflates raw deflate data the way {@link java.util.zip.ZipFile} does. */
+  private static class EntryInflaterInputStream extends InflaterInputStream {
+    private boolean eof = false;
+
+    private EntryInflaterInputStream(InputStream in) {
+      super(in, new Inflater(/* nowrap */ true));
+    }
+
+    @Override
+    protected void fill() throws IOException {
+      if (eof) {
+        throw new EOFException("Unexpected end of ZLIB input stream");
+      }
+      len = in.read(buf, 0, buf.length);
+      if (len == -1) {
+        // An inflater without the zlib wrapper may need one extra dummy byte to finish.
+        buf[0] = 0;
+        len = 1;
+        eof = true;
+      }
+      inf.setInput(buf, 0, len);
+    }
+
+    @Override
+    public void close() throws IOException {
+      // We created the inflater ourselves, so we have to free it as well.
+      super.close();
+      inf.end();
+    }
+  }
 }
@@ -94,6 +94,17 @@ public class CustomJarOutputStream extends CustomZipOutputStream {
       }
     }
 
+    @Override
+    public void actuallyWritePrecompressed(byte[] b, int off, int len) throws IOException {
+      // The digest is computed over the uncompressed bytes, which we never see here.
+      if (shouldHashEntries) {
+        throw new IllegalStateException(
+            "Attempted to write precompressed data for an entry with hashing enabled.");
+      }
+
+      inner.actuallyWritePrecompressed(b, off, len);
+    }
+
     @Override
     public void actuallyCloseEntry() throws IOException {
       inner.actuallyCloseEntry();
@@ -54,6 +54,12 @@ public class CustomZipOutputStream extends OutputStream {
      */
     void actuallyWrite(byte b[], int off, int len) throws IOException;
 
+    /**
+     * Called by {@link CustomZipOutputStream#writePrecompressed(byte[], int, int)} once it is known
+     * that the stream is open and that nothing has been written to the current entry yet.
+     */
+    void actuallyWritePrecompressed(byte b[], int off, int len) throws IOException;
+
     void actuallyClose() throws IOException;
   }
 
@@ -106,6 +112,21 @@ public class CustomZipOutputStream extends OutputStream {
     impl.actuallyWrite(b, off, len);
   }
 
+  /**
+   * Writes the complete, already compressed data of the current entry. The entry must have been put
+   * with its CRC, size and compressed size set, and the bytes must have been compressed with its
+   * method and compression level (raw deflate data for deflated entries). This is the only write
+   * allowed for that entry.
+   */
+  public final void writePrecompressed(byte[] b, int off, int len) throws IOException {
+    Preconditions.checkState(state != State.CLOSED, "Stream has been closed.");
+    if (!entryOpen) {
+      throw new ZipException("no current ZIP entry");
+    }
+
+    impl.actuallyWritePrecompressed(b, off, len);
+  }
+
   // javadocs taken from OutputStream and amended to make it clear what we're doing here.
   /**
    * Writes the specified byte to this output stream. Specifically one byte is written to the output
@@ -57,6 +57,8 @@ class EntryAccounting {
   private long offset;
   private long length = 0;
   private long externalAttributes = 0;
+  private boolean dataWritten = false;
+  private boolean precompressed = false;
 
   /**
    * General purpose bit flag: Bit 00: encrypted file Bit 01: compression option Bit 02: compression
@@ -243,6 +245,8 @@ class EntryAccounting {
     if (len == 0) {
       return;
     }
+    Preconditions.checkState(!precompressed, "Entry already has precompressed data.");
+    dataWritten = true;
     updateCrc(b, off, len);
 
     if (method == Method.STORE) {
@@ -257,19 +261,36 @@ class EntryAccounting {
     }
   }
 
+  /**
+   * Writes the already compressed data of this entry. The CRC and sizes must have been set on the
+   * entry up front, and no other data may be written to it.
+   */
+  public void writePrecompressed(OutputStream out, byte[] b, int off, int len) throws IOException {
+    Preconditions.checkState(
+        !dataWritten, "Precompressed data must be the only data written to an entry.");
+    Preconditions.checkState(
+        entry.getCompressedSize() == len,
+        "Number of precompressed bytes differs from what is specified in the entry.");
+    dataWritten = true;
+    precompressed = true;
+    out.write(b, off, len);
+    length = len;
+  }
+
   /**
    * Finish the entry and return the total number of compressed bytes written (not counting the
    * local file header, but counting the data descriptor if present). Must be called exactly once.
    */
   public long finish(OutputStream out) throws IOException {
-    if (method == Method.STORE) {
+    // The CRC and sizes of precompressed data were provided up front with the entry.
+    if (method == Method.STORE && !precompressed) {
       Preconditions.checkState(
           entry.getSize() == length && entry.getCompressedSize() == length,
           "Number of bytes written differs from what is specified in the entry.");
       Preconditions.checkState(
           entry.getCrc() == calculateCrc(),
           "CRC of bytes written differs from what is specified in the entry.");
-    } else if (method == Method.DEFLATE) {
+    } else if (method == Method.DEFLATE && !precompressed) {
       deflater.finish();
       while (!deflater.finished()) {
         deflate(out);
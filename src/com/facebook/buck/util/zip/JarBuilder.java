@@ -21,26 +21,38 @@ import com.facebook.buck.util.RichStream;
 import com.google.common.base.Charsets;
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
 import com.google.common.io.ByteStreams;
 import com.google.common.io.CharStreams;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 import java.util.function.Predicate;
 import java.util.jar.Attributes;
 import java.util.jar.JarFile;
 import java.util.jar.Manifest;
 import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
 import javax.annotation.Nullable;
 
 public class JarBuilder {
@@ -70,6 +82,10 @@ public class JarBuilder {
   private List<JarEntryContainer> sourceContainers = new ArrayList<>();
   private Set<String> alreadyAddedEntries = new HashSet<>();
   private Map<String, Set<String>> services = new HashMap<>();
+  @Nullable private Executor compressionExecutor;
+  private int maxPendingEntries = 1;
+  private boolean shouldReuseCompressedEntries;
+  private Deque<FutureTask<CompressedEntry>> pendingEntries = new ArrayDeque<>();
 
   public JarBuilder setObserver(Observer observer) {
     this.observer = observer;
@@ -131,6 +147,32 @@ public class JarBuilder {
     return this;
   }
 
+  /**
+   * Compresses entries on {@code executor} while earlier ones are being written. Entries are still
+   * written in the same order, so the jar is byte-for-byte identical to the one built without an
+   * executor. Entry hashing needs the uncompressed bytes as they are written, so it disables this.
+   *
+   * <p>The calling thread compresses any entry it has to wait for whose task has not started yet,
+   * so the executor may be the same one the builder is running on.
+   */
+  public JarBuilder setCompressionExecutor(@Nullable Executor executor, int parallelism) {
+    Preconditions.checkArgument(parallelism > 0);
+    this.compressionExecutor = executor;
+    // Allow enough entries in flight to keep every thread busy while the head is being written.
+    this.maxPendingEntries = 2 * parallelism;
+    return this;
+  }
+
+  /**
+   * Copies the data of deflated entries from source jars as is, instead of inflating it and
+   * deflating it again. The jar is still deterministic, but its bytes now depend on how the source
+   * jars were compressed.
+   */
+  public JarBuilder setShouldReuseCompressedEntries(boolean shouldReuseCompressedEntries) {
+    this.shouldReuseCompressedEntries = shouldReuseCompressedEntries;
+    return this;
+  }
+
   public int createJarFile(Path outputFile) throws IOException {
     Preconditions.checkArgument(outputFile.isAbsolute());
     try (CustomJarOutputStream jar =
@@ -149,7 +191,15 @@ public class JarBuilder {
       }
       sortedEntries.sort(Comparator.comparing(supplier -> supplier.getEntry().getName()));
 
-      addEntriesToJar(sortedEntries, jar);
+      try {
+        addEntriesToJar(sortedEntries, jar);
+        flushPendingEntries(0, jar);
+      } finally {
+        for (FutureTask<CompressedEntry> pendingEntry : pendingEntries) {
+          pendingEntry.cancel(false);
+        }
+        pendingEntries.clear();
+      }
 
       addServices(jar);
 
@@ -269,14 +319,116 @@ public class JarBuilder {
       return;
     }
 
-    jar.putNextEntry(entry);
+    if (!shouldPrecompressEntries()) {
+      jar.putNextEntry(entry);
+      try (InputStream entryInputStream = entrySupplier.getInputStreamSupplier().get()) {
+        if (entryInputStream != null) {
+          // Null stream means a directory
+          ByteStreams.copy(entryInputStream, jar);
+        }
+      }
+      jar.closeEntry();
+      return;
+    }
+
+    addPendingEntry(entrySupplier, compressionExecutor, jar);
+  }
+
+  private void addPendingEntry(
+      JarEntrySupplier entrySupplier, @Nullable Executor executor, CustomJarOutputStream jar)
+      throws IOException {
+    FutureTask<CompressedEntry> task =
+        new FutureTask<>(() -> compressEntry(entrySupplier, shouldReuseCompressedEntries));
+    pendingEntries.add(task);
+    if (executor != null) {
+      executor.execute(task);
+    } else {
+      task.run();
+    }
+    flushPendingEntries(maxPendingEntries, jar);
+  }
+
+  private boolean shouldPrecompressEntries() {
+    return (compressionExecutor != null || shouldReuseCompressedEntries) && !shouldHashEntries;
+  }
+
+  /** Writes out finished entries in order until at most {@code maxPending} remain in flight. */
+  private void flushPendingEntries(int maxPending, CustomJarOutputStream jar) throws IOException {
+    while (pendingEntries.size() > maxPending) {
+      FutureTask<CompressedEntry> task = pendingEntries.peekFirst();
+      // Does nothing if a worker has already picked the task up.
+      task.run();
+      CompressedEntry compressedEntry;
+      try {
+        compressedEntry = task.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while compressing jar entries.");
+      } catch (ExecutionException e) {
+        Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+        Throwables.throwIfUnchecked(e.getCause());
+        throw new RuntimeException(e.getCause());
+      }
+      pendingEntries.removeFirst();
+
+      jar.putNextEntry(compressedEntry.entry);
+      jar.writePrecompressed(compressedEntry.data, 0, compressedEntry.data.length);
+      jar.closeEntry();
+    }
+  }
+
+  /**
+   * Produces the data of an entry exactly as {@link EntryAccounting} would write it, and sets the
+   * CRC and sizes on the entry to match.
+   */
+  private static CompressedEntry compressEntry(
+      JarEntrySupplier entrySupplier, boolean shouldReuseCompressedEntries) throws IOException {
+    CustomZipEntry entry = entrySupplier.getEntry();
+
+    if (shouldReuseCompressedEntries
+        && entry.getMethod() == ZipEntry.DEFLATED
+        && entrySupplier.getCompressedDataSupplier().isPresent()) {
+      ByteBuffer compressedData = entrySupplier.getCompressedDataSupplier().get().get();
+      if (compressedData != null) {
+        byte[] data = new byte[compressedData.remaining()];
+        compressedData.get(data);
+        entry.setCompressedSize(data.length);
+        return new CompressedEntry(entry, data);
+      }
+    }
+
+    byte[] uncompressed;
     try (InputStream entryInputStream = entrySupplier.getInputStreamSupplier().get()) {
-      if (entryInputStream != null) {
-        // Null stream means a directory
-        ByteStreams.copy(entryInputStream, jar);
+      // Null stream means a directory
+      uncompressed =
+          entryInputStream == null ? new byte[0] : ByteStreams.toByteArray(entryInputStream);
+    }
+
+    CRC32 crc = new CRC32();
+    crc.update(uncompressed);
+    entry.setCrc(crc.getValue());
+    entry.setSize(uncompressed.length);
+    if (entry.getMethod() == ZipEntry.STORED) {
+      entry.setCompressedSize(uncompressed.length);
+      return new CompressedEntry(entry, uncompressed);
+    }
+
+    Deflater deflater = new Deflater(entry.getCompressionLevel(), true);
+    try {
+      deflater.setInput(uncompressed);
+      deflater.finish();
+      ByteArrayOutputStream compressed = new ByteArrayOutputStream(uncompressed.length / 2 + 64);
+      byte[] buffer = new byte[8192];
+      while (!deflater.finished()) {
+        int count = deflater.deflate(buffer);
+        compressed.write(buffer, 0, count);
       }
+      byte[] data = compressed.toByteArray();
+      entry.setCompressedSize(data.length);
+      return new CompressedEntry(entry, data);
+    } finally {
+      deflater.end();
     }
-    jar.closeEntry();
   }
 
   private boolean isService(String entryName) {
@@ -296,8 +448,16 @@ public class JarBuilder {
     String parent = getParentDir(name);
     mkdirs(parent, jar);
 
-    jar.putNextEntry(new CustomZipEntry(name));
-    jar.closeEntry();
+    if (pendingEntries.isEmpty()) {
+      jar.putNextEntry(new CustomZipEntry(name));
+      jar.closeEntry();
+    } else {
+      // Queue up behind the entries still being compressed to keep the order of the jar.
+      addPendingEntry(
+          new JarEntrySupplier(new CustomZipEntry(name), String.valueOf(outputFile), () -> null),
+          null,
+          jar);
+    }
     alreadyAddedEntries.add(name);
   }
 
@@ -342,6 +502,16 @@ public class JarBuilder {
         || (!shouldDisallowAllDuplicates && !name.endsWith(".class") && !name.endsWith("/"));
   }
 
+  private static class CompressedEntry {
+    private final CustomZipEntry entry;
+    private final byte[] data;
+
+    private CompressedEntry(CustomZipEntry entry, byte[] data) {
+      this.entry = entry;
+      this.data = data;
+    }
+  }
+
   private static class SingletonJarEntryContainer implements JarEntryContainer {
     private final JarEntrySupplier supplier;
 
@@ -19,6 +19,8 @@ package com.facebook.buck.util.zip;
 import com.facebook.buck.util.function.ThrowingSupplier;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Optional;
 
 /**
  * Encapsulates a file or directory to be added as a single entry to a jar by {@link JarBuilder}.
@@ -27,14 +29,29 @@ public class JarEntrySupplier {
   private final CustomZipEntry entry;
   private final String owner;
   private final ThrowingSupplier<InputStream, IOException> inputStreamSupplier;
+  private final Optional<ThrowingSupplier<ByteBuffer, IOException>> compressedDataSupplier;
 
   public JarEntrySupplier(
       CustomZipEntry entry,
       String owner,
       ThrowingSupplier<InputStream, IOException> inputStreamSupplier) {
+    this(entry, owner, inputStreamSupplier, Optional.empty());
+  }
+
+  /**
+   * @param compressedDataSupplier if present, supplies the raw deflate data of the entry as it is
+   *     stored in its source archive, or null if that turns out to be unavailable. The CRC and
+   *     size of {@code entry} must describe that data.
+   */
+  public JarEntrySupplier(
+      CustomZipEntry entry,
+      String owner,
+      ThrowingSupplier<InputStream, IOException> inputStreamSupplier,
+      Optional<ThrowingSupplier<ByteBuffer, IOException>> compressedDataSupplier) {
     this.entry = entry;
     this.owner = owner;
     this.inputStreamSupplier = inputStreamSupplier;
+    this.compressedDataSupplier = compressedDataSupplier;
   }
 
   public CustomZipEntry getEntry() {
@@ -48,4 +65,8 @@ public class JarEntrySupplier {
   public ThrowingSupplier<InputStream, IOException> getInputStreamSupplier() {
     return inputStreamSupplier;
   }
+
+  public Optional<ThrowingSupplier<ByteBuffer, IOException>> getCompressedDataSupplier() {
+    return compressedDataSupplier;
+  }
 }
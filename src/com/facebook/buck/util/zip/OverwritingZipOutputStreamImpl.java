@@ -102,6 +102,13 @@ public class OverwritingZipOutputStreamImpl implements CustomZipOutputStream.Imp
     currentEntry.write(currentOutput, b, off, len);
   }
 
+  @Override
+  public void actuallyWritePrecompressed(byte[] b, int off, int len) throws IOException {
+    Preconditions.checkNotNull(currentEntry);
+    Preconditions.checkNotNull(currentOutput);
+    currentEntry.writePrecompressed(currentOutput, b, off, len);
+  }
+
   @Override
   public void actuallyClose() throws IOException {
     long currentOffset = 0;
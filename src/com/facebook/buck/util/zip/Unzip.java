@@ -16,35 +16,54 @@
 
 package com.facebook.buck.util.zip;
 
+import com.facebook.buck.io.file.MappedByteBuffers;
 import com.facebook.buck.io.file.MoreFiles;
 import com.facebook.buck.io.file.MorePosixFilePermissions;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.io.filesystem.ProjectFilesystemFactory;
 import com.facebook.buck.util.MoreCollectors;
 import com.google.common.base.Charsets;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
 import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.PosixFilePermission;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.ZipEntry;
 import java.util.zip.ZipError;
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.compress.archivers.zip.ZipUtil;
 
 public class Unzip {
 
@@ -56,11 +75,31 @@ public class Unzip {
     OVERWRITE_AND_CLEAN_DIRECTORIES,
   }
 
-  private static void writeZipContents(
-      ZipFile zip, ZipArchiveEntry entry, ProjectFilesystem filesystem, Path target)
+  // Below this many files, handing them out to other threads costs more than it saves.
+  private static final int MIN_FILES_FOR_PARALLEL_EXTRACTION = 16;
+
+  // Writing files blocks on I/O, so it gets threads of its own rather than the common
+  // ForkJoinPool, whose other users it would starve.
+  private static final ExecutorService EXTRACTION_EXECUTOR = createExtractionExecutor();
+
+  private static ExecutorService createExtractionExecutor() {
+    int threads = Runtime.getRuntime().availableProcessors();
+    ThreadPoolExecutor executor =
+        new ThreadPoolExecutor(
+            threads,
+            threads,
+            30,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            new ThreadFactoryBuilder().setNameFormat("unzip-%d").setDaemon(true).build());
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  private static void writeZipContents(ZipMember entry, ProjectFilesystem filesystem, Path target)
       throws IOException {
     // Write file
-    try (InputStream is = zip.getInputStream(entry)) {
+    try (InputStream is = entry.getInputStream()) {
       if (entry.isUnixSymlink()) {
         filesystem.createSymLink(
             target,
@@ -158,7 +197,7 @@ public class Unzip {
     }
   }
 
-  private static boolean isTopLevel(Path path, SortedMap<Path, ZipArchiveEntry> pathMap) {
+  private static boolean isTopLevel(Path path, SortedMap<Path, Optional<ZipMember>> pathMap) {
     for (Path p = path.getParent(); p != null; p = p.getParent()) {
       if (pathMap.containsKey(p)) {
         return false;
@@ -167,22 +206,61 @@ public class Unzip {
     return true;
   }
 
-  private static void fillIntermediatePaths(Path path, SortedMap<Path, ZipArchiveEntry> pathMap) {
+  private static void fillIntermediatePaths(
+      Path path, SortedMap<Path, Optional<ZipMember>> pathMap) {
     for (Path p = path.getParent(); p != null; p = p.getParent()) {
       if (pathMap.containsKey(p)) {
         break;
       }
-      pathMap.put(p, new ZipArchiveEntry(p + "/"));
+      pathMap.put(p, Optional.empty());
     }
   }
 
-  /** Unzips a file to a destination and returns the paths of the written files. */
+  /**
+   * Unzips a file to a destination and returns the paths of the written files.
+   *
+   * <p>Archives that can be memory-mapped are read straight from their central directory, and their
+   * files are inflated and written in parallel once all directories have been set up, after which
+   * the mapping is released. Anything we can't parse ourselves, such as zip64 archives, goes
+   * through commons-compress serially.
+   */
   public static ImmutableList<Path> extractZipFile(
       Path zipFile,
       ProjectFilesystem filesystem,
       Path relativePath,
       ExistingFileMode existingFileMode)
       throws IOException {
+    Optional<MappedByteBuffer> mappedZip = mapZipFile(zipFile);
+    if (mappedZip.isPresent()) {
+      try {
+        Optional<List<ZipMember>> mappedMembers = readMappedZipMembers(mappedZip.get());
+        if (mappedMembers.isPresent()) {
+          return extractZipMembers(
+              mappedMembers.get(), filesystem, relativePath, existingFileMode, /* parallel */ true);
+        }
+      } finally {
+        // Every member has been written by now, so nothing reads the mapping any more.
+        MappedByteBuffers.unmap(mappedZip.get());
+      }
+    }
+
+    try (ZipFile zip = new ZipFile(zipFile.toFile())) {
+      List<ZipMember> members = new ArrayList<>();
+      for (ZipArchiveEntry entry : Collections.list(zip.getEntries())) {
+        members.add(new CommonsCompressZipMember(zip, entry));
+      }
+      return extractZipMembers(
+          members, filesystem, relativePath, existingFileMode, /* parallel */ false);
+    }
+  }
+
+  private static ImmutableList<Path> extractZipMembers(
+      List<ZipMember> members,
+      ProjectFilesystem filesystem,
+      Path relativePath,
+      ExistingFileMode existingFileMode,
+      boolean parallel)
+      throws IOException {
 
     // We want to remove stale contents of directories listed in zipFile, but avoid deleting and
     // re-creating any directories that already exist. We *also* want to avoid a full recursive
@@ -190,55 +268,157 @@ public class Unzip {
     // contents of zipFile and then scan the existing filesystem to remove stale artifacts.
 
     ImmutableList.Builder<Path> filesWritten = ImmutableList.builder();
-    try (ZipFile zip = new ZipFile(zipFile.toFile())) {
-      // Get the list of paths in zipFile.  Keep them sorted by path, so dirs come before contents.
-      SortedMap<Path, ZipArchiveEntry> pathMap = new TreeMap<>();
-      for (ZipArchiveEntry entry : Collections.list(zip.getEntries())) {
-        Path target = relativePath.resolve(entry.getName()).normalize();
-        pathMap.put(target, entry);
-      }
-      // A zip file isn't required to list intermediate paths (e.g., it can contain "foo/" and
-      // "foo/bar/baz"), but we need to know not to delete those intermediates, so fill them in.
-      for (SortedMap.Entry<Path, ZipArchiveEntry> p : new ArrayList<>(pathMap.entrySet())) {
-        if (!isTopLevel(p.getKey(), pathMap)) {
-          fillIntermediatePaths(p.getKey(), pathMap);
-        }
+    // Get the list of paths in zipFile.  Keep them sorted by path, so dirs come before contents.
+    SortedMap<Path, Optional<ZipMember>> pathMap = new TreeMap<>();
+    for (ZipMember entry : members) {
+      Path target = relativePath.resolve(entry.getName()).normalize();
+      pathMap.put(target, Optional.of(entry));
+    }
+    // A zip file isn't required to list intermediate paths (e.g., it can contain "foo/" and
+    // "foo/bar/baz"), but we need to know not to delete those intermediates, so fill them in as
+    // directories without an entry of their own.
+    for (SortedMap.Entry<Path, Optional<ZipMember>> p : new ArrayList<>(pathMap.entrySet())) {
+      if (!isTopLevel(p.getKey(), pathMap)) {
+        fillIntermediatePaths(p.getKey(), pathMap);
       }
-      for (SortedMap.Entry<Path, ZipArchiveEntry> p : pathMap.entrySet()) {
-        Path target = p.getKey();
-        ZipArchiveEntry entry = p.getValue();
-        if (entry.isDirectory()) {
-          if (filesystem.isDirectory(target, LinkOption.NOFOLLOW_LINKS)) {
-            // We have a pre-existing directory: delete its contents if they aren't in the zip.
-            if (existingFileMode == ExistingFileMode.OVERWRITE_AND_CLEAN_DIRECTORIES) {
-              for (Path path : filesystem.getDirectoryContents(target)) {
-                if (!pathMap.containsKey(path)) {
-                  filesystem.deleteRecursivelyIfExists(path);
-                }
+    }
+
+    // Set up the whole directory structure first, so that the files can be written in any order.
+    SortedMap<Path, ZipMember> filesToWrite = new TreeMap<>();
+    for (SortedMap.Entry<Path, Optional<ZipMember>> p : pathMap.entrySet()) {
+      Path target = p.getKey();
+      Optional<ZipMember> entry = p.getValue();
+      if (!entry.isPresent() || entry.get().isDirectory()) {
+        if (filesystem.isDirectory(target, LinkOption.NOFOLLOW_LINKS)) {
+          // We have a pre-existing directory: delete its contents if they aren't in the zip.
+          if (existingFileMode == ExistingFileMode.OVERWRITE_AND_CLEAN_DIRECTORIES) {
+            for (Path path : filesystem.getDirectoryContents(target)) {
+              if (!pathMap.containsKey(path)) {
+                filesystem.deleteRecursivelyIfExists(path);
               }
             }
-          } else if (filesystem.exists(target, LinkOption.NOFOLLOW_LINKS)) {
-            filesystem.deleteFileAtPath(target);
-            filesystem.mkdirs(target);
-          } else {
-            filesystem.mkdirs(target);
           }
+        } else if (filesystem.exists(target, LinkOption.NOFOLLOW_LINKS)) {
+          filesystem.deleteFileAtPath(target);
+          filesystem.mkdirs(target);
         } else {
-          if (filesystem.isFile(target, LinkOption.NOFOLLOW_LINKS)) { // NOPMD for clarity
-            // pass
-          } else if (filesystem.exists(target, LinkOption.NOFOLLOW_LINKS)) {
-            filesystem.deleteRecursivelyIfExists(target);
-          } else {
-            filesystem.createParentDirs(target);
-          }
-          filesWritten.add(target);
-          writeZipContents(zip, entry, filesystem, target);
+          filesystem.mkdirs(target);
+        }
+      } else {
+        if (filesystem.isFile(target, LinkOption.NOFOLLOW_LINKS)) { // NOPMD for clarity
+          // pass
+        } else if (filesystem.exists(target, LinkOption.NOFOLLOW_LINKS)) {
+          filesystem.deleteRecursivelyIfExists(target);
+        } else {
+          filesystem.createParentDirs(target);
         }
+        filesWritten.add(target);
+        filesToWrite.put(target, entry.get());
+      }
+    }
+
+    if (parallel && filesToWrite.size() >= MIN_FILES_FOR_PARALLEL_EXTRACTION) {
+      writeZipContentsInParallel(filesToWrite, filesystem);
+    } else {
+      for (SortedMap.Entry<Path, ZipMember> p : filesToWrite.entrySet()) {
+        writeZipContents(p.getValue(), filesystem, p.getKey());
       }
     }
+
     return filesWritten.build();
   }
 
+  /**
+   * Writes the files on {@link #EXTRACTION_EXECUTOR}. Returns or throws only once every task has
+   * finished, so the caller may release the archive as soon as this returns. Once a file fails,
+   * the files that haven't been started yet are skipped.
+   */
+  private static void writeZipContentsInParallel(
+      SortedMap<Path, ZipMember> filesToWrite, ProjectFilesystem filesystem) throws IOException {
+    AtomicBoolean failed = new AtomicBoolean();
+    List<Future<Void>> writes = new ArrayList<>(filesToWrite.size());
+    for (SortedMap.Entry<Path, ZipMember> p : filesToWrite.entrySet()) {
+      writes.add(
+          EXTRACTION_EXECUTOR.submit(
+              () -> {
+                if (failed.get()) {
+                  return null;
+                }
+                boolean written = false;
+                try {
+                  writeZipContents(p.getValue(), filesystem, p.getKey());
+                  written = true;
+                } finally {
+                  if (!written) {
+                    failed.set(true);
+                  }
+                }
+                return null;
+              }));
+    }
+
+    Throwable failure = null;
+    boolean interrupted = false;
+    for (Future<Void> write : writes) {
+      while (true) {
+        try {
+          write.get();
+          break;
+        } catch (InterruptedException e) {
+          // Keep waiting, so that no task outlives this call, but skip the remaining files.
+          interrupted = true;
+          failed.set(true);
+        } catch (ExecutionException e) {
+          if (failure == null) {
+            failure = e.getCause();
+          }
+          break;
+        }
+      }
+    }
+
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+      if (failure == null) {
+        throw new InterruptedIOException("Interrupted while extracting zip file.");
+      }
+    }
+    if (failure != null) {
+      Throwables.throwIfInstanceOf(failure, IOException.class);
+      Throwables.throwIfUnchecked(failure);
+      throw new RuntimeException(failure);
+    }
+  }
+
+  /** Maps {@code zipFile}, or returns empty if it is too large to be mapped. */
+  private static Optional<MappedByteBuffer> mapZipFile(Path zipFile) throws IOException {
+    try (FileChannel channel = FileChannel.open(zipFile, StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        return Optional.empty();
+      }
+      return Optional.of(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+  }
+
+  /**
+   * Reads the central directory of the mapped archive {@code zip}, or returns empty if the archive
+   * uses features we don't parse ourselves.
+   */
+  private static Optional<List<ZipMember>> readMappedZipMembers(ByteBuffer zip) {
+    List<ZipMember> members = new ArrayList<>();
+    try {
+      for (CentralDirectory.FileHeader header : CentralDirectory.readFileHeaders(zip)) {
+        if (header.getMethod() != ZipEntry.STORED && header.getMethod() != ZipEntry.DEFLATED) {
+          return Optional.empty();
+        }
+        members.add(new MappedZipMember(zip, header));
+      }
+    } catch (IOException e) {
+      return Optional.empty();
+    }
+    return Optional.of(members);
+  }
+
   public static ImmutableList<Path> extractZipFile(
       Path zipFile, ProjectFilesystem filesystem, ExistingFileMode existingFileMode)
       throws IOException {
@@ -279,4 +459,105 @@ public class Unzip {
           error);
     }
   }
+
+  /** An entry of a zip file, independent of how the archive is being read. */
+  private abstract static class ZipMember {
+    abstract String getName();
+
+    boolean isDirectory() {
+      return getName().endsWith("/");
+    }
+
+    abstract boolean isUnixSymlink();
+
+    /** @return the modification time in milliseconds since the epoch. */
+    abstract long getTime();
+
+    abstract long getExternalAttributes();
+
+    /** May be called from any thread. */
+    abstract InputStream getInputStream() throws IOException;
+  }
+
+  private static class CommonsCompressZipMember extends ZipMember {
+    private final ZipFile zip;
+    private final ZipArchiveEntry entry;
+
+    private CommonsCompressZipMember(ZipFile zip, ZipArchiveEntry entry) {
+      this.zip = zip;
+      this.entry = entry;
+    }
+
+    @Override
+    String getName() {
+      return entry.getName();
+    }
+
+    @Override
+    boolean isDirectory() {
+      return entry.isDirectory();
+    }
+
+    @Override
+    boolean isUnixSymlink() {
+      return entry.isUnixSymlink();
+    }
+
+    @Override
+    long getTime() {
+      return entry.getTime();
+    }
+
+    @Override
+    long getExternalAttributes() {
+      return entry.getExternalAttributes();
+    }
+
+    @Override
+    InputStream getInputStream() throws IOException {
+      return zip.getInputStream(entry);
+    }
+  }
+
+  /** An entry read straight out of a memory-mapped archive. */
+  private static class MappedZipMember extends ZipMember {
+    // Host system and file type values, as interpreted by commons-compress and InfoZIP.
+    private static final int UNIX_PLATFORM = 3;
+    private static final int FILE_TYPE_MASK = 0170000;
+    private static final int SYMLINK_FILE_TYPE = 0120000;
+
+    private final ByteBuffer zip;
+    private final CentralDirectory.FileHeader header;
+
+    private MappedZipMember(ByteBuffer zip, CentralDirectory.FileHeader header) {
+      this.zip = zip;
+      this.header = header;
+    }
+
+    @Override
+    String getName() {
+      return header.getName();
+    }
+
+    @Override
+    boolean isUnixSymlink() {
+      return (header.getVersionMadeBy() >> 8) == UNIX_PLATFORM
+          && ((header.getExternalAttributes() >> 16) & FILE_TYPE_MASK) == SYMLINK_FILE_TYPE;
+    }
+
+    @Override
+    long getTime() {
+      return ZipUtil.dosToJavaTime(header.getDosTime());
+    }
+
+    @Override
+    long getExternalAttributes() {
+      return header.getExternalAttributes();
+    }
+
+    @Override
+    InputStream getInputStream() throws IOException {
+      return CentralDirectory.openEntryData(zip, header);
+    }
+  }
 }
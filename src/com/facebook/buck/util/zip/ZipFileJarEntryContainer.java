@@ -16,9 +16,19 @@
 
 package com.facebook.buck.util.zip;
 
+import com.facebook.buck.util.function.ThrowingSupplier;
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.jar.JarFile;
 import java.util.jar.Manifest;
 import java.util.stream.Stream;
@@ -30,6 +40,9 @@ class ZipFileJarEntryContainer implements JarEntryContainer {
   private final String owner;
   private final Path jarFilePath;
   @Nullable private JarFile jar;
+  @Nullable private FileChannel channel;
+  private boolean closed;
+  @Nullable private Map<String, CentralDirectory.FileHeader> fileHeaders;
 
   public ZipFileJarEntryContainer(Path jarFilePath) {
     this.jarFilePath = jarFilePath;
@@ -49,12 +62,76 @@ class ZipFileJarEntryContainer implements JarEntryContainer {
         .map(
             entry ->
                 new JarEntrySupplier(
-                    makeCustomEntry(entry), owner, () -> getJarFile().getInputStream(entry)));
+                    makeCustomEntry(entry),
+                    owner,
+                    () -> getJarFile().getInputStream(entry),
+                    entry.getMethod() == ZipEntry.DEFLATED
+                        ? Optional.of(compressedDataSupplier(entry.getName()))
+                        : Optional.empty()));
+  }
+
+  private ThrowingSupplier<ByteBuffer, IOException> compressedDataSupplier(String name) {
+    return () -> {
+      CentralDirectory.FileHeader header = getFileHeaders().get(name);
+      if (header == null || header.getMethod() != ZipEntry.DEFLATED) {
+        return null;
+      }
+      return CentralDirectory.readEntryData(getChannel(), header);
+    };
+  }
+
+  /**
+   * The jar is read through a channel rather than mapped, as a mapping would outlive {@link
+   * #close()} until the buffer happened to be collected.
+   */
+  private synchronized FileChannel getChannel() throws IOException {
+    if (closed) {
+      throw new ClosedChannelException();
+    }
+    if (channel == null) {
+      channel = FileChannel.open(jarFilePath, StandardOpenOption.READ);
+    }
+    return channel;
+  }
+
+  /**
+   * Headers by name, leaving out names that occur more than once as they are ambiguous. Archives
+   * we can't parse ourselves (such as zip64 ones) get no headers, so their entries are
+   * always read through {@link JarFile}.
+   */
+  private synchronized Map<String, CentralDirectory.FileHeader> getFileHeaders() {
+    if (fileHeaders == null) {
+      Map<String, CentralDirectory.FileHeader> headers = new HashMap<>();
+      Set<String> duplicates = new HashSet<>();
+      try {
+        for (CentralDirectory.FileHeader header :
+            CentralDirectory.readFileHeaders(getChannel())) {
+          if (headers.put(header.getName(), header) != null) {
+            duplicates.add(header.getName());
+          }
+        }
+        headers.keySet().removeAll(duplicates);
+      } catch (IOException e) {
+        headers.clear();
+      }
+      fileHeaders = headers;
+    }
+    return fileHeaders;
   }
 
   @Override
-  public void close() throws IOException {
-    getJarFile().close();
+  public synchronized void close() throws IOException {
+    closed = true;
+    fileHeaders = null;
+    try {
+      if (channel != null) {
+        channel.close();
+      }
+    } finally {
+      if (jar != null) {
+        jar.close();
+      }
+    }
   }
 
   private JarFile getJarFile() throws IOException {
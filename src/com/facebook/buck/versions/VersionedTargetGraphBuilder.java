@@ -41,12 +41,16 @@ import com.google.common.collect.Iterables;
 import com.google.common.collect.Sets;
 import com.google.common.hash.Hasher;
 import com.google.common.hash.Hashing;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
@@ -84,16 +88,57 @@ public class VersionedTargetGraphBuilder {
   /** Count of root nodes. */
   private final AtomicInteger roots = new AtomicInteger();
 
+  /** The work of an earlier transformation of the graph this one was edited from, if any. */
+  private final Optional<Translations> previous;
+
+  /**
+   * Targets whose transformation the edits since the earlier transformation may have changed:
+   * changed or removed nodes, and everything that transitively depends on them.
+   */
+  private final Set<BuildTarget> affected;
+
+  /** The translations made in each root's version sub-graph, for a later transformation. */
+  private final ConcurrentHashMap<BuildTarget, RootTranslations> rootTranslations;
+
+  /** Count of roots whose translations were reused. */
+  private final AtomicInteger reusedRoots = new AtomicInteger();
+
   VersionedTargetGraphBuilder(
       ForkJoinPool pool,
       VersionSelector versionSelector,
       TargetGraphAndBuildTargets unversionedTargetGraphAndBuildTargets,
       TypeCoercerFactory typeCoercerFactory) {
+    this(
+        pool,
+        versionSelector,
+        unversionedTargetGraphAndBuildTargets,
+        typeCoercerFactory,
+        Optional.empty());
+  }
+
+  /**
+   * @param previous the translations of an earlier transformation, with the same version
+   *     selections, of a graph this one was edited from. They are reused for the version roots the
+   *     edits don't reach.
+   */
+  VersionedTargetGraphBuilder(
+      ForkJoinPool pool,
+      VersionSelector versionSelector,
+      TargetGraphAndBuildTargets unversionedTargetGraphAndBuildTargets,
+      TypeCoercerFactory typeCoercerFactory,
+      Optional<Translations> previous) {
 
     this.pool = pool;
     this.versionSelector = versionSelector;
     this.unversionedTargetGraphAndBuildTargets = unversionedTargetGraphAndBuildTargets;
     this.typeCoercerFactory = typeCoercerFactory;
+    this.previous = previous;
+    this.affected =
+        previous.isPresent()
+            ? getAffectedTargets(
+                previous.get().unversionedTargetGraph,
+                unversionedTargetGraphAndBuildTargets.getTargetGraph())
+            : ImmutableSet.of();
 
     this.index =
         new ConcurrentHashMap<>(
@@ -110,6 +155,39 @@ public class VersionedTargetGraphBuilder {
             2 * unversionedTargetGraphAndBuildTargets.getTargetGraph().getNodes().size(),
             0.75f,
             pool.getParallelism());
+    this.rootTranslations =
+        new ConcurrentHashMap<>(
+            unversionedTargetGraphAndBuildTargets.getTargetGraph().getNodes().size() / 2,
+            0.75f,
+            pool.getParallelism());
+  }
+
+  /**
+   * @return the targets of the nodes of {@code graph} that differ from those of {@code
+   *     previousGraph}, of the nodes of {@code previousGraph} that are gone, and of the nodes that
+   *     transitively depend on either.
+   */
+  private static Set<BuildTarget> getAffectedTargets(TargetGraph previousGraph, TargetGraph graph) {
+    Set<BuildTarget> affected = new HashSet<>();
+    Deque<TargetNode<?, ?>> toVisit = new ArrayDeque<>();
+    for (TargetNode<?, ?> node : graph.getNodes()) {
+      Optional<TargetNode<?, ?>> previousNode = previousGraph.getOptional(node.getBuildTarget());
+      if (!previousNode.isPresent() || !previousNode.get().equals(node)) {
+        toVisit.add(node);
+      }
+    }
+    for (TargetNode<?, ?> previousNode : previousGraph.getNodes()) {
+      if (!graph.getOptional(previousNode.getBuildTarget()).isPresent()) {
+        affected.add(previousNode.getBuildTarget());
+      }
+    }
+    while (!toVisit.isEmpty()) {
+      TargetNode<?, ?> node = toVisit.pop();
+      if (affected.add(node.getBuildTarget())) {
+        toVisit.addAll(graph.getIncomingNodesFor(node));
+      }
+    }
+    return affected;
   }
 
   private TargetNode<?, ?> getNode(BuildTarget target) {
@@ -131,6 +209,15 @@ public class VersionedTargetGraphBuilder {
       return info;
     }
 
+    // The version info of a node only depends on its transitive deps.
+    if (previous.isPresent() && !affected.contains(node.getBuildTarget())) {
+      info = previous.get().versionInfo.get(node.getBuildTarget());
+      if (info != null) {
+        this.versionInfo.put(node.getBuildTarget(), info);
+        return info;
+      }
+    }
+
     Map<BuildTarget, ImmutableSet<Version>> versionDomain = new HashMap<>();
 
     Optional<TargetNode<VersionedAliasDescriptionArg, ?>> versionedNode =
@@ -260,12 +347,39 @@ public class VersionedTargetGraphBuilder {
 
     long end = System.currentTimeMillis();
     LOG.debug(
-        "Finished version target graph transformation in %.2f (nodes %d, roots: %d)",
-        (end - start) / 1000.0, index.size(), roots.get());
+        "Finished version target graph transformation in %.2f (nodes %d, roots: %d, reused: %d)",
+        (end - start) / 1000.0, index.size(), roots.get(), reusedRoots.get());
 
     return targetGraphBuilder.build();
   }
 
+  /**
+   * @return the translations made by {@link #build()}, for a later transformation of an edited
+   *     graph to reuse.
+   */
+  Translations getTranslations() {
+    return new Translations(
+        unversionedTargetGraphAndBuildTargets.getTargetGraph(),
+        ImmutableMap.copyOf(versionInfo),
+        ImmutableMap.copyOf(rootTranslations));
+  }
+
+  /**
+   * @return the translations an earlier transformation made in the given root's version
+   *     sub-graph, if the edits since reach neither the sub-graph nor any of the targets whose
+   *     translations the translated nodes refer to.
+   */
+  private Optional<RootTranslations> getReusableTranslations(BuildTarget root) {
+    if (!previous.isPresent() || affected.contains(root)) {
+      return Optional.empty();
+    }
+    RootTranslations translations = previous.get().roots.get(root);
+    if (translations == null || Iterables.any(translations.lookedUp, affected::contains)) {
+      return Optional.empty();
+    }
+    return Optional.of(translations);
+  }
+
   public static TargetGraphAndBuildTargets transform(
       VersionSelector versionSelector,
       TargetGraphAndBuildTargets unversionedTargetGraphAndBuildTargets,
@@ -382,7 +496,8 @@ public class VersionedTargetGraphBuilder {
     private TargetNode<?, ?> processVersionSubGraphNode(
         TargetNode<?, ?> node,
         ImmutableMap<BuildTarget, Version> selectedVersions,
-        TargetNodeTranslator targetTranslator)
+        TargetNodeTranslator targetTranslator,
+        Map<BuildTarget, TargetNode<?, ?>> translatedNodes)
         throws VersionException {
 
       Optional<BuildTarget> newTarget =
@@ -392,10 +507,15 @@ public class VersionedTargetGraphBuilder {
         return processed;
       }
 
-      // Create the new target node, with the new target and deps.
-      TargetNode<?, ?> newNode =
-          ((Optional<TargetNode<?, ?>>) (Optional<?>) targetTranslator.translateNode(node))
-              .orElse(node);
+      // Create the new target node, with the new target and deps, unless an earlier
+      // transformation already did.
+      TargetNode<?, ?> newNode = translatedNodes.get(node.getBuildTarget());
+      if (newNode == null) {
+        newNode =
+            ((Optional<TargetNode<?, ?>>) (Optional<?>) targetTranslator.translateNode(node))
+                .orElse(node);
+        translatedNodes.put(node.getBuildTarget(), newNode);
+      }
 
       LOG.verbose(
           "%s: new node declared deps %s, extra deps %s, arg %s",
@@ -425,7 +545,8 @@ public class VersionedTargetGraphBuilder {
               processVersionSubGraphNode(
                   resolveVersions(getNode(depTarget), selectedVersions),
                   selectedVersions,
-                  targetTranslator));
+                  targetTranslator,
+                  translatedNodes));
         }
         for (TargetNode<?, ?> dep :
             process(
@@ -456,6 +577,17 @@ public class VersionedTargetGraphBuilder {
       final ImmutableMap<BuildTarget, Version> selectedVersions =
           versionSelector.resolve(root.getBuildTarget(), versionInfo.getVersionDomain());
 
+      // Start from the translations of an earlier transformation the edits since haven't touched,
+      // and keep track of the targets whose translations the new ones refer to.
+      Optional<RootTranslations> reusable = getReusableTranslations(root.getBuildTarget());
+      Map<BuildTarget, TargetNode<?, ?>> translatedNodes = new HashMap<>();
+      Set<BuildTarget> lookedUp = ConcurrentHashMap.newKeySet();
+      if (reusable.isPresent()) {
+        reusedRoots.incrementAndGet();
+        translatedNodes.putAll(reusable.get().nodes);
+        lookedUp.addAll(reusable.get().lookedUp);
+      }
+
       // Build a target translator object to translate build targets.
       ImmutableList<TargetTranslator<?>> translators =
           ImmutableList.of(new QueryTargetTranslator());
@@ -486,12 +618,14 @@ public class VersionedTargetGraphBuilder {
 
             @Override
             public Optional<BuildTarget> translateBuildTarget(BuildTarget target) {
+              lookedUp.add(target);
               return cache.getUnchecked(target);
             }
 
             @Override
             public Optional<ImmutableMap<BuildTarget, Version>> getSelectedVersions(
                 BuildTarget target) {
+              lookedUp.add(target);
               ImmutableMap.Builder<BuildTarget, Version> builder = ImmutableMap.builder();
               for (BuildTarget dep : getVersionInfo(getNode(target)).getVersionDomain().keySet()) {
                 builder.put(dep, selectedVersions.get(dep));
@@ -500,7 +634,13 @@ public class VersionedTargetGraphBuilder {
             }
           };
 
-      return processVersionSubGraphNode(root, selectedVersions, targetTranslator);
+      TargetNode<?, ?> newRoot =
+          processVersionSubGraphNode(root, selectedVersions, targetTranslator, translatedNodes);
+      rootTranslations.put(
+          root.getBuildTarget(),
+          new RootTranslations(
+              ImmutableSet.copyOf(lookedUp), ImmutableMap.copyOf(translatedNodes)));
+      return newRoot;
     }
 
     @Override
@@ -516,4 +656,42 @@ public class VersionedTargetGraphBuilder {
       return node;
     }
   }
+
+  /**
+   * What a transformation worked out that a later one, with the same version selections, of an
+   * edited graph can reuse for the parts of the graph the edits don't reach.
+   */
+  static class Translations {
+
+    /** The un-versioned graph that was transformed. */
+    private final TargetGraph unversionedTargetGraph;
+
+    private final ImmutableMap<BuildTarget, VersionInfo> versionInfo;
+    private final ImmutableMap<BuildTarget, RootTranslations> roots;
+
+    private Translations(
+        TargetGraph unversionedTargetGraph,
+        ImmutableMap<BuildTarget, VersionInfo> versionInfo,
+        ImmutableMap<BuildTarget, RootTranslations> roots) {
+      this.unversionedTargetGraph = unversionedTargetGraph;
+      this.versionInfo = versionInfo;
+      this.roots = roots;
+    }
+  }
+
+  /** The translations made in a version root's sub-graph. */
+  private static class RootTranslations {
+
+    /** The targets whose translations were asked for, which the translated nodes depend on. */
+    private final ImmutableSet<BuildTarget> lookedUp;
+
+    /** The translated nodes, by the targets of the nodes they were translated from. */
+    private final ImmutableMap<BuildTarget, TargetNode<?, ?>> nodes;
+
+    private RootTranslations(
+        ImmutableSet<BuildTarget> lookedUp, ImmutableMap<BuildTarget, TargetNode<?, ?>> nodes) {
+      this.lookedUp = lookedUp;
+      this.nodes = nodes;
+    }
+  }
 }
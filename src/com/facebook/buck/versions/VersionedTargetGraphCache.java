@@ -24,6 +24,7 @@ import com.facebook.buck.rules.TargetGraphAndBuildTargets;
 import com.facebook.buck.rules.coercer.TypeCoercerFactory;
 import com.facebook.buck.util.immutables.BuckStyleTuple;
 import com.google.common.collect.ImmutableMap;
+import java.util.Optional;
 import java.util.concurrent.ForkJoinPool;
 import javax.annotation.Nullable;
 import org.immutables.value.Value;
@@ -34,19 +35,29 @@ public class VersionedTargetGraphCache {
 
   @Nullable private CachedVersionedTargetGraph cachedVersionedTargetGraph = null;
 
-  /** @return a new versioned target graph. */
-  private TargetGraphAndBuildTargets createdVersionedTargetGraph(
-      TargetGraphAndBuildTargets targetGraphAndBuildTargets,
-      ImmutableMap<String, VersionUniverse> versionUniverses,
+  /**
+   * @param previous the translations of the cached graph, to reuse for the parts of the graph that
+   *     haven't changed.
+   * @return a new versioned target graph.
+   */
+  private CachedVersionedTargetGraph createdVersionedTargetGraph(
+      VersionedTargetGraphInputs inputs,
+      Optional<VersionedTargetGraphBuilder.Translations> previous,
       ForkJoinPool pool,
       TypeCoercerFactory typeCoercerFactory)
       throws VersionException, InterruptedException {
-    return VersionedTargetGraphBuilder.transform(
-        new VersionUniverseVersionSelector(
-            targetGraphAndBuildTargets.getTargetGraph(), versionUniverses),
-        targetGraphAndBuildTargets,
-        pool,
-        typeCoercerFactory);
+    TargetGraphAndBuildTargets targetGraphAndBuildTargets = inputs.getTargetGraphAndBuildTargets();
+    VersionedTargetGraphBuilder builder =
+        new VersionedTargetGraphBuilder(
+            pool,
+            new VersionUniverseVersionSelector(
+                targetGraphAndBuildTargets.getTargetGraph(), inputs.getVersionUniverses()),
+            targetGraphAndBuildTargets,
+            typeCoercerFactory,
+            previous);
+    TargetGraphAndBuildTargets versionedTargetGraph =
+        targetGraphAndBuildTargets.withTargetGraph(builder.build());
+    return CachedVersionedTargetGraph.of(inputs, versionedTargetGraph, builder.getTranslations());
   }
 
   private VersionedTargetGraphCacheResult getVersionedTargetGraph(
@@ -65,14 +76,21 @@ public class VersionedTargetGraphCache {
           ResultType.HIT, cachedVersionedTargetGraph.getTargetGraphAndBuildTargets());
     }
 
-    // Build and cache new versioned target graph.
+    // Build and cache new versioned target graph. If only the un-versioned graph changed, the
+    // versions are selected the same way, so whatever of the old one the changes don't reach can
+    // be reused.
     ResultType resultType =
         cachedVersionedTargetGraph == null ? ResultType.EMPTY : ResultType.MISMATCH;
-    TargetGraphAndBuildTargets newVersionedTargetGraph =
-        createdVersionedTargetGraph(
-            targetGraphAndBuildTargets, versionUniverses, pool, typeCoercerFactory);
-    cachedVersionedTargetGraph = CachedVersionedTargetGraph.of(newInputs, newVersionedTargetGraph);
-    return VersionedTargetGraphCacheResult.of(resultType, newVersionedTargetGraph);
+    Optional<VersionedTargetGraphBuilder.Translations> previous =
+        cachedVersionedTargetGraph != null
+                && versionUniverses.equals(
+                    cachedVersionedTargetGraph.getInputs().getVersionUniverses())
+            ? Optional.of(cachedVersionedTargetGraph.getTranslations())
+            : Optional.empty();
+    cachedVersionedTargetGraph =
+        createdVersionedTargetGraph(newInputs, previous, pool, typeCoercerFactory);
+    return VersionedTargetGraphCacheResult.of(
+        resultType, cachedVersionedTargetGraph.getTargetGraphAndBuildTargets());
   }
 
   /**
@@ -145,6 +163,9 @@ public class VersionedTargetGraphCache {
 
     /** @return a versioned target graph. */
     TargetGraphAndBuildTargets getTargetGraphAndBuildTargets();
+
+    /** @return the work that went into the versioned target graph, for re-versioning edits. */
+    VersionedTargetGraphBuilder.Translations getTranslations();
   }
 
   @Value.Immutable
@@ -19,12 +19,15 @@ package com.facebook.buck.worker;
 import com.facebook.buck.log.Logger;
 import com.facebook.buck.util.concurrent.LinkedBlockingStack;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.hash.HashCode;
 import java.io.Closeable;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
@@ -39,12 +42,16 @@ public abstract class WorkerProcessPool implements Closeable {
   @GuardedBy("createdWorkers")
   private final List<WorkerProcess> createdWorkers;
 
+  @GuardedBy("createdWorkers")
+  private final Map<WorkerProcess, UsageTracker> usageTrackers;
+
   private final HashCode poolHash;
 
   public WorkerProcessPool(int maxWorkers, HashCode poolHash) {
     this.capacity = maxWorkers;
     this.availableWorkers = new LinkedBlockingStack<>();
     this.createdWorkers = new ArrayList<>();
+    this.usageTrackers = new IdentityHashMap<>();
     this.poolHash = poolHash;
   }
 
@@ -69,10 +76,13 @@ public abstract class WorkerProcessPool implements Closeable {
     if (workerProcess == null) {
       workerProcess = createNewWorkerIfPossible();
     }
-    if (workerProcess != null) {
-      return workerProcess;
+    if (workerProcess == null) {
+      workerProcess = availableWorkers.take();
+    }
+    synchronized (createdWorkers) {
+      Preconditions.checkNotNull(usageTrackers.get(workerProcess)).borrowed();
     }
-    return availableWorkers.take();
+    return workerProcess;
   }
 
   private @Nullable WorkerProcess createNewWorkerIfPossible() throws IOException {
@@ -82,6 +92,7 @@ public abstract class WorkerProcessPool implements Closeable {
       }
       WorkerProcess process = Preconditions.checkNotNull(startWorkerProcess());
       createdWorkers.add(process);
+      usageTrackers.put(process, new UsageTracker());
       return process;
     }
   }
@@ -91,6 +102,7 @@ public abstract class WorkerProcessPool implements Closeable {
       Preconditions.checkArgument(
           createdWorkers.contains(workerProcess),
           "Trying to return a foreign WorkerProcess to the pool");
+      Preconditions.checkNotNull(usageTrackers.get(workerProcess)).returned();
     }
     // Note: put() can throw, offer doesn't.
     boolean added = availableWorkers.offer(workerProcess);
@@ -103,6 +115,7 @@ public abstract class WorkerProcessPool implements Closeable {
     synchronized (createdWorkers) {
       boolean removed = createdWorkers.remove(workerProcess);
       Preconditions.checkArgument(removed, "Trying to return a foreign WorkerProcess to the pool");
+      usageTrackers.remove(workerProcess);
     }
     workerProcess.close();
   }
@@ -131,6 +144,20 @@ public abstract class WorkerProcessPool implements Closeable {
     }
   }
 
+  /**
+   * Returns how much each of the worker processes currently in the pool has been used since it was
+   * started, in the order they were started.
+   */
+  public ImmutableList<WorkerUsage> getWorkerUsage() {
+    synchronized (createdWorkers) {
+      ImmutableList.Builder<WorkerUsage> usage = ImmutableList.builder();
+      for (WorkerProcess workerProcess : createdWorkers) {
+        usage.add(Preconditions.checkNotNull(usageTrackers.get(workerProcess)).snapshot());
+      }
+      return usage.build();
+    }
+  }
+
   public int getCapacity() {
     return capacity;
   }
@@ -140,4 +167,63 @@ public abstract class WorkerProcessPool implements Closeable {
   public HashCode getPoolHash() {
     return poolHash;
   }
+
+  /** How many jobs a worker process has been borrowed for and for how long. */
+  public static class WorkerUsage {
+    private final int jobCount;
+    private final long busyNanos;
+    private final long lifetimeNanos;
+
+    WorkerUsage(int jobCount, long busyNanos, long lifetimeNanos) {
+      this.jobCount = jobCount;
+      this.busyNanos = busyNanos;
+      this.lifetimeNanos = lifetimeNanos;
+    }
+
+    public int getJobCount() {
+      return jobCount;
+    }
+
+    public long getBusyTime(TimeUnit unit) {
+      return unit.convert(busyNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /** The fraction of the worker's lifetime it has spent borrowed from the pool. */
+    public double getUtilization() {
+      return lifetimeNanos == 0 ? 0 : Math.min(1.0, (double) busyNanos / lifetimeNanos);
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "%d jobs, %dms busy, %.0f%% utilization",
+          jobCount, getBusyTime(TimeUnit.MILLISECONDS), getUtilization() * 100);
+    }
+  }
+
+  /** Only accessed while holding the lock on the pool's {@code createdWorkers}. */
+  private static class UsageTracker {
+    private final long startNanos = System.nanoTime();
+    private int jobCount;
+    private long busyNanos;
+    private long borrowedAtNanos = -1;
+
+    private void borrowed() {
+      borrowedAtNanos = System.nanoTime();
+      jobCount++;
+    }
+
+    private void returned() {
+      if (borrowedAtNanos != -1) {
+        busyNanos += System.nanoTime() - borrowedAtNanos;
+        borrowedAtNanos = -1;
+      }
+    }
+
+    private WorkerUsage snapshot() {
+      long now = System.nanoTime();
+      long currentJobNanos = borrowedAtNanos == -1 ? 0 : now - borrowedAtNanos;
+      return new WorkerUsage(jobCount, busyNanos + currentJobNanos, now - startNanos);
+    }
+  }
 }
@@ -23,11 +23,14 @@ import static org.junit.Assert.assertThat;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.model.BuildTarget;
 import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.model.BuildTargets;
 import com.facebook.buck.rules.BuildRule;
 import com.facebook.buck.rules.BuildRuleParams;
 import com.facebook.buck.rules.BuildRuleResolver;
 import com.facebook.buck.rules.DefaultSourcePathResolver;
 import com.facebook.buck.rules.DefaultTargetNodeToBuildRuleTransformer;
+import com.facebook.buck.rules.FakeBuildContext;
+import com.facebook.buck.rules.FakeBuildableContext;
 import com.facebook.buck.rules.FakeSourcePath;
 import com.facebook.buck.rules.RuleKey;
 import com.facebook.buck.rules.SingleThreadedBuildRuleResolver;
@@ -146,6 +149,42 @@ public class AndroidResourceTest {
     assertEquals("com.example.android", androidResource.getRDotJavaPackage());
   }
 
+  @Test
+  public void testSymbolManifestIsRecordedAlongWithRDotTxt() {
+    ProjectFilesystem projectFilesystem = new FakeProjectFilesystem();
+    BuildTarget buildTarget = BuildTargetFactory.newInstance("//java/src/com/facebook/base:res");
+    SourcePathRuleFinder ruleFinder =
+        new SourcePathRuleFinder(
+            new SingleThreadedBuildRuleResolver(
+                TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer()));
+    AndroidResource androidResource =
+        new AndroidResource(
+            buildTarget,
+            projectFilesystem,
+            TestBuildRuleParams.create(),
+            ruleFinder,
+            /* deps */ ImmutableSortedSet.of(),
+            FakeSourcePath.of("foo/res"),
+            ImmutableSortedMap.of(
+                Paths.get("values/strings.xml"), FakeSourcePath.of("foo/res/values/strings.xml")),
+            /* rDotJavaPackage */ "com.example.android",
+            /* assets */ null,
+            /* assetsSrcs */ ImmutableSortedMap.of(),
+            /* manifestFile */ null,
+            /* hasWhitelistedStrings */ false);
+
+    FakeBuildableContext buildableContext = new FakeBuildableContext();
+    androidResource.getBuildSteps(
+        FakeBuildContext.withSourcePathResolver(DefaultSourcePathResolver.from(ruleFinder)),
+        buildableContext);
+
+    assertThat(
+        buildableContext.getRecordedArtifacts(),
+        Matchers.hasItem(
+            BuildTargets.getGenPath(
+                projectFilesystem, buildTarget, "__%s_resource_symbols__.json")));
+  }
+
   @Test
   public void testGetRDotJavaPackageWhenPackageIsNotSpecified() throws IOException {
     ProjectFilesystem projectFilesystem = FakeProjectFilesystem.createRealTempFilesystem();
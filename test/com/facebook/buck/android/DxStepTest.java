@@ -17,6 +17,7 @@
 package com.facebook.buck.android;
 
 import static com.facebook.buck.util.Verbosity.COMMANDS_AND_SPECIAL_OUTPUT;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import com.facebook.buck.android.DxStep.Option;
@@ -249,6 +250,41 @@ public class DxStepTest extends EasyMockSupport {
     }
   }
 
+  @Test
+  public void testMaxHeapSizeIsPassedToWorkerJvm() throws InterruptedException, IOException {
+    try (ExecutionContext context = createExecutionContext(2)) {
+      ProjectFilesystem filesystem = FakeProjectFilesystem.createJavaOnlyFilesystem();
+
+      DxStep dx =
+          new DxStep(
+              BuildTargetFactory.newInstance("//dummy:target"),
+              filesystem,
+              SAMPLE_OUTPUT_PATH,
+              SAMPLE_FILES_TO_DEX,
+              EnumSet.noneOf(DxStep.Option.class),
+              Optional.of("2g"),
+              Optional.of(2));
+
+      String expected =
+          String.format(
+              "%s --dex --output %s %s",
+              BASE_DX_PREFIX,
+              SAMPLE_OUTPUT_PATH,
+              Joiner.on(' ').join(Iterables.transform(SAMPLE_FILES_TO_DEX, filesystem::resolve)));
+      MoreAsserts.assertShellCommands(
+          "The dexer in the worker doesn't understand the -JXmx flag.",
+          ImmutableList.of(expected),
+          ImmutableList.of(dx),
+          context);
+      assertEquals(
+          ImmutableList.of("java", "-Xmx2g", "-cp", "buck.jar", "Main"),
+          DxWorkers.getCommand(
+              ImmutableList.of("java", "-cp", "buck.jar", "Main"), Optional.of("2g")));
+
+      verifyAll();
+    }
+  }
+
   private ExecutionContext createExecutionContext(int verbosityLevel) throws IOException {
     Verbosity verbosity = VerbosityParser.getVerbosityForLevel(verbosityLevel);
     TestConsole console = new TestConsole(verbosity);
@@ -48,12 +48,14 @@ import com.facebook.buck.testutil.FakeProjectFilesystem;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.SortedSetMultimap;
+import com.google.common.collect.TreeMultimap;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
@@ -125,6 +127,117 @@ public class MergeAndroidResourcesStepTest {
     // All good, no need to further test whether we can write the Java file correctly...
   }
 
+  @Test
+  public void testIdsOfManySymbolsFilesFollowTheOrderOfTheFiles()
+      throws IOException, DuplicateResourceException {
+    RDotTxtEntryBuilder entriesBuilder = new RDotTxtEntryBuilder();
+    int count = 200;
+    for (int i = 0; i < count; i++) {
+      entriesBuilder.add(
+          new RDotTxtFile(
+              "com.facebook.p" + i,
+              "r" + i + "-R.txt",
+              ImmutableList.of("int string s" + i + " 0x7f010001")));
+    }
+
+    SortedSetMultimap<String, RDotTxtEntry> packageNameToResources =
+        MergeAndroidResourcesStep.sortSymbols(
+            entriesBuilder.buildFilePathToPackageNameSet(),
+            Optional.empty(),
+            ImmutableMap.of(),
+            Optional.empty(),
+            /* bannedDuplicateResourceTypes */ EnumSet.noneOf(RType.class),
+            entriesBuilder.getProjectFilesystem(),
+            false);
+
+    int previousId = 0;
+    for (int i = 0; i < count; i++) {
+      SortedSet<RDotTxtEntry> resources = packageNameToResources.get("com.facebook.p" + i);
+      assertEquals(1, resources.size());
+      RDotTxtEntry resource = resources.first();
+      assertEquals("s" + i, resource.name);
+      int id = Integer.decode(resource.idValue);
+      assertThat(id, Matchers.greaterThan(previousId));
+      previousId = id;
+    }
+  }
+
+  @Test
+  public void testRDotJavaOfEveryPackageIsWritten() throws IOException {
+    FakeProjectFilesystem filesystem = new FakeProjectFilesystem();
+    MergeAndroidResourcesStep mergeStep =
+        new MergeAndroidResourcesStep(
+            filesystem,
+            DefaultSourcePathResolver.from(
+                new SourcePathRuleFinder(
+                    new SingleThreadedBuildRuleResolver(
+                        TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer()))),
+            ImmutableList.of(),
+            /* uberRDotTxt */ Optional.empty(),
+            Paths.get("output"),
+            /* forceFinalResourceIds */ true,
+            /* bannedDuplicateResourceTypes */ EnumSet.noneOf(RType.class),
+            /* filteredResourcesProvider */ Optional.empty(),
+            /* unionPackage */ Optional.empty(),
+            /* rName */ Optional.empty(),
+            /* useOldStyleableFormat */ false);
+
+    SortedSetMultimap<String, RDotTxtEntry> packageToResources = TreeMultimap.create();
+    int count = 100;
+    for (int i = 0; i < count; i++) {
+      packageToResources.put(
+          "com.facebook.p" + i, new RDotTxtEntry(INT, RType.STRING, "s" + i, "0x7f01000" + i % 10));
+    }
+    mergeStep.writePerPackageRDotJava(packageToResources, filesystem);
+
+    for (int i = 0; i < count; i++) {
+      String rDotJava =
+          filesystem
+              .readFileIfItExists(Paths.get("output/com/facebook/p" + i + "/R.java"))
+              .get();
+      assertThat(rDotJava, StringContains.containsString("package com.facebook.p" + i + ";"));
+      assertThat(
+          rDotJava,
+          StringContains.containsString(
+              "public static final int s" + i + "=0x7f01000" + i % 10 + ";"));
+    }
+  }
+
+  @Test
+  public void testFailureToReadTheUberRDotTxtIsReported() throws Exception {
+    Path uberRDotTxt = Paths.get("R.txt");
+    FakeProjectFilesystem filesystem =
+        new FakeProjectFilesystem() {
+          @Override
+          public List<String> readLines(Path path) throws IOException {
+            if (path.endsWith(uberRDotTxt)) {
+              throw new IOException("Failed to read the uber R.txt.");
+            }
+            return super.readLines(path);
+          }
+        };
+    MergeAndroidResourcesStep mergeStep =
+        new MergeAndroidResourcesStep(
+            filesystem,
+            DefaultSourcePathResolver.from(
+                new SourcePathRuleFinder(
+                    new SingleThreadedBuildRuleResolver(
+                        TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer()))),
+            ImmutableList.of(),
+            Optional.of(filesystem.resolve(uberRDotTxt)),
+            Paths.get("output"),
+            /* forceFinalResourceIds */ true,
+            /* bannedDuplicateResourceTypes */ EnumSet.noneOf(RType.class),
+            /* filteredResourcesProvider */ Optional.empty(),
+            /* unionPackage */ Optional.empty(),
+            /* rName */ Optional.empty(),
+            /* useOldStyleableFormat */ false);
+
+    thrown.expect(IOException.class);
+    thrown.expectMessage("Failed to read the uber R.txt.");
+    mergeStep.execute(TestExecutionContext.newInstance());
+  }
+
   @Test
   public void testGenerateRDotJavaForWithStyleables()
       throws IOException, DuplicateResourceException {
@@ -88,6 +88,7 @@ public class SmartDexingStepTest extends EasyMockSupport {
             outputHashFile,
             EnumSet.of(DxStep.Option.NO_OPTIMIZE),
             Optional.empty(),
+            Optional.empty(),
             Optional.empty());
     assertFalse("'dummy' is not a matching input hash", rule.checkIsCached());
 
@@ -120,6 +121,7 @@ public class SmartDexingStepTest extends EasyMockSupport {
         outputPath,
         dxOptions,
         Optional.empty(),
+        Optional.empty(),
         Optional.empty());
 
     MoreAsserts.assertSteps(
@@ -164,6 +166,7 @@ public class SmartDexingStepTest extends EasyMockSupport {
         outputPath,
         dxOptions,
         Optional.of(9),
+        Optional.empty(),
         Optional.empty());
 
     MoreAsserts.assertSteps(
@@ -208,6 +211,7 @@ public class SmartDexingStepTest extends EasyMockSupport {
         outputPath,
         dxOptions,
         Optional.empty(),
+        Optional.empty(),
         Optional.empty());
 
     assertEquals(
@@ -244,6 +248,7 @@ public class SmartDexingStepTest extends EasyMockSupport {
         outputPath,
         dxOptions,
         Optional.empty(),
+        Optional.empty(),
         Optional.empty());
 
     MoreAsserts.assertSteps(
@@ -284,6 +289,7 @@ public class SmartDexingStepTest extends EasyMockSupport {
         outputPath,
         dxOptions,
         Optional.empty(),
+        Optional.empty(),
         Optional.empty());
   }
 
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.android.aapt;
+
+import com.facebook.buck.io.file.MoreFiles;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.io.filesystem.TestProjectFilesystems;
+import com.facebook.buck.util.xml.XmlDomParserWithLineNumbers;
+import com.google.caliper.AfterExperiment;
+import com.google.caliper.BeforeExperiment;
+import com.google.caliper.Benchmark;
+import com.google.caliper.Param;
+import com.google.common.collect.ImmutableList;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * Compares scanning a large resource directory the way {@link MiniAapt} used to, with a DOM and
+ * XPath queries per file, against the single streaming pass of {@link ResourceFileScanner}.
+ */
+public class MiniAaptBenchmark {
+  @Param({"2000"})
+  private int layoutCount = 200;
+
+  @Param({"200"})
+  private int valuesFileCount = 20;
+
+  private Path workDir;
+  private ProjectFilesystem filesystem;
+  private ImmutableList<Path> layoutFiles;
+  private ImmutableList<Path> valuesFiles;
+  private XPathExpression idDefinitions;
+  private XPathExpression references;
+
+  @Before
+  public void setUpTest() throws Exception {
+    setUpBenchmark();
+  }
+
+  @After
+  public void tearDownTest() throws Exception {
+    tearDownBenchmark();
+  }
+
+  @BeforeExperiment
+  public void setUpBenchmark() throws Exception {
+    workDir = Files.createTempDirectory("mini-aapt-benchmark");
+    filesystem = TestProjectFilesystems.createProjectFilesystem(workDir);
+    filesystem.mkdirs(Paths.get("res/layout"));
+    filesystem.mkdirs(Paths.get("res/values"));
+
+    ImmutableList.Builder<Path> layouts = ImmutableList.builder();
+    for (int i = 0; i < layoutCount; i++) {
+      Path layout = Paths.get("res/layout/layout_" + i + ".xml");
+      filesystem.writeContentsToPath(createLayout(i), layout);
+      layouts.add(layout);
+    }
+    layoutFiles = layouts.build();
+
+    ImmutableList.Builder<Path> values = ImmutableList.builder();
+    for (int i = 0; i < valuesFileCount; i++) {
+      Path valuesFile = Paths.get("res/values/values_" + i + ".xml");
+      filesystem.writeContentsToPath(createValuesFile(i), valuesFile);
+      values.add(valuesFile);
+    }
+    valuesFiles = values.build();
+
+    XPathFactory xPathFactory = XPathFactory.newInstance();
+    idDefinitions =
+        xPathFactory
+            .newXPath()
+            .compile("//@*[starts-with(., '@+') and not(starts-with(., '@+android:id'))]");
+    references =
+        xPathFactory
+            .newXPath()
+            .compile(
+                "//@*[starts-with(., '@') and "
+                    + "not(starts-with(., '@+')) and "
+                    + "not(starts-with(., '@android:')) and "
+                    + "not(starts-with(., '@null'))]");
+  }
+
+  @AfterExperiment
+  public void tearDownBenchmark() throws Exception {
+    MoreFiles.deleteRecursively(workDir);
+  }
+
+  @Test
+  public void domAndXPathPerformance() throws Exception {
+    domAndXPath();
+  }
+
+  @Benchmark
+  public int domAndXPath() throws Exception {
+    int count = 0;
+    for (Path valuesFile : valuesFiles) {
+      Document document = parse(valuesFile);
+      NodeList nodes = document.getDocumentElement().getChildNodes();
+      for (int i = 0; i < nodes.getLength(); i++) {
+        if (nodes.item(i).getNodeType() == Node.ELEMENT_NODE) {
+          count++;
+        }
+      }
+    }
+    for (Path layout : layoutFiles) {
+      Document document = parse(layout);
+      count += ((NodeList) idDefinitions.evaluate(document, XPathConstants.NODESET)).getLength();
+      count += ((NodeList) references.evaluate(document, XPathConstants.NODESET)).getLength();
+    }
+    return count;
+  }
+
+  @Test
+  public void streamingScanPerformance() throws Exception {
+    streamingScan();
+  }
+
+  @Benchmark
+  public int streamingScan() throws Exception {
+    ResourceFileScanner.invalidateCache();
+    return scan();
+  }
+
+  @Test
+  public void cachedStreamingScanPerformance() throws Exception {
+    scan();
+    cachedStreamingScan();
+  }
+
+  @Benchmark
+  public int cachedStreamingScan() throws Exception {
+    return scan();
+  }
+
+  private int scan() throws Exception {
+    ResourceFileScanner scanner = new ResourceFileScanner();
+    scanner.scanInParallel(filesystem, valuesFiles, layoutFiles);
+    int count = 0;
+    for (Path valuesFile : valuesFiles) {
+      count += scanner.getValuesFile(filesystem, valuesFile).resources.size();
+    }
+    for (Path layout : layoutFiles) {
+      ResourceFileScanner.XmlFile xmlFile = scanner.getXmlFile(filesystem, layout);
+      count += xmlFile.idDefinitions.size() + xmlFile.references.size();
+    }
+    return count;
+  }
+
+  private Document parse(Path path) throws Exception {
+    try (InputStream stream = filesystem.newFileInputStream(path)) {
+      return XmlDomParserWithLineNumbers.parse(stream);
+    }
+  }
+
+  private static String createLayout(int index) {
+    StringBuilder builder = new StringBuilder();
+    builder
+        .append("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n")
+        .append("<LinearLayout xmlns:android=\"http://schemas.android.com/apk/res/android\"\n")
+        .append("    android:layout_width=\"match_parent\"\n")
+        .append("    android:layout_height=\"match_parent\">\n");
+    for (int i = 0; i < 40; i++) {
+      builder
+          .append("  <TextView android:id=\"@+id/text_")
+          .append(index)
+          .append('_')
+          .append(i)
+          .append("\"\n      android:text=\"@string/label_")
+          .append(i)
+          .append("\"\n      android:textColor=\"@android:color/black\"")
+          .append("\n      android:background=\"@null\" />\n");
+    }
+    return builder.append("</LinearLayout>\n").toString();
+  }
+
+  private static String createValuesFile(int index) {
+    StringBuilder builder = new StringBuilder();
+    builder.append("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n<resources>\n");
+    for (int i = 0; i < 100; i++) {
+      builder
+          .append("  <string name=\"label_")
+          .append(index)
+          .append('_')
+          .append(i)
+          .append("\">Label ")
+          .append(i)
+          .append("</string>\n");
+    }
+    builder.append("  <declare-styleable name=\"Widget").append(index).append("\">\n");
+    for (int i = 0; i < 10; i++) {
+      builder.append("    <attr name=\"attr_").append(i).append("\" format=\"color\" />\n");
+    }
+    builder.append("  </declare-styleable>\n");
+    return builder.append("</resources>\n").toString();
+  }
+}
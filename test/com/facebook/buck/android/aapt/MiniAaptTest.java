@@ -18,6 +18,7 @@ package com.facebook.buck.android.aapt;
 
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasItem;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
@@ -27,6 +28,9 @@ import com.facebook.buck.android.aapt.MiniAapt.ResourceParseException;
 import com.facebook.buck.android.aapt.RDotTxtEntry.IdType;
 import com.facebook.buck.android.aapt.RDotTxtEntry.RType;
 import com.facebook.buck.event.DefaultBuckEventBus;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.io.filesystem.TestProjectFilesystems;
+import com.facebook.buck.model.BuckVersion;
 import com.facebook.buck.model.BuildId;
 import com.facebook.buck.rules.DefaultSourcePathResolver;
 import com.facebook.buck.rules.DefaultTargetNodeToBuildRuleTransformer;
@@ -35,13 +39,18 @@ import com.facebook.buck.rules.SingleThreadedBuildRuleResolver;
 import com.facebook.buck.rules.SourcePathResolver;
 import com.facebook.buck.rules.SourcePathRuleFinder;
 import com.facebook.buck.rules.TargetGraph;
+import com.facebook.buck.step.TestExecutionContext;
 import com.facebook.buck.testutil.FakeProjectFilesystem;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
 import com.facebook.buck.timing.FakeClock;
+import com.facebook.buck.util.xml.DocumentLocation;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
+import java.util.Optional;
 import java.util.Set;
 import javax.xml.xpath.XPathExpressionException;
 import org.hamcrest.core.IsEqual;
@@ -74,6 +83,7 @@ public class MiniAaptTest {
                   TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer())));
 
   @Rule public ExpectedException thrown = ExpectedException.none();
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
 
   @Test
   public void testFindingResourceIdsInXml()
@@ -441,8 +451,13 @@ public class MiniAaptTest {
     aapt.processValuesFile(filesystem, Paths.get("values.xml"));
   }
 
-  @Test(expected = ResourceParseException.class)
+  @Test
   public void testInvalidItemResource() throws IOException, ResourceParseException {
+    thrown.expect(ResourceParseException.class);
+    thrown.expectMessage(
+        "Error parsing file 'values.xml', expected a 'type' attribute in <item name=\"number\"> "
+            + "at line 3, column ");
+
     ImmutableList<String> lines =
         ImmutableList.<String>builder()
             .add(
@@ -763,4 +778,163 @@ public class MiniAaptTest {
             new FakeRDotTxtEntry(IdType.INT, RType.ATTR, "attr2_3")),
         resources);
   }
+
+  @Test
+  public void testIncrementalRunMatchesFullRun() throws Exception {
+    ProjectFilesystem tmpFilesystem =
+        TestProjectFilesystems.createProjectFilesystem(tmp.getRoot());
+    tmpFilesystem.mkdirs(Paths.get("res/values"));
+    tmpFilesystem.mkdirs(Paths.get("res/drawable"));
+    tmpFilesystem.mkdirs(Paths.get("res/layout"));
+    tmpFilesystem.writeLinesToPath(
+        ImmutableList.of(
+            "<resources>",
+            "<string name=\"first\">first</string>",
+            "<declare-styleable name=\"Widget\"><attr name=\"color\" /></declare-styleable>",
+            "</resources>"),
+        Paths.get("res/values/values.xml"));
+    tmpFilesystem.writeLinesToPath(
+        ImmutableList.of("<app-Custom android:src=\"@string/first\" />"),
+        Paths.get("res/drawable/custom.xml"));
+    tmpFilesystem.writeLinesToPath(
+        ImmutableList.of("<LinearLayout android:id=\"@+id/root\" />"),
+        Paths.get("res/layout/main.xml"));
+    Path manifest = Paths.get("symbols/manifest.json");
+
+    assertEquals(0, executeIncrementally(tmpFilesystem, manifest));
+    assertTrue(tmpFilesystem.isFile(manifest));
+
+    tmpFilesystem.writeLinesToPath(
+        ImmutableList.of(
+            "<LinearLayout android:id=\"@+id/root\">",
+            "<View android:id=\"@+id/added\" android:background=\"@drawable/custom\" />",
+            "</LinearLayout>"),
+        Paths.get("res/layout/main.xml"));
+    assertEquals(0, executeIncrementally(tmpFilesystem, manifest));
+    List<String> incremental = tmpFilesystem.readLines(Paths.get("R.txt"));
+
+    assertEquals(0, executeIncrementally(tmpFilesystem, Paths.get("symbols/empty.json")));
+    assertEquals(tmpFilesystem.readLines(Paths.get("R.txt")), incremental);
+    assertThat(incremental, hasItem("int id added 0x7f060002"));
+  }
+
+  @Test
+  public void testIncrementalRunReplaysSymbolsOfUnchangedFiles() throws Exception {
+    ProjectFilesystem tmpFilesystem =
+        TestProjectFilesystems.createProjectFilesystem(tmp.getRoot());
+    Path values = Paths.get("res/values/values.xml");
+    tmpFilesystem.mkdirs(values.getParent());
+    tmpFilesystem.writeLinesToPath(
+        ImmutableList.of("<resources><string name=\"original\">text</string></resources>"),
+        values);
+    Path manifest = Paths.get("symbols/manifest.json");
+    assertEquals(0, executeIncrementally(tmpFilesystem, manifest));
+
+    // Pretend that the unchanged file defined something else when it was last parsed.
+    RecordingResourceCollector recorder = new RecordingResourceCollector();
+    recorder.addIntResourceIfNotPresent(
+        RType.STRING, "recorded", values, DocumentLocation.of(0, 0));
+    ResourceSymbolManifest symbols =
+        ResourceSymbolManifest.read(tmpFilesystem, manifest, "test-version:grayscale=false");
+    symbols.put(
+        "values/values.xml",
+        ResourceSymbolManifest.FileSymbols.of(
+                Optional.of(tmpFilesystem.computeSha1(values).getHash()))
+            .withDefinitions(recorder.getSymbols()));
+    symbols.write(tmpFilesystem, manifest);
+
+    assertEquals(0, executeIncrementally(tmpFilesystem, manifest));
+    assertEquals(
+        ImmutableList.of("int string recorded 0x7f010001"),
+        tmpFilesystem.readLines(Paths.get("R.txt")));
+  }
+
+  @Test
+  public void testUnreadableSymbolManifestIsIgnored() throws Exception {
+    ProjectFilesystem tmpFilesystem =
+        TestProjectFilesystems.createProjectFilesystem(tmp.getRoot());
+    tmpFilesystem.mkdirs(Paths.get("res/values"));
+    tmpFilesystem.mkdirs(Paths.get("symbols"));
+    tmpFilesystem.writeLinesToPath(
+        ImmutableList.of("<resources><string name=\"hello\">text</string></resources>"),
+        Paths.get("res/values/values.xml"));
+    Path manifest = Paths.get("symbols/manifest.json");
+    tmpFilesystem.writeContentsToPath("{ not json", manifest);
+
+    assertEquals(0, executeIncrementally(tmpFilesystem, manifest));
+    assertEquals(
+        ImmutableList.of("int string hello 0x7f010001"),
+        tmpFilesystem.readLines(Paths.get("R.txt")));
+  }
+
+  @Test
+  public void testSymbolManifestOfAnotherBuckVersionIsIgnored() throws Exception {
+    ProjectFilesystem tmpFilesystem =
+        TestProjectFilesystems.createProjectFilesystem(tmp.getRoot());
+    Path manifest = Paths.get("symbols/manifest.json");
+    writeManifestRecordingAnotherString(tmpFilesystem, manifest, "test-version");
+
+    assertEquals(0, executeIncrementally(tmpFilesystem, manifest, "other-version"));
+    assertEquals(
+        ImmutableList.of("int string original 0x7f010001"),
+        tmpFilesystem.readLines(Paths.get("R.txt")));
+  }
+
+  @Test
+  public void testSymbolManifestIsNotReusedWithoutABuckVersion() throws Exception {
+    ProjectFilesystem tmpFilesystem =
+        TestProjectFilesystems.createProjectFilesystem(tmp.getRoot());
+    Path manifest = Paths.get("symbols/manifest.json");
+    writeManifestRecordingAnotherString(tmpFilesystem, manifest, BuckVersion.UNKNOWN_VERSION);
+
+    assertEquals(0, executeIncrementally(tmpFilesystem, manifest, BuckVersion.UNKNOWN_VERSION));
+    assertEquals(
+        ImmutableList.of("int string original 0x7f010001"),
+        tmpFilesystem.readLines(Paths.get("R.txt")));
+  }
+
+  /**
+   * Writes a values file defining {@code original}, along with a manifest written by the given
+   * version of Buck which claims that the file defines {@code recorded}.
+   */
+  private void writeManifestRecordingAnotherString(
+      ProjectFilesystem filesystem, Path manifest, String buckVersion) throws IOException {
+    Path values = Paths.get("res/values/values.xml");
+    filesystem.mkdirs(values.getParent());
+    filesystem.writeLinesToPath(
+        ImmutableList.of("<resources><string name=\"original\">text</string></resources>"),
+        values);
+    RecordingResourceCollector recorder = new RecordingResourceCollector();
+    recorder.addIntResourceIfNotPresent(
+        RType.STRING, "recorded", values, DocumentLocation.of(0, 0));
+    ResourceSymbolManifest symbols = new ResourceSymbolManifest(buckVersion + ":grayscale=false");
+    symbols.put(
+        "values/values.xml",
+        ResourceSymbolManifest.FileSymbols.of(Optional.of(filesystem.computeSha1(values).getHash()))
+            .withDefinitions(recorder.getSymbols()));
+    symbols.write(filesystem, manifest);
+  }
+
+  private int executeIncrementally(ProjectFilesystem filesystem, Path pathToSymbolManifest)
+      throws IOException, InterruptedException {
+    return executeIncrementally(filesystem, pathToSymbolManifest, "test-version");
+  }
+
+  private int executeIncrementally(
+      ProjectFilesystem filesystem, Path pathToSymbolManifest, String buckVersion)
+      throws IOException, InterruptedException {
+    return new MiniAapt(
+            resolver,
+            filesystem,
+            FakeSourcePath.of(filesystem, "res"),
+            Paths.get("R.txt"),
+            ImmutableSet.of(),
+            /* resourceUnion */ false,
+            /* isGrayscaleImageProcessingEnabled */ false,
+            MiniAapt.ResourceCollectionType.R_DOT_TXT,
+            Optional.of(pathToSymbolManifest),
+            buckVersion)
+        .execute(TestExecutionContext.newInstance())
+        .getExitCode();
+  }
 }
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.android.aapt;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.facebook.buck.android.aapt.MiniAapt.ResourceParseException;
+import com.facebook.buck.testutil.FakeProjectFilesystem;
+import com.facebook.buck.util.MoreCollectors;
+import com.facebook.buck.util.xml.DocumentLocation;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import org.junit.Test;
+
+public class ResourceFileScannerTest {
+
+  private final FakeProjectFilesystem filesystem = new FakeProjectFilesystem();
+
+  @Test
+  public void testScansIdsAndReferencesInDocumentOrder() throws Exception {
+    Path layout = Paths.get("res/layout/layout.xml");
+    filesystem.writeLinesToPath(
+        ImmutableList.of(
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>",
+            "<app-LinearLayout>",
+            "  <Button android:layout_below=\"@+id/b\" android:id=\"@+id/a\"",
+            "      tools:text=\"@string/ignored\" android:text=\"@string/text\" />",
+            "  <View android:id=\"@+android:id/empty\" android:background=\"@null\" />",
+            "</app-LinearLayout>"),
+        layout);
+
+    ResourceFileScanner.XmlFile scannedFile =
+        new ResourceFileScanner().getXmlFile(filesystem, layout);
+
+    assertEquals("app-LinearLayout", scannedFile.rootElementName);
+    assertEquals(
+        ImmutableList.of("android:id=@+id/a", "android:layout_below=@+id/b"),
+        describe(scannedFile.idDefinitions));
+    assertEquals(DocumentLocation.of(3, 65), scannedFile.idDefinitions.get(0).location);
+    assertEquals(
+        ImmutableList.of("android:text=@string/text", "tools:text=@string/ignored"),
+        describe(scannedFile.references));
+  }
+
+  @Test
+  public void testScansValuesFiles() throws Exception {
+    Path values = Paths.get("res/values/values.xml");
+    filesystem.writeLinesToPath(
+        ImmutableList.of(
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>",
+            "<resources>",
+            "  <string>Hello <b>world</b></string>",
+            "  <declare-styleable name=\"Widget\">",
+            "    <attr name=\"android:color\" />",
+            "    <attr>oops</attr>",
+            "  </declare-styleable>",
+            "  <item type=\"id\" name=\"thing\" />",
+            "</resources>"),
+        values);
+
+    ResourceFileScanner.ValuesFile scannedFile =
+        new ResourceFileScanner().getValuesFile(filesystem, values);
+
+    assertFalse(scannedFile.excludedFromResourceMap);
+    assertEquals(3, scannedFile.resources.size());
+
+    ResourceFileScanner.ValuesResource string = scannedFile.resources.get(0);
+    assertEquals("string", string.elementName);
+    assertNull(string.name);
+    assertEquals("Hello world", string.text);
+
+    ResourceFileScanner.ValuesResource styleable = scannedFile.resources.get(1);
+    assertEquals("Widget", styleable.name);
+    assertNull(styleable.text);
+    assertEquals(2, styleable.attrs.size());
+    assertEquals("android:color", styleable.attrs.get(0).name);
+    assertNull(styleable.attrs.get(1).name);
+    assertEquals("oops", styleable.attrs.get(1).text);
+
+    ResourceFileScanner.ValuesResource item = scannedFile.resources.get(2);
+    assertEquals("item", item.elementName);
+    assertEquals("id", item.type);
+    assertEquals("thing", item.name);
+  }
+
+  @Test
+  public void testCachesScansByContents() throws Exception {
+    Path first = Paths.get("res/layout/first.xml");
+    Path second = Paths.get("res/layout-land/second.xml");
+    ImmutableList<String> contents =
+        ImmutableList.of("<FrameLayout android:id=\"@+id/cached_by_contents\" />");
+    filesystem.writeLinesToPath(contents, first);
+    filesystem.writeLinesToPath(contents, second);
+
+    assertSame(
+        new ResourceFileScanner().getXmlFile(filesystem, first),
+        new ResourceFileScanner().getXmlFile(filesystem, second));
+  }
+
+  @Test
+  public void testParseErrorsAreReportedWhenTheFileIsLookedUp() throws IOException {
+    Path broken = Paths.get("res/layout/broken.xml");
+    Path fine = Paths.get("res/layout/fine.xml");
+    filesystem.writeLinesToPath(ImmutableList.of("<FrameLayout>"), broken);
+    filesystem.writeLinesToPath(ImmutableList.of("<FrameLayout />"), fine);
+
+    ResourceFileScanner scanner = new ResourceFileScanner();
+    scanner.scanInParallel(filesystem, ImmutableList.of(), ImmutableList.of(broken, fine));
+
+    try {
+      assertTrue(scanner.getXmlFile(filesystem, fine).idDefinitions.isEmpty());
+    } catch (ResourceParseException e) {
+      fail("Only the broken file should fail to parse: " + e.getMessage());
+    }
+    try {
+      scanner.getXmlFile(filesystem, broken);
+      fail("Expected a parse error.");
+    } catch (ResourceParseException e) {
+      assertThat(e.getMessage(), containsString("Error parsing xml file"));
+    }
+  }
+
+  private static ImmutableList<String> describe(
+      ImmutableList<ResourceFileScanner.ResourceAttribute> attributes) {
+    return attributes
+        .stream()
+        .map(attribute -> attribute.name + "=" + attribute.value)
+        .collect(MoreCollectors.toImmutableList());
+  }
+}
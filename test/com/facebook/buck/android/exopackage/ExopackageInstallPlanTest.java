@@ -0,0 +1,82 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.android.exopackage;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.ImmutableSortedSet;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import org.junit.Test;
+
+public class ExopackageInstallPlanTest {
+  private static final Path DEX_METADATA = Paths.get("secondary-dex/metadata.txt");
+  private static final Path LIB_METADATA = Paths.get("native-libs/x86/metadata.txt");
+
+  @Test
+  public void testOnlyMissingFilesAreInstalled() {
+    Path present = Paths.get("secondary-dex/secondary-1.dex.jar");
+    Path missingDex = Paths.get("secondary-dex/secondary-2.dex.jar");
+    Path missingLib = Paths.get("native-libs/x86/native-abc.so");
+    ExopackageInstallPlan plan =
+        ExopackageInstallPlan.create(
+            ImmutableSortedSet.of(present, DEX_METADATA),
+            ImmutableMap.of(
+                "secondary_dex",
+                ImmutableMap.of(
+                    present, Paths.get("out/1.dex.jar"), missingDex, Paths.get("out/2.dex.jar")),
+                "native_library",
+                ImmutableMap.of(missingLib, Paths.get("out/libfoo.so"))),
+            ImmutableMap.of(DEX_METADATA, "dex", LIB_METADATA, "libs"));
+
+    assertEquals(
+        ImmutableSortedMap.of(
+            missingDex, Paths.get("out/2.dex.jar"), missingLib, Paths.get("out/libfoo.so")),
+        plan.getFilesToInstall());
+    assertEquals(
+        ImmutableMap.of(
+            "secondary_dex",
+            ImmutableSortedMap.of(missingDex, Paths.get("out/2.dex.jar")),
+            "native_library",
+            ImmutableSortedMap.of(missingLib, Paths.get("out/libfoo.so"))),
+        plan.getFilesToInstallByType());
+    assertEquals(
+        ImmutableSortedMap.of(DEX_METADATA, "dex", LIB_METADATA, "libs"),
+        plan.getMetadataToInstall());
+    assertEquals(
+        ImmutableSortedSet.of(Paths.get("native-libs/x86"), Paths.get("secondary-dex")),
+        plan.getDirectoriesToCreate());
+  }
+
+  @Test
+  public void testStaleFilesAndMetadataAreDeletedButNotTheLock() {
+    Path wanted = Paths.get("resources/abc.apk");
+    Path stale = Paths.get("resources/def.apk");
+    Path lock = Paths.get("lock");
+    ExopackageInstallPlan plan =
+        ExopackageInstallPlan.create(
+            ImmutableSortedSet.of(wanted, stale, lock, DEX_METADATA),
+            ImmutableMap.of("resources", ImmutableMap.of(wanted, Paths.get("out/abc.apk"))),
+            ImmutableMap.of(DEX_METADATA, "dex"));
+
+    assertEquals(ImmutableSortedSet.of(stale, DEX_METADATA), plan.getFilesToDelete());
+    assertEquals(ImmutableSortedMap.of(), plan.getFilesToInstall());
+    assertEquals(ImmutableMap.of(), plan.getFilesToInstallByType());
+  }
+}
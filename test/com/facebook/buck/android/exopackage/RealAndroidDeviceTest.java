@@ -21,6 +21,7 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import com.android.ddmlib.IDevice;
 import com.android.ddmlib.IShellOutputReceiver;
@@ -28,8 +29,12 @@ import com.android.ddmlib.InstallException;
 import com.facebook.buck.android.TestDevice;
 import com.facebook.buck.event.BuckEventBusForTests;
 import com.facebook.buck.testutil.TestConsole;
+import com.google.common.collect.ImmutableList;
 import java.io.File;
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 import org.junit.Test;
@@ -189,4 +194,34 @@ public class RealAndroidDeviceTest {
     assertNull(createAndroidDevice(device).deviceStartActivity("com.foo/.Activity", false));
     assertFalse(runDeviceCommand.get().contains(" -D"));
   }
+
+  @Test
+  public void testCreatedForwardsAreRemovedWhenALaterOneFails() throws Exception {
+    final List<Integer> forwardedPorts = new ArrayList<>();
+    TestDevice device =
+        new TestDevice() {
+          @Override
+          public void createForward(int localPort, int remotePort) throws IOException {
+            if (forwardedPorts.size() == 2) {
+              throw new IOException("no more forwards");
+            }
+            forwardedPorts.add(localPort);
+          }
+
+          @Override
+          public void removeForward(int localPort, int remotePort) {
+            assertTrue(forwardedPorts.remove((Integer) localPort));
+          }
+        };
+    RealAndroidDevice androidDevice =
+        new RealAndroidDevice(
+            BuckEventBusForTests.newInstance(), device, TestConsole.createNullConsole(), null, 100);
+
+    try {
+      androidDevice.createForward();
+      fail("Expected the third forward to fail.");
+    } catch (IOException e) {
+      assertEquals(ImmutableList.of(), forwardedPorts);
+    }
+  }
 }
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.android.resources;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import com.facebook.buck.io.file.MoreFiles;
+import com.google.caliper.AfterExperiment;
+import com.google.caliper.BeforeExperiment;
+import com.google.caliper.Benchmark;
+import com.google.caliper.Param;
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.IntStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Rewrites the ids in a large synthetic resources.arsc (about 20 MB with the default parameters)
+ * the way {@link ExoResourcesRewriter} does, comparing a table read into a heap array and
+ * serialized to a new one against a table parsed out of a private mapping of the file, rewritten
+ * in place and written straight from the mapping.
+ */
+public class ResourceTableBenchmark {
+  private static final int CONFIG_SIZE = 64;
+
+  @Param({"5"})
+  private int typeCount = 2;
+
+  @Param({"50000"})
+  private int entriesPerType = 100;
+
+  @Param({"3"})
+  private int configsPerType = 2;
+
+  private Path workDir;
+  private Path arsc;
+  private Path output;
+
+  @Before
+  public void setUpTest() throws Exception {
+    setUpBenchmark();
+  }
+
+  @After
+  public void tearDownTest() throws Exception {
+    tearDownBenchmark();
+  }
+
+  @BeforeExperiment
+  public void setUpBenchmark() throws Exception {
+    workDir = Files.createTempDirectory("resource-table-benchmark");
+    arsc = workDir.resolve("resources.arsc");
+    output = workDir.resolve("rewritten.arsc");
+    Files.write(arsc, createResourceTable().serialize());
+  }
+
+  @AfterExperiment
+  public void tearDownBenchmark() throws Exception {
+    MoreFiles.deleteRecursively(workDir);
+  }
+
+  @Test
+  public void heapRewritePerformance() throws Exception {
+    heapRewrite();
+    byte[] heapOutput = Files.readAllBytes(output);
+    mappedRewrite();
+    assertArrayEquals(heapOutput, Files.readAllBytes(output));
+  }
+
+  @Benchmark
+  public void heapRewrite() throws Exception {
+    ResourceTable table = ResourceTable.get(ResChunk.wrap(Files.readAllBytes(arsc)));
+    table.reassignIds(ReversingMapper.construct(table));
+    Files.write(output, table.serialize());
+  }
+
+  @Test
+  public void mappedRewritePerformance() throws Exception {
+    mappedRewrite();
+  }
+
+  @Benchmark
+  public void mappedRewrite() throws Exception {
+    ByteBuffer data;
+    try (FileChannel channel =
+        FileChannel.open(arsc, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      data = channel.map(FileChannel.MapMode.PRIVATE, 0, channel.size());
+    }
+    ResourceTable table = ResourceTable.get(ResChunk.slice(data, 0));
+    table.reassignIds(ReversingMapper.construct(table));
+    try (FileChannel channel =
+        FileChannel.open(
+            output,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+      ByteBuffer rewritten = ResChunk.slice(data, 0);
+      while (rewritten.hasRemaining()) {
+        channel.write(rewritten);
+      }
+    }
+  }
+
+  @Test
+  public void mappedSlicePerformance() throws Exception {
+    mappedSlice();
+  }
+
+  /** Extracts the first few resources of each type, as is done for the primary apk. */
+  @Benchmark
+  public int mappedSlice() throws Exception {
+    ByteBuffer data;
+    try (FileChannel channel =
+        FileChannel.open(arsc, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      data = channel.map(FileChannel.MapMode.PRIVATE, 0, channel.size());
+    }
+    ResourceTable table = ResourceTable.get(ResChunk.slice(data, 0));
+    ImmutableMap.Builder<Integer, Integer> counts = ImmutableMap.builder();
+    for (int type = 1; type <= typeCount; type++) {
+      counts.put(type, entriesPerType / 10);
+    }
+    return ResourceTable.slice(table, counts.build()).serialize().length;
+  }
+
+  private ResourceTable createResourceTable() {
+    int stringCount = entriesPerType;
+    StringPool strings =
+        StringPool.create(
+            IntStream.range(0, stringCount).mapToObj(i -> "The value of string number " + i)
+                ::iterator);
+    StringPool types =
+        StringPool.create(IntStream.range(0, typeCount).mapToObj(i -> "type" + i)::iterator);
+    StringPool keys =
+        StringPool.create(
+            IntStream.range(0, typeCount * entriesPerType).mapToObj(i -> "resource_name_" + i)
+                ::iterator);
+
+    ImmutableList.Builder<ResTableTypeSpec> specs = ImmutableList.builder();
+    int chunkSize = ResTablePackage.HEADER_SIZE + types.getChunkSize() + keys.getChunkSize();
+    for (int type = 0; type < typeCount; type++) {
+      ResTableTypeSpec spec = ResTableTypeSpec.get(createTypeSpec(type));
+      chunkSize += spec.getTotalSize();
+      specs.add(spec);
+    }
+    byte[] nameData = new byte[ResTablePackage.NAME_DATA_LENGTH];
+    byte[] name = "com.example".getBytes(Charsets.UTF_16LE);
+    System.arraycopy(name, 0, nameData, 0, name.length);
+    return new ResourceTable(
+        strings,
+        new ResTablePackage(
+            chunkSize, ResTablePackage.APP_PACKAGE_ID, nameData, types, keys, specs.build()));
+  }
+
+  /** A type spec followed by its configs, each holding a string value for every resource. */
+  private ByteBuffer createTypeSpec(int type) {
+    int specSize = 16 + 4 * entriesPerType;
+    int typeHeaderSize = 20 + CONFIG_SIZE;
+    int entrySize = 16;
+    int typeSize = typeHeaderSize + (4 + entrySize) * entriesPerType;
+    ByteBuffer buf = ResChunk.wrap(new byte[specSize + configsPerType * typeSize]);
+
+    buf.putShort(ResChunk.CHUNK_RES_TABLE_TYPE_SPEC);
+    buf.putShort((short) 16);
+    buf.putInt(specSize);
+    buf.put((byte) (type + 1));
+    buf.put((byte) 0);
+    buf.putShort((short) 0);
+    buf.putInt(entriesPerType);
+    for (int i = 0; i < entriesPerType; i++) {
+      buf.putInt(0);
+    }
+
+    for (int config = 0; config < configsPerType; config++) {
+      buf.putShort(ResChunk.CHUNK_RES_TABLE_TYPE);
+      buf.putShort((short) typeHeaderSize);
+      buf.putInt(typeSize);
+      buf.put((byte) (type + 1));
+      buf.put((byte) 0);
+      buf.putShort((short) 0);
+      buf.putInt(entriesPerType);
+      buf.putInt(typeHeaderSize + 4 * entriesPerType);
+      byte[] configData = new byte[CONFIG_SIZE];
+      // Distinguish the configs by their mcc.
+      configData[4] = (byte) config;
+      ResChunk.wrap(configData).putInt(0, CONFIG_SIZE);
+      buf.put(configData);
+      for (int i = 0; i < entriesPerType; i++) {
+        buf.putInt(i * entrySize);
+      }
+      for (int i = 0; i < entriesPerType; i++) {
+        buf.putShort((short) 8);
+        buf.putShort((short) 0);
+        buf.putInt(type * entriesPerType + i);
+        buf.putShort((short) 8);
+        buf.put((byte) 0);
+        buf.put((byte) ResChunk.RES_STRING);
+        buf.putInt(i);
+      }
+    }
+    buf.rewind();
+    return buf;
+  }
+}
@@ -16,9 +16,14 @@
 
 package com.facebook.buck.cli;
 
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 
 import com.facebook.buck.config.FakeBuckConfig;
 import com.facebook.buck.event.BuckEventBus;
@@ -29,10 +34,12 @@ import com.facebook.buck.model.BuildTargetFactory;
 import com.facebook.buck.parser.Parser;
 import com.facebook.buck.parser.ParserConfig;
 import com.facebook.buck.parser.PerBuildState;
+import com.facebook.buck.parser.exceptions.BuildFileParseException;
 import com.facebook.buck.query.QueryBuildTarget;
 import com.facebook.buck.query.QueryException;
 import com.facebook.buck.query.QueryTarget;
 import com.facebook.buck.rules.Cell;
+import com.facebook.buck.rules.TargetNode;
 import com.facebook.buck.rules.TestCellBuilder;
 import com.facebook.buck.rules.coercer.ConstructorArgMarshaller;
 import com.facebook.buck.rules.coercer.DefaultTypeCoercerFactory;
@@ -40,12 +47,16 @@ import com.facebook.buck.rules.coercer.TypeCoercerFactory;
 import com.facebook.buck.testutil.integration.ProjectWorkspace;
 import com.facebook.buck.testutil.integration.TemporaryPaths;
 import com.facebook.buck.testutil.integration.TestDataHelper;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.Executors;
 import org.junit.After;
 import org.junit.Before;
@@ -58,8 +69,13 @@ public class BuckQueryEnvironmentTest {
 
   private BuckQueryEnvironment buckQueryEnvironment;
   private Path cellRoot;
+  private Cell cell;
+  private BuckEventBus eventBus;
   private ListeningExecutorService executor;
-  private PerBuildState parserState;
+  private List<PerBuildState> parserStates = new ArrayList<>();
+
+  /** Whether parsers may parse build files, rather than only look up the nodes they hold. */
+  private boolean parsingAllowed = true;
 
   private QueryTarget createQueryBuildTarget(String baseName, String shortName) {
     return QueryBuildTarget.of(BuildTargetFactory.newInstance(cellRoot, baseName, shortName));
@@ -70,20 +86,41 @@ public class BuckQueryEnvironmentTest {
     ProjectWorkspace workspace =
         TestDataHelper.createProjectWorkspaceForScenario(this, "query_command", tmp);
     workspace.setUp();
-    Cell cell =
+    cell =
         new TestCellBuilder()
             .setFilesystem(TestProjectFilesystems.createProjectFilesystem(workspace.getDestPath()))
             .build();
+    eventBus = BuckEventBusForTests.newInstance();
+    executor = MoreExecutors.listeningDecorator(Executors.newSingleThreadExecutor());
+    buckQueryEnvironment = createQueryEnvironment(createParser());
+    cellRoot = workspace.getDestPath();
+  }
 
+  /** @return a parser that holds no target nodes yet, as when the daemon has just started. */
+  private Parser createParser() {
     TypeCoercerFactory typeCoercerFactory = new DefaultTypeCoercerFactory();
-    Parser parser =
-        new Parser(
-            new BroadcastEventListener(),
-            cell.getBuckConfig().getView(ParserConfig.class),
-            typeCoercerFactory,
-            new ConstructorArgMarshaller(typeCoercerFactory));
-    BuckEventBus eventBus = BuckEventBusForTests.newInstance();
-    parserState =
+    return new Parser(
+        new BroadcastEventListener(),
+        cell.getBuckConfig().getView(ParserConfig.class),
+        typeCoercerFactory,
+        new ConstructorArgMarshaller(typeCoercerFactory)) {
+      @Override
+      public ImmutableSet<TargetNode<?, ?>> getAllTargetNodes(
+          BuckEventBus eventBus,
+          Cell cell,
+          boolean enableProfiling,
+          ListeningExecutorService executor,
+          Path buildFile)
+          throws BuildFileParseException {
+        assertThat("parsed " + buildFile, parsingAllowed, is(true));
+        return super.getAllTargetNodes(eventBus, cell, enableProfiling, executor, buildFile);
+      }
+    };
+  }
+
+  /** Environments have graphs of their own, but share the target nodes their parser holds. */
+  private BuckQueryEnvironment createQueryEnvironment(Parser parser) {
+    PerBuildState parserState =
         new PerBuildState(
             parser,
             eventBus,
@@ -91,21 +128,23 @@ public class BuckQueryEnvironmentTest {
             cell,
             /* enableProfiling */ false,
             PerBuildState.SpeculativeParsing.ENABLED);
-
+    parserStates.add(parserState);
     TargetPatternEvaluator targetPatternEvaluator =
         new TargetPatternEvaluator(
             cell, FakeBuckConfig.builder().build(), parser, eventBus, /* enableProfiling */ false);
-    OwnersReport.Builder ownersReportBuilder = OwnersReport.builder(cell, parser, eventBus);
-    executor = MoreExecutors.listeningDecorator(Executors.newSingleThreadExecutor());
-    buckQueryEnvironment =
-        BuckQueryEnvironment.from(
-            cell, ownersReportBuilder, parserState, executor, targetPatternEvaluator);
-    cellRoot = workspace.getDestPath();
+    return BuckQueryEnvironment.from(
+        cell,
+        OwnersReport.builder(cell, parser, eventBus),
+        parserState,
+        executor,
+        targetPatternEvaluator);
   }
 
   @After
   public void cleanUp() throws Exception {
-    parserState.close();
+    for (PerBuildState parserState : parserStates) {
+      parserState.close();
+    }
     executor.shutdown();
   }
 
@@ -142,4 +181,87 @@ public class BuckQueryEnvironmentTest {
     assertThat(
         buckQueryEnvironment.getTargetsMatchingPattern("//example:"), is(equalTo(expectedTargets)));
   }
+
+  @Test
+  public void cachedReverseDepsMatchTheOnesFromTheGraph() throws Exception {
+    ImmutableSet<QueryTarget> universe =
+        ImmutableSet.of(createQueryBuildTarget("//example", "one"));
+    ImmutableSet<QueryTarget> targets = ImmutableSet.of(createQueryBuildTarget("//example", "six"));
+    assertCachedResultMatchesTheGraph(
+        env -> env.getReverseTransitiveClosure(universe, targets, Integer.MAX_VALUE));
+    assertCachedResultMatchesTheGraph(env -> env.getReverseTransitiveClosure(universe, targets, 1));
+  }
+
+  @Test
+  public void cachedAllPathsMatchTheOnesFromTheGraph() throws Exception {
+    ImmutableSet<QueryTarget> from = ImmutableSet.of(createQueryBuildTarget("//example", "one"));
+    // Fewer targets than the six in the closure of //example:one, and then more, so that the
+    // paths are taken from either set.
+    ImmutableSet<QueryTarget> fewTargets =
+        ImmutableSet.of(
+            createQueryBuildTarget("//example", "six"),
+            createQueryBuildTarget("//example", "five"));
+    ImmutableSet<QueryTarget> manyTargets =
+        ImmutableSet.of(
+            createQueryBuildTarget("//example", "six"),
+            createQueryBuildTarget("//example", "five"),
+            createQueryBuildTarget("//example", "four"),
+            createQueryBuildTarget("//example", "three"),
+            createQueryBuildTarget("//example", "two"),
+            createQueryBuildTarget("//example", "one"),
+            createQueryBuildTarget("//example/app", "seven"));
+    assertCachedResultMatchesTheGraph(env -> env.getAllPaths(from, fewTargets));
+    assertCachedResultMatchesTheGraph(env -> env.getAllPaths(from, manyTargets));
+  }
+
+  /**
+   * Evaluates the query with a parser that holds no nodes, so that it builds the graph, and again
+   * with the nodes that the first evaluation left with the parser.
+   */
+  private void assertCachedResultMatchesTheGraph(Query query) throws QueryException {
+    Parser parser = createParser();
+    BuckQueryEnvironment fromGraph = createQueryEnvironment(parser);
+    ImmutableList<QueryTarget> expected = ImmutableList.copyOf(query.evaluate(fromGraph));
+    assertThat(fromGraph.getTargetGraph().getNodes(), not(empty()));
+
+    BuckQueryEnvironment cached = createQueryEnvironment(parser);
+    assertEquals(expected, ImmutableList.copyOf(query.evaluate(cached)));
+    assertThat(cached.getTargetGraph().getNodes(), empty());
+  }
+
+  @Test
+  public void cachedReverseDepsAndAllPathsReportCycles() throws Exception {
+    ImmutableSet<QueryTarget> universe = ImmutableSet.of(createQueryBuildTarget("//cycles", "e"));
+    ImmutableSet<QueryTarget> targets = ImmutableSet.of(createQueryBuildTarget("//cycles", "c"));
+    Parser parser = createParser();
+    // Finding the cycle in the graph leaves the nodes on it with the parser.
+    assertCycleIsReported(env -> env.getReverseTransitiveClosure(universe, targets, 1), parser);
+    assertCycleIsReported(env -> env.getReverseTransitiveClosure(universe, targets, 1), parser);
+    assertCycleIsReported(env -> env.getAllPaths(universe, targets), parser);
+  }
+
+  private void assertCycleIsReported(Query query, Parser parser) {
+    try {
+      query.evaluate(createQueryEnvironment(parser));
+      fail("The cycle should have been reported.");
+    } catch (QueryException e) {
+      assertThat(e.getMessage(), containsString("circular dependency"));
+    }
+  }
+
+  @Test
+  public void ownerIsAnsweredFromTheNodesTheParserHolds() throws Exception {
+    Parser parser = createParser();
+    parser.getAllTargetNodes(
+        eventBus, cell, /* enableProfiling */ false, executor, cellRoot.resolve("example/BUCK"));
+
+    parsingAllowed = false;
+    assertEquals(
+        ImmutableSet.of(createQueryBuildTarget("//example", "one")),
+        createQueryEnvironment(parser).getFileOwners(ImmutableList.of("example/1.txt")));
+  }
+
+  private interface Query {
+    Set<QueryTarget> evaluate(BuckQueryEnvironment env) throws QueryException;
+  }
 }
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cli;
+
+import static org.hamcrest.Matchers.contains;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.query.QueryBuildTarget;
+import com.facebook.buck.query.QueryTarget;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+
+public class QueryGraphIndexTest {
+
+  private static final QueryTarget A = target("//:a");
+  private static final QueryTarget B = target("//:b");
+  private static final QueryTarget C = target("//:c");
+  private static final QueryTarget D = target("//:d");
+  private static final QueryTarget E = target("//:e");
+
+  private QueryGraphIndex index;
+
+  /**
+   * <pre>
+   *   a   e   d
+   *    \ /    |
+   *     b     |
+   *      \   /
+   *        c
+   * </pre>
+   */
+  @Before
+  public void setUp() {
+    index = new QueryGraphIndex();
+    index.add(C, ImmutableList.of());
+    index.add(D, ImmutableList.of(C));
+    index.add(B, ImmutableList.of(C));
+    index.add(E, ImmutableList.of(B));
+    index.add(A, ImmutableList.of(B));
+  }
+
+  @Test
+  public void transitiveClosureFollowsDeps() {
+    assertEquals(
+        ImmutableSet.of(A, B, C),
+        index.getTargets(index.getTransitiveClosure(index.getIds(ImmutableSet.of(A)))));
+  }
+
+  @Test
+  public void reverseTransitiveClosureIsNearestFirstAndSortedWithinALevel() {
+    BitSet universe = index.getIds(ImmutableSet.of(A, B, C, D, E));
+    assertThat(
+        index.getReverseTransitiveClosure(universe, ImmutableList.of(C), Integer.MAX_VALUE),
+        contains(C, B, D, A, E));
+  }
+
+  @Test
+  public void reverseTransitiveClosureStopsAtTheMaximumDepth() {
+    BitSet universe = index.getIds(ImmutableSet.of(A, B, C, D, E));
+    assertThat(
+        index.getReverseTransitiveClosure(universe, ImmutableList.of(C), 1), contains(C, B, D));
+    assertThat(index.getReverseTransitiveClosure(universe, ImmutableList.of(C), 0), contains(C));
+  }
+
+  @Test
+  public void reverseTransitiveClosureStaysInTheUniverse() {
+    BitSet universe = index.getTransitiveClosure(index.getIds(ImmutableSet.of(A)));
+    assertThat(
+        index.getReverseTransitiveClosure(universe, ImmutableList.of(D, C), Integer.MAX_VALUE),
+        contains(C, B, A));
+  }
+
+  @Test
+  public void allPathsOnlyCoversTargetsBetweenTheTwoSets() {
+    assertThat(index.getAllPaths(ImmutableSet.of(D), ImmutableSet.of(B, C)), contains(C, D));
+    assertThat(index.getAllPaths(ImmutableSet.of(A, D), ImmutableSet.of(C)), contains(C, B, D, A));
+  }
+
+  @Test
+  public void allPathsStartsInTheOrderOfTheSmallerSet() {
+    // The closure of a, {a, b, c}, is the smaller set, so its breadth-first order wins.
+    assertThat(
+        index.getAllPaths(ImmutableSet.of(A), ImmutableSet.of(C, B, D, E)), contains(B, C, A));
+    // Here the targets to reach are fewer, so they keep their own order.
+    assertThat(index.getAllPaths(ImmutableSet.of(A), ImmutableSet.of(C, B)), contains(C, B, A));
+  }
+
+  @Test
+  public void reverseEdgesAreUpdatedWhenTargetsAreAdded() {
+    BitSet universe = index.getIds(ImmutableSet.of(A, B, C, D, E));
+    assertThat(
+        index.getReverseTransitiveClosure(universe, ImmutableList.of(B), Integer.MAX_VALUE),
+        contains(B, A, E));
+
+    QueryTarget f = target("//:f");
+    index.add(f, ImmutableList.of(B));
+    universe.set(index.getIds(ImmutableSet.of(f)).nextSetBit(0));
+    assertThat(
+        index.getReverseTransitiveClosure(universe, ImmutableList.of(B), Integer.MAX_VALUE),
+        contains(B, A, E, f));
+  }
+
+  @Test
+  public void wideLevelsAreTraversedInFull() {
+    QueryGraphIndex wide = new QueryGraphIndex();
+    QueryTarget leaf = target("//:leaf");
+    wide.add(leaf, ImmutableList.of());
+    List<QueryTarget> middle = new ArrayList<>();
+    for (int i = 0; i < 10000; i++) {
+      QueryTarget target = target("//middle:" + i);
+      wide.add(target, ImmutableList.of(leaf));
+      middle.add(target);
+    }
+    QueryTarget root = target("//:root");
+    wide.add(root, middle);
+
+    BitSet closure = wide.getTransitiveClosure(wide.getIds(ImmutableSet.of(root)));
+    assertEquals(10002, closure.cardinality());
+    assertEquals(
+        10002,
+        wide.getReverseTransitiveClosure(closure, ImmutableList.of(leaf), Integer.MAX_VALUE)
+            .size());
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void targetsMustBeAddedAfterTheirDeps() {
+    new QueryGraphIndex().add(A, ImmutableList.of(B));
+  }
+
+  private static QueryTarget target(String name) {
+    return QueryBuildTarget.of(BuildTargetFactory.newInstance(name));
+  }
+}
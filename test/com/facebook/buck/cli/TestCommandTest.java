@@ -301,4 +301,34 @@ public class TestCommandTest {
                 .build()),
         Matchers.equalTo(1));
   }
+
+  @Test
+  public void testThreadsCanBeConfiguredSeparatelyFromBuildThreads() throws CmdLineException {
+    TestCommand command = getCommand();
+
+    assertThat(
+        command.getNumTestThreads(
+            FakeBuckConfig.builder()
+                .setSections(
+                    ImmutableMap.of(
+                        "build", ImmutableMap.of("threads", "15"),
+                        "test", ImmutableMap.of("threads", "4")))
+                .build()),
+        Matchers.equalTo(4));
+  }
+
+  @Test
+  public void threadsGivenOnTheCommandLineOverrideTestThreads() throws CmdLineException {
+    TestCommand command = getCommand("-j", "15");
+
+    assertThat(
+        command.getNumTestThreads(
+            FakeBuckConfig.builder()
+                .setSections(
+                    ImmutableMap.of(
+                        "build", ImmutableMap.of("threads", "15"),
+                        "test", ImmutableMap.of("threads", "4")))
+                .build()),
+        Matchers.equalTo(15));
+  }
 }
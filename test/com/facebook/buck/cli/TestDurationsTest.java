@@ -0,0 +1,82 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cli;
+
+import static org.hamcrest.Matchers.contains;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.testutil.FakeProjectFilesystem;
+import com.google.common.collect.ImmutableList;
+import java.util.Optional;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestDurationsTest {
+
+  private static final BuildTarget A = BuildTargetFactory.newInstance("//:a");
+  private static final BuildTarget B = BuildTargetFactory.newInstance("//:b");
+  private static final BuildTarget C = BuildTargetFactory.newInstance("//:c");
+  private static final BuildTarget D = BuildTargetFactory.newInstance("//:d");
+
+  private ProjectFilesystem filesystem;
+
+  @Before
+  public void setUp() {
+    filesystem = new FakeProjectFilesystem();
+  }
+
+  @Test
+  public void testsThatNeverRanComeFirstThenTheLongest() {
+    TestDurations durations = TestDurations.load(filesystem);
+    durations.record(A, 10);
+    durations.record(B, 100);
+    durations.record(D, 10);
+
+    assertThat(
+        durations.sortLongestFirst(ImmutableList.of(A, B, C, D), target -> target),
+        contains(C, B, A, D));
+  }
+
+  @Test
+  public void durationsAreKeptFromOneRunToTheNext() {
+    TestDurations durations = TestDurations.load(filesystem);
+    durations.record(A, 10);
+    durations.record(B, 100);
+    durations.save();
+
+    TestDurations reloaded = TestDurations.load(filesystem);
+    assertEquals(Optional.of(10L), reloaded.get(A));
+    assertEquals(Optional.of(100L), reloaded.get(B));
+    assertEquals(Optional.empty(), reloaded.get(C));
+  }
+
+  @Test
+  public void unreadableDurationsAreRecordedAfresh() throws Exception {
+    filesystem.mkdirs(filesystem.getBuckPaths().getLogDir());
+    filesystem.writeContentsToPath(
+        "not json", filesystem.getBuckPaths().getLogDir().resolve("test_durations.json"));
+
+    TestDurations durations = TestDurations.load(filesystem);
+    assertEquals(Optional.empty(), durations.get(A));
+    durations.record(A, 10);
+    assertEquals(Optional.of(10L), durations.get(A));
+  }
+}
@@ -220,6 +220,41 @@ public class ArchiveTest {
         ranlibStep.getDescription(TestExecutionContext.newInstance()), containsString("-bar"));
   }
 
+  @Test
+  public void archivesWithoutFlagsAreWrittenInProcess() throws Exception {
+    BuildRuleResolver resolver =
+        new SingleThreadedBuildRuleResolver(
+            TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer());
+    BuildTarget target = BuildTargetFactory.newInstance("//foo:bar");
+    ProjectFilesystem projectFilesystem = new FakeProjectFilesystem();
+    SourcePathRuleFinder ruleFinder = new SourcePathRuleFinder(resolver);
+    SourcePathResolver pathResolver = DefaultSourcePathResolver.from(ruleFinder);
+    Archive archive =
+        Archive.from(
+            target,
+            projectFilesystem,
+            ruleFinder,
+            DEFAULT_ARCHIVER,
+            ImmutableList.of(),
+            DEFAULT_RANLIB,
+            ImmutableList.of(),
+            ArchiveContents.NORMAL,
+            DEFAULT_OUTPUT,
+            ImmutableList.of(FakeSourcePath.of("simple.o")),
+            /* cacheable */ true);
+
+    BuildContext buildContext =
+        BuildContext.builder()
+            .from(FakeBuildContext.NOOP_CONTEXT)
+            .setSourcePathResolver(pathResolver)
+            .build();
+
+    ImmutableList<Step> steps = archive.getBuildSteps(buildContext, new FakeBuildableContext());
+    assertEquals(1, FluentIterable.from(steps).filter(GnuArchiveStep.class).size());
+    assertEquals(0, FluentIterable.from(steps).filter(ArchiveStep.class).size());
+    assertEquals(0, FluentIterable.from(steps).filter(RanlibStep.class).size());
+  }
+
   @Test
   public void testThatBuildTargetSourcePathDepsAndPathsArePropagated() throws Exception {
     BuildRuleResolver resolver =
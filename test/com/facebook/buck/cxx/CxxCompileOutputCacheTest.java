@@ -0,0 +1,202 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+
+import com.facebook.buck.cxx.toolchain.GccCompiler;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.io.filesystem.TestProjectFilesystems;
+import com.facebook.buck.model.BuildId;
+import com.facebook.buck.rules.DefaultSourcePathResolver;
+import com.facebook.buck.rules.DefaultTargetNodeToBuildRuleTransformer;
+import com.facebook.buck.rules.HashedFileTool;
+import com.facebook.buck.rules.PathSourcePath;
+import com.facebook.buck.rules.SingleThreadedBuildRuleResolver;
+import com.facebook.buck.rules.SourcePathResolver;
+import com.facebook.buck.rules.SourcePathRuleFinder;
+import com.facebook.buck.rules.TargetGraph;
+import com.facebook.buck.rules.args.Arg;
+import com.facebook.buck.rules.args.SourcePathArg;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class CxxCompileOutputCacheTest {
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  private ProjectFilesystem filesystem;
+  private SourcePathResolver resolver;
+  private Path compiler;
+  private CxxCompileOutputCache cache;
+
+  @Before
+  public void setUp() throws IOException, InterruptedException {
+    filesystem = TestProjectFilesystems.createProjectFilesystem(tmp.getRoot());
+    resolver =
+        DefaultSourcePathResolver.from(
+            new SourcePathRuleFinder(
+                new SingleThreadedBuildRuleResolver(
+                    TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer())));
+    compiler = tmp.newFile("cc");
+    cache = createCache(ImmutableList.of());
+  }
+
+  @After
+  public void tearDown() {
+    CxxCompileOutputCache.invalidateFileHashes();
+  }
+
+  @Test
+  public void outputsAreRestoredUnderTheSameKey() throws IOException {
+    Path input = Paths.get("foo.c");
+    filesystem.writeContentsToPath("int foo;", input);
+    ImmutableList<String> command = ImmutableList.of("cc", "-c", "<output>");
+    String key = cache.getKey(new BuildId(), command, input).get();
+
+    Path output = Paths.get("a/foo.o");
+    Path depFile = Paths.get("a/foo.o.dep");
+    filesystem.mkdirs(output.getParent());
+    filesystem.writeContentsToPath("object", output);
+    filesystem.writeContentsToPath("a/foo.o: foo.c\n", depFile);
+    cache.store(key, input, output, Optional.of(depFile), "warning");
+
+    Path otherOutput = Paths.get("b/foo.o");
+    Path otherDepFile = Paths.get("b/foo.o.dep");
+    filesystem.mkdirs(otherOutput.getParent());
+    assertEquals(
+        Optional.of("warning"),
+        cache.restore(
+            cache.getKey(new BuildId(), command, input).get(),
+            otherOutput,
+            Optional.of(otherDepFile)));
+    assertEquals(Optional.of("object"), filesystem.readFileIfItExists(otherOutput));
+    assertEquals(Optional.of("a/foo.o: foo.c\n"), filesystem.readFileIfItExists(otherDepFile));
+  }
+
+  @Test
+  public void keyCoversCommandAndInput() throws IOException {
+    Path input = Paths.get("foo.c");
+    filesystem.writeContentsToPath("int foo;", input);
+    ImmutableList<String> command = ImmutableList.of("cc", "-c");
+    String key = cache.getKey(new BuildId(), command, input).get();
+
+    assertNotEquals(
+        key, cache.getKey(new BuildId(), ImmutableList.of("cc", "-c", "-O2"), input).get());
+    filesystem.writeContentsToPath("int bar;", input);
+    assertNotEquals(key, cache.getKey(new BuildId(), command, input).get());
+  }
+
+  @Test
+  public void nothingIsRestoredForAnUnknownKey() throws IOException {
+    assertFalse(
+        cache
+            .restore("0123456789abcdef", Paths.get("foo.o"), Optional.empty())
+            .isPresent());
+  }
+
+  @Test
+  public void keyCoversTheContentsOfTheCompiler() throws IOException {
+    Path input = Paths.get("foo.c");
+    filesystem.writeContentsToPath("int foo;", input);
+    ImmutableList<String> command = ImmutableList.of(compiler.toString(), "-c");
+    String key = cache.getKey(new BuildId(), command, input).get();
+
+    filesystem.writeContentsToPath("a newer compiler", compiler);
+
+    assertNotEquals(key, cache.getKey(new BuildId(), command, input).get());
+  }
+
+  @Test
+  public void keyCoversTheContentsOfFilesNamedByArguments() throws IOException {
+    Path input = Paths.get("foo.c");
+    filesystem.writeContentsToPath("int foo;", input);
+    Path blacklist = Paths.get("blacklist.txt");
+    filesystem.writeContentsToPath("fun:foo", blacklist);
+    ImmutableList<String> command =
+        ImmutableList.of("cc", "-c", "-fsanitize-blacklist=" + blacklist);
+    String key = cache.getKey(new BuildId(), command, input).get();
+
+    filesystem.writeContentsToPath("fun:foo\nfun:bar", blacklist);
+
+    assertNotEquals(key, cache.getKey(new BuildId(), command, input).get());
+  }
+
+  @Test
+  public void keyCoversTheContentsOfSourcePathArguments() throws IOException {
+    Path input = Paths.get("foo.c");
+    filesystem.writeContentsToPath("int foo;", input);
+    Path profile = Paths.get("foo.profdata");
+    filesystem.writeContentsToPath("profile", profile);
+    cache = createCache(ImmutableList.of(SourcePathArg.of(PathSourcePath.of(filesystem, profile))));
+    ImmutableList<String> command = ImmutableList.of("cc", "-c");
+    String key = cache.getKey(new BuildId(), command, input).get();
+
+    filesystem.writeContentsToPath("newer profile", profile);
+
+    assertNotEquals(key, cache.getKey(new BuildId(), command, input).get());
+  }
+
+  @Test
+  public void profileDataThatIsNotAFileIsNotCached() throws IOException {
+    Path input = Paths.get("foo.c");
+    filesystem.writeContentsToPath("int foo;", input);
+
+    assertFalse(
+        cache
+            .getKey(new BuildId(), ImmutableList.of("cc", "-c", "-fprofile-use"), input)
+            .isPresent());
+  }
+
+  @Test
+  public void outputsAreNotRestoredOnceAHeaderOutsideTheHeaderSetChanged() throws IOException {
+    Path input = Paths.get("foo.c");
+    filesystem.writeContentsToPath("#include <sys.h>", input);
+    Path header = tmp.newFolder("sysroot").resolve("sys.h");
+    filesystem.writeContentsToPath("", header);
+    ImmutableList<String> command = ImmutableList.of("cc", "-c", "--sysroot=sysroot");
+    String key = cache.getKey(new BuildId(), command, input).get();
+
+    Path output = Paths.get("a/foo.o");
+    Path depFile = Paths.get("a/foo.o.dep");
+    filesystem.mkdirs(output.getParent());
+    filesystem.writeContentsToPath("object", output);
+    filesystem.writeContentsToPath("a/foo.o: foo.c " + header + "\n", depFile);
+    cache.store(key, input, output, Optional.of(depFile), "");
+    filesystem.writeContentsToPath("#define SYS 1", header);
+
+    assertFalse(cache.restore(key, output, Optional.of(depFile)).isPresent());
+  }
+
+  private CxxCompileOutputCache createCache(ImmutableList<Arg> arguments) {
+    return new CxxCompileOutputCache(
+        filesystem,
+        resolver,
+        Optional.empty(),
+        new GccCompiler(new HashedFileTool(compiler)),
+        arguments);
+  }
+}
@@ -103,6 +103,7 @@ public class CxxCompileStepIntegrationTest {
             scratchDir,
             true,
             compiler,
+            Optional.empty(),
             Optional.empty());
 
     // Execute the archive step and verify it ran successfully.
@@ -174,6 +175,7 @@ public class CxxCompileStepIntegrationTest {
             scratchDir,
             true,
             compiler,
+            Optional.empty(),
             Optional.empty());
 
     // Execute the archive step and verify it ran successfully.
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import com.google.caliper.AfterExperiment;
+import com.google.caliper.BeforeExperiment;
+import com.google.caliper.Benchmark;
+import com.google.caliper.Param;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Compares parsing large depfiles through a {@link Reader}, as they used to be, against parsing
+ * their bytes directly, read onto the heap or mapped.
+ */
+public class DepfilesBenchmark {
+  @Param({"200"})
+  private int depfileCount = 20;
+
+  @Param({"800"})
+  private int headersPerDepfile = 100;
+
+  private final Random random = new Random(123);
+  private Path workDir;
+  private ImmutableList<Path> depfiles;
+
+  @Before
+  public void setUpTest() throws Exception {
+    setUpBenchmark();
+  }
+
+  @After
+  public void tearDownTest() throws Exception {
+    tearDownBenchmark();
+  }
+
+  @BeforeExperiment
+  public void setUpBenchmark() throws Exception {
+    workDir = Files.createTempDirectory("depfiles-benchmark");
+    ImmutableList.Builder<Path> builder = ImmutableList.builder();
+    for (int i = 0; i < depfileCount; i++) {
+      // Laid out the way gcc writes them: one prerequisite per line, most of them headers behind
+      // the symlink trees of the libraries the object depends on.
+      StringBuilder contents = new StringBuilder();
+      contents.append(String.format("buck-out/gen/lib/lib\\#compile-src%d.c.o/src%d.c.o:", i, i));
+      contents.append(String.format(" \\\n  lib/src%d.c", i));
+      for (int j = 0; j < headersPerDepfile; j++) {
+        int library = random.nextInt(300);
+        contents.append(
+            String.format(
+                " \\\n  buck-out/gen/lib%d/lib%d\\#default,headers/lib%d/header%d.h",
+                library, library, library, random.nextInt(50)));
+      }
+      contents.append('\n');
+      Path depfile = workDir.resolve("src" + i + ".c.o.dep");
+      Files.write(depfile, contents.toString().getBytes(StandardCharsets.UTF_8));
+      builder.add(depfile);
+    }
+    depfiles = builder.build();
+  }
+
+  @AfterExperiment
+  public void tearDownBenchmark() throws Exception {
+    try (Stream<Path> paths = Files.list(workDir)) {
+      for (Path path : (Iterable<Path>) paths::iterator) {
+        Files.delete(path);
+      }
+    }
+    Files.delete(workDir);
+  }
+
+  @Test
+  public void readerPerformance() throws Exception {
+    reader();
+  }
+
+  @Benchmark
+  public int reader() throws IOException {
+    int prereqs = 0;
+    for (Path depfile : depfiles) {
+      try (Reader reader = Files.newBufferedReader(depfile)) {
+        prereqs += Depfiles.parseDepfile(reader).getPrereqs().size();
+      }
+    }
+    return prereqs;
+  }
+
+  @Test
+  public void heapBytesPerformance() throws Exception {
+    heapBytes();
+  }
+
+  @Benchmark
+  public int heapBytes() throws IOException {
+    int prereqs = 0;
+    for (Path depfile : depfiles) {
+      prereqs +=
+          Depfiles.parseDepfile(ByteBuffer.wrap(Files.readAllBytes(depfile))).getPrereqs().size();
+    }
+    return prereqs;
+  }
+
+  @Test
+  public void mappedBytesPerformance() throws Exception {
+    mappedBytes();
+  }
+
+  @Benchmark
+  public int mappedBytes() throws IOException {
+    int prereqs = 0;
+    for (Path depfile : depfiles) {
+      try (FileChannel channel = FileChannel.open(depfile, StandardOpenOption.READ)) {
+        prereqs +=
+            Depfiles.parseDepfile(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()))
+                .getPrereqs()
+                .size();
+      }
+    }
+    return prereqs;
+  }
+}
@@ -128,6 +128,11 @@ public class DepfilesTest {
             "output: input\\\\\\\twith\\\\\\\ttabs\r\n",
             "output",
             ImmutableList.of("input\\\twith\\\ttabs")
+          },
+          {
+            "output: input\u00e9 input\u4e2d\\ name\n",
+            "output",
+            ImmutableList.of("input\u00e9", "input\u4e2d name")
           }
         });
   }
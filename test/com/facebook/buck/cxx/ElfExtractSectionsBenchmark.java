@@ -0,0 +1,154 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import static org.junit.Assume.assumeTrue;
+
+import com.facebook.buck.cxx.toolchain.elf.ElfSectionExtractor;
+import com.facebook.buck.testutil.integration.TestDataHelper;
+import com.google.caliper.AfterExperiment;
+import com.google.caliper.BeforeExperiment;
+import com.google.caliper.Benchmark;
+import com.google.caliper.Param;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Compares extracting the sections of a shared library interface with {@code objcopy
+ * --only-section}, as it used to be, against extracting them in-process, from a library carrying a
+ * large section of padding standing in for the debug info of an unstripped library.
+ */
+public class ElfExtractSectionsBenchmark {
+  private static final ImmutableSet<String> SECTIONS =
+      ImmutableSet.of(
+          ".dynamic", ".dynsym", ".dynstr", ".gnu.version", ".gnu.version_d", ".gnu.version_r");
+
+  @Param({"1024"})
+  private int paddingMegabytes = 64;
+
+  private Path workDir;
+  private Path input;
+  private Path output;
+
+  @Before
+  public void setUpTest() throws Exception {
+    assumeTrue(isObjcopyAvailable());
+    setUpBenchmark();
+  }
+
+  @After
+  public void tearDownTest() throws Exception {
+    tearDownBenchmark();
+  }
+
+  @BeforeExperiment
+  public void setUpBenchmark() throws Exception {
+    workDir = Files.createTempDirectory("elf-extract-sections-benchmark");
+    Path padding = workDir.resolve("debug_padding");
+    Random random = new Random(123);
+    byte[] chunk = new byte[1024 * 1024];
+    try (OutputStream stream = Files.newOutputStream(padding)) {
+      for (int i = 0; i < paddingMegabytes; i++) {
+        random.nextBytes(chunk);
+        stream.write(chunk);
+      }
+    }
+    input = workDir.resolve("libfoo.so");
+    output = workDir.resolve("libfoo.so.interface");
+    run(
+        ImmutableList.of(
+            "objcopy",
+            "--add-section",
+            ".debug_padding=" + padding,
+            TestDataHelper.getTestDataScenario(this, "elf_shared_lib")
+                .resolve("libfoo.so")
+                .toString(),
+            input.toString()));
+    Files.delete(padding);
+  }
+
+  @AfterExperiment
+  public void tearDownBenchmark() throws Exception {
+    try (Stream<Path> paths = Files.list(workDir)) {
+      for (Path path : (Iterable<Path>) paths::iterator) {
+        Files.delete(path);
+      }
+    }
+    Files.delete(workDir);
+  }
+
+  @Test
+  public void objcopyPerformance() throws Exception {
+    objcopy();
+  }
+
+  @Benchmark
+  public void objcopy() throws Exception {
+    ImmutableList.Builder<String> command = ImmutableList.builder();
+    command.add("objcopy");
+    for (String section : SECTIONS) {
+      command.add("--only-section", section);
+    }
+    command.add(input.toString(), output.toString());
+    run(command.build());
+  }
+
+  @Test
+  public void inProcessPerformance() throws Exception {
+    inProcess();
+  }
+
+  @Benchmark
+  public void inProcess() throws IOException {
+    try (FileChannel inputChannel = FileChannel.open(input, StandardOpenOption.READ);
+        FileChannel outputChannel =
+            FileChannel.open(
+                output,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+      ElfSectionExtractor.extract(inputChannel, outputChannel, SECTIONS);
+    }
+  }
+
+  private static boolean isObjcopyAvailable() {
+    try {
+      run(ImmutableList.of("objcopy", "--version"));
+      return true;
+    } catch (Exception e) {
+      return false;
+    }
+  }
+
+  private static void run(ImmutableList<String> command) throws Exception {
+    Process process = new ProcessBuilder(command).inheritIO().start();
+    if (process.waitFor() != 0) {
+      throw new IOException(String.format("%s failed", command));
+    }
+  }
+}
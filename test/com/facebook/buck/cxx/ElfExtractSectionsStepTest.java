@@ -18,22 +18,16 @@ package com.facebook.buck.cxx;
 
 import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
 import static org.junit.Assert.assertThat;
-import static org.junit.Assume.assumeThat;
-import static org.junit.Assume.assumeTrue;
 
 import com.facebook.buck.cxx.toolchain.elf.Elf;
 import com.facebook.buck.cxx.toolchain.elf.ElfSection;
-import com.facebook.buck.io.ExecutableFinder;
 import com.facebook.buck.io.filesystem.ProjectFilesystem;
 import com.facebook.buck.io.filesystem.TestProjectFilesystems;
-import com.facebook.buck.model.BuildTargetFactory;
 import com.facebook.buck.step.TestExecutionContext;
 import com.facebook.buck.testutil.integration.ProjectWorkspace;
 import com.facebook.buck.testutil.integration.TemporaryPaths;
 import com.facebook.buck.testutil.integration.TestDataHelper;
-import com.facebook.buck.util.environment.Platform;
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import java.io.IOException;
 import java.nio.MappedByteBuffer;
@@ -42,7 +36,6 @@ import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Optional;
 import org.hamcrest.Matchers;
 import org.junit.Rule;
 import org.junit.Test;
@@ -51,30 +44,8 @@ public class ElfExtractSectionsStepTest {
 
   @Rule public TemporaryPaths tmp = new TemporaryPaths();
 
-  private static final ImmutableSet<String> OBJCOPY_NAMES = ImmutableSet.of("objcopy", "gobjcopy");
-
-  private Path assumeObjcopy() {
-    assumeThat(Platform.detect(), Matchers.oneOf(Platform.LINUX, Platform.MACOS));
-    ExecutableFinder finder = new ExecutableFinder();
-    Optional<Path> objcopy = Optional.empty();
-    for (String name : OBJCOPY_NAMES) {
-      objcopy =
-          finder.getOptionalExecutable(
-              tmp.getRoot().getFileSystem().getPath(name), ImmutableMap.copyOf(System.getenv()));
-      if (objcopy.isPresent()) {
-        break;
-      }
-    }
-    assumeTrue(objcopy.isPresent());
-    return objcopy.get();
-  }
-
   @Test
   public void test() throws IOException, InterruptedException {
-
-    // Only run if `objcopy` is available on the system.
-    Path objcopy = assumeObjcopy();
-
     // Run the step.
     ProjectWorkspace workspace =
         TestDataHelper.createProjectWorkspaceForScenario(this, "elf_shared_lib", tmp);
@@ -82,15 +53,13 @@ public class ElfExtractSectionsStepTest {
     ProjectFilesystem filesystem = TestProjectFilesystems.createProjectFilesystem(tmp.getRoot());
     Path output = tmp.getRoot().getFileSystem().getPath("libfoo.extracted.so");
     ElfExtractSectionsStep step =
-        new ElfExtractSectionsStep(
-            BuildTargetFactory.newInstance("//dummy:target"),
-            ImmutableList.of(objcopy.toString()),
+        ElfExtractSectionsStep.of(
             ImmutableSet.of(".dynamic"),
             filesystem,
             filesystem.getPath("libfoo.so"),
             filesystem,
             output);
-    step.execute(TestExecutionContext.newInstanceWithRealProcessExecutor());
+    step.execute(TestExecutionContext.newInstance());
 
     // Verify that the program table section is empty.
     try (FileChannel channel =
@@ -108,4 +77,35 @@ public class ElfExtractSectionsStepTest {
       assertThat(sections, Matchers.equalTo(ImmutableList.of(".dynamic")));
     }
   }
+
+  @Test
+  public void sectionsAndTheirLinksArePreserved() throws IOException, InterruptedException {
+    ProjectWorkspace workspace =
+        TestDataHelper.createProjectWorkspaceForScenario(this, "elf_shared_lib", tmp);
+    workspace.setUp();
+    ProjectFilesystem filesystem = TestProjectFilesystems.createProjectFilesystem(tmp.getRoot());
+    Path input = filesystem.getPath("libfoo.so");
+    Path output = filesystem.getPath("libfoo.extracted.so");
+    ElfExtractSectionsStep.of(
+            ImmutableSet.of(".dynsym", ".dynstr"), filesystem, input, filesystem, output)
+        .execute(TestExecutionContext.newInstance());
+
+    try (FileChannel inputChannel =
+            FileChannel.open(filesystem.resolve(input), StandardOpenOption.READ);
+        FileChannel outputChannel =
+            FileChannel.open(filesystem.resolve(output), StandardOpenOption.READ)) {
+      Elf inputElf = new Elf(inputChannel.map(READ_ONLY, 0, inputChannel.size()));
+      Elf outputElf = new Elf(outputChannel.map(READ_ONLY, 0, outputChannel.size()));
+      for (String name : ImmutableList.of(".dynsym", ".dynstr")) {
+        ElfSection inputSection = inputElf.getMandatorySectionByName(input, name).getSection();
+        ElfSection outputSection = outputElf.getMandatorySectionByName(output, name).getSection();
+        assertThat(outputSection.header.sh_addr, Matchers.equalTo(inputSection.header.sh_addr));
+        assertThat(outputSection.body, Matchers.equalTo(inputSection.body));
+      }
+      assertThat(
+          outputElf.getMandatorySectionByName(output, ".dynsym").getSection().header.sh_link,
+          Matchers.equalTo(
+              (long) outputElf.getMandatorySectionByName(output, ".dynstr").getIndex()));
+    }
+  }
 }
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import com.facebook.buck.config.FakeBuckConfig;
+import com.facebook.buck.cxx.toolchain.Archiver;
+import com.facebook.buck.cxx.toolchain.CxxBuckConfig;
+import com.facebook.buck.cxx.toolchain.CxxPlatform;
+import com.facebook.buck.cxx.toolchain.CxxPlatformUtils;
+import com.facebook.buck.io.filesystem.ProjectFilesystem;
+import com.facebook.buck.io.filesystem.TestProjectFilesystems;
+import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.rules.BuildRuleResolver;
+import com.facebook.buck.rules.DefaultSourcePathResolver;
+import com.facebook.buck.rules.DefaultTargetNodeToBuildRuleTransformer;
+import com.facebook.buck.rules.SingleThreadedBuildRuleResolver;
+import com.facebook.buck.rules.SourcePathResolver;
+import com.facebook.buck.rules.SourcePathRuleFinder;
+import com.facebook.buck.rules.TargetGraph;
+import com.facebook.buck.rules.Tool;
+import com.facebook.buck.step.ExecutionContext;
+import com.facebook.buck.step.Step;
+import com.facebook.buck.step.StepExecutionResult;
+import com.facebook.buck.step.TestExecutionContext;
+import com.facebook.buck.testutil.integration.ProjectWorkspace;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.facebook.buck.testutil.integration.TestDataHelper;
+import com.facebook.buck.util.MoreCollectors;
+import com.facebook.buck.util.environment.Platform;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class GnuArchiveStepIntegrationTest {
+
+  private static final ImmutableList<String> OBJECTS =
+      ImmutableList.of("a.o", "b_with_a_long_name.o", "c.o");
+
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  private ProjectFilesystem filesystem;
+  private ImmutableList<Path> inputs;
+
+  @Before
+  public void setUp() throws IOException, InterruptedException {
+    ProjectWorkspace workspace =
+        TestDataHelper.createProjectWorkspaceForScenario(this, "gnu_archive", tmp);
+    workspace.setUp();
+    filesystem = TestProjectFilesystems.createProjectFilesystem(tmp.getRoot());
+    inputs = OBJECTS.stream().map(filesystem::getPath).collect(MoreCollectors.toImmutableList());
+    GnuArchiveStep.invalidateCache();
+  }
+
+  @Test
+  public void archivesAreTheSameAsArAndRanlibWrite() throws IOException, InterruptedException {
+    assertSameAsArAndRanlib(false);
+  }
+
+  @Test
+  public void thinArchivesAreTheSameAsArAndRanlibWrite()
+      throws IOException, InterruptedException {
+    assertSameAsArAndRanlib(true);
+  }
+
+  @Test
+  public void archivesOfOtherFilesAreLeftToTheFallbackSteps()
+      throws IOException, InterruptedException {
+    Path input = filesystem.getPath("input.dat");
+    filesystem.writeContentsToPath("blah", input);
+    AtomicBoolean fellBack = new AtomicBoolean(false);
+
+    int exitCode =
+        new GnuArchiveStep(
+                filesystem,
+                filesystem.getPath("output.a"),
+                ImmutableList.<Path>builder().addAll(inputs).add(input).build(),
+                false,
+                ImmutableList.of(new FallbackStep(fellBack)))
+            .execute(TestExecutionContext.newInstance())
+            .getExitCode();
+
+    assertEquals(0, exitCode);
+    assertTrue(fellBack.get());
+  }
+
+  private void assertSameAsArAndRanlib(boolean thin) throws IOException, InterruptedException {
+    assumeTrue(Platform.detect() == Platform.LINUX);
+    CxxPlatform platform =
+        CxxPlatformUtils.build(new CxxBuckConfig(FakeBuckConfig.builder().build()));
+    BuildRuleResolver ruleResolver =
+        new SingleThreadedBuildRuleResolver(
+            TargetGraph.EMPTY, new DefaultTargetNodeToBuildRuleTransformer());
+    SourcePathResolver sourcePathResolver =
+        DefaultSourcePathResolver.from(new SourcePathRuleFinder(ruleResolver));
+    Archiver archiver = platform.getAr().resolve(ruleResolver);
+    assumeTrue(archiver.supportsInProcessArchiving());
+    Tool ranlib = platform.getRanlib().resolve(ruleResolver);
+
+    // Write the archive to a subdirectory, so that thin archives refer to their members by
+    // relative paths that climb out of it.
+    Path expected = filesystem.getPath("expected/libfoo.a");
+    Path actual = filesystem.getPath("actual/libfoo.a");
+    filesystem.mkdirs(expected.getParent());
+    filesystem.mkdirs(actual.getParent());
+
+    ExecutionContext executionContext = TestExecutionContext.newInstanceWithRealProcessExecutor();
+    ImmutableList<Step> steps =
+        ImmutableList.of(
+            new ArchiveStep(
+                filesystem,
+                archiver.getEnvironment(sourcePathResolver),
+                archiver.getCommandPrefix(sourcePathResolver),
+                ImmutableList.of(),
+                archiver.getArchiveOptions(thin),
+                expected,
+                inputs,
+                archiver,
+                filesystem.getPath("scratchDir")),
+            new RanlibStep(
+                BuildTargetFactory.newInstance("//:foo"),
+                filesystem,
+                ranlib.getEnvironment(sourcePathResolver),
+                ranlib.getCommandPrefix(sourcePathResolver),
+                ImmutableList.of(),
+                expected));
+    for (Step step : steps) {
+      assertEquals(step.getShortName(), 0, step.execute(executionContext).getExitCode());
+    }
+
+    int exitCode =
+        new GnuArchiveStep(filesystem, actual, inputs, thin, ImmutableList.of())
+            .execute(executionContext)
+            .getExitCode();
+    assertEquals(0, exitCode);
+
+    assertArrayEquals(
+        Files.readAllBytes(filesystem.resolve(expected)),
+        Files.readAllBytes(filesystem.resolve(actual)));
+  }
+
+  private static class FallbackStep implements Step {
+    private final AtomicBoolean executed;
+
+    private FallbackStep(AtomicBoolean executed) {
+      this.executed = executed;
+    }
+
+    @Override
+    public StepExecutionResult execute(ExecutionContext context) {
+      executed.set(true);
+      return StepExecutionResult.SUCCESS;
+    }
+
+    @Override
+    public String getShortName() {
+      return "fallback";
+    }
+
+    @Override
+    public String getDescription(ExecutionContext context) {
+      return "fallback";
+    }
+  }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.cxx;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.cxx.toolchain.objectfile.GnuArchiveWriter;
+import com.google.common.collect.ImmutableList;
+import java.nio.file.Paths;
+import org.junit.Test;
+
+public class GnuArchiveWriterTest {
+
+  @Test
+  public void membersThatFitTheIndexAreIndexable() {
+    assertTrue(GnuArchiveWriter.isIndexable(false, ImmutableList.of()));
+    assertTrue(
+        GnuArchiveWriter.isIndexable(
+            false, ImmutableList.of(member("a.o", 1000), member("b.o", 1000))));
+  }
+
+  @Test
+  public void headersAndTheIndexCountTowardsTheOffsets() {
+    // The members alone are below the limit, but not once the headers and index are added.
+    ImmutableList<GnuArchiveWriter.Member> members =
+        ImmutableList.of(
+            member("a.o", GnuArchiveWriter.MAX_INDEXED_OFFSET - 100), member("b.o", 10));
+
+    assertFalse(GnuArchiveWriter.isIndexable(false, members));
+    assertTrue(GnuArchiveWriter.isIndexable(true, members));
+  }
+
+  private static GnuArchiveWriter.Member member(String name, long size) {
+    return new GnuArchiveWriter.Member(
+        Paths.get(name), name, size, ImmutableList.of("sym_" + name));
+  }
+}
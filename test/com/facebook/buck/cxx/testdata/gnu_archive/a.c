@@ -0,0 +1,17 @@
+int a_global = 1;
+static int a_local = 2;
+int a_common;
+
+__attribute__((weak)) int a_weak(void) {
+  return a_local;
+}
+
+extern int undefined_fn(void);
+
+int a_fn(void) {
+  return undefined_fn();
+}
+
+__attribute__((visibility("hidden"))) int a_hidden(void) {
+  return 0;
+}
@@ -0,0 +1,16 @@
+static int ifunc_impl(void) {
+  return 1;
+}
+
+int (*resolve_f(void))(void) {
+  return ifunc_impl;
+}
+
+int f(void) __attribute__((ifunc("resolve_f")));
+
+int b_fn(void) {
+  static int counter;
+  return ++counter;
+}
+
+__thread int tls_var;
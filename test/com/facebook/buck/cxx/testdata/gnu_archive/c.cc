@@ -0,0 +1,17 @@
+template <typename T>
+T id(T t) {
+  return t;
+}
+
+int use() {
+  return id(1);
+}
+
+inline int inl() {
+  static int x;
+  return ++x;
+}
+
+int call() {
+  return inl();
+}
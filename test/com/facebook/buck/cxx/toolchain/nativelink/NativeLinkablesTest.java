@@ -372,4 +372,64 @@ public class NativeLinkablesTest {
             a::equals),
         Matchers.equalTo(ImmutableMap.<BuildTarget, NativeLinkable>of(a.getBuildTarget(), a)));
   }
+
+  @Test
+  public void linkablesAreOrderedTheSameWhenRemembered() throws Exception {
+    FakeNativeLinkable d = createLinkable("//:d");
+    FakeNativeLinkable c = createLinkable("//:c");
+    FakeNativeLinkable b = createLinkable("//:b", d);
+    FakeNativeLinkable a = createLinkable("//:a", b, c);
+    ImmutableList<ImmutableList<NativeLinkable>> inputSets =
+        ImmutableList.of(ImmutableList.of(a), ImmutableList.of(c, b));
+    for (ImmutableList<NativeLinkable> inputs : inputSets) {
+      ImmutableMap<BuildTarget, NativeLinkable> expected =
+          NativeLinkables.getNativeLinkables(
+              CxxPlatformUtils.DEFAULT_PLATFORM,
+              inputs,
+              Linker.LinkableDepType.STATIC,
+              x -> true);
+      assertThat(
+          NativeLinkables.getNativeLinkables(
+                  CxxPlatformUtils.DEFAULT_PLATFORM, inputs, Linker.LinkableDepType.STATIC)
+              .entrySet()
+              .asList(),
+          Matchers.equalTo(expected.entrySet().asList()));
+    }
+    assertThat(
+        NativeLinkables.getNativeLinkables(
+                CxxPlatformUtils.DEFAULT_PLATFORM,
+                ImmutableList.of(a),
+                Linker.LinkableDepType.STATIC)
+            .keySet()
+            .asList(),
+        Matchers.contains(
+            a.getBuildTarget(), b.getBuildTarget(), d.getBuildTarget(), c.getBuildTarget()));
+  }
+
+  @Test
+  public void deepLinkGraphsDoNotOverflowTheStack() {
+    NativeLinkable linkable = createLinkable("//:lib0");
+    for (int i = 1; i < 20000; i++) {
+      linkable = createLinkable("//:lib" + i, linkable);
+    }
+
+    ImmutableMap<BuildTarget, NativeLinkable> linkables =
+        NativeLinkables.getNativeLinkables(
+            CxxPlatformUtils.DEFAULT_PLATFORM,
+            ImmutableList.of(linkable),
+            Linker.LinkableDepType.STATIC);
+
+    assertThat(linkables.size(), Matchers.equalTo(20000));
+    assertThat(linkables.keySet().asList().get(0), Matchers.equalTo(linkable.getBuildTarget()));
+  }
+
+  private static FakeNativeLinkable createLinkable(String target, NativeLinkable... deps) {
+    return new FakeNativeLinkable(
+        target,
+        ImmutableList.copyOf(deps),
+        ImmutableList.of(),
+        NativeLinkable.Linkage.ANY,
+        NativeLinkableInput.builder().build(),
+        ImmutableMap.of());
+  }
 }
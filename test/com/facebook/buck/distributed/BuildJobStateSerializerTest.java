@@ -17,8 +17,19 @@
 package com.facebook.buck.distributed;
 
 import com.facebook.buck.distributed.thrift.BuildJobState;
+import com.facebook.buck.distributed.thrift.BuildJobStateFileHashEntry;
+import com.facebook.buck.distributed.thrift.BuildJobStateFileHashes;
+import com.facebook.buck.distributed.thrift.BuildJobStateTargetGraph;
+import com.facebook.buck.distributed.thrift.BuildJobStateTargetNode;
+import com.facebook.buck.slb.ThriftProtocol;
+import com.facebook.buck.slb.ThriftUtil;
+import com.google.common.collect.ImmutableList;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -38,4 +49,98 @@ public class BuildJobStateSerializerTest {
       Assert.assertEquals(state, actual);
     }
   }
+
+  @Test
+  public void testLargeStateIsSymmetrical() throws IOException {
+    BuildJobState state = createLargeState();
+
+    BuildJobState actual =
+        BuildJobStateSerializer.deserialize(BuildJobStateSerializer.serialize(state));
+    Assert.assertEquals(state, actual);
+  }
+
+  @Test
+  public void testEmptyListsAreSymmetrical() throws IOException {
+    BuildJobState state = new BuildJobState();
+    state.setTargetGraph(new BuildJobStateTargetGraph().setNodes(new ArrayList<>()));
+    state.setFileHashes(
+        ImmutableList.of(
+            new BuildJobStateFileHashes().setCellIndex(0).setEntries(new ArrayList<>())));
+
+    BuildJobState actual =
+        BuildJobStateSerializer.deserialize(BuildJobStateSerializer.serialize(state));
+    Assert.assertEquals(state, actual);
+  }
+
+  @Test
+  public void testLegacyEncodingCanBeDeserialized() throws IOException {
+    BuildJobState state = createLargeState();
+
+    ByteArrayOutputStream legacyStream = new ByteArrayOutputStream();
+    try (DeflaterOutputStream zlibStream = new DeflaterOutputStream(legacyStream)) {
+      ThriftUtil.serialize(ThriftProtocol.COMPACT, state, zlibStream);
+    }
+
+    Assert.assertEquals(state, BuildJobStateSerializer.deserialize(legacyStream.toByteArray()));
+  }
+
+  @Test
+  public void testListenerReceivesBoundedChunks() throws IOException {
+    BuildJobState state = createLargeState();
+    List<Integer> nodeChunkSizes = new ArrayList<>();
+    List<Boolean> fileHashContinuations = new ArrayList<>();
+
+    BuildJobStateSerializer.deserialize(
+        new ByteArrayInputStream(BuildJobStateSerializer.serialize(state)),
+        new BuildJobStateSerializer.Listener() {
+          @Override
+          public void onHeader(BuildJobState header) {
+            Assert.assertEquals(state.getTopLevelTargets(), header.getTopLevelTargets());
+            Assert.assertFalse(header.isSetFileHashes());
+            Assert.assertFalse(header.getTargetGraph().isSetNodes());
+          }
+
+          @Override
+          public void onTargetNodes(List<BuildJobStateTargetNode> nodes) {
+            nodeChunkSizes.add(nodes.size());
+          }
+
+          @Override
+          public void onFileHashes(BuildJobStateFileHashes fileHashes, boolean continuesPrevious) {
+            Assert.assertTrue(
+                fileHashes.getEntries().size() <= BuildJobStateSerializer.MAX_ENTRIES_PER_CHUNK);
+            fileHashContinuations.add(continuesPrevious);
+          }
+        });
+
+    int chunkSize = BuildJobStateSerializer.MAX_ENTRIES_PER_CHUNK;
+    Assert.assertEquals(ImmutableList.of(chunkSize, chunkSize, 2), nodeChunkSizes);
+    Assert.assertEquals(ImmutableList.of(false, true, false), fileHashContinuations);
+  }
+
+  private static BuildJobState createLargeState() {
+    int chunkSize = BuildJobStateSerializer.MAX_ENTRIES_PER_CHUNK;
+    List<BuildJobStateTargetNode> nodes = new ArrayList<>();
+    for (int i = 0; i < 2 * chunkSize + 2; i++) {
+      nodes.add(new BuildJobStateTargetNode().setCellIndex(0).setRawNode("{\"name\":" + i + "}"));
+    }
+
+    List<BuildJobStateFileHashes> fileHashes = new ArrayList<>();
+    fileHashes.add(createFileHashes(0, chunkSize + 1));
+    fileHashes.add(createFileHashes(1, 3));
+
+    BuildJobState state = new BuildJobState();
+    state.setTopLevelTargets(ImmutableList.of("//foo:bar"));
+    state.setTargetGraph(new BuildJobStateTargetGraph().setNodes(nodes));
+    state.setFileHashes(fileHashes);
+    return state;
+  }
+
+  private static BuildJobStateFileHashes createFileHashes(int cellIndex, int count) {
+    List<BuildJobStateFileHashEntry> entries = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      entries.add(new BuildJobStateFileHashEntry().setSha1("sha1-" + i));
+    }
+    return new BuildJobStateFileHashes().setCellIndex(cellIndex).setEntries(entries);
+  }
 }
@@ -16,6 +16,7 @@
 
 package com.facebook.buck.jvm.java;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 
@@ -33,6 +34,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.jar.JarFile;
 import java.util.jar.Manifest;
+import java.util.stream.Stream;
 import org.junit.Rule;
 import org.junit.Test;
 
@@ -77,4 +79,30 @@ public class CalculateClassAbiStepTest {
               .getValue(CustomJarOutputStream.DIGEST_ATTRIBUTE_NAME));
     }
   }
+
+  @Test
+  public void shouldReuseTheAbiOfAnIdenticalJar() throws InterruptedException, IOException {
+    Path outDir = temp.newFolder().toAbsolutePath();
+    ProjectFilesystem filesystem = TestProjectFilesystems.createProjectFilesystem(outDir);
+
+    Path source = TestDataHelper.getTestDataDirectory(this).resolve("prebuilt/junit.jar");
+    Files.copy(source, outDir.resolve("first.jar"));
+    Files.copy(source, outDir.resolve("second.jar"));
+
+    ExecutionContext executionContext = TestExecutionContext.newInstance();
+    new CalculateClassAbiStep(filesystem, Paths.get("first.jar"), Paths.get("first-abi.jar"), false)
+        .execute(executionContext);
+    Path cacheDir = outDir.resolve(filesystem.getBuckPaths().getScratchDir());
+    try (Stream<Path> cached = Files.walk(cacheDir)) {
+      assertEquals(1, cached.filter(path -> path.toString().endsWith(".jar")).count());
+    }
+
+    new CalculateClassAbiStep(
+            filesystem, Paths.get("second.jar"), Paths.get("second-abi.jar"), false)
+        .execute(executionContext);
+
+    assertArrayEquals(
+        Files.readAllBytes(outDir.resolve("first-abi.jar")),
+        Files.readAllBytes(outDir.resolve("second-abi.jar")));
+  }
 }
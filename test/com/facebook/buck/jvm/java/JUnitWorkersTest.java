@@ -0,0 +1,148 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.jvm.java.runner.FileClassPathRunner;
+import com.facebook.buck.model.Pair;
+import com.facebook.buck.worker.WorkerProcess;
+import com.facebook.buck.worker.WorkerProcessIdentity;
+import com.facebook.buck.worker.WorkerProcessPool;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.HashCode;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.junit.After;
+import org.junit.Test;
+
+public class JUnitWorkersTest {
+
+  @After
+  public void tearDown() {
+    JUnitWorkers.forgetPools();
+  }
+
+  @Test
+  public void startupOptionsStayWithTheJvmAndTheRestGoToTheJob() {
+    ImmutableList<String> command =
+        ImmutableList.of(
+            "/opt/java",
+            "-Dbuck.testrunner_classes=runner",
+            "-Djava.library.path=/lib",
+            "-Xmx1g",
+            "-Dname=value",
+            "-classpath",
+            "@classpath-file:runner",
+            FileClassPathRunner.class.getName(),
+            "com.facebook.buck.testrunner.JUnitMain",
+            "--output",
+            "out");
+
+    Pair<ImmutableList<String>, ImmutableList<String>> split =
+        JUnitWorkers.splitCommand(command, 1);
+
+    assertEquals(
+        ImmutableList.of("/opt/java", "-Djava.library.path=/lib", "-Xmx1g"), split.getFirst());
+    assertEquals(
+        ImmutableList.of(
+            "-Dbuck.testrunner_classes=runner",
+            "-Dname=value",
+            "-classpath",
+            "@classpath-file:runner",
+            "com.facebook.buck.testrunner.JUnitMain",
+            "--output",
+            "out"),
+        split.getSecond());
+  }
+
+  @Test
+  public void workerIsRunByTheTestsJavaLauncher() {
+    assertEquals(
+        ImmutableList.of("/opt/java", "-Xmx1g", "-cp", "buck.jar", "Main"),
+        JUnitWorkers.getCommand(
+            ImmutableList.of("java", "-cp", "buck.jar", "Main"),
+            ImmutableList.of("/opt/java", "-Xmx1g")));
+  }
+
+  @Test
+  public void leastRecentlyUsedPoolsAreShutDown() {
+    ConcurrentMap<String, WorkerProcessPool> pools = new ConcurrentHashMap<>();
+    FakePool first = addPool(pools, "first");
+    JUnitWorkers.release(JUnitWorkers.lease(pools, identity("first")));
+    for (int i = 1; i < JUnitWorkers.MAX_POOLS; i++) {
+      JUnitWorkers.release(JUnitWorkers.lease(pools, identity("pool" + i)));
+    }
+
+    assertFalse(first.closed);
+    assertTrue(pools.containsKey("first"));
+
+    JUnitWorkers.release(JUnitWorkers.lease(pools, identity("last")));
+
+    assertTrue(first.closed);
+    assertFalse(pools.containsKey("first"));
+  }
+
+  @Test
+  public void poolsInUseAreNotShutDown() {
+    ConcurrentMap<String, WorkerProcessPool> pools = new ConcurrentHashMap<>();
+    FakePool busy = addPool(pools, "busy");
+    JUnitWorkers.PoolUse use = JUnitWorkers.lease(pools, identity("busy"));
+    for (int i = 0; i < JUnitWorkers.MAX_POOLS * 2; i++) {
+      JUnitWorkers.release(JUnitWorkers.lease(pools, identity("pool" + i)));
+    }
+
+    assertFalse(busy.closed);
+    assertTrue(pools.containsKey("busy"));
+
+    JUnitWorkers.release(use);
+    JUnitWorkers.release(JUnitWorkers.lease(pools, identity("last")));
+
+    assertTrue(busy.closed);
+  }
+
+  private static WorkerProcessIdentity identity(String key) {
+    return WorkerProcessIdentity.of(key, HashCode.fromInt(0));
+  }
+
+  private static FakePool addPool(ConcurrentMap<String, WorkerProcessPool> pools, String key) {
+    FakePool pool = new FakePool();
+    pools.put(key, pool);
+    return pool;
+  }
+
+  private static class FakePool extends WorkerProcessPool {
+    private boolean closed = false;
+
+    FakePool() {
+      super(1, HashCode.fromInt(0));
+    }
+
+    @Override
+    protected WorkerProcess startWorkerProcess() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+      super.close();
+    }
+  }
+}
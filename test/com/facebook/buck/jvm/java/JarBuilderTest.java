@@ -16,6 +16,7 @@
 
 package com.facebook.buck.jvm.java;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 import com.facebook.buck.util.zip.CustomZipEntry;
@@ -30,8 +31,11 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.jar.Manifest;
@@ -170,6 +174,62 @@ public class JarBuilderTest {
     }
   }
 
+  @Test
+  public void testParallelCompressionIsByteIdenticalToSerial() throws IOException {
+    File serialJar = temporaryFolder.newFile();
+    createJarWithManyEntries(new JarBuilder()).createJarFile(serialJar.toPath());
+
+    File parallelJar = temporaryFolder.newFile();
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      createJarWithManyEntries(new JarBuilder())
+          .setCompressionExecutor(executor, 4)
+          .createJarFile(parallelJar.toPath());
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertArrayEquals(
+        Files.readAllBytes(serialJar.toPath()), Files.readAllBytes(parallelJar.toPath()));
+  }
+
+  @Test
+  public void testReusingCompressedEntriesKeepsContents() throws IOException {
+    File sourceJar = temporaryFolder.newFile();
+    createJarWithManyEntries(new JarBuilder()).createJarFile(sourceJar.toPath());
+
+    File expectedJar = temporaryFolder.newFile();
+    new JarBuilder()
+        .setEntriesToJar(ImmutableList.of(sourceJar.toPath()))
+        .createJarFile(expectedJar.toPath());
+
+    File reusingJar = temporaryFolder.newFile();
+    new JarBuilder()
+        .setEntriesToJar(ImmutableList.of(sourceJar.toPath()))
+        .setShouldReuseCompressedEntries(true)
+        .createJarFile(reusingJar.toPath());
+
+    // The same zlib produced both jars, so even the compressed bytes match.
+    assertArrayEquals(
+        Files.readAllBytes(expectedJar.toPath()), Files.readAllBytes(reusingJar.toPath()));
+    try (JarFile jarFile = new JarFile(reusingJar)) {
+      assertEquals(
+          "contents of foo/bar/7.txt",
+          CharStreams.toString(
+              new InputStreamReader(
+                  jarFile.getInputStream(jarFile.getEntry("foo/bar/7.txt")), Charsets.UTF_8)));
+    }
+  }
+
+  private JarBuilder createJarWithManyEntries(JarBuilder jarBuilder) {
+    for (int i = 0; i < 100; i++) {
+      String directory = i % 3 == 0 ? "foo/" : "foo/bar/";
+      String name = directory + i + ".txt";
+      addEntry(jarBuilder, name, "contents of " + name);
+    }
+    return jarBuilder;
+  }
+
   private void addEntry(JarBuilder builder, String name, String contents) {
     builder.addEntry(
         new JarEntrySupplier(
@@ -306,6 +306,24 @@ public class JavaBuckConfigTest {
     assertFalse(config.trackClassUsage());
   }
 
+  @Test
+  public void javacFileManagersArePooledUnlessDisabled() {
+    assertTrue(
+        FakeBuckConfig.builder()
+            .build()
+            .getView(JavaBuckConfig.class)
+            .getDefaultJavacOptions()
+            .isFileManagerPoolingEnabled());
+
+    JavaBuckConfig config =
+        FakeBuckConfig.builder()
+            .setSections(
+                ImmutableMap.of("java", ImmutableMap.of("pool_javac_file_managers", "false")))
+            .build()
+            .getView(JavaBuckConfig.class);
+    assertFalse(config.getDefaultJavacOptions().isFileManagerPoolingEnabled());
+  }
+
   @Test
   public void doNotTrackClassUsageByDefaultForExternJavac() throws IOException {
     JavaBuckConfig config =
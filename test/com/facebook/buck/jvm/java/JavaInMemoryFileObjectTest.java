@@ -16,11 +16,13 @@
 
 package com.facebook.buck.jvm.java;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.fail;
 
 import com.facebook.buck.testutil.TestJar;
 import com.facebook.buck.util.zip.JarBuilder;
+import com.google.common.io.ByteStreams;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
@@ -65,6 +67,29 @@ public class JavaInMemoryFileObjectTest {
     assertEquals("content", jar.getEntriesContent().get(6));
   }
 
+  @Test
+  public void testBulkWritesCanBeReadBackRepeatedly() throws Exception {
+    String relativePath = "com/facebook/buck/java/Large.class";
+    JavaInMemoryFileObject inMemoryFileObject =
+        new JavaInMemoryFileObject(
+            URI.create("file://tmp/" + relativePath), relativePath, JavaFileObject.Kind.CLASS);
+
+    byte[] data = new byte[100000];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte) i;
+    }
+    try (OutputStream out = inMemoryFileObject.openOutputStream()) {
+      out.write(data, 0, 10);
+      out.write(data, 10, data.length - 10);
+    }
+
+    for (int i = 0; i < 2; i++) {
+      try (InputStream in = inMemoryFileObject.openInputStream()) {
+        assertArrayEquals(data, ByteStreams.toByteArray(in));
+      }
+    }
+  }
+
   @Test
   public void testMultipleJavaFiles() throws Exception {
     String relativePath = "com/facebook/buck/java/JavaFileParser.class";
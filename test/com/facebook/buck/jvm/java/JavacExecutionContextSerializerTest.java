@@ -83,7 +83,8 @@ public class JavacExecutionContextSerializerTest {
             projectFilesystemFactory,
             environment,
             processExecutor,
-            pathToInputs);
+            pathToInputs,
+            /* fileManagerPoolingEnabled */ false);
     Map<String, Object> data = JavacExecutionContextSerializer.serialize(input);
     JavacExecutionContext output =
         JavacExecutionContextSerializer.deserialize(
@@ -125,5 +126,7 @@ public class JavacExecutionContextSerializerTest {
     assertThat(output.getEnvironment(), Matchers.equalToObject(environment));
 
     assertThat(output.getAbsolutePathsForInputs(), Matchers.equalToObject(pathToInputs));
+
+    assertThat(output.isFileManagerPoolingEnabled(), Matchers.is(false));
   }
 }
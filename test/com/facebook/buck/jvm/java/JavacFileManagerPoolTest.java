@@ -0,0 +1,162 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.collect.ImmutableList;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JavacFileManagerPoolTest {
+
+  @Rule public TemporaryFolder temp = new TemporaryFolder();
+
+  private JavaCompiler compiler;
+  private JavacFileManagerPool pool;
+
+  @Before
+  public void setUp() {
+    compiler = ToolProvider.getSystemJavaCompiler();
+    pool = new JavacFileManagerPool(2);
+  }
+
+  @Test
+  public void reusedFileManagerWritesToTheNewOutputDirectory() throws Exception {
+    Path source = writeSource("A.java", "class A {}");
+    Path firstOutput = temp.newFolder("first").toPath();
+    Path secondOutput = temp.newFolder("second").toPath();
+
+    StandardJavaFileManager first = compile(source, firstOutput, "");
+    StandardJavaFileManager second = compile(source, secondOutput, "");
+
+    assertSame(first, second);
+    assertTrue(Files.exists(firstOutput.resolve("A.class")));
+    assertTrue(Files.exists(secondOutput.resolve("A.class")));
+  }
+
+  @Test
+  public void reusedFileManagerReadsTheNewClasspath() throws Exception {
+    Path dependency = writeJar("dep.jar", "package dep; public class Dep {}");
+    Path source = writeSource("B.java", "class B { dep.Dep dep; }");
+    Path output = temp.newFolder("out").toPath();
+
+    StandardJavaFileManager withoutDependency =
+        compile(writeSource("C.java", "class C {}"), output, "");
+    StandardJavaFileManager withDependency = compile(source, output, dependency.toString());
+
+    assertSame(withoutDependency, withDependency);
+    assertTrue(Files.exists(output.resolve("B.class")));
+  }
+
+  @Test
+  public void changedJarDiscardsTheFileManager() throws Exception {
+    Path dependency = writeJar("dep.jar", "package dep; public class Dep {}");
+    Path output = temp.newFolder("out").toPath();
+
+    StandardJavaFileManager first =
+        compile(writeSource("B.java", "class B { dep.Dep dep; }"), output, dependency.toString());
+    Files.delete(dependency);
+    writeJar("dep.jar", "package dep; public class Dep { public static int changed; }");
+    StandardJavaFileManager second =
+        compile(
+            writeSource("C.java", "class C { int c = dep.Dep.changed; }"),
+            output,
+            dependency.toString());
+
+    assertNotSame(first, second);
+    assertTrue(Files.exists(output.resolve("C.class")));
+  }
+
+  @Test
+  public void differentSharedOptionsUseDifferentFileManagers() throws Exception {
+    Path source = writeSource("A.java", "class A {}");
+    Path output = temp.newFolder("out").toPath();
+
+    StandardJavaFileManager first = compile(source, output, "", "-encoding", "UTF-8");
+    StandardJavaFileManager second = compile(source, output, "", "-encoding", "ISO-8859-1");
+
+    assertNotSame(first, second);
+  }
+
+  private StandardJavaFileManager compile(
+      Path source, Path output, String classpath, String... extraOptions) throws IOException {
+    ImmutableList<String> options =
+        ImmutableList.<String>builder()
+            .add("-d", output.toString(), "-classpath", classpath, "-proc:none")
+            .add(extraOptions)
+            .build();
+
+    StandardJavaFileManager fileManager = pool.acquire(compiler, options);
+    try {
+      assertTrue(
+          compiler
+              .getTask(
+                  null,
+                  fileManager,
+                  null,
+                  options,
+                  null,
+                  fileManager.getJavaFileObjects(source.toFile()))
+              .call());
+      return JavacFileManagerPool.getPooledFileManager(fileManager);
+    } finally {
+      fileManager.close();
+    }
+  }
+
+  private Path writeSource(String name, String contents) throws IOException {
+    Path source = temp.getRoot().toPath().resolve(name);
+    Files.write(source, contents.getBytes(StandardCharsets.UTF_8));
+    return source;
+  }
+
+  /** Compiles a single public class into a jar, without going through the pool. */
+  private Path writeJar(String name, String contents) throws IOException {
+    Path classes = Files.createTempDirectory(temp.getRoot().toPath(), "classes");
+    String className = contents.replaceAll("(?s).*public class (\\w+).*", "$1");
+    Path source = classes.resolve(className + ".java");
+    Files.write(source, contents.getBytes(StandardCharsets.UTF_8));
+    assertEquals(0, compiler.run(null, null, null, "-d", classes.toString(), source.toString()));
+
+    Path jar = temp.getRoot().toPath().resolve(name);
+    try (JarOutputStream stream = new JarOutputStream(Files.newOutputStream(jar))) {
+      for (File packageDir : classes.toFile().listFiles(File::isDirectory)) {
+        Path classFile = packageDir.toPath().resolve(className + ".class");
+        stream.putNextEntry(new ZipEntry(packageDir.getName() + "/" + className + ".class"));
+        stream.write(Files.readAllBytes(classFile));
+        stream.closeEntry();
+      }
+    }
+    return jar;
+  }
+}
@@ -129,7 +129,8 @@ public class Jsr199JavacIntegrationTest {
             executionContext.getProjectFilesystemFactory(),
             executionContext.getEnvironment(),
             executionContext.getProcessExecutor(),
-            ImmutableList.of());
+            ImmutableList.of(),
+            /* fileManagerPoolingEnabled */ true);
 
     int exitCode =
         javac
@@ -183,7 +184,8 @@ public class Jsr199JavacIntegrationTest {
             executionContext.getProjectFilesystemFactory(),
             executionContext.getEnvironment(),
             executionContext.getProcessExecutor(),
-            ImmutableList.of());
+            ImmutableList.of(),
+            /* fileManagerPoolingEnabled */ true);
 
     int exitCode =
         javac
@@ -284,7 +286,8 @@ public class Jsr199JavacIntegrationTest {
             executionContext.getProjectFilesystemFactory(),
             executionContext.getEnvironment(),
             executionContext.getProcessExecutor(),
-            ImmutableList.of(fakeJavacJar));
+            ImmutableList.of(fakeJavacJar),
+            /* fileManagerPoolingEnabled */ true);
 
     boolean caught = false;
 
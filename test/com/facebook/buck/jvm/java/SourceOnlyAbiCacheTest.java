@@ -0,0 +1,105 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.model.BuildTarget;
+import com.facebook.buck.model.BuildTargetFactory;
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class SourceOnlyAbiCacheTest {
+  private static final BuildTarget TARGET = BuildTargetFactory.newInstance("//:lib#source-abi");
+  private static final byte[] JAR = {'P', 'K', 3, 4};
+
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  @After
+  public void tearDown() {
+    SourceOnlyAbiCache.invalidateCache();
+  }
+
+  @Test
+  public void testRestoresTheRecordedJarForTheSameFingerprint() throws IOException {
+    record("fingerprint");
+    Path restoredJar = tmp.getRoot().resolve("restored/lib-abi.jar");
+
+    assertTrue(SourceOnlyAbiCache.restore(TARGET, "fingerprint", restoredJar));
+    assertArrayEquals(JAR, Files.readAllBytes(restoredJar));
+  }
+
+  @Test
+  public void testDoesNotRestoreForADifferentFingerprint() throws IOException {
+    record("fingerprint");
+    Path restoredJar = tmp.getRoot().resolve("restored/lib-abi.jar");
+
+    assertFalse(SourceOnlyAbiCache.restore(TARGET, "other fingerprint", restoredJar));
+    assertFalse(Files.exists(restoredJar));
+  }
+
+  @Test
+  public void testDoesNotRestoreForADifferentTarget() throws IOException {
+    record("fingerprint");
+    Path restoredJar = tmp.getRoot().resolve("restored/lib-abi.jar");
+
+    assertFalse(
+        SourceOnlyAbiCache.restore(
+            BuildTargetFactory.newInstance("//:other#source-abi"), "fingerprint", restoredJar));
+    assertFalse(Files.exists(restoredJar));
+  }
+
+  @Test
+  public void testEnvironmentFingerprintChangesWithTheClasspathJars() throws IOException {
+    Path dep = tmp.newFile("dep.jar");
+    ImmutableList<String> options = ImmutableList.of("-g", "-classpath", dep.toString());
+    Optional<String> before = SourceOnlyAbiCache.fingerprintEnvironment(options);
+    assertEquals(before, SourceOnlyAbiCache.fingerprintEnvironment(options));
+
+    Files.write(dep, JAR);
+
+    assertNotEquals(before, SourceOnlyAbiCache.fingerprintEnvironment(options));
+  }
+
+  @Test
+  public void testEnvironmentCantBeFingerprintedWithDirectoriesOnTheClasspath()
+      throws IOException {
+    Path classes = tmp.newFolder("classes");
+
+    assertFalse(
+        SourceOnlyAbiCache.fingerprintEnvironment(
+                ImmutableList.of("-classpath", classes.toString()))
+            .isPresent());
+  }
+
+  private void record(String fingerprint) throws IOException {
+    Path jar = tmp.newFile("lib-abi.jar");
+    Files.write(jar, JAR);
+    SourceOnlyAbiCache.record(TARGET, fingerprint, jar);
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java.abi.source;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+
+import com.facebook.buck.jvm.java.plugin.adapter.BuckJavacTaskProxyImpl;
+import com.facebook.buck.jvm.java.testutil.compiler.TestCompiler;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+
+public class AbiFingerprintingTaskListenerTest {
+  @Test
+  public void testMethodBodiesDoNotAffectFingerprint() throws IOException {
+    assertEquals(
+        fingerprint("public class Foo {", "  public int foo() { return 1; }", "}"),
+        fingerprint("public class Foo {", "  public int foo() { return 2; }", "}"));
+  }
+
+  @Test
+  public void testNonFinalFieldInitializersDoNotAffectFingerprint() throws IOException {
+    assertEquals(
+        fingerprint("public class Foo {", "  public int foo = 1;", "}"),
+        fingerprint("public class Foo {", "  public int foo = 2;", "}"));
+  }
+
+  @Test
+  public void testConstantsAffectFingerprint() throws IOException {
+    assertNotEquals(
+        fingerprint("public class Foo {", "  public static final int FOO = 1;", "}"),
+        fingerprint("public class Foo {", "  public static final int FOO = 2;", "}"));
+  }
+
+  @Test
+  public void testSignaturesAffectFingerprint() throws IOException {
+    assertNotEquals(
+        fingerprint("public class Foo {", "  public int foo() { return 1; }", "}"),
+        fingerprint("public class Foo {", "  public long foo() { return 1; }", "}"));
+  }
+
+  @Test
+  public void testJavadocDeprecationAffectsFingerprint() throws IOException {
+    assertNotEquals(
+        fingerprint("public class Foo {", "  public void foo() { }", "}"),
+        fingerprint("public class Foo {", "  /** @deprecated */", "  public void foo() { }", "}"));
+  }
+
+  @Test
+  public void testStopsBeforeEnterIfListenerHasTheAbi() throws IOException {
+    AtomicBoolean entered = new AtomicBoolean(false);
+    try (TestCompiler testCompiler = new TestCompiler()) {
+      testCompiler.init();
+      testCompiler.useFrontendOnlyJavacTask();
+      testCompiler.addSourceFileContents("Foo.java", "public class Foo { }");
+      testCompiler.setTaskListener(
+          new AbiFingerprintingTaskListener(
+              new BuckJavacTaskProxyImpl(testCompiler.getJavacTask()), fingerprint -> true));
+      testCompiler.addPostEnterCallback(elements -> entered.set(true));
+
+      testCompiler.compile();
+    }
+
+    assertFalse(entered.get());
+  }
+
+  private static String fingerprint(String... lines) throws IOException {
+    AtomicReference<String> result = new AtomicReference<>();
+    try (TestCompiler testCompiler = new TestCompiler()) {
+      testCompiler.init();
+      testCompiler.useFrontendOnlyJavacTask();
+      testCompiler.addSourceFileContents("Foo.java", lines);
+      testCompiler.setTaskListener(
+          new AbiFingerprintingTaskListener(
+              new BuckJavacTaskProxyImpl(testCompiler.getJavacTask()),
+              fingerprint -> {
+                result.set(fingerprint);
+                return false;
+              }));
+
+      testCompiler.compile();
+    }
+
+    assertNotNull(result.get());
+    return result.get();
+  }
+}
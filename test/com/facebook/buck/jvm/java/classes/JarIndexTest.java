@@ -0,0 +1,84 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.jvm.java.classes;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import com.google.common.base.Charsets;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JarIndexTest {
+  @Rule public TemporaryFolder tempDir = new TemporaryFolder();
+
+  @Before
+  public void setUp() {
+    JarIndex.invalidateCache();
+  }
+
+  @Test
+  public void indexesEntriesInCentralDirectoryOrder() throws IOException {
+    Path jar = tempDir.getRoot().toPath().resolve("lib.jar");
+    writeJar(jar, "b/B.class", "BB", "a/A.class", "A", "META-INF/", "");
+
+    JarIndex index = JarIndex.get(jar);
+
+    assertEquals(3, index.size());
+    assertEquals("b/B.class", index.getName(0));
+    assertEquals(2, index.getSize(0));
+    assertEquals("a/A.class", index.getName(1));
+    assertEquals(1, index.getSize(1));
+    assertEquals("META-INF/", index.getName(2));
+  }
+
+  @Test
+  public void reusesTheIndexUntilTheJarChanges() throws IOException {
+    Path jar = tempDir.getRoot().toPath().resolve("lib.jar");
+    writeJar(jar, "a/A.class", "A");
+
+    JarIndex first = JarIndex.get(jar);
+    assertSame(first, JarIndex.get(jar));
+
+    Files.delete(jar);
+    writeJar(jar, "a/A.class", "A", "a/B.class", "B");
+    JarIndex second = JarIndex.get(jar);
+
+    assertNotSame(first, second);
+    assertEquals(2, second.size());
+  }
+
+  private static void writeJar(Path jar, String... namesAndContents) throws IOException {
+    try (OutputStream stream = Files.newOutputStream(jar);
+        ZipOutputStream zip = new ZipOutputStream(stream)) {
+      for (int i = 0; i < namesAndContents.length; i += 2) {
+        zip.putNextEntry(new ZipEntry(namesAndContents[i]));
+        zip.write(namesAndContents[i + 1].getBytes(Charsets.UTF_8));
+        zip.closeEntry();
+      }
+    }
+  }
+}
@@ -27,7 +27,9 @@ import com.facebook.buck.model.BuildTarget;
 import com.facebook.buck.model.BuildTargetException;
 import com.facebook.buck.model.BuildTargetFactory;
 import com.facebook.buck.parser.PipelineNodeCache.Cache;
+import com.facebook.buck.jvm.java.JavaLibraryBuilder;
 import com.facebook.buck.rules.Cell;
+import com.facebook.buck.rules.TargetNode;
 import com.facebook.buck.rules.TestCellBuilder;
 import com.facebook.buck.testutil.FakeProjectFilesystem;
 import com.google.common.collect.ImmutableMap;
@@ -35,6 +37,7 @@ import com.google.common.collect.ImmutableSet;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Optional;
 import org.junit.Before;
 import org.junit.Test;
@@ -128,4 +131,37 @@ public class DaemonicCellStateTest {
         Optional.empty(),
         cache.lookupComputedNode(childCell, target));
   }
+
+  @Test
+  public void testTargetNodesAreIndexedUntilInvalidated()
+      throws BuildTargetException, IOException, InterruptedException {
+    @SuppressWarnings("unchecked")
+    Cache<BuildTarget, TargetNode<?, ?>> cache =
+        (Cache<BuildTarget, TargetNode<?, ?>>)
+            (Cache<?, ?>) state.getOrCreateCache(TargetNode.class);
+    BuildTarget target =
+        BuildTargetFactory.newInstance(filesystem.getRootPath(), "//path/to:target");
+    BuildTarget dep = BuildTargetFactory.newInstance(filesystem.getRootPath(), "//other:dep");
+    Path buildFile = filesystem.resolve("path/to/BUCK");
+    Path input = Paths.get("path/to/Foo.java");
+    TargetNode<?, ?> node =
+        JavaLibraryBuilder.createBuilder(target).addDep(dep).addSrc(input).build();
+
+    populateDummyRawNode(state, target);
+    assertEquals(
+        "Owners aren't known until every target in the build file is",
+        Optional.empty(),
+        state.lookupInputOwners(buildFile, input));
+
+    cache.putComputedNodeIfNotPresent(rootCell, target, node);
+    assertEquals(ImmutableSet.of(target), state.getTargetNodeDependents(dep));
+    assertEquals(Optional.of(ImmutableSet.of(node)), state.lookupInputOwners(buildFile, input));
+    assertEquals(
+        Optional.of(ImmutableSet.of()),
+        state.lookupInputOwners(buildFile, Paths.get("path/to/Bar.java")));
+
+    state.invalidatePath(buildFile);
+    assertEquals(ImmutableSet.of(), state.getTargetNodeDependents(dep));
+    assertEquals(Optional.empty(), state.lookupInputOwners(buildFile, input));
+  }
 }
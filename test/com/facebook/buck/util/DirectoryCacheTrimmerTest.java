@@ -0,0 +1,78 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.facebook.buck.testutil.integration.TemporaryPaths;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.FileTime;
+import org.junit.Rule;
+import org.junit.Test;
+
+public class DirectoryCacheTrimmerTest {
+  @Rule public TemporaryPaths tmp = new TemporaryPaths();
+
+  @Test
+  public void testTrimsTheLeastRecentlyUsedEntries() throws IOException {
+    Path root = tmp.getRoot();
+    Path older = createEntry(root.resolve("aa/older"), 1000);
+    Path newer = createEntry(root.resolve("bb/newer"), 2000);
+    Path inProgress = createEntry(root.resolve("aa/.in-progress"), 0);
+
+    DirectoryCacheTrimmer.trim(root, 150);
+
+    assertFalse(Files.exists(older));
+    assertTrue(Files.exists(newer));
+    assertTrue(Files.exists(inProgress));
+  }
+
+  @Test
+  public void testUsedEntriesAreKept() throws IOException {
+    Path root = tmp.getRoot();
+    Path older = createEntry(root.resolve("aa/older"), 1000);
+    Path newer = createEntry(root.resolve("bb/newer"), 2000);
+
+    DirectoryCacheTrimmer.markUsed(older);
+    DirectoryCacheTrimmer.trim(root, 150);
+
+    assertTrue(Files.exists(older));
+    assertFalse(Files.exists(newer));
+  }
+
+  @Test
+  public void testLeavesACacheUnderTheLimitAlone() throws IOException {
+    Path root = tmp.getRoot();
+    Path entry = createEntry(root.resolve("aa/entry"), 1000);
+
+    DirectoryCacheTrimmer.trim(root, 150);
+
+    assertTrue(Files.exists(entry));
+  }
+
+  private static Path createEntry(Path path, long lastAccessMillis) throws IOException {
+    Files.createDirectories(path.getParent());
+    Files.write(path, new byte[100]);
+    Files.getFileAttributeView(path, BasicFileAttributeView.class)
+        .setTimes(null, FileTime.fromMillis(lastAccessMillis), null);
+    return path;
+  }
+}
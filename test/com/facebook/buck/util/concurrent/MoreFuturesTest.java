@@ -18,11 +18,17 @@ package com.facebook.buck.util.concurrent;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import org.junit.Test;
 
 public class MoreFuturesTest {
@@ -74,4 +80,38 @@ public class MoreFuturesTest {
     canceledFuture.cancel(/* mayInterruptIfRunning */ true);
     MoreFutures.getFailure(canceledFuture);
   }
+
+  @Test
+  public void mapInParallelKeepsTheOrderOfTheInputs() throws IOException {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      assertEquals(
+          ImmutableList.of(2, 4, 6, 8, 10),
+          MoreFutures.mapInParallel(executor, ImmutableList.of(1, 2, 3, 4, 5), i -> i * 2));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void mapInParallelRethrowsTheFailure() {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    IOException failure = new IOException("failed");
+    try {
+      MoreFutures.mapInParallel(
+          executor,
+          ImmutableList.of(1, 2, 3),
+          i -> {
+            if (i == 2) {
+              throw failure;
+            }
+            return i;
+          });
+      fail("The failure should have been rethrown.");
+    } catch (IOException e) {
+      assertSame(failure, e);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
 }
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2017-present Facebook, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.facebook.buck.util.zip;
+
+import com.google.caliper.AfterExperiment;
+import com.google.caliper.BeforeExperiment;
+import com.google.caliper.Benchmark;
+import com.google.caliper.Param;
+import com.google.common.collect.ImmutableList;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Compares building a jar from another large jar serially, in parallel and with raw copies. */
+public class JarBuilderBenchmark {
+  @Param({"50000"})
+  private int entryCount = 1000;
+
+  private static final int THREAD_COUNT = Runtime.getRuntime().availableProcessors();
+
+  private final Random random = new Random(123);
+  private Path workDir;
+  private Path sourceJar;
+  private ExecutorService executor;
+
+  @Before
+  public void setUpTest() throws Exception {
+    setUpBenchmark();
+  }
+
+  @After
+  public void tearDownTest() throws Exception {
+    tearDownBenchmark();
+  }
+
+  @BeforeExperiment
+  public void setUpBenchmark() throws Exception {
+    workDir = Files.createTempDirectory("jar-builder-benchmark");
+    sourceJar = workDir.resolve("source.jar");
+    executor = Executors.newFixedThreadPool(THREAD_COUNT);
+
+    JarBuilder builder = new JarBuilder();
+    for (int i = 0; i < entryCount; i++) {
+      // Somewhat compressible contents of roughly the size of a typical class file.
+      byte[] contents = new byte[512 + random.nextInt(4096)];
+      for (int j = 0; j < contents.length; j++) {
+        contents[j] = (byte) ('a' + random.nextInt(8));
+      }
+      builder.addEntry(
+          new JarEntrySupplier(
+              new CustomZipEntry(String.format("com/example/p%d/Class%d.class", i % 100, i)),
+              "benchmark",
+              () -> new ByteArrayInputStream(contents)));
+    }
+    builder.createJarFile(sourceJar);
+  }
+
+  @AfterExperiment
+  public void tearDownBenchmark() throws Exception {
+    executor.shutdownNow();
+    try (Stream<Path> paths = Files.list(workDir)) {
+      for (Path path : (Iterable<Path>) paths::iterator) {
+        Files.delete(path);
+      }
+    }
+    Files.delete(workDir);
+  }
+
+  @Test
+  public void serialPerformance() throws Exception {
+    serial();
+  }
+
+  @Benchmark
+  public void serial() throws IOException {
+    newBuilder().createJarFile(workDir.resolve("serial.jar"));
+  }
+
+  @Test
+  public void parallelPerformance() throws Exception {
+    parallel();
+  }
+
+  @Benchmark
+  public void parallel() throws IOException {
+    newBuilder()
+        .setCompressionExecutor(executor, THREAD_COUNT)
+        .createJarFile(workDir.resolve("parallel.jar"));
+  }
+
+  @Test
+  public void reuseCompressedEntriesPerformance() throws Exception {
+    reuseCompressedEntries();
+  }
+
+  @Benchmark
+  public void reuseCompressedEntries() throws IOException {
+    newBuilder()
+        .setCompressionExecutor(executor, THREAD_COUNT)
+        .setShouldReuseCompressedEntries(true)
+        .createJarFile(workDir.resolve("reuse.jar"));
+  }
+
+  private JarBuilder newBuilder() {
+    return new JarBuilder().setEntriesToJar(ImmutableList.of(sourceJar));
+  }
+}
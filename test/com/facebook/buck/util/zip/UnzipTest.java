@@ -28,6 +28,7 @@ import com.facebook.buck.testutil.ZipArchive;
 import com.facebook.buck.testutil.integration.TemporaryPaths;
 import com.facebook.buck.util.environment.Platform;
 import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import java.io.IOException;
@@ -37,6 +38,7 @@ import java.nio.file.Path;
 import java.nio.file.attribute.PosixFilePermission;
 import java.nio.file.attribute.PosixFilePermissions;
 import java.util.Set;
+import java.util.zip.CRC32;
 import java.util.zip.ZipEntry;
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
@@ -267,4 +269,42 @@ public class UnzipTest {
     assertTrue(Files.exists(extractFolder.toAbsolutePath().resolve("foo")));
     assertTrue(Files.exists(extractFolder.toAbsolutePath().resolve("foo/bar")));
   }
+
+  @Test
+  public void testExtractManyEntriesWithMixedCompression()
+      throws InterruptedException, IOException {
+    int entryCount = 100;
+    try (ZipArchiveOutputStream zip = new ZipArchiveOutputStream(zipFile.toFile())) {
+      for (int i = 0; i < entryCount; i++) {
+        ZipArchiveEntry entry = new ZipArchiveEntry(String.format("dir%d/file%d.txt", i % 7, i));
+        byte[] contents = Strings.repeat("contents " + i + "\n", i).getBytes(Charsets.UTF_8);
+        if (i % 2 == 0) {
+          CRC32 crc = new CRC32();
+          crc.update(contents);
+          entry.setMethod(ZipEntry.STORED);
+          entry.setSize(contents.length);
+          entry.setCrc(crc.getValue());
+        }
+        zip.putArchiveEntry(entry);
+        zip.write(contents);
+        zip.closeArchiveEntry();
+      }
+    }
+
+    Path extractFolder = tmpFolder.newFolder();
+    ImmutableList<Path> result =
+        Unzip.extractZipFile(
+            new DefaultProjectFilesystemFactory(),
+            zipFile.toAbsolutePath(),
+            extractFolder.toAbsolutePath(),
+            Unzip.ExistingFileMode.OVERWRITE);
+
+    assertEquals(entryCount, result.size());
+    for (int i = 0; i < entryCount; i++) {
+      Path file = extractFolder.resolve(String.format("dir%d/file%d.txt", i % 7, i));
+      assertEquals(
+          Strings.repeat("contents " + i + "\n", i),
+          new String(Files.readAllBytes(file), Charsets.UTF_8));
+    }
+  }
 }
@@ -25,6 +25,7 @@ import com.facebook.buck.rules.TargetGraphAndBuildTargets;
 import com.facebook.buck.rules.TargetNode;
 import com.facebook.buck.rules.coercer.DefaultTypeCoercerFactory;
 import com.facebook.buck.testutil.TargetGraphFactory;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSortedMap;
@@ -32,6 +33,7 @@ import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Maps;
 import java.lang.reflect.Field;
 import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.ForkJoinPool;
 import org.hamcrest.Matchers;
 import org.junit.Test;
@@ -323,4 +325,71 @@ public class VersionedTargetGraphBuilderTest {
     TargetGraph versionedGraph = builder.build();
     assertEquals(graph, versionedGraph);
   }
+
+  @Test
+  public void editedGraphReusesTranslationsOfUntouchedRoots() throws Exception {
+    ImmutableList<TargetNode<?, ?>> untouchedNodes =
+        ImmutableList.of(
+            new VersionPropagatorBuilder("//:dep1").build(),
+            new VersionedAliasBuilder("//:versioned1").setVersions("1.0", "//:dep1").build(),
+            new VersionPropagatorBuilder("//:a1").setDeps("//:versioned1").build(),
+            new VersionRootBuilder("//:root1").setDeps("//:a1").build(),
+            new VersionedAliasBuilder("//:versioned2").setVersions("1.0", "//:dep2").build(),
+            new VersionPropagatorBuilder("//:a2").setDeps("//:versioned2").build(),
+            new VersionRootBuilder("//:root2").setDeps("//:a2").build());
+    TargetGraph graph =
+        TargetGraphFactory.newInstanceExact(
+            ImmutableList.<TargetNode<?, ?>>builder()
+                .addAll(untouchedNodes)
+                .add(new VersionPropagatorBuilder("//:dep2").build())
+                .build()
+                .toArray(new TargetNode<?, ?>[0]));
+    ImmutableSet<BuildTarget> roots =
+        ImmutableSet.of(
+            BuildTargetFactory.newInstance("//:root1"), BuildTargetFactory.newInstance("//:root2"));
+    VersionedTargetGraphBuilder builder =
+        new VersionedTargetGraphBuilder(
+            POOL,
+            new NaiveVersionSelector(),
+            TargetGraphAndBuildTargets.of(graph, roots),
+            new DefaultTypeCoercerFactory());
+    TargetGraph versionedGraph = builder.build();
+
+    // Only //:dep2 changes, so only the sub-graph of //:root2 needs translating again.
+    TargetGraph editedGraph =
+        TargetGraphFactory.newInstanceExact(
+            ImmutableList.<TargetNode<?, ?>>builder()
+                .addAll(untouchedNodes)
+                .add(new VersionPropagatorBuilder("//:other").build())
+                .add(new VersionPropagatorBuilder("//:dep2").setDeps("//:other").build())
+                .build()
+                .toArray(new TargetNode<?, ?>[0]));
+    TargetGraph incrementalGraph =
+        new VersionedTargetGraphBuilder(
+                POOL,
+                new NaiveVersionSelector(),
+                TargetGraphAndBuildTargets.of(editedGraph, roots),
+                new DefaultTypeCoercerFactory(),
+                Optional.of(builder.getTranslations()))
+            .build();
+    TargetGraph freshGraph =
+        new VersionedTargetGraphBuilder(
+                POOL,
+                new NaiveVersionSelector(),
+                TargetGraphAndBuildTargets.of(editedGraph, roots),
+                new DefaultTypeCoercerFactory())
+            .build();
+    assertEquals(freshGraph, incrementalGraph);
+
+    ImmutableMap<BuildTarget, TargetNode<?, ?>> nodes =
+        Maps.uniqueIndex(versionedGraph.getNodes(), TargetNode::getBuildTarget);
+    ImmutableMap<BuildTarget, TargetNode<?, ?>> incrementalNodes =
+        Maps.uniqueIndex(incrementalGraph.getNodes(), TargetNode::getBuildTarget);
+    BuildTarget a1 =
+        BuildTargetFactory.newInstance(getVersionedTarget("//:a1", "//:versioned1", "1.0"));
+    assertThat(incrementalNodes.get(a1), Matchers.sameInstance(nodes.get(a1)));
+    BuildTarget a2 =
+        BuildTargetFactory.newInstance(getVersionedTarget("//:a2", "//:versioned2", "1.0"));
+    assertThat(incrementalNodes.get(a2), Matchers.not(Matchers.sameInstance(nodes.get(a2))));
+  }
 }
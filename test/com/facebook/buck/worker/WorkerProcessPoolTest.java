@@ -24,6 +24,7 @@ import com.google.common.hash.Hashing;
 import java.io.IOException;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -184,6 +185,34 @@ public class WorkerProcessPoolTest {
     pool.returnWorkerProcess(process2);
   }
 
+  @Test
+  public void tracksUsageOfEachWorker() throws InterruptedException, IOException {
+    final WorkerProcessPool pool = createPool(2);
+    assertThat(pool.getWorkerUsage(), Matchers.empty());
+
+    final WorkerProcess first = pool.borrowWorkerProcess();
+    first.ensureLaunchAndHandshake();
+    final WorkerProcess second = pool.borrowWorkerProcess();
+    second.ensureLaunchAndHandshake();
+    pool.returnWorkerProcess(second);
+    final WorkerProcess third = pool.borrowWorkerProcess();
+    assertThat(third, Matchers.is(second));
+    pool.returnWorkerProcess(third);
+    pool.returnWorkerProcess(first);
+
+    List<WorkerProcessPool.WorkerUsage> usage = pool.getWorkerUsage();
+    assertThat(usage, Matchers.hasSize(2));
+    assertThat(usage.get(0).getJobCount(), Matchers.is(1));
+    assertThat(usage.get(1).getJobCount(), Matchers.is(2));
+    for (WorkerProcessPool.WorkerUsage workerUsage : usage) {
+      assertThat(workerUsage.getUtilization(), Matchers.greaterThanOrEqualTo(0.0));
+      assertThat(workerUsage.getUtilization(), Matchers.lessThanOrEqualTo(1.0));
+    }
+
+    pool.destroyWorkerProcess(pool.borrowWorkerProcess());
+    assertThat(pool.getWorkerUsage(), Matchers.hasSize(1));
+  }
+
   private static WorkerProcessPool createPool(int maxWorkers) {
     return new WorkerProcessPool(maxWorkers, Hashing.sha1().hashLong(0)) {
       @Override